@@ -0,0 +1,116 @@
+package phoenixcenter.metaproteomics;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parse the LCA file as {@link TaxAnalysis#lca2Quant(String, String, int, boolean, String)} does, for one rank
+ * and for all ranks, and count the peptide taxon distribution as
+ * {@link TaxAnalysis#calPeptideTaxonDistribution(String)} does, without plotting. It is in the package of
+ * {@link LCAFileSummary} since the summary is package-private.
+ * <p>
+ * The LCA file is generated at setup: about a tenth of peptides have no LCA, the others have a lineage
+ * from superkingdom down to a random one of the main ranks.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms256m", "-Xmx2g"})
+public class LCAFileBenchmark {
+
+    private static final String[] MAIN_RANKS = {"species", "genus", "family", "order", "class", "phylum",
+            "superkingdom"};
+
+    @Param({"200000"})
+    private int peptideCount;
+
+    @Param({"10"})
+    private int sampleSize;
+
+    @Param({"2000"})
+    private int speciesCount;
+
+    private Path lcaPath;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        lcaPath = Files.createTempFile("benchmark", ".lca.tsv");
+        List<String> ranks = Arrays.asList(TaxAnalysis.RANKS);
+        Random random = new Random(1L);
+        try (BufferedWriter bw = Files.newBufferedWriter(lcaPath)) {
+            bw.write("Peptide");
+            for (int j = 1; j <= sampleSize; j++) {
+                bw.write("\tS" + j);
+            }
+            bw.write("\ttaxon_id\ttaxon_name\ttaxon_rank");
+            for (int i = ranks.size() - 1; i >= 0; i--) {
+                bw.write("\t" + ranks.get(i) + "_id\t" + ranks.get(i) + "_name");
+            }
+            bw.write('\n');
+            for (int p = 0; p < peptideCount; p++) {
+                bw.write("PEPTIDE" + p + "K");
+                for (int j = 0; j < sampleSize; j++) {
+                    bw.write("\t" + random.nextInt(100000));
+                }
+                if (random.nextInt(10) == 0) {
+                    bw.write("\t\t\t");
+                    for (int i = 0; i < ranks.size(); i++) {
+                        bw.write("\t\t");
+                    }
+                    bw.write('\n');
+                    continue;
+                }
+                int species = random.nextInt(speciesCount);
+                int lcaRankIdx = ranks.indexOf(MAIN_RANKS[random.nextInt(MAIN_RANKS.length)]);
+                // main rank i of species s is taxon (s >> i), so taxa branch towards the lower ranks
+                String[] ids = new String[ranks.size()];
+                String[] names = new String[ranks.size()];
+                for (int m = 0; m < MAIN_RANKS.length; m++) {
+                    int rankIdx = ranks.indexOf(MAIN_RANKS[m]);
+                    if (rankIdx >= lcaRankIdx) {
+                        int tid = (rankIdx + 1) * 1000000 + (species >> m);
+                        ids[rankIdx] = String.valueOf(tid);
+                        names[rankIdx] = MAIN_RANKS[m] + " " + tid;
+                    }
+                }
+                bw.write("\t" + ids[lcaRankIdx] + "\t" + names[lcaRankIdx] + "\t" + ranks.get(lcaRankIdx));
+                for (int i = ranks.size() - 1; i >= 0; i--) {
+                    bw.write("\t" + (ids[i] == null ? "" : ids[i]) + "\t" + (names[i] == null ? "" : names[i]));
+                }
+                bw.write('\n');
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(lcaPath);
+    }
+
+    @Benchmark
+    public LCAFileSummary quantOneRank() throws IOException {
+        return LCAFileSummary.read(lcaPath, TaxAnalysis.RANKS, Collections.singleton("species"));
+    }
+
+    @Benchmark
+    public LCAFileSummary quantAllRanks() throws IOException {
+        return LCAFileSummary.read(lcaPath, TaxAnalysis.RANKS, Arrays.asList(TaxAnalysis.RANKS));
+    }
+
+    @Benchmark
+    public void distribution(Blackhole bh) throws IOException {
+        LCAFileSummary summary = LCAFileSummary.read(lcaPath, TaxAnalysis.RANKS, Collections.emptySet());
+        for (int i = 0; i < TaxAnalysis.RANKS.length; i++) {
+            bh.consume(TaxAnalysis.countTaxaByPeptideCount(summary.getTaxon2PeptideCount(i)));
+        }
+    }
+}
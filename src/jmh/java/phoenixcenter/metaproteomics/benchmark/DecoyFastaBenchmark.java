@@ -0,0 +1,102 @@
+package phoenixcenter.metaproteomics.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import phoenixcenter.metaproteomics.fasta.DecoyFastaGenerator;
+import phoenixcenter.metaproteomics.fasta.DecoyFastaGenerator.DecoyMode;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generate a target-decoy FASTA: the line based generator with StringBuilder reverse(how
+ * Mascot2XMLEnhancer#genLibraryWithDecoy worked before) versus the mapped, chunk-parallel
+ * {@link DecoyFastaGenerator} with 1 and 4 threads.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgs = {"-Xms256m", "-Xmx2g"})
+public class DecoyFastaBenchmark {
+
+    private static final String AMINO_ACIDS = "ACDEFGHIKLMNPQRSTVWY";
+
+    @Param({"500000"})
+    private int proteinCount;
+
+    private Path targetPath;
+
+    private Path targetDecoyPath;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        targetPath = Files.createTempFile("benchmark", ".fasta");
+        targetDecoyPath = Files.createTempFile("benchmark", ".td.fasta");
+        Random random = new Random(1L);
+        try (BufferedWriter bw = Files.newBufferedWriter(targetPath)) {
+            for (int i = 0; i < proteinCount; i++) {
+                bw.write(">sp|P" + i + "|PROT" + i + " benchmark protein\n");
+                int length = 50 + random.nextInt(500);
+                for (int j = 0; j < length; j++) {
+                    bw.write(AMINO_ACIDS.charAt(random.nextInt(AMINO_ACIDS.length())));
+                    if ((j + 1) % 60 == 0 || j == length - 1) {
+                        bw.write('\n');
+                    }
+                }
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(targetPath);
+        Files.deleteIfExists(targetDecoyPath);
+    }
+
+    @Benchmark
+    public void lineReader() throws IOException {
+        try (BufferedReader br = Files.newBufferedReader(targetPath, StandardCharsets.UTF_8);
+             BufferedWriter bw = Files.newBufferedWriter(targetDecoyPath, StandardCharsets.UTF_8)) {
+            String line;
+            String anno = null;
+            StringBuilder sequence = null;
+            while ((line = br.readLine()) != null) {
+                if (line.startsWith(">")) {
+                    if (sequence != null) {
+                        bw.write(">" + anno + System.lineSeparator());
+                        bw.write(sequence.toString() + System.lineSeparator());
+                        bw.write(">DECOY_" + anno + System.lineSeparator());
+                        bw.write(sequence.reverse().toString() + System.lineSeparator());
+                    }
+                    anno = line.substring(1);
+                    sequence = new StringBuilder();
+                } else {
+                    sequence.append(line);
+                }
+            }
+            if (sequence != null) {
+                bw.write(">" + anno + System.lineSeparator());
+                bw.write(sequence.toString() + System.lineSeparator());
+                bw.write(">DECOY_" + anno + System.lineSeparator());
+                bw.write(sequence.reverse().toString() + System.lineSeparator());
+            }
+        }
+    }
+
+    @Benchmark
+    public void mappedSingleThread() throws IOException {
+        new DecoyFastaGenerator("DECOY_", DecoyMode.REVERSE, 1).generate(targetPath, targetDecoyPath);
+    }
+
+    @Benchmark
+    public void mappedFourThreads() throws IOException {
+        new DecoyFastaGenerator("DECOY_", DecoyMode.REVERSE, 4).generate(targetPath, targetDecoyPath);
+    }
+}
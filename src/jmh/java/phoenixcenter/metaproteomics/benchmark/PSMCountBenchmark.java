@@ -0,0 +1,54 @@
+package phoenixcenter.metaproteomics.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import phoenixcenter.metaproteomics.PepXmlFixtures;
+import phoenixcenter.metaproteomics.PeptideProphetEnhancer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Count target PSMs of each peptide in a PeptideProphet pepXML with
+ * {@link PeptideProphetEnhancer#countPSMs(String, String, Double)}: without FDR filter(the streaming
+ * statPSMCount) and with FDR 1%(PSMs are buffered to estimate the probability threshold).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xms256m", "-Xmx2g"})
+public class PSMCountBenchmark {
+
+    @Param({"200000"})
+    private int queryCount;
+
+    private Path pepxmlPath;
+
+    private PeptideProphetEnhancer enhancer;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        pepxmlPath = Files.createTempFile("benchmark", ".pp.pep.xml");
+        PepXmlFixtures.write(pepxmlPath, queryCount, 1L);
+        enhancer = new PeptideProphetEnhancer(1, false);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(pepxmlPath);
+    }
+
+    @Benchmark
+    public Map<String, Integer> noFdr() throws IOException {
+        return enhancer.countPSMs(PepXmlFixtures.DECOY_PREFIX, pepxmlPath.toString(), null);
+    }
+
+    @Benchmark
+    public Map<String, Integer> fdr() throws IOException {
+        return enhancer.countPSMs(PepXmlFixtures.DECOY_PREFIX, pepxmlPath.toString(), 0.01);
+    }
+}
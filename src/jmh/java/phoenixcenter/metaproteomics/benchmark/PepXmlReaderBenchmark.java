@@ -0,0 +1,105 @@
+package phoenixcenter.metaproteomics.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import phoenixcenter.metaproteomics.PepXmlFixtures;
+import phoenixcenter.metaproteomics.entity.PSM;
+import phoenixcenter.metaproteomics.pepxml.SpectrumQueryReader;
+import umich.ms.fileio.filetypes.pepxml.PepXmlParser;
+import umich.ms.fileio.filetypes.pepxml.jaxb.standard.PeptideprophetResult;
+import umich.ms.fileio.filetypes.pepxml.jaxb.standard.SearchHit;
+import umich.ms.fileio.filetypes.pepxml.jaxb.standard.SpectrumQuery;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read the top hits of a pepXML: whole-file JAXB {@link PepXmlParser#parse(Path)} versus the streaming
+ * {@link SpectrumQueryReader}. Besides the wall-clock time of each read, the peak heap of the iteration is
+ * reported as "peakHeapMB". A read takes seconds, so each iteration runs only one or two reads.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xms256m", "-Xmx4g"})
+public class PepXmlReaderBenchmark {
+
+    @Param({"200000"})
+    private int queryCount;
+
+    private Path pepxmlPath;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class HeapCounter {
+
+        public double peakHeapMB;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            System.gc();
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP) {
+                    pool.resetPeakUsage();
+                }
+            }
+        }
+
+        void record() {
+            long peak = 0L;
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP) {
+                    peak += pool.getPeakUsage().getUsed();
+                }
+            }
+            peakHeapMB = peak / 1024.0 / 1024.0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        pepxmlPath = Files.createTempFile("benchmark", ".pep.xml");
+        PepXmlFixtures.write(pepxmlPath, queryCount, 1L);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(pepxmlPath);
+    }
+
+    @Benchmark
+    public void jaxb(HeapCounter counter, Blackhole bh) throws Exception {
+        List<SpectrumQuery> specQueryList = PepXmlParser.parse(pepxmlPath)
+                .getMsmsRunSummary()
+                .get(0)
+                .getSpectrumQuery();
+        for (SpectrumQuery specQuery : specQueryList) {
+            SearchHit searchHit = specQuery.getSearchResult().get(0).getSearchHit().get(0);
+            bh.consume(searchHit.getPeptide());
+            bh.consume(searchHit.getProtein());
+            bh.consume(searchHit.getAlternativeProtein());
+            bh.consume(((PeptideprophetResult) (searchHit.getAnalysisResult().get(0).getAny().get(0)))
+                    .getProbability());
+        }
+        counter.record();
+    }
+
+    @Benchmark
+    public void stax(HeapCounter counter, Blackhole bh) throws IOException {
+        try (SpectrumQueryReader reader = SpectrumQueryReader.open(pepxmlPath)) {
+            while (reader.hasNext()) {
+                PSM psm = reader.next();
+                bh.consume(psm);
+            }
+        }
+        counter.record();
+    }
+}
@@ -0,0 +1,107 @@
+package phoenixcenter.metaproteomics.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import phoenixcenter.metaproteomics.entity.QuantMatrix;
+import phoenixcenter.metaproteomics.entity.QuantPeptide;
+import phoenixcenter.metaproteomics.entity.UnipeptTaxon;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Taxon quantification: summing peptide quant values by taxon and normalizing by sample totals,
+ * with boxed {@code List<Double>} per peptide versus the flat {@link QuantMatrix}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QuantMatrixBenchmark {
+
+    @Param({"100000"})
+    private int peptideCount;
+
+    @Param({"10", "200"})
+    private int sampleSize;
+
+    @Param({"500"})
+    private int taxonCount;
+
+    private Map<UnipeptTaxon, List<QuantPeptide>> taxon2QuantPeptides;
+
+    private QuantMatrix peptideMatrix;
+
+    private int[] rowTaxa;
+
+    private String[] taxonNames;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(20200101L);
+        List<UnipeptTaxon> taxa = IntStream.range(0, taxonCount)
+                .mapToObj(i -> UnipeptTaxon.builder().id(i + 2).name("taxon_" + i).build())
+                .collect(Collectors.toList());
+        taxonNames = taxa.stream().map(UnipeptTaxon::getName).toArray(String[]::new);
+        taxon2QuantPeptides = new HashMap<>();
+        peptideMatrix = new QuantMatrix(sampleSize, peptideCount);
+        rowTaxa = new int[peptideCount];
+        for (int p = 0; p < peptideCount; p++) {
+            String sequence = "PEPTIDE" + p + "K";
+            int taxonIdx = random.nextInt(taxonCount);
+            int row = peptideMatrix.addRow(sequence);
+            rowTaxa[row] = taxonIdx;
+            List<Double> quantValList = new ArrayList<>(sampleSize);
+            for (int j = 0; j < sampleSize; j++) {
+                double val = random.nextDouble() * 1e6;
+                quantValList.add(val);
+                peptideMatrix.set(row, j, val);
+            }
+            taxon2QuantPeptides.computeIfAbsent(taxa.get(taxonIdx), k -> new ArrayList<>())
+                    .add(new QuantPeptide(sequence, quantValList));
+        }
+    }
+
+    /**
+     * The former path of TaxAnalysis.lca2Quant
+     */
+    @Benchmark
+    public void boxedList(Blackhole bh) {
+        List<Double> totalTaxonQuantVals = IntStream.range(0, sampleSize).mapToObj(i -> 0.0)
+                .collect(Collectors.toList());
+        List<List<Double>> taxonQuantValsList = new ArrayList<>();
+        for (List<QuantPeptide> quantPeptideList : taxon2QuantPeptides.values()) {
+            List<Double> taxonQuantVals = IntStream.range(0, sampleSize).mapToObj(i -> 0.0)
+                    .collect(Collectors.toList());
+            for (QuantPeptide quantPeptide : quantPeptideList) {
+                List<Double> peptQunatVals = quantPeptide.getQuantValList();
+                for (int j = 0; j < peptQunatVals.size(); j++) {
+                    taxonQuantVals.set(j, taxonQuantVals.get(j) + peptQunatVals.get(j));
+                    totalTaxonQuantVals.set(j, totalTaxonQuantVals.get(j) + peptQunatVals.get(j));
+                }
+            }
+            taxonQuantValsList.add(taxonQuantVals);
+        }
+        for (List<Double> taxonQuantVals : taxonQuantValsList) {
+            List<Double> quantValList = IntStream.range(0, taxonQuantVals.size())
+                    .mapToObj(i -> taxonQuantVals.get(i) / totalTaxonQuantVals.get(i) * 100)
+                    .collect(Collectors.toList());
+            bh.consume(quantValList);
+        }
+    }
+
+    @Benchmark
+    public void quantMatrix(Blackhole bh) {
+        QuantMatrix taxonMatrix = peptideMatrix.sumByGroup(rowTaxa, taxonNames);
+        double[] totalTaxonQuantVals = taxonMatrix.sumBySample();
+        for (int t = 0; t < taxonMatrix.getRowCount(); t++) {
+            for (int j = 0; j < sampleSize; j++) {
+                bh.consume(taxonMatrix.get(t, j) / totalTaxonQuantVals[j] * 100);
+            }
+        }
+    }
+}
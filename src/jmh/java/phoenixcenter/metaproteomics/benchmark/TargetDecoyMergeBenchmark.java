@@ -0,0 +1,67 @@
+package phoenixcenter.metaproteomics.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import phoenixcenter.metaproteomics.PepXmlFixtures;
+import phoenixcenter.metaproteomics.pepxml.TargetDecoyMerger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Merge the target and decoy pepXML of an "auto decoy" Mascot search with {@link TargetDecoyMerger}.
+ * Decoy hits half of the queries, and adjacent decoy queries are swapped, so the time per query should
+ * not change with queryCount.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgs = {"-Xms256m", "-Xmx1g"})
+public class TargetDecoyMergeBenchmark {
+
+    @Param({"250000", "500000", "1000000"})
+    private int queryCount;
+
+    private Path dir;
+
+    private Path targetPath;
+
+    private Path decoyPath;
+
+    private Path outputPath;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("benchmark");
+        targetPath = dir.resolve("target1.pep.xml");
+        decoyPath = dir.resolve("decoy1.pep.xml");
+        outputPath = dir.resolve("F1.pep.xml");
+        PepXmlFixtures.writeMascot(targetPath, IntStream.rangeClosed(1, queryCount).toArray(), 1L);
+        int[] decoyIds = IntStream.rangeClosed(1, queryCount / 2).map(i -> i * 2).toArray();
+        for (int i = 0; i + 1 < decoyIds.length; i += 2) {
+            int tmp = decoyIds[i];
+            decoyIds[i] = decoyIds[i + 1];
+            decoyIds[i + 1] = tmp;
+        }
+        PepXmlFixtures.writeMascot(decoyPath, decoyIds, 2L);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(targetPath);
+        Files.deleteIfExists(decoyPath);
+        Files.deleteIfExists(outputPath);
+        Files.deleteIfExists(dir);
+    }
+
+    @Benchmark
+    public long merge() throws IOException {
+        new TargetDecoyMerger(PepXmlFixtures.DECOY_PREFIX)
+                .merge(targetPath, "target1", decoyPath, "decoy1", "F1", outputPath);
+        return Files.size(outputPath);
+    }
+}
@@ -0,0 +1,115 @@
+package phoenixcenter.metaproteomics.benchmark;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import phoenixcenter.metaproteomics.unipept.UnipeptResponseParser;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parse canned Unipept responses of one batch: "mpa/pept2data" and "private_api/taxa" with the streaming
+ * {@link UnipeptResponseParser} versus reading the json tree by {@link ObjectMapper#readTree(java.io.InputStream)}.
+ * Responses are generated at setup and kept in memory, so no request is sent.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UnipeptResponseBenchmark {
+
+    private static final int LINEAGE_SIZE = 28;
+
+    private static final String[] TAXON_RANKS = {"superkingdom", "phylum", "class", "order", "family", "genus",
+            "species"};
+
+    @Param({"1000"})
+    private int batchSize;
+
+    private byte[] pept2dataResponse;
+
+    private byte[] taxaResponse;
+
+    private UnipeptResponseParser responseParser;
+
+    private ObjectMapper objectMapper;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(1L);
+        StringBuilder sb = new StringBuilder("{\"peptides\":[");
+        for (int i = 0; i < batchSize; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            int species = 1000 + random.nextInt(5000);
+            sb.append("{\"sequence\":\"PEPTIDE").append(i).append("K\",\"lca\":").append(species)
+                    .append(",\"lineage\":[");
+            for (int j = 0; j < LINEAGE_SIZE; j++) {
+                if (j > 0) {
+                    sb.append(',');
+                }
+                // main ranks are assigned, the others are null
+                if (j % 4 == 0) {
+                    sb.append(species + j);
+                } else {
+                    sb.append("null");
+                }
+            }
+            sb.append("],\"fa\":{\"counts\":{\"all\":1},\"data\":{}}}");
+        }
+        sb.append("]}");
+        pept2dataResponse = sb.toString().getBytes(StandardCharsets.UTF_8);
+        sb.setLength(0);
+        sb.append('[');
+        for (int i = 0; i < batchSize; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"id\":").append(1000 + i).append(",\"name\":\"Taxon ").append(i)
+                    .append("\",\"rank\":\"").append(TAXON_RANKS[i % TAXON_RANKS.length]).append("\"}");
+        }
+        sb.append(']');
+        taxaResponse = sb.toString().getBytes(StandardCharsets.UTF_8);
+        objectMapper = new ObjectMapper();
+        responseParser = new UnipeptResponseParser(new JsonFactory());
+    }
+
+    @Benchmark
+    public void pept2dataStreaming(Blackhole bh) throws IOException {
+        responseParser.parsePept2data(new ByteArrayInputStream(pept2dataResponse), bh::consume);
+    }
+
+    @Benchmark
+    public void pept2dataTree(Blackhole bh) throws IOException {
+        for (JsonNode peptide : objectMapper.readTree(new ByteArrayInputStream(pept2dataResponse)).get("peptides")) {
+            bh.consume(peptide.get("sequence").asText());
+            bh.consume(peptide.get("lca").asInt());
+            for (JsonNode tid : peptide.get("lineage")) {
+                bh.consume(tid.asInt());
+            }
+        }
+    }
+
+    @Benchmark
+    public void taxaStreaming(Blackhole bh) throws IOException {
+        responseParser.parseTaxa(new ByteArrayInputStream(taxaResponse), bh::consume);
+    }
+
+    @Benchmark
+    public void taxaTree(Blackhole bh) throws IOException {
+        for (JsonNode taxon : objectMapper.readTree(new ByteArrayInputStream(taxaResponse))) {
+            bh.consume(taxon.get("id").asInt());
+            bh.consume(taxon.get("name").asText());
+            bh.consume(taxon.get("rank").asText());
+        }
+    }
+}
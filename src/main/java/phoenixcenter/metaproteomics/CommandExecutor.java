@@ -1,15 +1,19 @@
 package phoenixcenter.metaproteomics;
 
-import lombok.AllArgsConstructor;
 import lombok.extern.log4j.Log4j2;
+import phoenixcenter.metaproteomics.tool.ToolRunner;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringTokenizer;
 import java.util.function.Consumer;
 
+/**
+ * Facade of {@link ToolRunner#getDefault()}, failures are thrown as unchecked exceptions.
+ */
 @Log4j2
-@AllArgsConstructor
 public class CommandExecutor {
 
     /**
@@ -17,59 +21,41 @@ public class CommandExecutor {
      * <p>
      * Note: do not merge error and output, we need obtain output not error to do some process sometimes.
      *
-     * @param command
+     * @param command     executable and arguments
      * @param outConsumer the output of command
      * @param errConsumer the error output of command
+     * @throws UncheckedIOException the command cannot start, times out or exits with non-zero code
      */
-    public static void exec(String command,
+    public static void exec(List<String> command,
                             Consumer<String> outConsumer,
                             Consumer<String> errConsumer) {
-        log.info("command>>{}", command);
         try {
-            final Process process = Runtime.getRuntime().exec(command);
-            Runnable stdOut = () -> {
-                try (BufferedReader br = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-                    String line;
-                    if (outConsumer != null) {
-                        while ((line = br.readLine()) != null) {
-                            outConsumer.accept(line);
-                        }
-                    } else {
-                        while ((line = br.readLine()) != null) {
-                            System.out.println(line);
-                        }
-                    }
-                } catch (IOException e) {
-                    throw new RuntimeException(e);
-                }
-            };
-
-            Runnable stdErr = () -> {
-                try (BufferedReader br = new BufferedReader(new InputStreamReader(process.getErrorStream()))) {
-                    String line;
-                    if (errConsumer != null) {
-                        while ((line = br.readLine()) != null) {
-                            errConsumer.accept(line);
-                        }
-                    } else {
-                        while ((line = br.readLine()) != null) {
-                            System.err.println(line);
-                        }
-                    }
-                } catch (IOException e) {
-                    throw new RuntimeException(e);
-                }
-            };
-            new Thread(stdOut, "CommandExecutor output stream").start();
-            new Thread(stdErr, "CommandExecutor error stream").start();
-            if (process.waitFor() != 0) {
-                throw new RuntimeException("command <" + command + "> cannot work");
-            }
-        } catch (IOException | InterruptedException e) {
-            throw new RuntimeException(e);
+            ToolRunner.getDefault().run(command, outConsumer, errConsumer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
     }
 
+    /**
+     * @param command executable and arguments
+     * @see #exec(List, Consumer, Consumer)
+     */
+    public static void exec(List<String> command) {
+        exec(command, null, null);
+    }
+
+    /**
+     * @param command     split by whitespace, use {@link #exec(List, Consumer, Consumer)} for paths with spaces
+     * @param outConsumer
+     * @param errConsumer
+     * @see #exec(List, Consumer, Consumer)
+     */
+    public static void exec(String command,
+                            Consumer<String> outConsumer,
+                            Consumer<String> errConsumer) {
+        exec(split(command), outConsumer, errConsumer);
+    }
+
     /**
      * @param command
      * @param outConsumer
@@ -86,4 +72,13 @@ public class CommandExecutor {
     public static void exec(String command) {
         exec(command, null, null);
     }
+
+    private static List<String> split(String command) {
+        List<String> args = new ArrayList<>();
+        StringTokenizer st = new StringTokenizer(command);
+        while (st.hasMoreTokens()) {
+            args.add(st.nextToken());
+        }
+        return args;
+    }
 }
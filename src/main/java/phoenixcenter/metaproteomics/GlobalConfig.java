@@ -9,10 +9,14 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Map;
 import java.util.Properties;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 @Log4j2
 public class GlobalConfig {
 
+    private static final Pattern PLACEHOLDER = Pattern.compile("\\$\\{([^}]+)}");
+
     private static Properties probs;
 
     static {
@@ -33,11 +37,36 @@ public class GlobalConfig {
         probs.load(GlobalConfig.class.getResourceAsStream("/mpq.properties"));
     }
 
+    /**
+     * Get setting value, the system property with the same key has higher priority.
+     * "${name}" in the value is replaced by system property name, e.g. "${user.home}".
+     *
+     * @param key
+     * @return
+     */
     public static String getValue(String key) {
-        return probs.getProperty(key);
+        return expand(System.getProperty(key, probs.getProperty(key)));
+    }
+
+    private static String expand(String value) {
+        if (value == null || !value.contains("${")) {
+            return value;
+        }
+        Matcher matcher = PLACEHOLDER.matcher(value);
+        StringBuffer sb = new StringBuffer();
+        while (matcher.find()) {
+            String replacement = System.getProperty(matcher.group(1));
+            matcher.appendReplacement(sb, Matcher.quoteReplacement(replacement == null ? matcher.group() : replacement));
+        }
+        matcher.appendTail(sb);
+        return sb.toString();
     }
 
     public static int getIntValue(String key) {
-        return Integer.parseInt(probs.getProperty(key));
+        return Integer.parseInt(getValue(key).trim());
+    }
+
+    public static double getDoubleValue(String key) {
+        return Double.parseDouble(getValue(key).trim());
     }
 }
@@ -0,0 +1,203 @@
+package phoenixcenter.metaproteomics;
+
+import phoenixcenter.metaproteomics.entity.QuantMatrix;
+import phoenixcenter.metaproteomics.entity.UnipeptTaxon;
+import phoenixcenter.metaproteomics.util.TsvReader;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Peptides of LCA file aggregated at each rank, collected in one pass over the file.
+ * <p>
+ * For every rank the peptide count of each taxon is collected for the rank distribution. For the ranks
+ * asked for quantification, the quant values of peptides are kept in a {@link QuantMatrix} and the taxon
+ * of each peptide row is recorded as an index into the taxa of the rank.
+ */
+class LCAFileSummary {
+
+    /**
+     * sample names, the columns between peptide and taxon_id
+     */
+    private final List<String> samples;
+
+    private final String[] ranks;
+
+    /**
+     * rank index => taxon name(or placeholder of unnamed taxon) => peptide count
+     */
+    private final List<Map<String, int[]>> taxon2PeptideCountInRank;
+
+    /**
+     * peptides having taxon at any quantified rank
+     */
+    private final QuantMatrix peptideMatrix;
+
+    /**
+     * rank index => taxon index of each peptide row(-1 if none), null for the ranks not quantified
+     */
+    private final int[][] rowTaxaInRank;
+
+    /**
+     * rank index => taxa indexed by taxon index
+     */
+    private final List<List<UnipeptTaxon>> taxaInRank;
+
+    private LCAFileSummary(List<String> samples, String[] ranks) {
+        this.samples = samples;
+        this.ranks = ranks;
+        this.taxon2PeptideCountInRank = new ArrayList<>(ranks.length);
+        this.peptideMatrix = new QuantMatrix(samples.size());
+        this.rowTaxaInRank = new int[ranks.length][];
+        this.taxaInRank = new ArrayList<>(ranks.length);
+    }
+
+    /**
+     * @param lcaFilePath
+     * @param ranks      ranks from low to high
+     * @param quantRanks ranks whose quant peptides are collected
+     * @return
+     * @throws IOException
+     */
+    static LCAFileSummary read(Path lcaFilePath, String[] ranks, Collection<String> quantRanks) throws IOException {
+        try (TsvReader reader = TsvReader.open(lcaFilePath)) {
+            String[] headers = reader.getHeaders();
+            int lcaIdIdx = reader.columnIndex("taxon_id");
+            int lcaRankIdx = reader.columnIndex("taxon_rank");
+            if (lcaIdIdx == -1) {
+                throw new IOException("no taxon_id column in LCA file: " + lcaFilePath);
+            }
+            LCAFileSummary summary = new LCAFileSummary(
+                    Arrays.asList(Arrays.copyOfRange(headers, 1, lcaIdIdx)), ranks);
+            int[] rankIdIdxs = new int[ranks.length];
+            int[] rankNameIdxs = new int[ranks.length];
+            Map<String, Integer> rank2SortIdx = new HashMap<>();
+            for (int i = 0; i < ranks.length; i++) {
+                rankIdIdxs[i] = reader.columnIndex(ranks[i] + "_id");
+                rankNameIdxs[i] = reader.columnIndex(ranks[i] + "_name");
+                rank2SortIdx.put(ranks[i], i);
+                summary.taxon2PeptideCountInRank.add(new HashMap<>());
+                summary.taxaInRank.add(new ArrayList<>());
+                if (quantRanks.contains(ranks[i])) {
+                    summary.rowTaxaInRank[i] = new int[1024];
+                }
+            }
+            // rank index => taxon id => taxon index
+            List<Map<Integer, Integer>> tid2IdxInRank = new ArrayList<>(ranks.length);
+            for (int i = 0; i < ranks.length; i++) {
+                tid2IdxInRank.add(new HashMap<>());
+            }
+            while (reader.next()) {
+                // skip when peptide has no lca or lca is root
+                if (reader.isEmpty(lcaIdIdx) || reader.fieldEquals(lcaIdIdx, "1")) {
+                    continue;
+                }
+                int row = -1;
+                // rank of lca, the ranks not in lineage are regarded as the highest
+                Integer lcaRankSortIdx = rank2SortIdx.get(reader.getString(lcaRankIdx).replace(" ", "_"));
+                if (lcaRankSortIdx == null) {
+                    lcaRankSortIdx = ranks.length;
+                }
+                String lcaId = null;
+                for (int i = 0; i < ranks.length; i++) {
+                    String tname;
+                    if (!reader.isEmpty(rankNameIdxs[i])) {
+                        tname = reader.getString(rankNameIdxs[i]);
+                    } else if (i < lcaRankSortIdx) {
+                        // the rank lower than lca has no taxon
+                        tname = null;
+                    } else {
+                        // the taxon at the rank is not named yet
+                        if (lcaId == null) {
+                            lcaId = reader.getString(lcaIdIdx);
+                        }
+                        tname = ranks[i] + "_" + lcaId;
+                    }
+                    if (tname != null) {
+                        summary.taxon2PeptideCountInRank.get(i).computeIfAbsent(tname, k -> new int[1])[0]++;
+                    }
+                    if (summary.rowTaxaInRank[i] == null || reader.isEmpty(rankIdIdxs[i])) {
+                        continue;
+                    }
+                    int tid = reader.getInt(rankIdIdxs[i]);
+                    Integer taxonIdx = tid2IdxInRank.get(i).get(tid);
+                    if (taxonIdx == null) {
+                        List<UnipeptTaxon> taxa = summary.taxaInRank.get(i);
+                        taxonIdx = taxa.size();
+                        taxa.add(UnipeptTaxon.builder()
+                                .id(tid)
+                                .name(reader.getString(rankNameIdxs[i]))
+                                .build());
+                        tid2IdxInRank.get(i).put(tid, taxonIdx);
+                    }
+                    if (row == -1) {
+                        row = summary.addPeptideRow(reader);
+                    }
+                    summary.rowTaxaInRank[i][row] = taxonIdx;
+                }
+            }
+            return summary;
+        }
+    }
+
+    private int addPeptideRow(TsvReader reader) {
+        int row = peptideMatrix.addRow(reader.getString(0));
+        for (int j = 0; j < samples.size(); j++) {
+            peptideMatrix.set(row, j, reader.getDouble(j + 1, 0.0));
+        }
+        for (int i = 0; i < ranks.length; i++) {
+            int[] rowTaxa = rowTaxaInRank[i];
+            if (rowTaxa == null) {
+                continue;
+            }
+            if (row == rowTaxa.length) {
+                rowTaxa = rowTaxaInRank[i] = Arrays.copyOf(rowTaxa, row * 2);
+            }
+            rowTaxa[row] = -1;
+        }
+        return row;
+    }
+
+    List<String> getSamples() {
+        return samples;
+    }
+
+    String[] getRanks() {
+        return ranks;
+    }
+
+    /**
+     * @param rankIdx
+     * @return taxon name => peptide count
+     */
+    Map<String, int[]> getTaxon2PeptideCount(int rankIdx) {
+        return taxon2PeptideCountInRank.get(rankIdx);
+    }
+
+    /**
+     * @return quant values of peptides having taxon at any quantified rank
+     */
+    QuantMatrix getPeptideMatrix() {
+        return peptideMatrix;
+    }
+
+    /**
+     * @param rank
+     * @return taxon index of each row in peptide matrix, -1 if the peptide has no taxon at the rank;
+     * null if the rank is not quantified
+     */
+    int[] getRowTaxa(String rank) {
+        int rankIdx = Arrays.asList(ranks).indexOf(rank);
+        return rankIdx == -1 ? null : rowTaxaInRank[rankIdx];
+    }
+
+    /**
+     * @param rank
+     * @return taxa at the rank, indexed by the taxon index of {@link #getRowTaxa(String)}
+     */
+    List<UnipeptTaxon> getTaxa(String rank) {
+        int rankIdx = Arrays.asList(ranks).indexOf(rank);
+        return rankIdx == -1 ? Collections.emptyList() : taxaInRank.get(rankIdx);
+    }
+}
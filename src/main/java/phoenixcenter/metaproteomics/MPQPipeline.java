@@ -1,7 +1,217 @@
 package phoenixcenter.metaproteomics;
 
+import lombok.Builder;
+import lombok.extern.log4j.Log4j2;
+import phoenixcenter.metaproteomics.pipeline.StageGraph;
+import phoenixcenter.metaproteomics.pipeline.StageGraph.Stage;
+import phoenixcenter.metaproteomics.tool.ToolRunner;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Run the whole analysis from DAT files to taxon quant as a DAG of stages:
+ * <pre>
+ * dat2xml(file 1) -> xml2pp(file 1) -> count(file 1) -\
+ * ...                                                  +-> pp2tsv -> pept2lca -> lca2quant
+ * dat2xml(file n) -> xml2pp(file n) -> count(file n) -/
+ * </pre>
+ * Per-file stages run concurrently in their pools, and each file moves on as soon as its previous stage
+ * completes. PSM counts, the input of LCA, stay in memory, the peptide tsv is written only as a result.
+ * <p>
+ * Output of "xxx.dat" in outputDir: "xxx.pep.xml" by Mascot2XML and "xxx.pp.pep.xml" by PeptideProphet, both
+ * are skipped if they are newer than their inputs. Results: "peptide2psmcount.tsv", "lca.tsv" and
+ * "taxon-quant.tsv".
+ */
+@Log4j2
+@Builder
 public class MPQPipeline {
-    public void run(String targetDatFile, String decoyDatFile) {
 
+    public static final String PEPTIDE_FILE_NAME = "peptide2psmcount.tsv";
+
+    public static final String LCA_FILE_NAME = "lca.tsv";
+
+    public static final String TAXON_QUANT_FILE_NAME = "taxon-quant.tsv";
+
+    private final String targetDecoyLibrary;
+
+    /**
+     * the prefix of decoy protein, required in auto decoy mode or when filtering by FDR
+     */
+    private final String decoyPrefix;
+
+    @Builder.Default
+    private final String enzyme = "trypsin";
+
+    /**
+     * whether DAT files are generated in manual decoy mode
+     */
+    private final boolean manualDecoy;
+
+    @Builder.Default
+    private final boolean ppm = true;
+
+    /**
+     * PSMs are filtered by FDR if it is not null
+     */
+    private final Double fdr;
+
+    @Builder.Default
+    private final boolean equalIL = true;
+
+    private final boolean missedCleavage;
+
+    @Builder.Default
+    private final String rank = TaxAnalysis.ALL_RANKS;
+
+    @Builder.Default
+    private final int minPeptideForTaxon = 1;
+
+    private final boolean log2;
+
+    private final Path outputDir;
+
+    /**
+     * request Unipept by default
+     */
+    private final TaxAnalysis taxAnalysis;
+
+    /**
+     * max count of DAT files converted concurrently, the count of cores if it is not positive
+     */
+    @Builder.Default
+    private final int mascot2XMLParallelism = GlobalConfig.getIntValue("pipeline.mascot2xml.parallelism");
+
+    /**
+     * max count of PeptideProphet processes, the count of cores if it is not positive
+     */
+    @Builder.Default
+    private final int peptideProphetParallelism = GlobalConfig.getIntValue("pipeline.peptideprophet.parallelism");
+
+    /**
+     * max count of pepXML files whose PSMs are counted concurrently, the count of cores if it is not positive
+     */
+    @Builder.Default
+    private final int countParallelism = GlobalConfig.getIntValue("pipeline.count.parallelism");
+
+    /**
+     * @param datPattern a DAT file, a directory or a glob of DAT files
+     * @throws IOException
+     * @see Mascot2XMLEnhancer#listDatFiles(String)
+     */
+    public void run(String datPattern) throws IOException {
+        run(Mascot2XMLEnhancer.listDatFiles(datPattern));
+    }
+
+    /**
+     * @param datPaths each DAT file is a sample named by its file name
+     * @throws IOException
+     */
+    public void run(List<Path> datPaths) throws IOException {
+        if (datPaths.isEmpty()) {
+            throw new IllegalArgumentException("no DAT file");
+        }
+        long start = System.nanoTime();
+        Files.createDirectories(outputDir);
+        Mascot2XMLEnhancer mascot2XMLEnhancer = new Mascot2XMLEnhancer(mascot2XMLParallelism);
+        PeptideProphetEnhancer peptideProphetEnhancer = new PeptideProphetEnhancer();
+        TaxAnalysis taxAnalysis = this.taxAnalysis == null ? new TaxAnalysis() : this.taxAnalysis;
+        Map<String, String> ppParams = new HashMap<>();
+        ppParams.put("-D", targetDecoyLibrary);
+        if (ppm) {
+            ppParams.put("-PPM", null);
+        }
+        List<String> samples = new ArrayList<>(datPaths.size());
+        try (StageGraph graph = new StageGraph()
+                .pool("mascot2xml", mascot2XMLParallelism)
+                .pool("peptideprophet", peptideProphetParallelism)
+                .pool("count", countParallelism)
+                .pool("fan-in", 1)) {
+            List<Stage<Map<String, Integer>>> countStages = new ArrayList<>(datPaths.size());
+            for (Path datPath : datPaths) {
+                String sample = getSampleName(datPath);
+                if (samples.contains(sample)) {
+                    throw new IllegalArgumentException("duplicate sample name: " + sample);
+                }
+                samples.add(sample);
+                Path pepxmlPath = outputDir.resolve(sample + ".pep.xml");
+                Path ppPepxmlPath = outputDir.resolve(sample + ".pp.pep.xml");
+                Stage<Path> dat2xml = graph.stage("dat2xml:" + sample, "mascot2xml", () -> {
+                    if (isNewer(pepxmlPath, datPath)) {
+                        log.info("{} is newer than {}, skip", pepxmlPath, datPath);
+                    } else if (manualDecoy) {
+                        mascot2XMLEnhancer.convertManualDecoyMode(datPath.toString(), enzyme, targetDecoyLibrary,
+                                pepxmlPath.toString());
+                    } else {
+                        mascot2XMLEnhancer.convertAutoDecoyMode(datPath.toString(), decoyPrefix, enzyme,
+                                targetDecoyLibrary, pepxmlPath.toString());
+                    }
+                    return pepxmlPath;
+                });
+                Stage<Path> xml2pp = graph.stage("xml2pp:" + sample, "peptideprophet", () -> {
+                    if (isNewer(ppPepxmlPath, dat2xml.get())) {
+                        log.info("{} is newer than {}, skip", ppPepxmlPath, dat2xml.get());
+                    } else {
+                        peptideProphetEnhancer.runPeptideProphet(dat2xml.get().toString(), ppParams,
+                                ppPepxmlPath.toString());
+                    }
+                    return ppPepxmlPath;
+                }, dat2xml);
+                countStages.add(graph.stage("count:" + sample, "count", () ->
+                        peptideProphetEnhancer.countPSMs(decoyPrefix, xml2pp.get().toString(), fdr), xml2pp));
+            }
+            Stage<Map<String, int[]>> pp2tsv = graph.stage("pp2tsv", "fan-in", () -> {
+                Map<String, int[]> peptide2PSMCounts = mergePSMCounts(countStages);
+                PeptideProphetEnhancer.writePeptide2PSMCount(samples, peptide2PSMCounts,
+                        outputDir.resolve(PEPTIDE_FILE_NAME).toString());
+                return peptide2PSMCounts;
+            }, countStages);
+            String lcaFile = outputDir.resolve(LCA_FILE_NAME).toString();
+            Stage<String> pept2lca = graph.stage("pept2lca", "fan-in", () -> {
+                taxAnalysis.writeLCAFile(samples, pp2tsv.get(), equalIL, missedCleavage, lcaFile);
+                return lcaFile;
+            }, pp2tsv);
+            graph.stage("lca2quant", "fan-in", () -> {
+                // the distribution is plotted together with quant of all ranks
+                if (!TaxAnalysis.ALL_RANKS.equals(rank)) {
+                    taxAnalysis.calPeptideTaxonDistribution(pept2lca.get());
+                }
+                taxAnalysis.lca2Quant(pept2lca.get(), rank, minPeptideForTaxon, log2,
+                        outputDir.resolve(TAXON_QUANT_FILE_NAME).toString());
+                return null;
+            }, pept2lca);
+            graph.await();
+        }
+        log.info("pipeline of {} DAT files completes in {} s, external tools:{}{}", datPaths.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) / 1000.0,
+                System.lineSeparator(), ToolRunner.getDefault().getStats());
+    }
+
+    /**
+     * @param countStages PSM counts of samples
+     * @return peptide => PSM count of each sample, in lexicographic order of peptide
+     */
+    static Map<String, int[]> mergePSMCounts(List<Stage<Map<String, Integer>>> countStages) {
+        Map<String, int[]> peptide2PSMCounts = new TreeMap<>();
+        for (int i = 0; i < countStages.size(); i++) {
+            for (Map.Entry<String, Integer> e : countStages.get(i).get().entrySet()) {
+                peptide2PSMCounts.computeIfAbsent(e.getKey(), k -> new int[countStages.size()])[i] = e.getValue();
+            }
+        }
+        return peptide2PSMCounts;
+    }
+
+    private static String getSampleName(Path datPath) {
+        String datFileName = datPath.getFileName().toString();
+        int dotIdx = datFileName.lastIndexOf('.');
+        return dotIdx == -1 ? datFileName : datFileName.substring(0, dotIdx);
+    }
+
+    private static boolean isNewer(Path path, Path than) throws IOException {
+        return Files.exists(path)
+                && Files.getLastModifiedTime(path).compareTo(Files.getLastModifiedTime(than)) > 0;
     }
 }
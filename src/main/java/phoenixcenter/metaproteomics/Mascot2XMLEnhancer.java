@@ -1,57 +1,84 @@
 package phoenixcenter.metaproteomics;
 
+import lombok.extern.log4j.Log4j2;
+import phoenixcenter.metaproteomics.fasta.DecoyFastaGenerator;
+import phoenixcenter.metaproteomics.fasta.DecoyFastaGenerator.DecoyMode;
+import phoenixcenter.metaproteomics.fasta.FastaIndex;
+import phoenixcenter.metaproteomics.metrics.MetricsRegistry;
+import phoenixcenter.metaproteomics.pepxml.TargetDecoyMerger;
+import phoenixcenter.metaproteomics.util.ChannelWriter;
+
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
+import java.io.File;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.function.Function;
-import java.util.stream.Collectors;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
+@Log4j2
 public class Mascot2XMLEnhancer {
 
+    private static final Pattern GLOB_CHARS = Pattern.compile("[*?\\[{]");
+
     private final String mascot2XMLLocation = GlobalConfig.getValue("Mascot2XML");
 
+    /**
+     * max count of DAT files converted concurrently in a batch, processes are limited by
+     * {@link phoenixcenter.metaproteomics.tool.ToolRunner}
+     */
+    private final int maxProcesses;
+
+    private final MetricsRegistry metrics = MetricsRegistry.getDefault();
+
+    public Mascot2XMLEnhancer() {
+        this(0);
+    }
+
+    /**
+     * @param maxProcesses max count of DAT files converted concurrently in a batch, the count of cores if it is
+     *                     not positive
+     */
+    public Mascot2XMLEnhancer(int maxProcesses) {
+        this.maxProcesses = maxProcesses > 0 ? maxProcesses : Runtime.getRuntime().availableProcessors();
+    }
+
     public void genLibraryWithDecoy(String targetLibrary,
                                     String decoyPrefix,
                                     String targetDecoyLibrary) throws IOException {
-        BufferedReader br = Files.newBufferedReader(Paths.get(targetLibrary), StandardCharsets.UTF_8);
-        BufferedWriter bw = Files.newBufferedWriter(Paths.get(targetDecoyLibrary), StandardCharsets.UTF_8,
-                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.CREATE);
-        String line;
-        String anno = null;
-        StringBuilder sequence = null;
-        while ((line = br.readLine()) != null) {
-            if (line.startsWith(">")) {
-                if (sequence != null) {
-                    // write target
-                    bw.write(">" + anno + System.lineSeparator());
-                    bw.write(sequence.toString() + System.lineSeparator());
-                    // write decoy
-                    bw.write(">" + decoyPrefix + anno + System.lineSeparator());
-                    bw.write(sequence.reverse().toString() + System.lineSeparator());
-                }
-                anno = line.substring(1);
-                sequence = new StringBuilder();
-            } else {
-                sequence.append(line);
-            }
-        }
-        // the last
-        if (sequence != null) {
-            // write target
-            bw.write(">" + anno + System.lineSeparator());
-            bw.write(sequence.toString() + System.lineSeparator());
-            // write decoy
-            bw.write(">" + decoyPrefix + anno + System.lineSeparator());
-            bw.write(sequence.reverse().toString() + System.lineSeparator());
-        }
-        br.close();
-        bw.close();
+        genLibraryWithDecoy(targetLibrary, decoyPrefix, DecoyMode.REVERSE, 0, targetDecoyLibrary);
+    }
+
+    /**
+     * @param targetLibrary
+     * @param decoyPrefix
+     * @param decoyMode
+     * @param threads            the count of cores if it is not positive
+     * @param targetDecoyLibrary it is indexed for lookups by accession
+     * @throws IOException
+     * @see DecoyFastaGenerator
+     */
+    public void genLibraryWithDecoy(String targetLibrary,
+                                    String decoyPrefix,
+                                    DecoyMode decoyMode,
+                                    int threads,
+                                    String targetDecoyLibrary) throws IOException {
+        new DecoyFastaGenerator(decoyPrefix, decoyMode, threads)
+                .generate(Paths.get(targetLibrary), Paths.get(targetDecoyLibrary));
+        indexLibrary(targetDecoyLibrary);
+    }
+
+    /**
+     * Build the offset index of library next to it, nothing is done if the index is up to date.
+     *
+     * @param library
+     * @throws IOException
+     * @see phoenixcenter.metaproteomics.fasta.IndexedFastaReader
+     */
+    public void indexLibrary(String library) throws IOException {
+        FastaIndex.load(Paths.get(library));
     }
 
     public void convertManualDecoyMode(String datFile,
@@ -59,11 +86,13 @@ public class Mascot2XMLEnhancer {
                                        String targetDecoyLibrary,
                                        String pepxmlFile) throws IOException {
         /** convert **/
+        long start = System.nanoTime();
         Map<String, String> params = new HashMap<>();
         params.put("-D", targetDecoyLibrary);
         params.put("-E", enzyme);
         Path resultPath = convert(Paths.get(datFile), params);
         Files.move(resultPath, Paths.get(pepxmlFile), StandardCopyOption.REPLACE_EXISTING);
+        recordConversion(datFile, pepxmlFile, start);
     }
 
     /**
@@ -84,11 +113,138 @@ public class Mascot2XMLEnhancer {
                                      String targetDecoyLibrary,
                                      String pepxmlFile) throws IOException {
         /** convert **/
+        long start = System.nanoTime();
         Map<String, String> params = new HashMap<>();
         params.put("-D", targetDecoyLibrary);
         params.put("-E", enzyme);
         Path resultPath = parseAutoDecoyModelDat(Paths.get(datFile), params, decoyPrefix);
         Files.move(resultPath, Paths.get(pepxmlFile), StandardCopyOption.REPLACE_EXISTING);
+        recordConversion(datFile, pepxmlFile, start);
+    }
+
+    private void recordConversion(String datFile, String pepxmlFile, long startNanos) throws IOException {
+        metrics.timer("mascot2xml.convert").recordSince(startNanos);
+        metrics.counter("mascot2xml.dat.files").increment();
+        metrics.counter("mascot2xml.dat.bytes.read").add(Files.size(Paths.get(datFile)));
+        metrics.counter("mascot2xml.pepxml.bytes.written").add(Files.size(Paths.get(pepxmlFile)));
+    }
+
+    /**
+     * @param datPattern
+     * @return true if datPattern is a directory or a glob of DAT files
+     */
+    public static boolean isDatBatch(String datPattern) {
+        return GLOB_CHARS.matcher(datPattern).find() || Files.isDirectory(Paths.get(datPattern));
+    }
+
+    /**
+     * @param datPattern a DAT file, a directory(all *.dat in it), or a glob on file name like "dir/F00*.dat"
+     * @return DAT files sorted by path
+     * @throws IOException
+     */
+    public static List<Path> listDatFiles(String datPattern) throws IOException {
+        Matcher matcher = GLOB_CHARS.matcher(datPattern);
+        Path dir;
+        String glob;
+        if (matcher.find()) {
+            int sepIdx = Math.max(datPattern.lastIndexOf('/', matcher.start()),
+                    datPattern.lastIndexOf(File.separatorChar, matcher.start()));
+            dir = Paths.get(sepIdx == -1 ? "." : datPattern.substring(0, sepIdx + 1));
+            glob = datPattern.substring(sepIdx + 1);
+            if (glob.indexOf('/') != -1 || glob.indexOf(File.separatorChar) != -1) {
+                throw new IllegalArgumentException("glob is only supported on file name: " + datPattern);
+            }
+        } else if (Files.isDirectory(Paths.get(datPattern))) {
+            dir = Paths.get(datPattern);
+            glob = "*.{dat,DAT}";
+        } else {
+            return Collections.singletonList(Paths.get(datPattern));
+        }
+        List<Path> datPaths = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, glob)) {
+            for (Path datPath : ds) {
+                if (Files.isRegularFile(datPath)) {
+                    datPaths.add(datPath);
+                }
+            }
+        }
+        Collections.sort(datPaths);
+        return datPaths;
+    }
+
+    /**
+     * Convert DAT files to pepxml files concurrently. The pepxml file of "xxx.dat" is "outputDir/xxx.pep.xml",
+     * and it is skipped if the pepxml file is newer than the DAT file.
+     *
+     * @param datPaths
+     * @param isManual           whether DAT files are generated in manual decoy mode
+     * @param decoyPrefix        only required in auto decoy mode
+     * @param enzyme
+     * @param targetDecoyLibrary
+     * @param outputDir
+     * @return DAT file => elapsed milliseconds of conversion, skipped files are absent
+     * @throws IOException
+     */
+    public Map<Path, Long> convertBatch(List<Path> datPaths,
+                                        boolean isManual,
+                                        String decoyPrefix,
+                                        String enzyme,
+                                        String targetDecoyLibrary,
+                                        Path outputDir) throws IOException {
+        long batchStart = System.nanoTime();
+        Files.createDirectories(outputDir);
+        Map<Path, Future<Long>> dat2Future = new LinkedHashMap<>();
+        int skipCount = 0;
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(maxProcesses, Math.max(1, datPaths.size())));
+        try {
+            for (Path datPath : datPaths) {
+                String datFileName = datPath.getFileName().toString();
+                int dotIdx = datFileName.lastIndexOf('.');
+                Path pepxmlPath = outputDir.resolve((dotIdx == -1 ? datFileName : datFileName.substring(0, dotIdx))
+                        + ".pep.xml");
+                if (Files.exists(pepxmlPath)
+                        && Files.getLastModifiedTime(pepxmlPath).compareTo(Files.getLastModifiedTime(datPath)) > 0) {
+                    log.info("{} is newer than {}, skip", pepxmlPath, datPath);
+                    skipCount++;
+                    continue;
+                }
+                dat2Future.put(datPath, executor.submit(() -> {
+                    long start = System.nanoTime();
+                    if (isManual) {
+                        convertManualDecoyMode(datPath.toString(), enzyme, targetDecoyLibrary, pepxmlPath.toString());
+                    } else {
+                        convertAutoDecoyMode(datPath.toString(), decoyPrefix, enzyme, targetDecoyLibrary,
+                                pepxmlPath.toString());
+                    }
+                    long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                    log.info("{} => {}: {} s", datPath, pepxmlPath, elapsed / 1000.0);
+                    return elapsed;
+                }));
+            }
+            // wait for all files, a failed file does not stop others
+            Map<Path, Long> dat2Millis = new LinkedHashMap<>();
+            List<Path> failedPaths = new ArrayList<>();
+            for (Map.Entry<Path, Future<Long>> e : dat2Future.entrySet()) {
+                try {
+                    dat2Millis.put(e.getKey(), e.getValue().get());
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(ex);
+                } catch (ExecutionException ex) {
+                    log.error("fail to convert " + e.getKey(), ex.getCause());
+                    failedPaths.add(e.getKey());
+                }
+            }
+            log.info("{} DAT files: {} converted, {} skipped, {} failed in {} s",
+                    datPaths.size(), dat2Millis.size(), skipCount, failedPaths.size(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - batchStart) / 1000.0);
+            if (!failedPaths.isEmpty()) {
+                throw new IOException(failedPaths.size() + " DAT files cannot be converted: " + failedPaths);
+            }
+            return dat2Millis;
+        } finally {
+            executor.shutdownNow();
+        }
     }
 
     /**
@@ -101,6 +257,7 @@ public class Mascot2XMLEnhancer {
      * @param decoyPrefix
      * @return
      * @throws IOException
+     * @see TargetDecoyMerger
      */
     private Path parseAutoDecoyModelDat(Path datPath,
                                         Map<String, String> params,
@@ -109,55 +266,31 @@ public class Mascot2XMLEnhancer {
         Path parentPath = datPath.getParent();
         Path targetPath = Files.createTempFile(parentPath, "target", ".dat");
         Path decoyPath = Files.createTempFile(parentPath, "decoy", ".dat");
-        BufferedWriter targetBW = Files.newBufferedWriter(targetPath, StandardCharsets.UTF_8);
-        BufferedWriter decoyBW = Files.newBufferedWriter(decoyPath, StandardCharsets.UTF_8);
-        boolean commonSection = true;
-        BufferedWriter currentBW = null;
-        BufferedReader br = Files.newBufferedReader(datPath, StandardCharsets.UTF_8);
-        String line;
-        while ((line = br.readLine()) != null) {
-            // judge whether the section is common
-            if (line.startsWith("Content-Type: application/x-Mascot;")) {
-                switch (line) {
-                    case "Content-Type: application/x-Mascot; name=\"summary\"":
-                    case "Content-Type: application/x-Mascot; name=\"peptides\"":
-                        commonSection = false;
-                        currentBW = targetBW;
-                        break;
-                    case "Content-Type: application/x-Mascot; name=\"decoy_summary\"":
-                        commonSection = false;
-                        line = "Content-Type: application/x-Mascot; name=\"summary\"";
-                        currentBW = decoyBW;
-                        break;
-                    case "Content-Type: application/x-Mascot; name=\"decoy_peptides\"":
-                        commonSection = false;
-                        line = "Content-Type: application/x-Mascot; name=\"peptides\"";
-                        currentBW = decoyBW;
-                        break;
-                    default:
-                        commonSection = true;
-                }
-                if (line.equals("Content-Type: application/x-Mascot; name=\"index\"")) {
-                    break;
-                }
-            }
-            // write
-            if (commonSection) {
-                targetBW.write(line + System.lineSeparator());
-                decoyBW.write(line + System.lineSeparator());
-            } else {
-                currentBW.write(line + System.lineSeparator());
+        long splitStart = System.nanoTime();
+        splitAutoDecoyDat(datPath, targetPath, decoyPath);
+        metrics.timer("mascot2xml.split").recordSince(splitStart);
+
+        /** run Mascot2XML: target and decoy are converted concurrently **/
+        Map<String, String> convertParams = Collections.unmodifiableMap(new HashMap<>(params));
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Path targetPepXML;
+        Path decoyPepXML;
+        try {
+            Future<Path> decoyFuture = executor.submit(() -> convert(decoyPath, convertParams));
+            targetPepXML = convert(targetPath, convertParams);
+            decoyPepXML = decoyFuture.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
             }
+            throw new IOException(cause);
+        } finally {
+            executor.shutdown();
         }
-        br.close();
-        targetBW.close();
-        decoyBW.close();
-
-        /** run Mascot2XML **/
-        // target
-        Path targetPepXML = convert(targetPath, params);
-        // decoy
-        Path decoyPepXML = convert(decoyPath, params);
 
         /** combine target and decoy: replace target with better decoy psmCount **/
         String datFileName = datPath.getFileName().toString();
@@ -168,51 +301,10 @@ public class Mascot2XMLEnhancer {
         String decoyFileName = decoyPepXML.getFileName().toString();
         decoyFileName = decoyFileName.substring(0, decoyFileName.indexOf(".pep.xml"));
 
-        BufferedReader targetBR = Files.newBufferedReader(targetPepXML, StandardCharsets.UTF_8);
-        BufferedReader decoyBR = Files.newBufferedReader(decoyPepXML, StandardCharsets.UTF_8);
-        BufferedWriter resultBW = Files.newBufferedWriter(resultPath, StandardCharsets.UTF_8);
-        Map<String, Integer> targetQid2Idx = new HashMap<>();
-        Map<String, Integer> decoyQid2Idx = new HashMap<>();
-        List<String[]> targetQueryList = new ArrayList<>();
-        List<String[]> decoyQueryList = new ArrayList<>();
-        while ((line = targetBR.readLine()) != null) {
-            line = line.trim();
-            if (line.startsWith("<spectrum_query")) {
-                line = line.replace(targetFileName, datFileName);
-                parseSpectrumQuery(targetBR, line, targetQid2Idx, decoyQid2Idx,
-                        targetQueryList, decoyQueryList, resultBW, null);
-                while ((line = decoyBR.readLine()) != null) {
-                    line = line.trim();
-                    if (line.startsWith("<spectrum_query")) {
-                        line = line.replace(decoyFileName, datFileName);
-                        parseSpectrumQuery(decoyBR, line, decoyQid2Idx, targetQid2Idx,
-                                decoyQueryList, targetQueryList, resultBW, decoyPrefix);
-                        break;
-                    }
-                }
-            } else {
-                if (line.startsWith("<msms_pipeline_analysis")) {
-                    line = line.replace(targetPepXML.toString(), resultPath.toString());
-                } else if (line.startsWith("<msms_run_summary")) {
-                    line = line.replace(targetPath.getParent().resolve(targetFileName).toString(),
-                            datPath.getParent().resolve(datFileName).toString());
-                } else if (line.startsWith("<search_summary")) {
-                    line = line.replace(targetPath.getParent().resolve(targetFileName).toString(),
-                            datPath.getParent().resolve(datFileName).toString());
-                } else if (line.startsWith("</msms_run_summary>")) {
-                    for (String[] entry : targetQueryList) {
-                        resultBW.write(entry[1] + System.lineSeparator());
-                    }
-                    for (String[] entry : decoyQueryList) {
-                        resultBW.write(entry[1] + System.lineSeparator());
-                    }
-                }
-                resultBW.write(line + System.lineSeparator());
-            }
-        }
-        targetBR.close();
-        decoyBR.close();
-        resultBW.close();
+        long mergeStart = System.nanoTime();
+        new TargetDecoyMerger(decoyPrefix).merge(targetPepXML, targetFileName,
+                decoyPepXML, decoyFileName, datFileName, resultPath);
+        metrics.timer("mascot2xml.merge").recordSince(mergeStart);
         // delete temporary file
         Files.delete(targetPath);
         Files.delete(decoyPath);
@@ -222,112 +314,80 @@ public class Mascot2XMLEnhancer {
     }
 
     /**
-     * Parse content in tag <spectrum_query><spectrum_query/>
+     * Split dat file of "auto decoy" search. Common sections are written to both target and decoy, and decoy
+     * sections are renamed as the target ones in decoy dat file. The index section and what follows are dropped.
      *
-     * @param br
-     * @param line
-     * @param mainQid2Idx
-     * @param secondQid2Idx
-     * @param mainQueryList
-     * @param secondQueryList
-     * @param bw
-     * @param decoyPrefix
+     * @param datPath
+     * @param targetPath
+     * @param decoyPath
      * @throws IOException
      */
-    private void parseSpectrumQuery(BufferedReader br, String line,
-                                    Map<String, Integer> mainQid2Idx,
-                                    Map<String, Integer> secondQid2Idx,
-                                    List<String[]> mainQueryList,
-                                    List<String[]> secondQueryList,
-                                    BufferedWriter bw,
-                                    String decoyPrefix) throws IOException {
-        int idx = -1;
-        // obtain query id
-        int dotCount = 0, start = -1, end = -1;
-        for (int i = 0; i < line.length(); i++) {
-            if (line.charAt(i) == '.') {
-                if (dotCount == 0) {
-                    start = i + 1;
-                } else {
-                    end = i;
+    private void splitAutoDecoyDat(Path datPath, Path targetPath, Path decoyPath) throws IOException {
+        byte[] lineSeparator = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+        try (BufferedReader br = Files.newBufferedReader(datPath, StandardCharsets.UTF_8);
+             ChannelWriter targetWriter = new ChannelWriter(targetPath, 1 << 22);
+             ChannelWriter decoyWriter = new ChannelWriter(decoyPath, 1 << 22)) {
+            boolean commonSection = true;
+            ChannelWriter currentWriter = null;
+            String line;
+            while ((line = br.readLine()) != null) {
+                // judge whether the section is common
+                if (line.startsWith("Content-Type: application/x-Mascot;")) {
+                    switch (line) {
+                        case "Content-Type: application/x-Mascot; name=\"summary\"":
+                        case "Content-Type: application/x-Mascot; name=\"peptides\"":
+                            commonSection = false;
+                            currentWriter = targetWriter;
+                            break;
+                        case "Content-Type: application/x-Mascot; name=\"decoy_summary\"":
+                            commonSection = false;
+                            line = "Content-Type: application/x-Mascot; name=\"summary\"";
+                            currentWriter = decoyWriter;
+                            break;
+                        case "Content-Type: application/x-Mascot; name=\"decoy_peptides\"":
+                            commonSection = false;
+                            line = "Content-Type: application/x-Mascot; name=\"peptides\"";
+                            currentWriter = decoyWriter;
+                            break;
+                        default:
+                            commonSection = true;
+                    }
+                    if (line.equals("Content-Type: application/x-Mascot; name=\"index\"")) {
+                        break;
+                    }
                 }
-                if (++dotCount == 3) {
-                    break;
+                // write, the line is encoded once even if it goes to both files
+                byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+                if (commonSection) {
+                    targetWriter.write(bytes);
+                    targetWriter.write(lineSeparator);
+                    decoyWriter.write(bytes);
+                    decoyWriter.write(lineSeparator);
+                } else {
+                    currentWriter.write(bytes);
+                    currentWriter.write(lineSeparator);
                 }
             }
         }
-        String qid = line.substring(start, end);
-        if (secondQid2Idx.containsKey(qid)) {
-            idx = secondQid2Idx.get(qid);
-        }
-        StringBuilder sb = new StringBuilder(line);
-        while (!(line = br.readLine().trim()).equals("</spectrum_query>")) {
-            sb.append(line + System.lineSeparator());
-        }
-        sb.append(line);
-        // 1 - qid, 2 - query content
-        // it is a bug of Mascot2XML: if massdiff = -0.0000 in dat file, the value will be recorded as +-0.0000 in pepxml
-        String queryStr = sb.toString().replace("massdiff=\"+-", "massdiff=\"+");
-        mainQueryList.add(new String[]{qid, decoyPrefix == null
-                ? queryStr
-                : queryStr.replace("protein=\"", "protein=\"" + decoyPrefix)
-        });
-        if (idx == -1) {
-            // did not find same query
-            mainQid2Idx.put(qid, mainQueryList.size() - 1);
-        } else {
-            int lastIdx = mainQueryList.size() - 1;
-            for (int i = 0; i < lastIdx; i++) {
-                bw.write(mainQueryList.get(i)[1] + System.lineSeparator());
-            }
-            String equalQuery1 = mainQueryList.get(lastIdx)[1];
-            mainQid2Idx.clear();
-            mainQueryList.clear();
-
-            for (int i = 0; i < idx; i++) {
-                bw.write(secondQueryList.get(i)[1] + System.lineSeparator());
-            }
-            String equalQuery2 = secondQueryList.get(idx)[1];
-            secondQid2Idx.clear();
-            for (int i = 0; i <= idx; i++) {
-                secondQueryList.remove(0);
-            }
-            for (int i = 0; i < secondQueryList.size(); i++) {
-                secondQid2Idx.put(secondQueryList.get(i)[0], i);
-            }
-            Function<String, Double> captureIonscore = (String query) -> {
-                int fromIdx = query.indexOf("ionscore\"");
-                fromIdx = query.indexOf("=", fromIdx) + 2;
-                int endIdx = query.indexOf("\"", fromIdx);
-                return new Double(query.substring(fromIdx, endIdx));
-            };
-            double ionscore1 = captureIonscore.apply(equalQuery1);
-            double ionscore2 = captureIonscore.apply(equalQuery2);
-            if (ionscore1 >= ionscore2) {
-                bw.write(equalQuery1 + System.lineSeparator());
-            } else {
-                bw.write(equalQuery2 + System.lineSeparator());
-            }
-        }
     }
 
     /**
      * Run Mascot2XML to convert dat file. The result pepxml is in the same directory as the dat file
      *
      * @param datPath
-     * @param params
+     * @param params   it is not modified, so that concurrent conversions can share it
      * @return
-     * @throws IOException
-     * @throws InterruptedException
      */
     private Path convert(Path datPath,
                          Map<String, String> params) {
-        params.put("-notgz", null);
-        params.put("-nodta", null);
-        String command = mascot2XMLLocation + " " + datPath.toString() + " "
-                + params.entrySet().stream()
-                .map(e -> e.getKey() + (e.getValue() == null ? "" : e.getValue()))
-                .collect(Collectors.joining(" "));
+        List<String> command = new ArrayList<>();
+        command.add(mascot2XMLLocation);
+        command.add(datPath.toString());
+        for (Map.Entry<String, String> e : params.entrySet()) {
+            command.add(e.getKey() + (e.getValue() == null ? "" : e.getValue()));
+        }
+        command.add("-notgz");
+        command.add("-nodta");
         CommandExecutor.exec(command);
         String datFileName = datPath.getFileName().toString();
         datFileName = datFileName.substring(0, datFileName.lastIndexOf("."));
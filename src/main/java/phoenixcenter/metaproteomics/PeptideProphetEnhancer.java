@@ -1,11 +1,13 @@
 package phoenixcenter.metaproteomics;
 
 import lombok.extern.log4j.Log4j2;
+import phoenixcenter.metaproteomics.entity.PSM;
+import phoenixcenter.metaproteomics.fdr.QValueEstimator;
+import phoenixcenter.metaproteomics.metrics.MetricsRegistry;
+import phoenixcenter.metaproteomics.pepxml.PSMBuffer;
+import phoenixcenter.metaproteomics.pepxml.PepXmlFilter;
+import phoenixcenter.metaproteomics.pepxml.SpectrumQueryReader;
 import umich.ms.fileio.exceptions.FileParsingException;
-import umich.ms.fileio.filetypes.pepxml.PepXmlParser;
-import umich.ms.fileio.filetypes.pepxml.jaxb.standard.PeptideprophetResult;
-import umich.ms.fileio.filetypes.pepxml.jaxb.standard.SearchHit;
-import umich.ms.fileio.filetypes.pepxml.jaxb.standard.SpectrumQuery;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
@@ -13,10 +15,9 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 
 /**
  * Function:
@@ -30,97 +31,131 @@ public class PeptideProphetEnhancer {
 
     private final String qvalityLocation = GlobalConfig.getValue("qvality");
 
+    private final MetricsRegistry metrics = MetricsRegistry.getDefault();
+
+    /**
+     * max count of pepXML files processed concurrently
+     */
+    private final int threads;
+
+    /**
+     * estimate FDR by external qvality instead of {@link QValueEstimator}
+     */
+    private final boolean useQvality;
+
+    public PeptideProphetEnhancer() {
+        this(0);
+    }
+
+    /**
+     * @param threads max count of pepXML files processed concurrently, the count of cores if it is not positive
+     */
+    public PeptideProphetEnhancer(int threads) {
+        this(threads, "qvality".equals(GlobalConfig.getValue("fdr.engine")));
+    }
+
+    /**
+     * @param threads    max count of pepXML files processed concurrently, the count of cores if it is not positive
+     * @param useQvality estimate FDR by external qvality instead of {@link QValueEstimator}
+     */
+    public PeptideProphetEnhancer(int threads, boolean useQvality) {
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.useQvality = useQvality;
+        // throughput of a counting thread
+        metrics.gauge("peptideprophet.psms.per.second", () -> {
+            double seconds = metrics.timer("peptideprophet.count").getTotalMillis() / 1000.0;
+            return seconds == 0.0 ? 0.0 : metrics.counter("peptideprophet.psms.parsed").sum() / seconds;
+        });
+    }
+
     public void runPeptideProphet(String pepxmlFile,
                                   Map<String, String> params,
                                   String ppPepxmlFile) throws IOException, FileParsingException {
         // run PeptideProphetEnhancer
-        String command = String.join(" ", xinteractLocation,
-                "-N" + ppPepxmlFile,
-                params.entrySet().stream()
-                        .map(e -> e.getKey() + (e.getValue() == null ? "" : e.getValue()))
-                        .collect(Collectors.joining(" ")),
-                pepxmlFile);
+        List<String> command = new ArrayList<>();
+        command.add(xinteractLocation);
+        command.add("-N" + ppPepxmlFile);
+        for (Map.Entry<String, String> e : params.entrySet()) {
+            command.add(e.getKey() + (e.getValue() == null ? "" : e.getValue()));
+        }
+        command.add(pepxmlFile);
+        long start = System.nanoTime();
         CommandExecutor.exec(command);
         // delete unused files
         deleteUnusedFiles(Paths.get(ppPepxmlFile));
+        metrics.timer("peptideprophet.run").recordSince(start);
     }
 
     /**
-     * Filter by FDR
+     * Filter by FDR, spectrum queries whose top hit probability is not less than the threshold are kept
      *
      * @param ppPepxmlPath  the pepxml generated by PeptideProphet
      * @param decoyPrefix
      * @param fdrThreshold
      * @param fppPepxmlPath the result pepxml file filtered by FDR
      * @throws IOException
-     * @throws FileParsingException
      */
     public void filterByFDR(Path ppPepxmlPath, String decoyPrefix,
-                            double fdrThreshold, Path fppPepxmlPath) throws IOException, FileParsingException {
-        // copy file content
-        Files.copy(ppPepxmlPath, fppPepxmlPath, StandardCopyOption.REPLACE_EXISTING);
-        log.debug("finish copying {} to {}", fppPepxmlPath);
+                            double fdrThreshold, Path fppPepxmlPath) throws IOException {
         double probThreshold = getProbThreshold(ppPepxmlPath, decoyPrefix, fdrThreshold);
         log.info("PeptideProphetEnhancer threshold: {} when FDR = {}", probThreshold, fdrThreshold);
-        String command = String.join(" ", xinteractLocation,
-                "-N" + fppPepxmlPath,
-                "-nI -p" + probThreshold);
-        CommandExecutor.exec(command);
-        // delete unused files
-        deleteUnusedFiles(fppPepxmlPath);
+        new PepXmlFilter().filter(ppPepxmlPath, probThreshold, fppPepxmlPath);
     }
 
-    private double getProbThreshold(Path ppPepxmlPath, String decoyPrefix, double fdrThreshold) throws FileParsingException, IOException {
-        // read pepxml file to get probability after run PeptideProphetEnhancer
-        Path targetPath = Files.createTempFile(ppPepxmlPath.getParent(), "target", ".txt");
-        Path decoyPath = Files.createTempFile(ppPepxmlPath.getParent(), "decoy", ".txt");
-        Path qvalityRsPath = Files.createTempFile(ppPepxmlPath.getParent(), "qvality", ".txt");
-        log.debug("create temp files for qvality: target file - {} ; decoy file - {} ; result - {}",
-                targetPath, decoyPath, qvalityRsPath);
-        BufferedWriter targetBW = Files.newBufferedWriter(targetPath);
-        BufferedWriter decoyBW = Files.newBufferedWriter(decoyPath);
-
-        List<SpectrumQuery> specQueryList = PepXmlParser.parse(ppPepxmlPath)
-                .getMsmsRunSummary()
-                .get(0)
-                .getSpectrumQuery();
-        long targetCount = 0L;
-        long decoyCount = 0L;
-        for (SpectrumQuery specQuery : specQueryList) {
-            SearchHit searchHit = specQuery.getSearchResult().get(0).getSearchHit().get(0);
-            // proteins
-            Set<String> pidSet = new HashSet<>();
-            pidSet.add(searchHit.getProtein());
-            if (searchHit.getAlternativeProtein().size() > 0) {
-                pidSet.addAll(
-                        searchHit.getAlternativeProtein().stream()
-                                .map(altProt -> altProt.getProtein())
-                                .collect(Collectors.toSet())
-                );
-            }
-            // probability
-            double prob = ((PeptideprophetResult) (searchHit.getAnalysisResult().get(0).getAny().get(0)))
-                    .getProbability();
-            if (pidSet.stream().anyMatch(pid -> !pid.startsWith(decoyPrefix))) {
-                // it is target
-                targetCount++;
-                targetBW.write(prob + System.lineSeparator());
-            } else {
-                decoyBW.write(prob + System.lineSeparator());
-                decoyCount++;
+    private double getProbThreshold(Path ppPepxmlPath, String decoyPrefix, double fdrThreshold) throws IOException {
+        return getProbThreshold(ppPepxmlPath, PSMBuffer.read(ppPepxmlPath, decoyPrefix), fdrThreshold);
+    }
+
+    /**
+     * @param ppPepxmlPath the pepxml generated by PeptideProphet, temp files are created in its directory
+     * @param psmBuffer    PSMs read from ppPepxmlPath
+     * @param fdrThreshold
+     * @return min probability when FDR < fdrThreshold
+     * @throws IOException
+     */
+    private double getProbThreshold(Path ppPepxmlPath, PSMBuffer psmBuffer, double fdrThreshold) throws IOException {
+        double[] targetProbs = psmBuffer.getProbabilities(false);
+        double[] decoyProbs = psmBuffer.getProbabilities(true);
+        log.debug("{}: target = {}, decoy = {}", ppPepxmlPath, targetProbs.length, decoyProbs.length);
+        if (useQvality) {
+            return getProbThresholdByQvality(ppPepxmlPath, targetProbs, decoyProbs, fdrThreshold);
+        }
+        QValueEstimator estimator = QValueEstimator.estimate(targetProbs, decoyProbs);
+        double probThreshold = estimator.getThreshold(fdrThreshold);
+        if (log.isDebugEnabled()) {
+            // average PEP of accepted PSMs should be close to FDR
+            double[] scores = estimator.getScores();
+            double[] peps = estimator.estimatePEP();
+            double pepSum = 0.0;
+            int accepted = 0;
+            for (int i = 0; i < scores.length && scores[i] >= probThreshold; i++) {
+                if (!estimator.isDecoy(i)) {
+                    pepSum += peps[i];
+                    accepted++;
+                }
             }
+            log.debug("{}: {} target PSMs accepted, average PEP = {}", ppPepxmlPath, accepted,
+                    accepted == 0 ? 0.0 : pepSum / accepted);
         }
-        targetBW.close();
-        decoyBW.close();
-        log.debug("{}: target = {}, decoy = {}", ppPepxmlPath, targetCount, decoyCount);
+        return probThreshold;
+    }
+
+    private double getProbThresholdByQvality(Path ppPepxmlPath, double[] targetProbs,
+                                             double[] decoyProbs, double fdrThreshold) throws IOException {
+        Path parentPath = ppPepxmlPath.toAbsolutePath().getParent();
+        Path targetPath = Files.createTempFile(parentPath, "target", ".txt");
+        Path decoyPath = Files.createTempFile(parentPath, "decoy", ".txt");
+        Path qvalityRsPath = Files.createTempFile(parentPath, "qvality", ".txt");
+        log.debug("create temp files for qvality: target file - {} ; decoy file - {} ; result - {}",
+                targetPath, decoyPath, qvalityRsPath);
+        writeProbabilities(targetPath, targetProbs);
+        writeProbabilities(decoyPath, decoyProbs);
 
         /** run qvality **/
-        String command = String.join(" ", qvalityLocation,
+        CommandExecutor.exec(Arrays.asList(qvalityLocation,
                 targetPath.toString(), decoyPath.toString(),
-                "-d -Y",
-                "-o", qvalityRsPath.toString()
-        );
-        CommandExecutor.exec(command);
+                "-d", "-Y",
+                "-o", qvalityRsPath.toString()));
 
         /** get min probability when FDR < fdrThreshold **/
         BufferedReader br = Files.newBufferedReader(qvalityRsPath);
@@ -145,6 +180,14 @@ public class PeptideProphetEnhancer {
         return probThreshold;
     }
 
+    private void writeProbabilities(Path path, double[] probs) throws IOException {
+        try (BufferedWriter bw = Files.newBufferedWriter(path)) {
+            for (double prob : probs) {
+                bw.write(prob + System.lineSeparator());
+            }
+        }
+    }
+
     private void deleteUnusedFiles(Path pepxmlPath) throws IOException {
         String pepxmlName = pepxmlPath.getFileName().toString();
         pepxmlName = pepxmlName.substring(0, pepxmlName.lastIndexOf('.'));
@@ -157,94 +200,147 @@ public class PeptideProphetEnhancer {
     }
 
     public void pp2tsv(String decoyPrefix, String[] ppPepxmlFiles, double fdrThreshold, String peptide2PSMCountFile) throws IOException, FileParsingException {
-        double[] probThresholds = new double[ppPepxmlFiles.length];
-        for (int i = 0; i < ppPepxmlFiles.length; i++) {
-            probThresholds[i] = getProbThreshold(Paths.get(ppPepxmlFiles[i]), decoyPrefix, fdrThreshold);
-        }
-        pp2tsv(decoyPrefix, ppPepxmlFiles, probThresholds, peptide2PSMCountFile);
+        pp2tsv(decoyPrefix, ppPepxmlFiles, i -> countPSMs(decoyPrefix, ppPepxmlFiles[i], fdrThreshold),
+                peptide2PSMCountFile);
     }
 
     public void pp2tsv(String decoyPrefix, String[] ppPepxmlFiles, String peptide2PSMCountFile) throws IOException, FileParsingException {
-        double[] probThresholds = IntStream.range(0, ppPepxmlFiles.length)
-                .mapToDouble(i -> 0.0)
-                .toArray();
-        pp2tsv(decoyPrefix, ppPepxmlFiles, probThresholds, peptide2PSMCountFile);
+        pp2tsv(decoyPrefix, ppPepxmlFiles, i -> countPSMs(decoyPrefix, ppPepxmlFiles[i], null),
+                peptide2PSMCountFile);
     }
 
-    private void pp2tsv(String decoyPrefix, String[] ppPepxmlFiles,
-                        double[] probThresholds, String peptide2PSMCountFile) throws FileParsingException, IOException {
-        Map<String, int[]> peptide2PSMCounts = new HashMap<>();
-        for (int i = 0; i < ppPepxmlFiles.length; i++) {
-            Map<String, Integer> peptide2PSMCount = statPSMCount(decoyPrefix, ppPepxmlFiles[i], probThresholds[i]);
-            final int repIdx = i;
-            peptide2PSMCount.entrySet().stream()
-                    .forEach(e -> {
-                        int[] psmCounts = peptide2PSMCounts.get(e.getKey());
-                        if (psmCounts == null) {
-                            psmCounts = new int[ppPepxmlFiles.length];
-                            peptide2PSMCounts.put(e.getKey(), psmCounts);
-                        }
-                        psmCounts[repIdx] = e.getValue();
-                    });
+    /**
+     * Count target PSMs of each peptide in a pepXML file
+     *
+     * @param decoyPrefix
+     * @param ppPepxmlFile the pepxml generated by PeptideProphet
+     * @param fdrThreshold PSMs are filtered by FDR if it is not null
+     * @return peptide => PSM count
+     * @throws IOException
+     */
+    public Map<String, Integer> countPSMs(String decoyPrefix, String ppPepxmlFile,
+                                         Double fdrThreshold) throws IOException {
+        long start = System.nanoTime();
+        Path ppPepxmlPath = Paths.get(ppPepxmlFile);
+        Map<String, Integer> peptide2PSMCount;
+        if (fdrThreshold == null) {
+            peptide2PSMCount = statPSMCount(decoyPrefix, ppPepxmlFile, 0.0);
+        } else {
+            // read once, the threshold and the counts are both derived from the buffered PSMs
+            PSMBuffer psmBuffer = PSMBuffer.read(ppPepxmlPath, decoyPrefix);
+            metrics.counter("peptideprophet.psms.parsed").add(psmBuffer.size());
+            double probThreshold = getProbThreshold(ppPepxmlPath, psmBuffer, fdrThreshold);
+            log.info("{}: PeptideProphet threshold {} when FDR = {}", ppPepxmlFile, probThreshold, fdrThreshold);
+            peptide2PSMCount = psmBuffer.countPSMs(probThreshold);
         }
-        BufferedWriter bw = Files.newBufferedWriter(Paths.get(peptide2PSMCountFile));
-        String sampleNames = Arrays.stream(ppPepxmlFiles)
-                .map(file -> Paths.get(file))
-                .map(path -> {
-                    String sampleName = path.getName(path.getNameCount() - 1).toString();
-                    int suffixIdx;
-                    if (sampleName.endsWith(".pep.xml")) {
-                        return sampleName.substring(0, sampleName.length() - 8);
-                    } else if ((suffixIdx = sampleName.lastIndexOf(".")) != -1) {
-                        return sampleName.substring(0, suffixIdx);
+        metrics.counter("peptideprophet.pepxml.bytes.read").add(Files.size(ppPepxmlPath));
+        metrics.timer("peptideprophet.count").recordSince(start);
+        return peptide2PSMCount;
+    }
+
+    @FunctionalInterface
+    private interface PSMCounter {
+        Map<String, Integer> count(int fileIdx) throws IOException, FileParsingException;
+    }
+
+    /**
+     * Count PSMs of pepXML files concurrently, and write peptides in lexicographic order so that the result
+     * does not depend on the count of threads.
+     */
+    private void pp2tsv(String decoyPrefix, String[] ppPepxmlFiles,
+                        PSMCounter psmCounter, String peptide2PSMCountFile) throws FileParsingException, IOException {
+        ConcurrentMap<String, int[]> peptide2PSMCounts = new ConcurrentHashMap<>();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, ppPepxmlFiles.length)));
+        try {
+            List<Future<?>> futureList = new ArrayList<>(ppPepxmlFiles.length);
+            for (int i = 0; i < ppPepxmlFiles.length; i++) {
+                final int repIdx = i;
+                futureList.add(executor.submit(() -> {
+                    Map<String, Integer> peptide2PSMCount = psmCounter.count(repIdx);
+                    // each file owns its column, so the counts array is shared without lock
+                    for (Map.Entry<String, Integer> e : peptide2PSMCount.entrySet()) {
+                        peptide2PSMCounts.computeIfAbsent(e.getKey(), k -> new int[ppPepxmlFiles.length])[repIdx]
+                                = e.getValue();
                     }
-                    return sampleName;
-                })
-                .collect(Collectors.joining("\t"));
-        bw.write("Peptide\t" + sampleNames + System.lineSeparator());
-        for (Map.Entry<String, int[]> e : peptide2PSMCounts.entrySet()) {
-            bw.write(e.getKey() + "\t"
-                    + Arrays.stream(e.getValue()).mapToObj(count -> String.valueOf(count)).collect(Collectors.joining("\t"))
-                    + System.lineSeparator());
+                    return null;
+                }));
+            }
+            for (Future<?> future : futureList) {
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException(e);
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
+                    } else if (cause instanceof FileParsingException) {
+                        throw (FileParsingException) cause;
+                    } else if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    throw new IllegalStateException(cause);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        writePeptide2PSMCount(Arrays.stream(ppPepxmlFiles).map(PeptideProphetEnhancer::getSampleName)
+                .collect(Collectors.toList()), new TreeMap<>(peptide2PSMCounts), peptide2PSMCountFile);
+    }
+
+    /**
+     * @param ppPepxmlFile
+     * @return file name without ".pep.xml" or other suffix
+     */
+    public static String getSampleName(String ppPepxmlFile) {
+        Path path = Paths.get(ppPepxmlFile);
+        String sampleName = path.getName(path.getNameCount() - 1).toString();
+        int suffixIdx;
+        if (sampleName.endsWith(".pep.xml")) {
+            return sampleName.substring(0, sampleName.length() - 8);
+        } else if ((suffixIdx = sampleName.lastIndexOf(".")) != -1) {
+            return sampleName.substring(0, suffixIdx);
+        }
+        return sampleName;
+    }
+
+    /**
+     * Write peptide => PSM count of each sample as tsv
+     *
+     * @param samples
+     * @param peptide2PSMCounts    peptides are written in its iteration order
+     * @param peptide2PSMCountFile
+     * @throws IOException
+     */
+    public static void writePeptide2PSMCount(List<String> samples, Map<String, int[]> peptide2PSMCounts,
+                                             String peptide2PSMCountFile) throws IOException {
+        try (BufferedWriter bw = Files.newBufferedWriter(Paths.get(peptide2PSMCountFile))) {
+            bw.write("Peptide\t" + String.join("\t", samples) + System.lineSeparator());
+            for (Map.Entry<String, int[]> e : peptide2PSMCounts.entrySet()) {
+                bw.write(e.getKey() + "\t"
+                        + Arrays.stream(e.getValue()).mapToObj(count -> String.valueOf(count)).collect(Collectors.joining("\t"))
+                        + System.lineSeparator());
+            }
         }
-        bw.close();
     }
 
     private Map<String, Integer> statPSMCount(String decoyPrefix, String ppPepxmlFile,
-                                              double probThreshold) throws FileParsingException {
-        List<SpectrumQuery> specQueryList = PepXmlParser.parse(Paths.get(ppPepxmlFile))
-                .getMsmsRunSummary()
-                .get(0)
-                .getSpectrumQuery();
+                                              double probThreshold) throws IOException {
         Map<String, Integer> peptide2PSMCount = new HashMap<>();
-        for (SpectrumQuery specQuery : specQueryList) {
-            SearchHit searchHit = specQuery.getSearchResult().get(0).getSearchHit().get(0);
-            // peptide
-            String peptide = searchHit.getPeptide();
-            // proteins
-            Set<String> pidSet = new HashSet<>();
-            pidSet.add(searchHit.getProtein());
-            if (searchHit.getAlternativeProtein().size() > 0) {
-                pidSet.addAll(
-                        searchHit.getAlternativeProtein().stream()
-                                .map(altProt -> altProt.getProtein())
-                                .collect(Collectors.toSet())
-                );
-            }
-            // target
-            if (pidSet.stream().anyMatch(pid -> !pid.startsWith(decoyPrefix))) {
-                double prob = ((PeptideprophetResult) (searchHit.getAnalysisResult().get(0).getAny().get(0)))
-                        .getProbability();
-                if (prob >= probThreshold) {
-                    Integer psmCount = peptide2PSMCount.get(peptide);
-                    if (psmCount == null) {
-                        peptide2PSMCount.put(peptide, 1);
-                    } else {
-                        peptide2PSMCount.put(peptide, psmCount + 1);
-                    }
+        long psmCount = 0L;
+        try (SpectrumQueryReader reader = SpectrumQueryReader.open(Paths.get(ppPepxmlFile))) {
+            while (reader.hasNext()) {
+                PSM psm = reader.next();
+                psmCount++;
+                // target
+                if (!psm.isDecoy(decoyPrefix) && psm.getProbability() >= probThreshold) {
+                    peptide2PSMCount.merge(psm.getPeptide(), 1, Integer::sum);
                 }
             }
         }
+        metrics.counter("peptideprophet.psms.parsed").add(psmCount);
         return peptide2PSMCount;
     }
 }
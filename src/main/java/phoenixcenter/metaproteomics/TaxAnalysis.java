@@ -1,33 +1,31 @@
 package phoenixcenter.metaproteomics;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import lombok.AllArgsConstructor;
-import lombok.Data;
-import lombok.NoArgsConstructor;
 import lombok.extern.log4j.Log4j2;
-import org.apache.http.HttpHeaders;
-import org.apache.http.NoHttpResponseException;
-import org.apache.http.client.methods.CloseableHttpResponse;
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
-import org.apache.http.util.EntityUtils;
-import phoenixcenter.metaproteomics.entity.QuantPeptide;
+import phoenixcenter.metaproteomics.chart.ChartBatch;
+import phoenixcenter.metaproteomics.chart.ChartRenderer;
+import phoenixcenter.metaproteomics.entity.QuantMatrix;
 import phoenixcenter.metaproteomics.entity.UnipeptLCA;
 import phoenixcenter.metaproteomics.entity.UnipeptTaxon;
+import phoenixcenter.metaproteomics.metrics.MetricsRegistry;
+import phoenixcenter.metaproteomics.taxonomy.LocalLCAEngine;
+import phoenixcenter.metaproteomics.taxonomy.TaxonRank;
+import phoenixcenter.metaproteomics.taxonomy.TaxonomyStore;
+import phoenixcenter.metaproteomics.unipept.BatchScheduler;
+import phoenixcenter.metaproteomics.unipept.PeptideLCACache;
+import phoenixcenter.metaproteomics.unipept.PooledUnipeptClient;
+import phoenixcenter.metaproteomics.unipept.RequestMetrics;
+import phoenixcenter.metaproteomics.unipept.UnipeptClient;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -35,51 +33,161 @@ import java.util.stream.IntStream;
 @Log4j2
 public class TaxAnalysis {
 
-    private final String python3 = GlobalConfig.getValue("python3");
+    private final ChartRenderer chartRenderer = ChartRenderer.create();
 
-    private final String peptideRankDistScript = GlobalConfig.getValue("peptide-rank-dist.script");
+    /**
+     * extension of chart files, "png" or "svg"
+     */
+    private final String chartFormat = GlobalConfig.getValue("chart.format");
 
-    private final String peptideTaxonDistScript = GlobalConfig.getValue("peptide-taxon-dist.script");
+    private final int maxInFlight = GlobalConfig.getIntValue("unipept.max.in.flight");
 
-    private final String taxonQuantScript = GlobalConfig.getValue("taxon-quant.script");
+    private final UnipeptClient unipeptClient;
 
-    private final int pept2dataSleepSecond = GlobalConfig.getIntValue("unipept.pept2data.sleep.second");
+    /**
+     * taxa searched from Unipept, shared by all shards
+     */
+    private final TaxonomyStore taxonomyStore = TaxonomyStore.create();
 
-    private final int pept2dataRetrySecond = GlobalConfig.getIntValue("unipept.pept2data.retry.second");
+    private final MetricsRegistry metrics = MetricsRegistry.getDefault();
 
-    private final CloseableHttpClient httpClient = HttpClients.createDefault();
+    private final double log2Val = Math.log(2);
 
-    private final Map<Integer, UnipeptTaxon> tid2Taxon = new ConcurrentHashMap<>(3000);
+    private final int batchSize = GlobalConfig.getIntValue("unipept.batch.size");
 
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final String lcaCacheFile = GlobalConfig.getValue("unipept.cache.file");
 
-    private final double log2Val = Math.log(2);
+    private final int lcaCacheMaxEntries = GlobalConfig.getIntValue("unipept.cache.max.entries");
 
-    private final int batchSize = GlobalConfig.getIntValue("unipept.batch.size");
+    private PeptideLCACache lcaCache;
+
+    /**
+     * the cache file cannot be opened, it is not tried again
+     */
+    private boolean lcaCacheUnavailable = false;
+
+    /**
+     * LCA is computed locally instead of requesting Unipept if it is not null
+     */
+    private final LocalLCAEngine localLCAEngine;
 
     private final String unipeptHeader = "taxon_id	taxon_name	taxon_rank	superkingdom_id	superkingdom_name	kingdom_id	kingdom_name	subkingdom_id	subkingdom_name	superphylum_id	superphylum_name	phylum_id	phylum_name	subphylum_id	subphylum_name	superclass_id	superclass_name	class_id	class_name	subclass_id	subclass_name	infraclass_id	infraclass_name	superorder_id	superorder_name	order_id	order_name	suborder_id	suborder_name	infraorder_id	infraorder_name	parvorder_id	parvorder_name	superfamily_id	superfamily_name	family_id	family_name	subfamily_id	subfamily_name	tribe_id	tribe_name	subtribe_id	subtribe_name	genus_id	genus_name	subgenus_id	subgenus_name	species_group_id	species_group_name	species_subgroup_id	species_subgroup_name	species_id	species_name	subspecies_id	subspecies_name	varietas_id	varietas_name	forma_id	forma_name";
 
-    private final String[] ranks = {"forma", "varietas", "subspecies", "species", "species_subgroup", "species_group", "subgenus", "genus", "subtribe",
+    /**
+     * rank argument of {@link #lca2Quant(String, String, int, boolean, String)} for all ranks
+     */
+    public static final String ALL_RANKS = "all";
+
+    /**
+     * ranks from low to high
+     */
+    static final String[] RANKS = {"forma", "varietas", "subspecies", "species", "species_subgroup", "species_group", "subgenus", "genus", "subtribe",
             "tribe", "subfamily", "family", "superfamily", "parvorder", "infraorder", "suborder", "order", "superorder",
             "infraclass", "subclass", "class", "superclass", "subphylum", "phylum", "superphylum", "subkingdom", "kingdom",
             "superkingdom"
     };
 
-    private final Map<String, Integer> rank2SortIdx = IntStream.range(0, ranks.length)
-            .mapToObj(Integer::valueOf)
-            .collect(Collectors.toMap(
-                    i -> ranks[i],
-                    i -> i
-            ));
+    private final String[] ranks = RANKS;
+
+    public TaxAnalysis() {
+        this((LocalLCAEngine) null);
+    }
+
+    /**
+     * @param localLCAEngine compute LCA locally instead of requesting Unipept
+     */
+    public TaxAnalysis(LocalLCAEngine localLCAEngine) {
+        this.localLCAEngine = localLCAEngine;
+        this.unipeptClient = localLCAEngine == null ? PooledUnipeptClient.create() : null;
+    }
+
+    /**
+     * @param unipeptClient request Unipept by the client, e.g. a mock server
+     */
+    public TaxAnalysis(UnipeptClient unipeptClient) {
+        this.localLCAEngine = null;
+        this.unipeptClient = unipeptClient;
+    }
 
     public void peptide2LCA(String peptideFile,
                             boolean equalIL,
                             boolean missedCleavage,
                             String lcaFile) throws IOException {
-        BufferedReader br = Files.newBufferedReader(Paths.get(peptideFile));
+        writeLCAFile(peptideFile, equalIL, missedCleavage, lcaFile);
+        calPeptideTaxonDistribution(lcaFile);
+    }
+
+    /**
+     * Retrieve LCA of peptides counted in memory, e.g. by a pipeline, and write the LCA file as
+     * {@link #writeLCAFile(String, boolean, boolean, String)} does for a peptide file. Charts of peptide
+     * distribution are not plotted.
+     *
+     * @param samples           sample names
+     * @param peptide2PSMCounts peptide => PSM count of each sample, rows are written in its iteration order
+     * @param equalIL
+     * @param missedCleavage
+     * @param lcaFile
+     * @throws IOException
+     */
+    public void writeLCAFile(List<String> samples,
+                             Map<String, int[]> peptide2PSMCounts,
+                             boolean equalIL,
+                             boolean missedCleavage,
+                             String lcaFile) throws IOException {
+        Iterator<Map.Entry<String, int[]>> it = peptide2PSMCounts.entrySet().iterator();
+        writeLCAFile(new String[]{"Peptide", String.join("\t", samples)}, () -> {
+            if (!it.hasNext()) {
+                return null;
+            }
+            Map.Entry<String, int[]> e = it.next();
+            return new String[]{e.getKey(), Arrays.stream(e.getValue())
+                    .mapToObj(String::valueOf)
+                    .collect(Collectors.joining("\t"))};
+        }, equalIL, missedCleavage, lcaFile);
+    }
+
+    /**
+     * Rows of peptide info: peptide and the rest of the row(quant data, optional)
+     */
+    @FunctionalInterface
+    private interface PeptideInfoSource {
+        /**
+         * @return null if there is no more row
+         */
+        String[] next() throws IOException;
+    }
+
+    /**
+     * Retrieve LCA of all peptides in peptide file. Shards are requested concurrently (limited by
+     * "unipept.max.in.flight" and "unipept.requests.per.second"), while rows are written in input order.
+     *
+     * @param peptideFile
+     * @param equalIL
+     * @param missedCleavage
+     * @param lcaFile
+     * @throws IOException
+     */
+    void writeLCAFile(String peptideFile,
+                      boolean equalIL,
+                      boolean missedCleavage,
+                      String lcaFile) throws IOException {
+        try (BufferedReader br = Files.newBufferedReader(Paths.get(peptideFile))) {
+            String[] header = Arrays.stream(br.readLine().split("\t", 2)).map(e -> e.trim()).toArray(String[]::new);
+            writeLCAFile(header, () -> {
+                String line = br.readLine();
+                return line == null ? null : line.split("\t", 2);
+            }, equalIL, missedCleavage, lcaFile);
+        }
+    }
+
+    private void writeLCAFile(String[] tmp,
+                              PeptideInfoSource source,
+                              boolean equalIL,
+                              boolean missedCleavage,
+                              String lcaFile) throws IOException {
+        long start = System.nanoTime();
         BufferedWriter bw = Files.newBufferedWriter(Paths.get(lcaFile));
         // peptide file contains quant data?
-        String[] tmp = Arrays.stream(br.readLine().split("\t", 2)).map(e -> e.trim()).toArray(String[]::new);
         boolean containQuantData = tmp.length > 1;
         // write header
         if (containQuantData) {
@@ -87,342 +195,399 @@ public class TaxAnalysis {
         } else {
             bw.write(String.join("\t", tmp[0], unipeptHeader) + System.lineSeparator());
         }
-        // read peptide file
-        String line;
+        // read peptide rows
+        String[] peptideInfo;
         long count = 0L;
         List<String[]> peptideInfoList = new ArrayList<>(batchSize);
-        while ((line = br.readLine()) != null) {
-            count += 1L;
-            peptideInfoList.add(line.split("\t", 2));
-            if (peptideInfoList.size() == batchSize) {
-                processShard(peptideInfoList, equalIL, missedCleavage, bw);
-                bw.flush();
-                peptideInfoList.clear();
-                try {
-                    Thread.sleep(pept2dataSleepSecond * 1_000);
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
+        // size of shards in flight, in submission order
+        Deque<Integer> shardSizes = new ArrayDeque<>();
+        final long[] writtenCount = {0L};
+        try (BatchScheduler<String> scheduler = new BatchScheduler<>(maxInFlight, shardContent -> {
+            bw.write(shardContent);
+            bw.flush();
+            writtenCount[0] += shardSizes.pollFirst();
+            log.info("{} peptides have been processed", writtenCount[0]);
+        })) {
+            while ((peptideInfo = source.next()) != null) {
+                count += 1L;
+                peptideInfoList.add(peptideInfo);
+                if (peptideInfoList.size() == batchSize) {
+                    final List<String[]> shard = peptideInfoList;
+                    shardSizes.addLast(shard.size());
+                    scheduler.submit(() -> processShard(shard, equalIL, missedCleavage));
+                    peptideInfoList = new ArrayList<>(batchSize);
                 }
-                log.info("{} peptides have been processed", count);
             }
+            if (peptideInfoList.size() > 0) {
+                final List<String[]> shard = peptideInfoList;
+                shardSizes.addLast(shard.size());
+                scheduler.submit(() -> processShard(shard, equalIL, missedCleavage));
+            }
+            scheduler.finish();
+        } finally {
+            bw.close();
+            closeLCACache();
         }
-        if (peptideInfoList.size() > 0) {
-            processShard(peptideInfoList, equalIL, missedCleavage, bw);
-        }
-        bw.close();
-        br.close();
         log.info("total {} peptides have been processed", count);
-        calPeptideTaxonDistribution(lcaFile);
+        metrics.timer("taxanalysis.lca").recordSince(start);
+        metrics.counter("taxanalysis.peptides").add(count);
+        metrics.counter("taxanalysis.lca.bytes.written").add(Files.size(Paths.get(lcaFile)));
+        RequestMetrics requestMetrics = unipeptClient == null ? null : unipeptClient.getMetrics();
+        if (requestMetrics != null) {
+            log.info("Unipept requests:{}{}", System.lineSeparator(), requestMetrics);
+        }
     }
 
-    private void processShard(List<String[]> peptideInfoList,
-                              boolean equalIL,
-                              boolean missedCleavage,
-                              BufferedWriter bw) throws IOException {
-        Map<String, List<String>> peptide2Info = peptideInfoList.stream()
-                .collect(Collectors.groupingBy(peptInfo -> peptInfo[0],
-                        Collectors.mapping((String[] peptInfo) -> String.join("\t", peptInfo),
-                                Collectors.toList())
-                ));
+    /**
+     * Retrieve LCA of peptides in shard and format rows in input order.
+     *
+     * @return rows of shard
+     */
+    private String processShard(List<String[]> peptideInfoList,
+                                boolean equalIL,
+                                boolean missedCleavage) throws IOException {
+        long start = System.nanoTime();
+        Set<String> peptides = peptideInfoList.stream()
+                .map(peptInfo -> peptInfo[0])
+                .collect(Collectors.toCollection(LinkedHashSet::new));
         Map<String, String> peptide2LCA = new HashMap<>();
-        peptide2LCA(peptide2Info.keySet(), equalIL, missedCleavage, unipeptLCA -> {
-            List<String> lineageNames = unipeptLCA.getLineageNames();
-            List<Integer> lineageIds = unipeptLCA.getLineageIds();
+        peptide2LCA(peptides, equalIL, missedCleavage, unipeptLCA -> {
+            String[] lineageNames = unipeptLCA.getLineageNames();
+            int[] lineageIds = unipeptLCA.getLineageIds();
             peptide2LCA.put(unipeptLCA.getSequence(),
                     String.join("\t", unipeptLCA.getLcaId().toString(),
                             unipeptLCA.getLcaName(), unipeptLCA.getLcaRank())
                             + "\t"
                             + IntStream.range(0, ranks.length)
-                            .mapToObj(i -> lineageIds.get(i) == null ? "\t" : lineageIds.get(i) + "\t" + lineageNames.get(i))
+                            .mapToObj(i -> i >= lineageIds.length || lineageIds[i] == 0
+                                    ? "\t" : lineageIds[i] + "\t" + lineageNames[i])
                             .collect(Collectors.joining("\t"))
             );
         });
-        for (Map.Entry<String, List<String>> e : peptide2Info.entrySet()) {
-            String peptide = e.getKey();
-            for (String peptideInfo : e.getValue()) {
-                String lcaInfo = peptide2LCA.get(peptide);
-                if (lcaInfo != null) {
-                    bw.write(peptideInfo + "\t" + lcaInfo + System.lineSeparator());
-                } else {
-                    bw.write(peptideInfo + System.lineSeparator());
-                }
+        StringBuilder sb = new StringBuilder();
+        for (String[] peptInfo : peptideInfoList) {
+            sb.append(String.join("\t", peptInfo));
+            String lcaInfo = peptide2LCA.get(peptInfo[0]);
+            if (lcaInfo != null) {
+                sb.append('\t').append(lcaInfo);
             }
+            sb.append(System.lineSeparator());
         }
+        metrics.timer("taxanalysis.shard").recordSince(start);
+        metrics.counter("taxanalysis.shard.peptides").add(peptideInfoList.size());
+        return sb.toString();
     }
 
+    /**
+     * Retrieve LCA of peptides. Peptides found in the persistent cache will not be sent to Unipept.
+     * If the local LCA engine is set, LCA are computed locally.
+     *
+     * @param peptides
+     * @param equalIL
+     * @param missedCleavage
+     * @param consumer
+     * @throws IOException
+     */
     public void peptide2LCA(Collection<String> peptides,
                             boolean equalIL,
                             boolean missedCleavage,
                             Consumer<UnipeptLCA> consumer) throws IOException {
-
-        /** LCA search **/
-        HttpPost lcaRequest = new HttpPost("https://unipept.ugent.be/mpa/pept2data");
-        lcaRequest.addHeader(HttpHeaders.ACCEPT, "application/json");
-        lcaRequest.addHeader(HttpHeaders.CONTENT_TYPE, "application/json");
-        Map<String, Object> lcaParams = new HashMap<>();
-        lcaParams.put("peptides", peptides);
-        lcaParams.put("equate_il", equalIL);
-        lcaParams.put("missed", missedCleavage);
-        lcaRequest.setEntity(new StringEntity(objectMapper.writeValueAsString(lcaParams), StandardCharsets.UTF_8));
-        // LCA response
-        CloseableHttpResponse lcaResponse = null;
-        int retryCount = 1;
-        do {
-            try {
-                lcaResponse = httpClient.execute(lcaRequest);
-            } catch (NoHttpResponseException ntre) {
-                try {
-                    Thread.sleep(pept2dataRetrySecond * retryCount);
-                    log.warn("network error when execute LCA api, retry {} time", retryCount++);
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
+        if (localLCAEngine != null) {
+            localLCAEngine.peptide2LCA(peptides, equalIL, missedCleavage, consumer);
+            return;
+        }
+        PeptideLCACache cache = getLCACache();
+        if (cache != null) {
+            List<String> uncachedPeptides = new ArrayList<>();
+            for (String peptide : peptides) {
+                Optional<UnipeptLCA> cachedLCA = cache.get(peptide, equalIL, missedCleavage);
+                if (cachedLCA == null) {
+                    uncachedPeptides.add(peptide);
+                } else {
+                    cachedLCA.ifPresent(consumer);
                 }
-                continue;
             }
-            if (lcaResponse.getStatusLine().getStatusCode() != 200) {
+            if (uncachedPeptides.isEmpty()) {
+                return;
+            }
+            Set<String> notFoundPeptides = new HashSet<>(uncachedPeptides);
+            requestLCA(uncachedPeptides, equalIL, missedCleavage, unipeptLCA -> {
+                notFoundPeptides.remove(unipeptLCA.getSequence());
                 try {
-                    Thread.sleep(pept2dataRetrySecond * retryCount);
-                    log.warn("network error when execute LCA api, retry {} time", retryCount++);
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
+                    cache.put(unipeptLCA, equalIL, missedCleavage);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
                 }
-            } else {
-                break;
+                consumer.accept(unipeptLCA);
+            });
+            for (String peptide : notFoundPeptides) {
+                cache.putNotFound(peptide, equalIL, missedCleavage);
             }
-        } while (true);
-        List<UnipeptLCA> unipeptLCAList = new ArrayList<>();
-        Set<Integer> unsearchTidSet = new HashSet<>();
-        String lcaInfos = EntityUtils.toString(lcaResponse.getEntity());
-        Iterator<JsonNode> peptItr = objectMapper.readTree(lcaInfos).get("peptides").elements();
-        while (peptItr.hasNext()) {
-            JsonNode peptNode = peptItr.next();
-            UnipeptLCA unipeptLCA = new UnipeptLCA();
-            unipeptLCA.setSequence(peptNode.get("sequence").asText());
-            unipeptLCA.setLcaId(peptNode.get("lca").asInt());
-            List<Integer> lineageIds = new ArrayList<>();
-            Iterator<JsonNode> idsItr = peptNode.get("lineage").elements();
-            while (idsItr.hasNext()) {
-                Number tid = idsItr.next().numberValue();
-                lineageIds.add(tid == null ? null : tid.intValue());
+        } else {
+            requestLCA(peptides, equalIL, missedCleavage, consumer);
+        }
+    }
+
+    /**
+     * @return null if cache is disabled or the cache file cannot be opened
+     */
+    private synchronized PeptideLCACache getLCACache() {
+        if (lcaCache == null && !lcaCacheUnavailable && lcaCacheFile != null && lcaCacheFile.trim().length() > 0) {
+            try {
+                lcaCache = PeptideLCACache.open(Paths.get(lcaCacheFile.trim()), lcaCacheMaxEntries);
+            } catch (IOException | RuntimeException e) {
+                // e.g. the directory is not writable, the cache only saves requests
+                log.warn("run without peptide LCA cache, cannot open " + lcaCacheFile, e);
+                lcaCacheUnavailable = true;
             }
-            unipeptLCA.setLineageIds(lineageIds);
-            unipeptLCAList.add(unipeptLCA);
-            // add unsearch tid
-            if (!tid2Taxon.containsKey(unipeptLCA.getLcaId())) {
+        }
+        return lcaCache;
+    }
+
+    private synchronized void closeLCACache() throws IOException {
+        if (lcaCache != null) {
+            log.info("peptide LCA cache: {} hits, {} misses, {} peptides cached",
+                    lcaCache.getHitCount(), lcaCache.getMissCount(), lcaCache.size());
+            metrics.counter("taxanalysis.cache.hits").add(lcaCache.getHitCount());
+            metrics.counter("taxanalysis.cache.misses").add(lcaCache.getMissCount());
+            metrics.gauge("taxanalysis.cache.size").set(lcaCache.size());
+            lcaCache.close();
+            lcaCache = null;
+        }
+    }
+
+    private void requestLCA(Collection<String> peptides,
+                            boolean equalIL,
+                            boolean missedCleavage,
+                            Consumer<UnipeptLCA> consumer) throws IOException {
+        /** LCA search **/
+        // the client hands over LCAs of a response once it is read completely, so a retry never repeats one.
+        // consume those whose taxa are all known right away, the others wait for taxon search
+        List<UnipeptLCA> unnamedLCAList = new ArrayList<>();
+        Set<Integer> unsearchTidSet = new HashSet<>();
+        await(unipeptClient.pept2data(peptides, equalIL, missedCleavage, unipeptLCA -> {
+            boolean allSearched = true;
+            if (!taxonomyStore.contains(unipeptLCA.getLcaId())) {
                 unsearchTidSet.add(unipeptLCA.getLcaId());
+                allSearched = false;
             }
-            unipeptLCA.getLineageIds().stream()
-                    .filter(tid -> tid != null && !tid2Taxon.containsKey(tid))
-                    .forEach(tid -> unsearchTidSet.add(tid));
-        }
+            for (int tid : unipeptLCA.getLineageIds()) {
+                if (tid != 0 && !taxonomyStore.contains(tid)) {
+                    unsearchTidSet.add(tid);
+                    allSearched = false;
+                }
+            }
+            if (allSearched) {
+                setTaxonNames(unipeptLCA);
+                consumer.accept(unipeptLCA);
+            } else {
+                unnamedLCAList.add(unipeptLCA);
+            }
+        }));
         /** taxon search **/
         if (unsearchTidSet.size() > 0) {
-            HttpPost taxaRequest = new HttpPost("https://unipept.ugent.be/private_api/taxa");
-            taxaRequest.addHeader(HttpHeaders.ACCEPT, "application/json");
-            taxaRequest.addHeader(HttpHeaders.CONTENT_TYPE, "application/json");
-            Map<String, Object> taxaParams = new HashMap<>();
-            taxaParams.put("taxids", unsearchTidSet);
-            taxaRequest.setEntity(new StringEntity(objectMapper.writeValueAsString(taxaParams), StandardCharsets.UTF_8));
-            CloseableHttpResponse taxaResponse = null;
-            retryCount = 1;
-            do {
-                try {
-                    taxaResponse = httpClient.execute(taxaRequest);
-                } catch (NoHttpResponseException nre) {
-                    try {
-                        Thread.sleep(pept2dataRetrySecond * retryCount);
-                        log.warn("network error when execute taxa api, retry {} time", retryCount++);
-                    } catch (InterruptedException ie) {
-                        throw new RuntimeException(ie);
-                    }
-                    continue;
-                }
-                if (taxaResponse.getStatusLine().getStatusCode() != 200) {
-                    try {
-                        Thread.sleep(pept2dataRetrySecond * retryCount);
-                        log.warn("network error when execute taxa api, retry {} time", retryCount++);
-                    } catch (InterruptedException ie) {
-                        throw new RuntimeException(ie);
-                    }
-                } else {
-                    break;
-                }
-            } while (true);
-            String taxonInfo = EntityUtils.toString(taxaResponse.getEntity());
-            List<UnipeptTaxon> taxonList = objectMapper.readValue(taxonInfo, new TypeReference<List<UnipeptTaxon>>() {
-            });
-            taxonList.stream()
-                    .forEach(taxon -> tid2Taxon.put(taxon.getId(), taxon));
+            await(unipeptClient.taxa(unsearchTidSet, taxon ->
+                    taxonomyStore.put(taxon.getId(), 0, TaxonRank.fromName(taxon.getRank()), taxon.getName())));
+        }
+        for (UnipeptLCA unipeptLCA : unnamedLCAList) {
+            setTaxonNames(unipeptLCA);
+            consumer.accept(unipeptLCA);
         }
-        unipeptLCAList.stream()
-                .forEach(unipeptLCA -> {
-                    // set tname
-                    UnipeptTaxon taxon = tid2Taxon.get(unipeptLCA.getLcaId());
-                    unipeptLCA.setLcaName(taxon.getName());
-                    unipeptLCA.setLcaRank(taxon.getRank());
-                    List<Integer> lineageIds = unipeptLCA.getLineageIds();
-                    List<String> lineageNames = new ArrayList<>(lineageIds.size());
-                    unipeptLCA.setLineageNames(lineageNames);
-                    for (int i = 0; i < lineageIds.size(); i++) {
-                        lineageNames.add(null);
-                        if (lineageIds.get(i) != null) {
-                            lineageNames.set(i, tid2Taxon.get(lineageIds.get(i)).getName());
-                        }
-                    }
-                    // consume
-                    consumer.accept(unipeptLCA);
-                });
     }
 
-    public void calPeptideTaxonDistribution(String lcaFile) throws IOException {
-        Path lcaFilePath = Paths.get(lcaFile);
-        BufferedReader br = Files.newBufferedReader(lcaFilePath);
-        String[] tmp = br.readLine().split("\t");
-        Map<String, Integer> rank2Index = Arrays.stream(ranks)
-                .collect(Collectors.toMap(
-                        r -> r,
-                        r -> -1
-                ));
-        int lcaIdIdx = -1;
-        int lcaRankIdx = -1;
-        for (int i = 0; i < tmp.length; i++) {
-            if (tmp[i].equals("taxon_id")) {
-                lcaIdIdx = i;
-            }
-            if (tmp[i].endsWith("_name")) {
-                String rank = tmp[i].substring(0, tmp[i].length() - 5);
-                if (rank2Index.containsKey(rank)) {
-                    rank2Index.put(rank, i);
-                }
-            } else if (tmp[i].equals("taxon_id")) {
-                lcaIdIdx = i;
-            } else if (tmp[i].equals("taxon_rank")) {
-                lcaRankIdx = i;
+    private static void await(CompletableFuture<Void> future) throws IOException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
             }
+            throw new IllegalStateException(cause);
         }
-        // calculate distribution
-        String line;
-        List<String[]> lineageList = new ArrayList<>();
-        while ((line = br.readLine()) != null) {
-            tmp = line.split("\t", rank2Index.get(ranks[0]) + 1);
-            if (lcaIdIdx < tmp.length) {
-                // skip when lca is root
-                if (tmp[lcaIdIdx].equals("1")) {
-                    continue;
-                }
-                String[] lineage = new String[ranks.length];
-                lineageList.add(lineage);
-                for (int i = 0; i < ranks.length; i++) {
-                    int rankIdx = rank2Index.get(ranks[i]);
-                    String tname = tmp[rankIdx];
-                    if (tname.length() > 0) {
-                        lineage[i] = tname;
-                    } else {
-                        // 如果当前rank是低于LCA的rank，那么说明说明当前rank不存在taxon，否则，当前rank暂时没有分配名字。
-                        // 等级越高数字越大
-                        if (rank2SortIdx.get(ranks[i]) < rank2SortIdx.get(tmp[lcaRankIdx].replace(" ", "_"))) {
-                            lineage[i] = null;
-                        } else {
-                            lineage[i] = ranks[i] + "_" + tmp[lcaIdIdx];
-                        }
-                    }
-                }
+    }
+
+    private void setTaxonNames(UnipeptLCA unipeptLCA) {
+        unipeptLCA.setLcaName(taxonomyStore.getName(unipeptLCA.getLcaId()));
+        unipeptLCA.setLcaRank(taxonomyStore.getRank(unipeptLCA.getLcaId()).getRankName());
+        int[] lineageIds = unipeptLCA.getLineageIds();
+        String[] lineageNames = new String[lineageIds.length];
+        for (int i = 0; i < lineageIds.length; i++) {
+            if (lineageIds[i] != 0) {
+                lineageNames[i] = taxonomyStore.getName(lineageIds[i]);
             }
         }
-        br.close();
+        unipeptLCA.setLineageNames(lineageNames);
+    }
+
+    public void calPeptideTaxonDistribution(String lcaFile) throws IOException {
+        Path lcaFilePath = Paths.get(lcaFile);
+        LCAFileSummary summary = LCAFileSummary.read(lcaFilePath, ranks, Collections.emptySet());
+        ChartBatch charts = new ChartBatch();
+        writePeptideTaxonDistribution(summary, lcaFilePath, charts);
+        charts.await();
+    }
+
+    private void writePeptideTaxonDistribution(LCAFileSummary summary, Path lcaFilePath, ChartBatch charts) {
         // cal distribution
-        Map<String, PeptideCount> rank2PeptideCount = new HashMap<>();
+        int[] peptideCountsForRank = new int[ranks.length];
+        int[] peptideCountsForSubrank = new int[ranks.length];
         Map<String, Map<Integer, Integer>> peptideCount2TaxonCountInRank = new HashMap<>();
         int peptideCountForSubrank = 0;
         for (int i = 0; i < ranks.length; i++) {
-            final int rankIdx = i;
-            Map<String, Integer> taxon2PeptideCount = lineageList.parallelStream()
-                    .map(lineage -> lineage[rankIdx])
-                    .filter(tname -> tname != null)
-                    .collect(Collectors.groupingBy(tname -> tname, Collectors.reducing(0, e -> 1, Integer::sum)));
-            int peptideCount = taxon2PeptideCount.values().stream().mapToInt(Integer::intValue).sum();
-            rank2PeptideCount.put(ranks[i], new PeptideCount(peptideCount - peptideCountForSubrank, peptideCountForSubrank));
+            Map<String, int[]> taxon2PeptideCount = summary.getTaxon2PeptideCount(i);
+            int peptideCount = taxon2PeptideCount.values().stream().mapToInt(count -> count[0]).sum();
+            peptideCountsForRank[i] = peptideCount - peptideCountForSubrank;
+            peptideCountsForSubrank[i] = peptideCountForSubrank;
             System.out.println(String.join("\t", ranks[i], (peptideCount - peptideCountForSubrank) + "", peptideCountForSubrank + ""));
             peptideCountForSubrank = peptideCount;
-            peptideCount2TaxonCountInRank.put(ranks[i],
-                    taxon2PeptideCount.entrySet().stream()
-                            .collect(Collectors.groupingBy((Map.Entry<String, Integer> e) -> e.getValue(),
-                                    Collectors.reducing(0, e -> 1, Integer::sum)))
-            );
+            peptideCount2TaxonCountInRank.put(ranks[i], countTaxaByPeptideCount(taxon2PeptideCount));
         }
-        // write
-        Path parentPath = lcaFilePath.getParent();
+        // plot
+        Path parentPath = lcaFilePath.toAbsolutePath().getParent();
         String lcaFileName = lcaFilePath.getName(lcaFilePath.getNameCount() - 1).toString();
         int suffixIdx = lcaFileName.lastIndexOf(".");
         lcaFileName = suffixIdx == -1 ? lcaFileName : lcaFileName.substring(0, suffixIdx);
-        Path peptideRankDistChartPath = parentPath.resolve(lcaFileName + "_peptide_distribution.png");
-        Path peptideTaxonDistChartPath = parentPath.resolve(lcaFileName + "_peptide_taxon_distribution.png");
-        Path rank2PeptideCountJsonPath = Files.createTempFile("rank2PeptideCount", ".json");
-        Path peptideCount2TaxonCountJsonPath = Files.createTempFile("peptideCount2TaxonCount", ".json");
-        objectMapper.writeValue(rank2PeptideCountJsonPath.toFile(), rank2PeptideCount);
-        objectMapper.writeValue(peptideCount2TaxonCountJsonPath.toFile(), peptideCount2TaxonCountInRank);
-        // plot
-        String peptideRankDistChartCmd = String.join(" ",
-                python3,
-                peptideRankDistScript,
-                rank2PeptideCountJsonPath.toString(),
-                peptideRankDistChartPath.toString()
-        );
-        CommandExecutor.exec(peptideRankDistChartCmd);
-        String peptideTaxonDistChartCmd = String.join(" ",
-                python3,
-                peptideTaxonDistScript,
-                peptideCount2TaxonCountJsonPath.toString(),
-                peptideTaxonDistChartPath.toString()
-        );
-        CommandExecutor.exec(peptideTaxonDistChartCmd);
-//        Files.delete(rank2PeptideCountJsonPath);
-//        Files.delete(peptideCount2TaxonCountJsonPath);
+        Path peptideRankDistChartPath = parentPath.resolve(lcaFileName + "_peptide_distribution." + chartFormat);
+        Path peptideTaxonDistChartPath = parentPath.resolve(lcaFileName + "_peptide_taxon_distribution." + chartFormat);
+        charts.submit(peptideRankDistChartPath, () -> chartRenderer.renderPeptideRankDistribution(
+                ranks, peptideCountsForRank, peptideCountsForSubrank, peptideRankDistChartPath));
+        charts.submit(peptideTaxonDistChartPath, () -> chartRenderer.renderPeptideTaxonDistribution(
+                ranks, peptideCount2TaxonCountInRank, peptideTaxonDistChartPath));
+    }
+
+    /**
+     * @param taxon2PeptideCount taxon name => peptide count
+     * @return peptide count => count of taxa having the peptide count
+     */
+    static Map<Integer, Integer> countTaxaByPeptideCount(Map<String, int[]> taxon2PeptideCount) {
+        return taxon2PeptideCount.values().stream()
+                .collect(Collectors.groupingBy((int[] count) -> count[0],
+                        Collectors.reducing(0, e -> 1, Integer::sum)));
     }
 
+    /**
+     * Quantify taxa at rank. If rank is {@link #ALL_RANKS}, the distribution and the quantification of
+     * all ranks are produced in one pass over the LCA file, and the rank is appended to the name of
+     * taxon quant file, e.g. "taxon-quant.tsv" => "taxon-quant-species.tsv".
+     *
+     * @param lcaFile
+     * @param rank
+     * @param minPeptideForTaxon
+     * @param log2
+     * @param taxonQuantFile
+     * @throws IOException
+     */
     public void lca2Quant(String lcaFile,
                           String rank,
                           int minPeptideForTaxon,
                           boolean log2,
                           String taxonQuantFile) throws IOException {
-        @Data
-        class TaxonQuantChartData {
-            String rank;
-            boolean log2;
-            List<String> samples;
-            Map<String, List<Double>> taxon2Quants;
+        long start = System.nanoTime();
+        try {
+            quantify(lcaFile, rank, minPeptideForTaxon, log2, taxonQuantFile);
+        } finally {
+            metrics.timer("taxanalysis.lca2quant").recordSince(start);
         }
+    }
 
-        class TaxonQuant {
-            UnipeptTaxon unipeptTaxon;
-            List<QuantPeptide> quantPeptideList;
-            List<Double> quantValList;
-
-            public TaxonQuant(UnipeptTaxon unipeptTaxon, List<QuantPeptide> quantPeptideList) {
-                this.unipeptTaxon = unipeptTaxon;
-                this.quantPeptideList = quantPeptideList;
+    private void quantify(String lcaFile,
+                          String rank,
+                          int minPeptideForTaxon,
+                          boolean log2,
+                          String taxonQuantFile) throws IOException {
+        Path lcaFilePath = Paths.get(lcaFile);
+        if (!ALL_RANKS.equals(rank)) {
+            if (!Arrays.asList(ranks).contains(rank)) {
+                throw new IllegalArgumentException("unknown rank: " + rank);
+            }
+            LCAFileSummary summary = LCAFileSummary.read(lcaFilePath, ranks, Collections.singleton(rank));
+            ChartBatch charts = new ChartBatch();
+            writeTaxonQuant(summary, rank, minPeptideForTaxon, log2, Paths.get(taxonQuantFile), charts);
+            charts.await();
+            return;
+        }
+        LCAFileSummary summary = LCAFileSummary.read(lcaFilePath, ranks, Arrays.asList(ranks));
+        // charts are rendered while the taxon quant files are written
+        ChartBatch charts = new ChartBatch();
+        writePeptideTaxonDistribution(summary, lcaFilePath, charts);
+        Path taxonQuantFilePath = Paths.get(taxonQuantFile).toAbsolutePath();
+        String fileName = taxonQuantFilePath.getFileName().toString();
+        int suffixIdx = fileName.lastIndexOf(".");
+        String prefix = suffixIdx == -1 ? fileName : fileName.substring(0, suffixIdx);
+        String suffix = suffixIdx == -1 ? "" : fileName.substring(suffixIdx);
+        for (String r : ranks) {
+            if (summary.getTaxa(r).isEmpty()) {
+                log.info("no taxon at rank {}", r);
+                continue;
             }
+            writeTaxonQuant(summary, r, minPeptideForTaxon, log2,
+                    taxonQuantFilePath.resolveSibling(prefix + "-" + r + suffix), charts);
         }
+        charts.await();
+    }
+
+    private void writeTaxonQuant(LCAFileSummary summary,
+                                 String rank,
+                                 int minPeptideForTaxon,
+                                 boolean log2,
+                                 Path taxonQuantFilePath,
+                                 ChartBatch charts) throws IOException {
         /** filter **/
-        List<TaxonQuant> taxonQuantList = lca2Quant(lcaFile, rank)
-                .entrySet().stream()
-                .filter(e -> e.getValue().size() >= minPeptideForTaxon)
-                .map(e -> new TaxonQuant(e.getKey(), e.getValue()))
-                .collect(Collectors.toList());
+        QuantMatrix peptideMatrix = summary.getPeptideMatrix();
+        int peptideCount = peptideMatrix.getRowCount();
+        int[] rowTaxa = summary.getRowTaxa(rank);
+        List<UnipeptTaxon> taxa = summary.getTaxa(rank);
+        int[] taxonPeptideCounts = new int[taxa.size()];
+        for (int row = 0; row < peptideCount; row++) {
+            if (rowTaxa[row] >= 0) {
+                taxonPeptideCounts[rowTaxa[row]]++;
+            }
+        }
+        // taxon index => index of remaining taxon
+        int[] taxonIdxMap = new int[taxa.size()];
+        List<UnipeptTaxon> remainTaxa = new ArrayList<>();
+        for (int t = 0; t < taxa.size(); t++) {
+            if (taxonPeptideCounts[t] >= minPeptideForTaxon) {
+                taxonIdxMap[t] = remainTaxa.size();
+                remainTaxa.add(taxa.get(t));
+            } else {
+                taxonIdxMap[t] = -1;
+            }
+        }
+        int[] rowGroups = new int[peptideCount];
+        // peptide rows grouped by remaining taxon, in file order
+        int[] groupOffsets = new int[remainTaxa.size() + 1];
+        for (int row = 0; row < peptideCount; row++) {
+            rowGroups[row] = rowTaxa[row] >= 0 ? taxonIdxMap[rowTaxa[row]] : -1;
+            if (rowGroups[row] >= 0) {
+                groupOffsets[rowGroups[row] + 1]++;
+            }
+        }
+        for (int g = 0; g < remainTaxa.size(); g++) {
+            groupOffsets[g + 1] += groupOffsets[g];
+        }
+        int[] groupedRows = new int[groupOffsets[remainTaxa.size()]];
+        int[] groupFills = Arrays.copyOf(groupOffsets, remainTaxa.size());
+        for (int row = 0; row < peptideCount; row++) {
+            if (rowGroups[row] >= 0) {
+                groupedRows[groupFills[rowGroups[row]]++] = row;
+            }
+        }
+        QuantMatrix taxonMatrix = peptideMatrix.sumByGroup(rowGroups,
+                remainTaxa.stream().map(UnipeptTaxon::getName).toArray(String[]::new));
+        double[] totalTaxonQuantVals = taxonMatrix.sumBySample();
         /** write result file **/
-        String headers = Files.lines(Paths.get(lcaFile)).limit(1).findFirst().get();
-        int sampleStartIdx = headers.indexOf("\t") + 1;
-        int sampleEndIdx = headers.indexOf("taxon_id") - 1;
-        String samplesStr = headers.substring(sampleStartIdx, sampleEndIdx);
-        // for python plot
-        TaxonQuantChartData taxonQuantChartData = new TaxonQuantChartData();
-        taxonQuantChartData.rank = rank;
-        taxonQuantChartData.log2 = log2;
-        taxonQuantChartData.samples = Arrays.stream(samplesStr.split("\t")).collect(Collectors.toList());
-        int sampleSize = taxonQuantChartData.samples.size();
-        taxonQuantChartData.taxon2Quants = new HashMap<>();
+        String samplesStr = String.join("\t", summary.getSamples());
+        int sampleSize = taxonMatrix.getSampleSize();
+        // taxon name => quant values of each sample, for chart
+        Map<String, double[]> taxon2Quants = new LinkedHashMap<>();
         // tsv result file
-        Path taxonQuantFilePath = Paths.get(taxonQuantFile);
         BufferedWriter bw = Files.newBufferedWriter(taxonQuantFilePath);
         bw.write(String.join(System.lineSeparator(),
                 "#Rank: " + rank,
@@ -431,104 +596,26 @@ public class TaxAnalysis {
                 + System.lineSeparator());
         bw.write(String.join("\t", "Taxon Id", "Taxon name",
                 samplesStr, "Peptides") + System.lineSeparator());
-        List<Double> totalTaxonQuantVals = IntStream.range(0, sampleSize).mapToObj(i -> 0.0)
-                .collect(Collectors.toList());
-        for (TaxonQuant taxonQuant : taxonQuantList) {
-            List<Double> taxonQuantVals = IntStream.range(0, sampleSize).mapToObj(i -> 0.0)
-                    .collect(Collectors.toList());
-            for (QuantPeptide quantPeptide : taxonQuant.quantPeptideList) {
-                List<Double> peptQunatVals = quantPeptide.getQuantValList();
-                for (int j = 0; j < peptQunatVals.size(); j++) {
-                    taxonQuantVals.set(j, taxonQuantVals.get(j) + peptQunatVals.get(j));
-                    totalTaxonQuantVals.set(j, totalTaxonQuantVals.get(j) + peptQunatVals.get(j));
-                }
+        StringBuilder sb = new StringBuilder();
+        for (int g = 0; g < remainTaxa.size(); g++) {
+            UnipeptTaxon taxon = remainTaxa.get(g);
+            taxon2Quants.put(taxon.getName(), taxonMatrix.getRow(g));
+            sb.setLength(0);
+            sb.append(taxon.getId()).append('\t').append(taxon.getName());
+            for (int j = 0; j < sampleSize; j++) {
+                double ratio = taxonMatrix.get(g, j) / totalTaxonQuantVals[j];
+                sb.append('\t').append(log2 ? Math.log(ratio) / log2Val : ratio * 100);
             }
-            taxonQuantChartData.taxon2Quants.put(taxonQuant.unipeptTaxon.getName(), taxonQuantVals);
-            taxonQuant.quantValList = taxonQuantVals;
-        }
-
-        for (TaxonQuant taxonQuant : taxonQuantList) {
-            List<Double> quantValList = IntStream.range(0, taxonQuant.quantValList.size())
-                    .mapToObj(i -> log2
-                            ? Math.log(taxonQuant.quantValList.get(i) / totalTaxonQuantVals.get(i)) / log2Val
-                            : taxonQuant.quantValList.get(i) / totalTaxonQuantVals.get(i) * 100
-                    )
-                    .collect(Collectors.toList());
-            UnipeptTaxon taxon = taxonQuant.unipeptTaxon;
-            bw.write(String.join("\t", taxon.getId().toString(), taxon.getName(),
-                    quantValList.stream()
-                            .map(quant -> quant.toString())
-                            .collect(Collectors.joining("\t")),
-                    taxonQuant.quantPeptideList.stream()
-                            .map(pept -> pept.getSequence())
-                            .collect(Collectors.joining("\t"))
-            ) + System.lineSeparator());
-        }
-        bw.close();
-        // run python to plot
-        Path taxonQuantJsonFilePath = Files.createTempFile("taxon-quant", ".json");
-        objectMapper.writeValue(taxonQuantJsonFilePath.toFile(), taxonQuantChartData);
-        Path taxonQuantChartPath = taxonQuantFilePath.getParent().resolve("taxon-quant-" + rank + ".png");
-        String taxonQuantChartCmd = String.join(" ",
-                python3,
-                taxonQuantScript,
-                taxonQuantJsonFilePath.toString(),
-                taxonQuantChartPath.toString()
-        );
-        CommandExecutor.exec(taxonQuantChartCmd);
-        Files.delete(taxonQuantJsonFilePath);
-    }
-
-    private Map<UnipeptTaxon, List<QuantPeptide>> lca2Quant(String lcaFile,
-                                                           String rank) throws IOException {
-        BufferedReader br = Files.newBufferedReader(Paths.get(lcaFile));
-        // peptide file contains quant data?
-        List<String> headerList = Arrays.stream(br.readLine().split("\t")).collect(Collectors.toList());
-        int sampleStartIdx = 1;
-        int sampleEndIdx = headerList.indexOf("taxon_id") - 1;
-        int rankIdIdx = headerList.indexOf(rank + "_id");
-        int rankNameIdx = headerList.indexOf(rank + "_name");
-        boolean containQuant = sampleEndIdx == sampleEndIdx;
-
-        /** stat quantitative **/
-        Map<UnipeptTaxon, List<QuantPeptide>> taxon2QuantPeptides = new HashMap<>();
-        String line;
-        while ((line = br.readLine()) != null) {
-            String[] tmp = Arrays.stream(line.split("\t", rankNameIdx + 2))
-                    .map(String::trim)
-                    .toArray(String[]::new);
-            String rankId;
-            if (tmp.length > rankIdIdx && (rankId = tmp[rankIdIdx]).length() > 0) {
-                UnipeptTaxon taxon = UnipeptTaxon.builder()
-                        .id(Integer.parseInt(rankId))
-                        .name(tmp[rankNameIdx])
-                        .build();
-                List<QuantPeptide> quantPeptideList = taxon2QuantPeptides.get(taxon);
-                if (quantPeptideList == null) {
-                    quantPeptideList = new ArrayList<>();
-                    taxon2QuantPeptides.put(taxon, quantPeptideList);
-                }
-                quantPeptideList.add(
-                        QuantPeptide.builder()
-                                .sequence(tmp[0])
-                                .quantValList(containQuant ? IntStream.rangeClosed(sampleStartIdx, sampleEndIdx)
-                                        .mapToObj(i -> tmp[i].length() == 0 ? 0 : Double.valueOf(tmp[i]))
-                                        .collect(Collectors.toList())
-                                        : null)
-                                .build()
-                );
+            for (int i = groupOffsets[g]; i < groupOffsets[g + 1]; i++) {
+                sb.append('\t').append(peptideMatrix.getLabel(groupedRows[i]));
             }
+            bw.write(sb.append(System.lineSeparator()).toString());
         }
-        br.close();
-        return taxon2QuantPeptides;
-    }
-
-    @Data
-    @NoArgsConstructor
-    @AllArgsConstructor
-    class PeptideCount {
-        private int peptideCountForRank;
-
-        private int peptideCountForSubrank;
+        bw.close();
+        Path taxonQuantChartPath = taxonQuantFilePath.toAbsolutePath().getParent()
+                .resolve("taxon-quant-" + rank + "." + chartFormat);
+        List<String> samples = summary.getSamples();
+        charts.submit(taxonQuantChartPath,
+                () -> chartRenderer.renderTaxonQuant(rank, log2, samples, taxon2Quants, taxonQuantChartPath));
     }
-}
\ No newline at end of file
+}
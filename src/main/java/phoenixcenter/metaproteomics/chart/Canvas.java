@@ -0,0 +1,42 @@
+package phoenixcenter.metaproteomics.chart;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Drawing surface of a chart, in pixels with the origin at the top left. Texts are placed at their baseline.
+ */
+interface Canvas {
+
+    enum Anchor {
+        START, MIDDLE, END
+    }
+
+    void rect(double x, double y, double width, double height, Color fill);
+
+    void line(double x1, double y1, double x2, double y2, Color stroke);
+
+    void circle(double cx, double cy, double r, Color fill);
+
+    /**
+     * @param vertical the text is rotated by -90 degrees around (x, y), i.e. it reads from bottom to top
+     */
+    void text(double x, double y, String text, float size, boolean bold, Anchor anchor, boolean vertical);
+
+    double textWidth(String text, float size, boolean bold);
+
+    void write(Path path) throws IOException;
+
+    /**
+     * @param path   SVG if the extension is ".svg", PNG otherwise
+     * @param width
+     * @param height
+     * @return
+     */
+    static Canvas create(Path path, int width, int height) {
+        return path.getFileName().toString().toLowerCase().endsWith(".svg")
+                ? new SvgCanvas(width, height)
+                : new PngCanvas(width, height);
+    }
+}
@@ -0,0 +1,104 @@
+package phoenixcenter.metaproteomics.chart;
+
+import lombok.extern.log4j.Log4j2;
+import phoenixcenter.metaproteomics.GlobalConfig;
+import phoenixcenter.metaproteomics.metrics.MetricsRegistry;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Charts rendered concurrently in a pool shared by all batches, whose size is "chart.parallelism"
+ * (the count of cores if it is 0). Submit charts as soon as their data is ready, then await the batch.
+ */
+@Log4j2
+public class ChartBatch {
+
+    @FunctionalInterface
+    public interface ChartTask {
+        void render() throws IOException;
+    }
+
+    private static ExecutorService pool;
+
+    private final MetricsRegistry metrics = MetricsRegistry.getDefault();
+
+    private final List<Path> chartPaths = new ArrayList<>();
+
+    private final List<CompletableFuture<Void>> futures = new ArrayList<>();
+
+    private static synchronized ExecutorService getPool() {
+        if (pool == null) {
+            int parallelism = GlobalConfig.getIntValue("chart.parallelism");
+            pool = Executors.newFixedThreadPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors(),
+                    r -> {
+                        Thread thread = new Thread(r, "chart");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+        }
+        return pool;
+    }
+
+    /**
+     * @param chartPath path of the chart, for logging
+     * @param task
+     */
+    public void submit(Path chartPath, ChartTask task) {
+        chartPaths.add(chartPath);
+        futures.add(CompletableFuture.runAsync(() -> {
+            long start = System.nanoTime();
+            try {
+                task.render();
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            } finally {
+                metrics.timer("chart.render").recordSince(start);
+            }
+            log.info("chart {} is rendered in {} s", chartPath,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) / 1000.0);
+        }, getPool()));
+    }
+
+    /**
+     * Wait for all charts. If any chart fails, the others are still waited for, then the failure of the
+     * chart submitted first is thrown.
+     *
+     * @throws IOException
+     */
+    public void await() throws IOException {
+        Throwable failure = null;
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                futures.get(i).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause() instanceof UncheckedIOException ? e.getCause().getCause() : e.getCause();
+                log.error("chart " + chartPaths.get(i) + " fails", cause);
+                if (failure == null) {
+                    failure = cause;
+                }
+            }
+        }
+        futures.clear();
+        chartPaths.clear();
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        } else if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure != null) {
+            throw new IOException(failure);
+        }
+    }
+}
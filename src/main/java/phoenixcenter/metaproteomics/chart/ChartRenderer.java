@@ -0,0 +1,67 @@
+package phoenixcenter.metaproteomics.chart;
+
+import phoenixcenter.metaproteomics.GlobalConfig;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Renderer of the charts of taxonomy analysis. The format of a chart is given by the extension of its path,
+ * e.g. ".png" or ".svg". Renderers are thread-safe, so charts can be rendered concurrently.
+ */
+public interface ChartRenderer {
+
+    /**
+     * Horizontal bars of peptide count at each rank, stacked by the peptides specified to subranks and
+     * to the rank itself
+     *
+     * @param ranks                   ranks from low to high
+     * @param peptideCountsForRank    peptide count specified to each rank
+     * @param peptideCountsForSubrank peptide count specified to the subranks of each rank
+     * @param chartPath
+     * @throws IOException
+     */
+    void renderPeptideRankDistribution(String[] ranks,
+                                       int[] peptideCountsForRank,
+                                       int[] peptideCountsForSubrank,
+                                       Path chartPath) throws IOException;
+
+    /**
+     * Bars of taxon count by peptide count, one panel for each rank
+     *
+     * @param ranks                         ranks from low to high
+     * @param peptideCount2TaxonCountInRank rank => peptide count => count of taxa having the peptide count
+     * @param chartPath
+     * @throws IOException
+     */
+    void renderPeptideTaxonDistribution(String[] ranks,
+                                        Map<String, Map<Integer, Integer>> peptideCount2TaxonCountInRank,
+                                        Path chartPath) throws IOException;
+
+    /**
+     * Bubbles of taxon quant in each sample, the area of a bubble is proportional to the quant value
+     *
+     * @param rank
+     * @param log2
+     * @param samples
+     * @param taxon2Quants taxon name => quant value of each sample, taxa are drawn in its iteration order
+     * @param chartPath
+     * @throws IOException
+     */
+    void renderTaxonQuant(String rank,
+                          boolean log2,
+                          List<String> samples,
+                          Map<String, double[]> taxon2Quants,
+                          Path chartPath) throws IOException;
+
+    /**
+     * @return the renderer of "chart.backend": java(default) or python
+     */
+    static ChartRenderer create() {
+        return "python".equals(GlobalConfig.getValue("chart.backend"))
+                ? PythonChartRenderer.create()
+                : new Java2DChartRenderer();
+    }
+}
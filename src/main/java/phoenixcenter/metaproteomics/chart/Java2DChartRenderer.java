@@ -0,0 +1,256 @@
+package phoenixcenter.metaproteomics.chart;
+
+import phoenixcenter.metaproteomics.chart.Canvas.Anchor;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Render charts in the JVM, as PNG by Java2D or as SVG. The charts look like those of the matplotlib scripts,
+ * but the size of a chart grows with its data, e.g. the count of taxa.
+ */
+public class Java2DChartRenderer implements ChartRenderer {
+
+    private static final Color SUBRANK_COLOR = new Color(0x75b79e);
+
+    private static final Color RANK_COLOR = new Color(0xfb8d62);
+
+    private static final Color AXIS_COLOR = new Color(0x333333);
+
+    /**
+     * anchors of the viridis colormap
+     */
+    private static final int[][] VIRIDIS = {{68, 1, 84}, {59, 82, 139}, {33, 145, 140}, {94, 201, 98}, {253, 231, 37}};
+
+    private static final float TITLE_SIZE = 14f;
+
+    private static final float LABEL_SIZE = 12f;
+
+    private static final float TICK_SIZE = 11f;
+
+    @Override
+    public void renderPeptideRankDistribution(String[] ranks,
+                                              int[] peptideCountsForRank,
+                                              int[] peptideCountsForSubrank,
+                                              Path chartPath) throws IOException {
+        int width = 640;
+        int height = 640;
+        Canvas canvas = Canvas.create(chartPath, width, height);
+        double labelWidth = 0.0;
+        int maxCount = 0;
+        for (int i = 0; i < ranks.length; i++) {
+            labelWidth = Math.max(labelWidth, canvas.textWidth(ranks[i], LABEL_SIZE, false));
+            maxCount = Math.max(maxCount, peptideCountsForRank[i] + peptideCountsForSubrank[i]);
+        }
+        double left = labelWidth + 50;
+        double right = width - 30;
+        double top = 60;
+        double bottom = height - 60;
+        double step = Math.max(1.0, niceStep(maxCount, 5));
+        double axisMax = Math.max(step, Math.ceil(maxCount / step) * step);
+        double xScale = (right - left) / axisMax;
+        double band = (bottom - top) / Math.max(1, ranks.length);
+        for (int i = 0; i < ranks.length; i++) {
+            // the lowest rank at the bottom
+            double y = bottom - (i + 1) * band;
+            canvas.rect(left, y + band * 0.1, peptideCountsForSubrank[i] * xScale, band * 0.8, SUBRANK_COLOR);
+            canvas.rect(left + peptideCountsForSubrank[i] * xScale, y + band * 0.1,
+                    peptideCountsForRank[i] * xScale, band * 0.8, RANK_COLOR);
+            canvas.line(left - 4, y + band / 2, left, y + band / 2, AXIS_COLOR);
+            canvas.text(left - 6, y + band / 2 + LABEL_SIZE * 0.35, ranks[i], LABEL_SIZE, false, Anchor.END, false);
+        }
+        xAxis(canvas, left, right, bottom, axisMax, step);
+        canvas.line(left, top, left, bottom, AXIS_COLOR);
+        canvas.text(width / 2.0, 32, "Peptide distribution on different rank", TITLE_SIZE, true, Anchor.MIDDLE, false);
+        canvas.text((left + right) / 2, height - 18, "Peptide count", LABEL_SIZE, true, Anchor.MIDDLE, false);
+        canvas.text(20, (top + bottom) / 2, "Rank", LABEL_SIZE, true, Anchor.MIDDLE, true);
+        // legend at lower right
+        String[] legends = {"peptide count specified to subranks", "peptide count specified to this rank"};
+        Color[] legendColors = {SUBRANK_COLOR, RANK_COLOR};
+        double legendWidth = 0.0;
+        for (String legend : legends) {
+            legendWidth = Math.max(legendWidth, canvas.textWidth(legend, TICK_SIZE, false));
+        }
+        double legendX = right - legendWidth - 36;
+        double legendY = bottom - 12 - 18 * legends.length;
+        canvas.rect(legendX - 1, legendY - 1, legendWidth + 30, 18 * legends.length + 8, AXIS_COLOR);
+        canvas.rect(legendX, legendY, legendWidth + 28, 18 * legends.length + 6, Color.WHITE);
+        for (int k = 0; k < legends.length; k++) {
+            double y = legendY + 4 + 18 * k;
+            canvas.rect(legendX + 6, y + 2, 14, 10, legendColors[k]);
+            canvas.text(legendX + 24, y + 11, legends[k], TICK_SIZE, false, Anchor.START, false);
+        }
+        canvas.write(chartPath);
+    }
+
+    @Override
+    public void renderPeptideTaxonDistribution(String[] ranks,
+                                               Map<String, Map<Integer, Integer>> peptideCount2TaxonCountInRank,
+                                               Path chartPath) throws IOException {
+        int cols = 3;
+        int rows = (ranks.length + cols - 1) / cols;
+        int panelWidth = 420;
+        int panelHeight = 300;
+        Canvas canvas = Canvas.create(chartPath, cols * panelWidth, Math.max(1, rows) * panelHeight);
+        for (int i = 0; i < ranks.length; i++) {
+            double px = (i % cols) * panelWidth;
+            double py = (i / cols) * panelHeight;
+            double left = px + 60;
+            double right = px + panelWidth - 20;
+            double top = py + 40;
+            double bottom = py + panelHeight - 50;
+            canvas.text(px + panelWidth / 2.0, py + 24, "Peptide distribution on " + ranks[i],
+                    LABEL_SIZE + 1, true, Anchor.MIDDLE, false);
+            canvas.text((left + right) / 2, py + panelHeight - 12, "Peptide count",
+                    TICK_SIZE, true, Anchor.MIDDLE, false);
+            canvas.text(px + 16, (top + bottom) / 2, "Taxon count", TICK_SIZE, true, Anchor.MIDDLE, true);
+            canvas.line(left, bottom, right, bottom, AXIS_COLOR);
+            canvas.line(left, top, left, bottom, AXIS_COLOR);
+            Map<Integer, Integer> peptideCount2TaxonCount = peptideCount2TaxonCountInRank.get(ranks[i]);
+            if (peptideCount2TaxonCount == null || peptideCount2TaxonCount.isEmpty()) {
+                continue;
+            }
+            // bars of peptide counts in ascending order, evenly spaced as categories
+            TreeMap<Integer, Integer> sorted = new TreeMap<>(peptideCount2TaxonCount);
+            int maxTaxonCount = Collections.max(sorted.values());
+            double step = Math.max(1.0, niceStep(maxTaxonCount, 4));
+            double axisMax = Math.max(step, Math.ceil(maxTaxonCount / step) * step);
+            yAxis(canvas, left, top, bottom, axisMax, step);
+            double band = (right - left) / sorted.size();
+            double maxLabelWidth = canvas.textWidth(String.valueOf(sorted.lastKey()), TICK_SIZE, false);
+            int labelEvery = Math.max(1, (int) Math.ceil((maxLabelWidth + 6) / band));
+            int k = 0;
+            for (Map.Entry<Integer, Integer> e : sorted.entrySet()) {
+                double x = left + k * band;
+                double h = e.getValue() / axisMax * (bottom - top);
+                canvas.rect(x + band * 0.1, bottom - h, band * 0.8, h, SUBRANK_COLOR);
+                if (k % labelEvery == 0) {
+                    canvas.line(x + band / 2, bottom, x + band / 2, bottom + 4, AXIS_COLOR);
+                    canvas.text(x + band / 2, bottom + 16, String.valueOf(e.getKey()),
+                            TICK_SIZE, false, Anchor.MIDDLE, false);
+                }
+                k++;
+            }
+        }
+        canvas.write(chartPath);
+    }
+
+    @Override
+    public void renderTaxonQuant(String rank,
+                                 boolean log2,
+                                 List<String> samples,
+                                 Map<String, double[]> taxon2Quants,
+                                 Path chartPath) throws IOException {
+        String title = "Taxa distribution on " + rank + " level";
+        int sampleSize = samples.size();
+        int taxonCount = taxon2Quants.size();
+        // rows shrink when there are many taxa, so the height of chart is bounded
+        double rowHeight = taxonCount <= 300 ? 22.0 : Math.max(2.0, 6600.0 / taxonCount);
+        double colWidth = 44.0;
+        Canvas measure = Canvas.create(chartPath, 1, 1);
+        double labelWidth = 0.0;
+        double maxQuant = 0.0;
+        for (Map.Entry<String, double[]> e : taxon2Quants.entrySet()) {
+            labelWidth = Math.max(labelWidth, measure.textWidth(e.getKey(), TICK_SIZE, false));
+            for (double quant : e.getValue()) {
+                if (quant > maxQuant && !Double.isInfinite(quant)) {
+                    maxQuant = quant;
+                }
+            }
+        }
+        double sampleLabelHeight = 0.0;
+        for (String sample : samples) {
+            sampleLabelHeight = Math.max(sampleLabelHeight, measure.textWidth(sample, TICK_SIZE, false));
+        }
+        double left = labelWidth + 20;
+        double top = 50;
+        double plotWidth = sampleSize * colWidth;
+        double plotHeight = taxonCount * rowHeight;
+        int width = (int) Math.ceil(Math.max(left + plotWidth + 20, measure.textWidth(title, TITLE_SIZE, true) + 40));
+        int height = (int) Math.ceil(top + plotHeight + sampleLabelHeight + 20);
+        Canvas canvas = Canvas.create(chartPath, width, height);
+        double bottom = top + plotHeight;
+        double maxRadius = Math.min(colWidth, rowHeight) / 2 * 0.9;
+        int labelEvery = Math.max(1, (int) Math.ceil((TICK_SIZE + 2) / rowHeight));
+        int i = 0;
+        for (Map.Entry<String, double[]> e : taxon2Quants.entrySet()) {
+            // the first taxon at the bottom
+            double yc = bottom - (i + 0.5) * rowHeight;
+            if (i % labelEvery == 0) {
+                canvas.line(left - 4, yc, left, yc, AXIS_COLOR);
+                canvas.text(left - 6, yc + TICK_SIZE * 0.35, e.getKey(), TICK_SIZE, false, Anchor.END, false);
+            }
+            double[] quants = e.getValue();
+            for (int j = 0; j < sampleSize; j++) {
+                double quant = quants[j];
+                if (quant > 0 && maxQuant > 0 && !Double.isInfinite(quant)) {
+                    canvas.circle(left + (j + 0.5) * colWidth, yc, maxRadius * Math.sqrt(quant / maxQuant),
+                            viridis(sampleSize == 1 ? 0.0 : (double) j / (sampleSize - 1), 200));
+                }
+            }
+            i++;
+        }
+        for (int j = 0; j < sampleSize; j++) {
+            double xc = left + (j + 0.5) * colWidth;
+            canvas.line(xc, bottom, xc, bottom + 4, AXIS_COLOR);
+            canvas.text(xc + TICK_SIZE * 0.35, bottom + 6, samples.get(j), TICK_SIZE, false, Anchor.END, true);
+        }
+        canvas.line(left, top, left, bottom, AXIS_COLOR);
+        canvas.line(left, bottom, left + plotWidth, bottom, AXIS_COLOR);
+        canvas.text(width / 2.0, 30, title, TITLE_SIZE, true, Anchor.MIDDLE, false);
+        canvas.write(chartPath);
+    }
+
+    private static void xAxis(Canvas canvas, double left, double right, double y, double axisMax, double step) {
+        canvas.line(left, y, right, y, AXIS_COLOR);
+        for (double v = 0.0; v <= axisMax + step / 2; v += step) {
+            double x = left + v / axisMax * (right - left);
+            canvas.line(x, y, x, y + 4, AXIS_COLOR);
+            canvas.text(x, y + 16, tickLabel(v), TICK_SIZE, false, Anchor.MIDDLE, false);
+        }
+    }
+
+    private static void yAxis(Canvas canvas, double x, double top, double bottom, double axisMax, double step) {
+        for (double v = 0.0; v <= axisMax + step / 2; v += step) {
+            double y = bottom - v / axisMax * (bottom - top);
+            canvas.line(x - 4, y, x, y, AXIS_COLOR);
+            canvas.text(x - 6, y + TICK_SIZE * 0.35, tickLabel(v), TICK_SIZE, false, Anchor.END, false);
+        }
+    }
+
+    /**
+     * @return 1, 2 or 5 times a power of 10, so that about tickCount ticks cover max
+     */
+    static double niceStep(double max, int tickCount) {
+        if (max <= 0) {
+            return 1.0;
+        }
+        double raw = max / tickCount;
+        double magnitude = Math.pow(10, Math.floor(Math.log10(raw)));
+        double normalized = raw / magnitude;
+        double nice = normalized <= 1 ? 1 : normalized <= 2 ? 2 : normalized <= 5 ? 5 : 10;
+        return nice * magnitude;
+    }
+
+    private static String tickLabel(double value) {
+        return value == Math.rint(value) ? String.valueOf((long) value) : String.valueOf(value);
+    }
+
+    /**
+     * @param t     in [0, 1]
+     * @param alpha
+     * @return color of viridis colormap at t
+     */
+    static Color viridis(double t, int alpha) {
+        double pos = Math.max(0.0, Math.min(1.0, t)) * (VIRIDIS.length - 1);
+        int idx = Math.min(VIRIDIS.length - 2, (int) pos);
+        double frac = pos - idx;
+        int[] c = new int[3];
+        for (int k = 0; k < 3; k++) {
+            c[k] = (int) Math.round(VIRIDIS[idx][k] + (VIRIDIS[idx + 1][k] - VIRIDIS[idx][k]) * frac);
+        }
+        return new Color(c[0], c[1], c[2], alpha);
+    }
+}
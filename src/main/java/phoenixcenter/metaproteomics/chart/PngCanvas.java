@@ -0,0 +1,89 @@
+package phoenixcenter.metaproteomics.chart;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Line2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Canvas drawn by Java2D into an image, written as PNG
+ */
+class PngCanvas implements Canvas {
+
+    static {
+        // no display is needed to draw into an image
+        if (System.getProperty("java.awt.headless") == null) {
+            System.setProperty("java.awt.headless", "true");
+        }
+    }
+
+    private final BufferedImage image;
+
+    private final Graphics2D g;
+
+    PngCanvas(int width, int height) {
+        this.image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        this.g = image.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, width, height);
+    }
+
+    @Override
+    public void rect(double x, double y, double width, double height, Color fill) {
+        g.setColor(fill);
+        g.fill(new Rectangle2D.Double(x, y, width, height));
+    }
+
+    @Override
+    public void line(double x1, double y1, double x2, double y2, Color stroke) {
+        g.setColor(stroke);
+        g.draw(new Line2D.Double(x1, y1, x2, y2));
+    }
+
+    @Override
+    public void circle(double cx, double cy, double r, Color fill) {
+        g.setColor(fill);
+        g.fill(new Ellipse2D.Double(cx - r, cy - r, 2 * r, 2 * r));
+    }
+
+    @Override
+    public void text(double x, double y, String text, float size, boolean bold, Anchor anchor, boolean vertical) {
+        Font font = font(size, bold);
+        double offset = anchor == Anchor.START ? 0.0
+                : font.getStringBounds(text, g.getFontRenderContext()).getWidth() / (anchor == Anchor.MIDDLE ? 2 : 1);
+        g.setColor(Color.BLACK);
+        g.setFont(font);
+        if (vertical) {
+            Graphics2D rotated = (Graphics2D) g.create();
+            rotated.translate(x, y);
+            rotated.rotate(-Math.PI / 2);
+            rotated.drawString(text, (float) -offset, 0f);
+            rotated.dispose();
+        } else {
+            g.drawString(text, (float) (x - offset), (float) y);
+        }
+    }
+
+    @Override
+    public double textWidth(String text, float size, boolean bold) {
+        return font(size, bold).getStringBounds(text, g.getFontRenderContext()).getWidth();
+    }
+
+    @Override
+    public void write(Path path) throws IOException {
+        g.dispose();
+        if (!ImageIO.write(image, "png", path.toFile())) {
+            throw new IOException("no PNG writer for " + path);
+        }
+    }
+
+    private Font font(float size, boolean bold) {
+        return new Font(Font.SANS_SERIF, bold ? Font.BOLD : Font.PLAIN, 1).deriveFont(size);
+    }
+}
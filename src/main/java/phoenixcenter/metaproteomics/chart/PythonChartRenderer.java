@@ -0,0 +1,106 @@
+package phoenixcenter.metaproteomics.chart;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import phoenixcenter.metaproteomics.CommandExecutor;
+import phoenixcenter.metaproteomics.GlobalConfig;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Render charts by the matplotlib scripts: the chart data is written into a temporary JSON file, then
+ * python3 runs the script once per chart.
+ */
+public class PythonChartRenderer implements ChartRenderer {
+
+    private final String python3;
+
+    private final String peptideRankDistScript;
+
+    private final String peptideTaxonDistScript;
+
+    private final String taxonQuantScript;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public PythonChartRenderer(String python3,
+                               String peptideRankDistScript,
+                               String peptideTaxonDistScript,
+                               String taxonQuantScript) {
+        this.python3 = python3;
+        this.peptideRankDistScript = peptideRankDistScript;
+        this.peptideTaxonDistScript = peptideTaxonDistScript;
+        this.taxonQuantScript = taxonQuantScript;
+    }
+
+    public static PythonChartRenderer create() {
+        return new PythonChartRenderer(
+                GlobalConfig.getValue("python3"),
+                GlobalConfig.getValue("peptide-rank-dist.script"),
+                GlobalConfig.getValue("peptide-taxon-dist.script"),
+                GlobalConfig.getValue("taxon-quant.script"));
+    }
+
+    /**
+     * JSON: {rank: {"peptideCountForRank": 1, "peptideCountForSubrank": 1}}
+     */
+    @Override
+    public void renderPeptideRankDistribution(String[] ranks,
+                                              int[] peptideCountsForRank,
+                                              int[] peptideCountsForSubrank,
+                                              Path chartPath) throws IOException {
+        ObjectNode root = objectMapper.createObjectNode();
+        for (int i = 0; i < ranks.length; i++) {
+            root.putObject(ranks[i])
+                    .put("peptideCountForRank", peptideCountsForRank[i])
+                    .put("peptideCountForSubrank", peptideCountsForSubrank[i]);
+        }
+        plot(peptideRankDistScript, "rank2PeptideCount", root, chartPath);
+    }
+
+    /**
+     * JSON: {rank: {peptide count: taxon count}}
+     */
+    @Override
+    public void renderPeptideTaxonDistribution(String[] ranks,
+                                               Map<String, Map<Integer, Integer>> peptideCount2TaxonCountInRank,
+                                               Path chartPath) throws IOException {
+        plot(peptideTaxonDistScript, "peptideCount2TaxonCount", peptideCount2TaxonCountInRank, chartPath);
+    }
+
+    /**
+     * JSON: {"rank": "", "log2": false, "samples": [], "taxon2Quants": {taxon name: [quant of each sample]}}
+     */
+    @Override
+    public void renderTaxonQuant(String rank,
+                                 boolean log2,
+                                 List<String> samples,
+                                 Map<String, double[]> taxon2Quants,
+                                 Path chartPath) throws IOException {
+        ObjectNode root = objectMapper.createObjectNode();
+        root.put("rank", rank);
+        root.put("log2", log2);
+        samples.forEach(root.putArray("samples")::add);
+        ObjectNode taxon2QuantsNode = root.putObject("taxon2Quants");
+        taxon2Quants.forEach((taxon, quants) -> Arrays.stream(quants).forEach(taxon2QuantsNode.putArray(taxon)::add));
+        plot(taxonQuantScript, "taxon-quant", root, chartPath);
+    }
+
+    private void plot(String script, String dataName, Object data, Path chartPath) throws IOException {
+        Path jsonPath = Files.createTempFile(dataName, ".json");
+        try {
+            objectMapper.writeValue(jsonPath.toFile(), data);
+            CommandExecutor.exec(Arrays.asList(python3, script, jsonPath.toString(), chartPath.toString()));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            Files.deleteIfExists(jsonPath);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package phoenixcenter.metaproteomics.chart;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Canvas written as SVG elements. Text widths are estimated from the font size, so no font is needed.
+ */
+class SvgCanvas implements Canvas {
+
+    private final StringBuilder sb = new StringBuilder();
+
+    SvgCanvas(int width, int height) {
+        sb.append("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"").append(width)
+                .append("\" height=\"").append(height)
+                .append("\" viewBox=\"0 0 ").append(width).append(' ').append(height)
+                .append("\" font-family=\"sans-serif\">\n");
+        sb.append("<rect width=\"100%\" height=\"100%\" fill=\"#ffffff\"/>\n");
+    }
+
+    @Override
+    public void rect(double x, double y, double width, double height, Color fill) {
+        sb.append("<rect x=\"").append(num(x)).append("\" y=\"").append(num(y))
+                .append("\" width=\"").append(num(width)).append("\" height=\"").append(num(height)).append('"');
+        fill(fill);
+        sb.append("/>\n");
+    }
+
+    @Override
+    public void line(double x1, double y1, double x2, double y2, Color stroke) {
+        sb.append("<line x1=\"").append(num(x1)).append("\" y1=\"").append(num(y1))
+                .append("\" x2=\"").append(num(x2)).append("\" y2=\"").append(num(y2))
+                .append("\" stroke=\"").append(hex(stroke)).append("\" stroke-width=\"1\"/>\n");
+    }
+
+    @Override
+    public void circle(double cx, double cy, double r, Color fill) {
+        sb.append("<circle cx=\"").append(num(cx)).append("\" cy=\"").append(num(cy))
+                .append("\" r=\"").append(num(r)).append('"');
+        fill(fill);
+        sb.append("/>\n");
+    }
+
+    @Override
+    public void text(double x, double y, String text, float size, boolean bold, Anchor anchor, boolean vertical) {
+        sb.append("<text x=\"").append(num(x)).append("\" y=\"").append(num(y))
+                .append("\" font-size=\"").append(num(size)).append('"');
+        if (bold) {
+            sb.append(" font-weight=\"bold\"");
+        }
+        if (anchor != Anchor.START) {
+            sb.append(" text-anchor=\"").append(anchor == Anchor.MIDDLE ? "middle" : "end").append('"');
+        }
+        if (vertical) {
+            sb.append(" transform=\"rotate(-90 ").append(num(x)).append(' ').append(num(y)).append(")\"");
+        }
+        sb.append('>').append(escape(text)).append("</text>\n");
+    }
+
+    @Override
+    public double textWidth(String text, float size, boolean bold) {
+        return text.length() * size * (bold ? 0.62 : 0.56);
+    }
+
+    @Override
+    public void write(Path path) throws IOException {
+        Files.write(path, (sb + "</svg>\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void fill(Color fill) {
+        sb.append(" fill=\"").append(hex(fill)).append('"');
+        if (fill.getAlpha() < 255) {
+            sb.append(" fill-opacity=\"").append(num(fill.getAlpha() / 255.0)).append('"');
+        }
+    }
+
+    private static String hex(Color color) {
+        return String.format("#%06x", color.getRGB() & 0xffffff);
+    }
+
+    private static String num(double value) {
+        long rounded = Math.round(value * 100);
+        return rounded % 100 == 0 ? String.valueOf(rounded / 100) : String.valueOf(rounded / 100.0);
+    }
+
+    private static String escape(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+}
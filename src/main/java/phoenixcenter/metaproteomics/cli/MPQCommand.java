@@ -1,12 +1,23 @@
 package phoenixcenter.metaproteomics.cli;
 
-
+import lombok.extern.log4j.Log4j2;
+import phoenixcenter.metaproteomics.GlobalConfig;
+import phoenixcenter.metaproteomics.MPQPipeline;
 import phoenixcenter.metaproteomics.Mascot2XMLEnhancer;
 import phoenixcenter.metaproteomics.PeptideProphetEnhancer;
 import phoenixcenter.metaproteomics.TaxAnalysis;
+import phoenixcenter.metaproteomics.fasta.DecoyFastaGenerator.DecoyMode;
+import phoenixcenter.metaproteomics.metrics.MetricsRegistry;
+import phoenixcenter.metaproteomics.metrics.MetricsReport;
+import phoenixcenter.metaproteomics.taxonomy.LocalLCAEngine;
+import phoenixcenter.metaproteomics.taxonomy.NcbiTaxonomy;
+import phoenixcenter.metaproteomics.taxonomy.ProteinDigester;
+import phoenixcenter.metaproteomics.taxonomy.ProteinDigester.Enzyme;
 import picocli.CommandLine;
 import picocli.CommandLine.Command;
 import picocli.CommandLine.Option;
+import picocli.CommandLine.ParseResult;
+import picocli.CommandLine.RunLast;
 import umich.ms.fileio.exceptions.FileParsingException;
 
 import java.io.IOException;
@@ -17,6 +28,7 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.Callable;
 
+@Log4j2
 @Command(name = "MPQ", mixinStandardHelpOptions = true, version = "MPQ 1.0",
         description = "MetaPeptideQuantome")
 public class MPQCommand implements Callable<Integer> {
@@ -31,21 +43,33 @@ public class MPQCommand implements Callable<Integer> {
     public void genTargetDecoyLibrary(
             @Option(names = "-i", description = "Path of the target library file", required = true) String targetLibrary,
             @Option(names = "-P", description = "The prefix of decoy protein sequence", required = true) String decoyPrefix,
+            @Option(names = "-m", defaultValue = "REVERSE",
+                    description = "How decoy sequences are generated: ${COMPLETION-CANDIDATES}, default REVERSE. "
+                            + "PSEUDO_REVERSE and SHUFFLE keep K/R at the C-terminal of each peptide") DecoyMode decoyMode,
+            @Option(names = "-t", defaultValue = "0",
+                    description = "Count of threads, default the count of cores") int threads,
             @Option(names = "-o", description = "Path of the output target-decoy database file", required = true) String tdLibrary
     ) throws IOException {
-        mascot2XMLEnhancer.genLibraryWithDecoy(targetLibrary, decoyPrefix, tdLibrary);
+        mascot2XMLEnhancer.genLibraryWithDecoy(targetLibrary, decoyPrefix, decoyMode, threads, tdLibrary);
     }
 
     @Command
     public void dat2xml(
-            @Option(names = "-i", description = "Path of the input DAT file", required = true) String datFile,
+            @Option(names = "-i", description = "Path of the input DAT file, or a directory or glob(e.g. dir/F00*.dat) of DAT files", required = true) String datFile,
             @Option(names = "-D", description = "Sequence database path", required = true) String targetDecoyLibrary,
             @Option(names = "-E", description = "Enzyme", required = true) String enzyme,
             @Option(names = "-M", defaultValue = "false",
                     description = "Whether it is a Dat file generated in an manual decoy database search mode, default is false") boolean isManual,
             @Option(names = "-P", description = "The prefix of decoy protein sequence, only required in in automatic decoy database search mode") String decoyPrefix,
-            @Option(names = "-o", description = "Path of the output pepxm file", required = true) String pepxmlFile) throws IOException {
-        if (isManual) {
+            @Option(names = "-t", defaultValue = "0",
+                    description = "Max count of DAT files converted concurrently, default the count of cores") int threads,
+            @Option(names = "-o", description = "Path of the output pepxm file, or the output directory of multiple DAT files. "
+                    + "A DAT file is skipped if its pepxml file in the directory is newer", required = true) String pepxmlFile) throws IOException {
+        Mascot2XMLEnhancer mascot2XMLEnhancer = threads > 0 ? new Mascot2XMLEnhancer(threads) : this.mascot2XMLEnhancer;
+        if (Mascot2XMLEnhancer.isDatBatch(datFile)) {
+            mascot2XMLEnhancer.convertBatch(Mascot2XMLEnhancer.listDatFiles(datFile), isManual, decoyPrefix,
+                    enzyme, targetDecoyLibrary, Paths.get(pepxmlFile));
+        } else if (isManual) {
             mascot2XMLEnhancer.convertManualDecoyMode(datFile, enzyme, targetDecoyLibrary, pepxmlFile);
         } else {
             mascot2XMLEnhancer.convertAutoDecoyMode(datFile, decoyPrefix, enzyme, targetDecoyLibrary, pepxmlFile);
@@ -60,8 +84,12 @@ public class MPQCommand implements Callable<Integer> {
             @Option(names = "-D", description = "The sequence database", required = true) String libraryFile,
             @Option(names = "-PPM ", defaultValue = "true",
                     description = "Use PPM instead of daltons in Accurate Mass Model, default true") boolean ppm,
+            @Option(names = "-qvality", defaultValue = "false",
+                    description = "Estimate FDR by qvality instead of the built-in estimator, default false") boolean qvality,
             @Option(names = "-o", description = "Path of the output pepXML file", required = true) String ppPepxmlFile
     ) throws IOException, FileParsingException {
+        PeptideProphetEnhancer peptideProphetEnhancer = qvality
+                ? new PeptideProphetEnhancer(0, true) : this.peptideProphetEnhancer;
         Map<String, String> params = new HashMap<>();
         params.put("-D", libraryFile);
         if (ppm) {
@@ -82,8 +110,14 @@ public class MPQCommand implements Callable<Integer> {
             @Option(names = "-i", description = "Path of the input pepXML files, separated by commas", required = true) String pepxmlFiles,
             @Option(names = "-FDR", description = "The peptide-level FDR") Double fdr,
             @Option(names = "-P", description = "The prefix of decoy protein sequence") String decoyPrefix,
+            @Option(names = "-t", defaultValue = "0",
+                    description = "Count of pepXML files processed concurrently, default the count of cores") int threads,
+            @Option(names = "-qvality", defaultValue = "false",
+                    description = "Estimate FDR by qvality instead of the built-in estimator, default false") boolean qvality,
             @Option(names = "-o", description = "Path of the output tsv file", required = true) String tsvFile
     ) throws IOException, FileParsingException {
+        PeptideProphetEnhancer peptideProphetEnhancer = qvality
+                ? new PeptideProphetEnhancer(threads, true) : new PeptideProphetEnhancer(threads);
         if (fdr == null) {
             peptideProphetEnhancer.pp2tsv(decoyPrefix, pepxmlFiles.split(","), tsvFile);
         } else {
@@ -92,16 +126,36 @@ public class MPQCommand implements Callable<Integer> {
         }
     }
 
-    @Command(name = "pept2lca", description = "Retrieve LCA information from Unipept")
+    @Command(name = "pept2lca", description = "Retrieve LCA information from Unipept, or compute LCA locally")
     public void pept2lca(
             @Option(names = "-i", description = "Peptide list file path", required = true) String peptideFile,
             @Option(names = "-il", defaultValue = "true",
                     description = "Equate I and L, default true") boolean equateIL,
             @Option(names = "-m", defaultValue = "false",
                     description = "Advanced missing cleavage handling, default false") boolean missedCleavage,
+            @Option(names = "-taxdump", description = "The directory of NCBI taxdump(nodes.dmp and names.dmp), " +
+                    "compute LCA locally instead of requesting Unipept if it is set together with -fasta") String taxdumpDir,
+            @Option(names = "-fasta", description = "The protein database whose headers contain taxon id(e.g. OX=562), " +
+                    "required when computing LCA locally") String proteinFasta,
+            @Option(names = "-E", defaultValue = "trypsin",
+                    description = "Enzyme digesting the protein database when computing LCA locally, " +
+                            "the same names as dat2xml -E, default trypsin") String enzyme,
+            @Option(names = "-t", defaultValue = "0",
+                    description = "Count of threads building the peptide index, default the count of cores") int threads,
             @Option(names = "-o", description = "The output LCA file path", required = true) String lcaFile
     ) throws IOException {
-        taxAnalysis.peptide2LCA(peptideFile, equateIL, missedCleavage, lcaFile);
+        if (taxdumpDir != null && proteinFasta != null) {
+            LocalLCAEngine localLCAEngine = new LocalLCAEngine(NcbiTaxonomy.load(Paths.get(taxdumpDir)),
+                    Paths.get(proteinFasta),
+                    new ProteinDigester(Enzyme.fromName(enzyme),
+                            missedCleavage ? GlobalConfig.getIntValue("local.lca.missed.cleavages") : 0,
+                            GlobalConfig.getIntValue("local.lca.min.length"),
+                            GlobalConfig.getIntValue("local.lca.max.length")),
+                    threads);
+            new TaxAnalysis(localLCAEngine).peptide2LCA(peptideFile, equateIL, missedCleavage, lcaFile);
+        } else {
+            taxAnalysis.peptide2LCA(peptideFile, equateIL, missedCleavage, lcaFile);
+        }
     }
 
     @Command(name = "lca2quant", description = "Taxonomic quantative analysis")
@@ -110,21 +164,104 @@ public class MPQCommand implements Callable<Integer> {
             @Option(names = "-rank", description = "forma, varietas, subspecies, species, species_subgroup, species_group, subgenus, genus, subtribe, " +
                     "tribe, subfamily, family, superfamily, parvorder, infraorder, suborder, order, superorder, " +
                     "infraclass, subclass, class, superclass, subphylum, phylum, superphylum, subkingdom, kingdom," +
-                    "superkingdom") String rank,
+                    "superkingdom, or all to quantify every rank in one pass") String rank,
             @Option(names = "-log2", defaultValue = "false",
                     description = "Log2 transform, default false") boolean log2,
             @Option(names = "-min", description = "Min peptide count for each taxon") int minPeptideForTaxon,
-            @Option(names = "-o", description = "The output path of taxonomic quantative analysis file", required = true) String taxonQuantFile
+            @Option(names = "-o", description = "The output path of taxonomic quantative analysis file, " +
+                    "the rank is appended to file name for all ranks", required = true) String taxonQuantFile
     ) throws IOException {
         taxAnalysis.lca2Quant(lcaFile, rank, minPeptideForTaxon, log2, taxonQuantFile);
     }
 
+    @Command(name = "run", description = "Run dat2xml, xml2pp, xml2tsv, pept2lca and lca2quant as a pipeline, "
+            + "DAT files are processed concurrently")
+    public void run(
+            @Option(names = "-i", description = "Path of the input DAT file, or a directory or glob(e.g. dir/F00*.dat) of DAT files", required = true) String datFile,
+            @Option(names = "-D", description = "Sequence database path", required = true) String targetDecoyLibrary,
+            @Option(names = "-E", defaultValue = "trypsin", description = "Enzyme, default trypsin") String enzyme,
+            @Option(names = "-M", defaultValue = "false",
+                    description = "Whether DAT files are generated in an manual decoy database search mode, default is false") boolean isManual,
+            @Option(names = "-P", description = "The prefix of decoy protein sequence", required = true) String decoyPrefix,
+            @Option(names = "-FDR", description = "The peptide-level FDR") Double fdr,
+            @Option(names = "-il", defaultValue = "true",
+                    description = "Equate I and L, default true") boolean equateIL,
+            @Option(names = "-m", defaultValue = "false",
+                    description = "Advanced missing cleavage handling, default false") boolean missedCleavage,
+            @Option(names = "-rank", defaultValue = TaxAnalysis.ALL_RANKS,
+                    description = "The rank of taxonomic quantative analysis, default all") String rank,
+            @Option(names = "-log2", defaultValue = "false",
+                    description = "Log2 transform, default false") boolean log2,
+            @Option(names = "-min", defaultValue = "1", description = "Min peptide count for each taxon, default 1") int minPeptideForTaxon,
+            @Option(names = "-t", defaultValue = "0",
+                    description = "Max count of DAT files converted concurrently, default pipeline.mascot2xml.parallelism") int threads,
+            @Option(names = "-o", description = "The output directory", required = true) String outputDir
+    ) throws IOException {
+        MPQPipeline.MPQPipelineBuilder builder = MPQPipeline.builder()
+                .targetDecoyLibrary(targetDecoyLibrary)
+                .decoyPrefix(decoyPrefix)
+                .enzyme(enzyme)
+                .manualDecoy(isManual)
+                .fdr(fdr)
+                .equalIL(equateIL)
+                .missedCleavage(missedCleavage)
+                .rank(rank)
+                .log2(log2)
+                .minPeptideForTaxon(minPeptideForTaxon)
+                .taxAnalysis(taxAnalysis)
+                .outputDir(Paths.get(outputDir));
+        if (threads > 0) {
+            builder.mascot2XMLParallelism(threads);
+        }
+        builder.build().run(datFile);
+    }
+
 
     public static void main(String[] args) {
-        int exitCode = new CommandLine(new MPQCommand()).execute(args);
+        int exitCode = new CommandLine(new MPQCommand())
+                .setExecutionStrategy(MPQCommand::executeWithReport)
+                .execute(args);
         System.exit(exitCode);
     }
 
+    /**
+     * Run the subcommand, then write the metrics report of it into "metrics.report.dir" (nothing is written
+     * if it is empty), in Prometheus text format too if "metrics.report.prometheus" is true.
+     *
+     * @param parseResult
+     * @return exit code
+     */
+    static int executeWithReport(ParseResult parseResult) {
+        ParseResult subcommand = parseResult.subcommand();
+        if (subcommand == null || subcommand.isUsageHelpRequested() || subcommand.isVersionHelpRequested()) {
+            return new RunLast().execute(parseResult);
+        }
+        long start = System.currentTimeMillis();
+        int exitCode = 1;
+        try {
+            exitCode = new RunLast().execute(parseResult);
+            return exitCode;
+        } finally {
+            writeMetricsReport(subcommand.commandSpec().name(), start, exitCode);
+        }
+    }
+
+    private static void writeMetricsReport(String command, long start, int exitCode) {
+        String reportDir = GlobalConfig.getValue("metrics.report.dir");
+        if (reportDir == null || reportDir.trim().isEmpty()) {
+            return;
+        }
+        MetricsReport report = new MetricsReport(command, start, System.currentTimeMillis(), exitCode,
+                MetricsRegistry.getDefault());
+        try {
+            Path reportPath = report.writeTo(Paths.get(reportDir.trim()),
+                    Boolean.parseBoolean(GlobalConfig.getValue("metrics.report.prometheus")));
+            log.info("metrics report: {}", reportPath);
+        } catch (IOException e) {
+            log.warn("fail to write metrics report into " + reportDir, e);
+        }
+    }
+
     @Override
     public Integer call() throws Exception {
 
@@ -0,0 +1,42 @@
+package phoenixcenter.metaproteomics.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The top hit of a spectrum query
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PSM {
+
+    private String peptide;
+
+    /**
+     * protein and alternative proteins
+     */
+    private List<String> proteins = new ArrayList<>(2);
+
+    /**
+     * PeptideProphet probability, NaN if it is absent
+     */
+    private double probability = Double.NaN;
+
+    /**
+     * @param decoyPrefix
+     * @return true if all proteins are decoy
+     */
+    public boolean isDecoy(String decoyPrefix) {
+        for (String protein : proteins) {
+            if (!protein.startsWith(decoyPrefix)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,109 @@
+package phoenixcenter.metaproteomics.entity;
+
+import java.util.Arrays;
+
+/**
+ * Quant values of peptides(or taxa) in samples, stored as a flat row-major double matrix.
+ * Each row has a label, e.g. peptide sequence.
+ */
+public class QuantMatrix {
+
+    private final int sampleSize;
+
+    private double[] values;
+
+    private String[] labels;
+
+    private int rowCount;
+
+    public QuantMatrix(int sampleSize) {
+        this(sampleSize, 1024);
+    }
+
+    public QuantMatrix(int sampleSize, int initialRows) {
+        this.sampleSize = sampleSize;
+        this.values = new double[Math.max(1, initialRows) * sampleSize];
+        this.labels = new String[Math.max(1, initialRows)];
+    }
+
+    /**
+     * Append a row of zeros
+     *
+     * @param label
+     * @return index of the row
+     */
+    public int addRow(String label) {
+        if (rowCount == labels.length) {
+            int newRows = labels.length * 2;
+            labels = Arrays.copyOf(labels, newRows);
+            values = Arrays.copyOf(values, newRows * sampleSize);
+        }
+        labels[rowCount] = label;
+        return rowCount++;
+    }
+
+    public void set(int row, int sample, double value) {
+        values[row * sampleSize + sample] = value;
+    }
+
+    public double get(int row, int sample) {
+        return values[row * sampleSize + sample];
+    }
+
+    public String getLabel(int row) {
+        return labels[row];
+    }
+
+    public double[] getRow(int row) {
+        return Arrays.copyOfRange(values, row * sampleSize, (row + 1) * sampleSize);
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public int getSampleSize() {
+        return sampleSize;
+    }
+
+    /**
+     * Sum rows by group
+     *
+     * @param rowGroups group of each row, negative if the row is not in any group
+     * @param labels    label of each group
+     * @return matrix whose i-th row is the sum of rows in group i
+     */
+    public QuantMatrix sumByGroup(int[] rowGroups, String[] labels) {
+        QuantMatrix groupMatrix = new QuantMatrix(sampleSize, labels.length);
+        for (String label : labels) {
+            groupMatrix.addRow(label);
+        }
+        double[] groupValues = groupMatrix.values;
+        for (int row = 0; row < rowCount; row++) {
+            int group = rowGroups[row];
+            if (group < 0) {
+                continue;
+            }
+            int src = row * sampleSize;
+            int dest = group * sampleSize;
+            for (int j = 0; j < sampleSize; j++) {
+                groupValues[dest + j] += values[src + j];
+            }
+        }
+        return groupMatrix;
+    }
+
+    /**
+     * @return sum of each sample
+     */
+    public double[] sumBySample() {
+        double[] sums = new double[sampleSize];
+        for (int row = 0; row < rowCount; row++) {
+            int src = row * sampleSize;
+            for (int j = 0; j < sampleSize; j++) {
+                sums[j] += values[src + j];
+            }
+        }
+        return sums;
+    }
+}
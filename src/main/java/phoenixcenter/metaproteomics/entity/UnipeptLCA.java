@@ -3,8 +3,6 @@ package phoenixcenter.metaproteomics.entity;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
-import java.util.List;
-
 @Data
 @NoArgsConstructor
 public class UnipeptLCA {
@@ -17,7 +15,13 @@ public class UnipeptLCA {
 
     private String lcaRank;
 
-    private List<Integer> lineageIds;
+    /**
+     * Taxon ids from superkingdom to forma, 0 if the rank is not assigned; empty if Unipept returns no lineage
+     */
+    private int[] lineageIds = new int[0];
 
-    private List<String> lineageNames;
+    /**
+     * Taxon names from superkingdom to forma, null if the rank is not assigned
+     */
+    private String[] lineageNames = new String[0];
 }
@@ -0,0 +1,280 @@
+package phoenixcenter.metaproteomics.fasta;
+
+import lombok.extern.log4j.Log4j2;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.*;
+
+/**
+ * Generate a target-decoy FASTA: each protein is written as it is(sequence in one line), followed by its decoy
+ * whose name is prefixed.
+ * <p>
+ * The input is memory-mapped and split into chunks at record starts('>' at the beginning of a line). Chunks are
+ * converted in parallel into direct buffers and written in input order, so the output does not depend on the
+ * count of threads. At most threads + 1 chunks are in flight.
+ * <p>
+ * The output buffer of a chunk is about 2.5 times its size and at most threads + 2 of them exist at a time, so
+ * the chunk size is reduced to 256 MB / (3 * (threads + 2)) with many threads, which keeps the buffers within
+ * 256 MB of direct memory. Chunks are not reduced below 64 KB, so the budget is exceeded beyond 1300 threads.
+ */
+@Log4j2
+public class DecoyFastaGenerator {
+
+    public enum DecoyMode {
+        /**
+         * reverse the whole sequence
+         */
+        REVERSE,
+        /**
+         * reverse each peptide between K/R, K/R stays at the C-terminal
+         */
+        PSEUDO_REVERSE,
+        /**
+         * shuffle each peptide between K/R, K/R stays at the C-terminal. The random seed is from the protein
+         * name, so the result is reproducible.
+         */
+        SHUFFLE
+    }
+
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * total size of direct buffers for output
+     */
+    private static final long OUTPUT_BUFFER_BUDGET = 1L << 28;
+
+    private static final int MIN_CHUNK_SIZE = 1 << 16;
+
+    private final byte[] decoyPrefix;
+
+    private final DecoyMode mode;
+
+    private final int threads;
+
+    private final int chunkSize;
+
+    public DecoyFastaGenerator(String decoyPrefix) {
+        this(decoyPrefix, DecoyMode.REVERSE, 0);
+    }
+
+    /**
+     * @param decoyPrefix
+     * @param mode
+     * @param threads     the count of cores if it is not positive
+     */
+    public DecoyFastaGenerator(String decoyPrefix, DecoyMode mode, int threads) {
+        this(decoyPrefix, mode, threads, 1 << 24);
+    }
+
+    DecoyFastaGenerator(String decoyPrefix, DecoyMode mode, int threads, int chunkSize) {
+        this.decoyPrefix = decoyPrefix.getBytes(StandardCharsets.UTF_8);
+        this.mode = mode;
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.chunkSize = (int) Math.min(chunkSize,
+                Math.max(MIN_CHUNK_SIZE, OUTPUT_BUFFER_BUDGET / (3L * (this.threads + 2))));
+    }
+
+    /**
+     * @param targetPath
+     * @param targetDecoyPath
+     * @throws IOException
+     */
+    public void generate(Path targetPath, Path targetDecoyPath) throws IOException {
+        long start = System.nanoTime();
+        try (FileChannel in = FileChannel.open(targetPath, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(targetDecoyPath, StandardOpenOption.WRITE,
+                     StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long[] boundaries = FastaChunks.splitAtRecords(in, chunkSize);
+            BlockingQueue<ByteBuffer> bufferPool = new ArrayBlockingQueue<>(threads + 1);
+            ArrayDeque<Future<ByteBuffer>> inFlight = new ArrayDeque<>();
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                for (int i = 0; i + 1 < boundaries.length; i++) {
+                    long from = boundaries[i];
+                    long to = boundaries[i + 1];
+                    inFlight.addLast(executor.submit(() -> convertChunk(in, from, to, bufferPool)));
+                    if (inFlight.size() > threads) {
+                        write(inFlight.pollFirst(), out, bufferPool);
+                    }
+                }
+                while (!inFlight.isEmpty()) {
+                    write(inFlight.pollFirst(), out, bufferPool);
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+            log.info("{} => {}: {} chunks, {} s", targetPath, targetDecoyPath, boundaries.length - 1,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) / 1000.0);
+        }
+    }
+
+    private static void write(Future<ByteBuffer> future,
+                              FileChannel out,
+                              BlockingQueue<ByteBuffer> bufferPool) throws IOException {
+        ByteBuffer buffer;
+        try {
+            buffer = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        buffer.clear();
+        bufferPool.offer(buffer);
+    }
+
+    private ByteBuffer convertChunk(FileChannel in,
+                                    long from,
+                                    long to,
+                                    BlockingQueue<ByteBuffer> bufferPool) throws IOException {
+        MappedByteBuffer mapped = in.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+        int length = mapped.limit();
+        // output is at most twice the input plus the decoy prefix and 4 line separators of each record,
+        // a record may have no line separator in input, e.g. a header only at the end of file
+        int recordCount = 0;
+        for (int i = 0; i < length; i++) {
+            if (mapped.get(i) == '>') {
+                recordCount++;
+            }
+        }
+        long capacity = 2L * length + (long) recordCount * (decoyPrefix.length + 4 * LINE_SEPARATOR.length);
+        if (capacity > Integer.MAX_VALUE) {
+            throw new IOException("chunk is too large at " + from);
+        }
+        ByteBuffer output = bufferPool.poll();
+        if (output == null || output.capacity() < capacity) {
+            // with room for a slightly larger chunk, so the buffer is reused rather than reallocated
+            output = ByteBuffer.allocateDirect((int) Math.min(Integer.MAX_VALUE, capacity + capacity / 4));
+        }
+        ByteBuffer slice = mapped.duplicate();
+        byte[] sequence = new byte[1 << 12];
+        byte[] decoy = new byte[1 << 12];
+        int i = 0;
+        // skip lines before the first record
+        while (i < length && mapped.get(i) != '>') {
+            i = lineEnd(mapped, i, length) + 1;
+        }
+        while (i < length) {
+            // header without '>'
+            int headerEnd = lineEnd(mapped, i, length);
+            int headerStart = i + 1;
+            i = headerEnd + 1;
+            if (headerEnd > headerStart && mapped.get(headerEnd - 1) == '\r') {
+                headerEnd--;
+            }
+            // sequence lines
+            int sequenceLength = 0;
+            while (i < length && mapped.get(i) != '>') {
+                int lineEnd = lineEnd(mapped, i, length);
+                int end = lineEnd > i && mapped.get(lineEnd - 1) == '\r' ? lineEnd - 1 : lineEnd;
+                int lineLength = end - i;
+                if (sequenceLength + lineLength > sequence.length) {
+                    sequence = Arrays.copyOf(sequence, Math.max(sequence.length * 2, sequenceLength + lineLength));
+                }
+                slice.limit(end).position(i);
+                slice.get(sequence, sequenceLength, lineLength);
+                sequenceLength += lineLength;
+                i = lineEnd + 1;
+            }
+            if (decoy.length < sequence.length) {
+                decoy = new byte[sequence.length];
+            }
+            makeDecoy(sequence, sequenceLength, decoy, mapped, headerStart, headerEnd);
+            // target
+            slice.limit(headerEnd).position(headerStart);
+            output.put((byte) '>').put(slice).put(LINE_SEPARATOR)
+                    .put(sequence, 0, sequenceLength).put(LINE_SEPARATOR);
+            // decoy
+            slice.limit(headerEnd).position(headerStart);
+            output.put((byte) '>').put(decoyPrefix).put(slice).put(LINE_SEPARATOR)
+                    .put(decoy, 0, sequenceLength).put(LINE_SEPARATOR);
+        }
+        return output;
+    }
+
+    /**
+     * @return index of '\n' from i, length if there is none
+     */
+    private static int lineEnd(ByteBuffer buffer, int i, int length) {
+        while (i < length && buffer.get(i) != '\n') {
+            i++;
+        }
+        return i;
+    }
+
+    private void makeDecoy(byte[] sequence, int length, byte[] decoy,
+                           ByteBuffer header, int headerStart, int headerEnd) {
+        switch (mode) {
+            case REVERSE:
+                for (int i = 0; i < length; i++) {
+                    decoy[i] = sequence[length - 1 - i];
+                }
+                break;
+            case PSEUDO_REVERSE:
+                pseudoReverse(sequence, length, decoy);
+                break;
+            case SHUFFLE:
+                // FNV-1a hash of the protein name
+                long seed = 0xcbf29ce484222325L;
+                for (int i = headerStart; i < headerEnd; i++) {
+                    seed = (seed ^ header.get(i)) * 0x100000001b3L;
+                }
+                shuffle(sequence, length, decoy, new SplittableRandom(seed));
+                break;
+            default:
+                throw new IllegalStateException("unknown decoy mode " + mode);
+        }
+    }
+
+    static void pseudoReverse(byte[] sequence, int length, byte[] decoy) {
+        int start = 0;
+        for (int i = 0; i <= length; i++) {
+            if (i == length || sequence[i] == 'K' || sequence[i] == 'R') {
+                for (int j = start; j < i; j++) {
+                    decoy[j] = sequence[i - 1 - (j - start)];
+                }
+                if (i < length) {
+                    decoy[i] = sequence[i];
+                }
+                start = i + 1;
+            }
+        }
+    }
+
+    static void shuffle(byte[] sequence, int length, byte[] decoy, SplittableRandom random) {
+        System.arraycopy(sequence, 0, decoy, 0, length);
+        int start = 0;
+        for (int i = 0; i <= length; i++) {
+            if (i == length || sequence[i] == 'K' || sequence[i] == 'R') {
+                // Fisher-Yates on [start, i)
+                for (int j = i - 1; j > start; j--) {
+                    int k = start + random.nextInt(j - start + 1);
+                    byte tmp = decoy[j];
+                    decoy[j] = decoy[k];
+                    decoy[k] = tmp;
+                }
+                start = i + 1;
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package phoenixcenter.metaproteomics.fasta;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Split a FASTA file into chunks at record starts('>' at the beginning of a line), so chunks can be
+ * processed in parallel.
+ */
+public final class FastaChunks {
+
+    private FastaChunks() {
+    }
+
+    /**
+     * @param in
+     * @param chunkSize min size of each chunk except the last one
+     * @return offsets of chunks, each chunk starts with a record except the first one
+     * @throws IOException if a chunk is longer than {@link Integer#MAX_VALUE}
+     */
+    public static long[] splitAtRecords(FileChannel in, int chunkSize) throws IOException {
+        long size = in.size();
+        List<Long> boundaries = new ArrayList<>();
+        boundaries.add(0L);
+        long pos = chunkSize;
+        while (pos < size) {
+            long recordStart = nextRecordStart(in, pos, size);
+            if (recordStart >= size) {
+                break;
+            }
+            if (recordStart - boundaries.get(boundaries.size() - 1) > Integer.MAX_VALUE) {
+                throw new IOException("record is too long at " + boundaries.get(boundaries.size() - 1));
+            }
+            boundaries.add(recordStart);
+            pos = recordStart + chunkSize;
+        }
+        if (size - boundaries.get(boundaries.size() - 1) > Integer.MAX_VALUE) {
+            throw new IOException("record is too long at " + boundaries.get(boundaries.size() - 1));
+        }
+        boundaries.add(size);
+        return boundaries.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    /**
+     * @return offset of the first '>' after a line break at or after pos, size if there is none
+     */
+    private static long nextRecordStart(FileChannel in, long pos, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        // the byte before pos tells whether pos is at the beginning of a line
+        long offset = pos - 1;
+        byte prev = 0;
+        while (offset < size) {
+            buffer.clear();
+            int n = in.read(buffer, offset);
+            if (n <= 0) {
+                break;
+            }
+            for (int i = 0; i < n; i++) {
+                byte b = buffer.get(i);
+                if (b == '>' && prev == '\n' && offset + i >= pos) {
+                    return offset + i;
+                }
+                prev = b;
+            }
+            offset += n;
+        }
+        return size;
+    }
+}
@@ -0,0 +1,358 @@
+package phoenixcenter.metaproteomics.fasta;
+
+import lombok.extern.log4j.Log4j2;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Offset index of a FASTA file, like the ".fai" of samtools.
+ * <p>
+ * A protein is identified by its accession, the header up to the first whitespace. The index keeps the
+ * 64-bit hash of accession, the byte offset of record('>') and the byte length of record in primitive
+ * arrays sorted by hash, so a lookup is a binary search and the accession is verified against the FASTA.
+ * The index is saved next to the FASTA file and memory-mapped back, it is rebuilt when the size or the
+ * modification time of FASTA changes.
+ */
+@Log4j2
+public class FastaIndex {
+
+    public static final String INDEX_SUFFIX = ".mpqi";
+
+    private static final int MAGIC = 0x4D504649;
+
+    private static final int VERSION = 1;
+
+    /**
+     * magic, version, size, reserved, FASTA size, FASTA modification time
+     */
+    private static final int HEADER_SIZE = 32;
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final LongBuffer hashes;
+
+    private final LongBuffer offsets;
+
+    private final IntBuffer lengths;
+
+    private final int size;
+
+    private final long fastaSize;
+
+    private final long fastaLastModified;
+
+    private FastaIndex(LongBuffer hashes, LongBuffer offsets, IntBuffer lengths, int size,
+                       long fastaSize, long fastaLastModified) {
+        this.hashes = hashes;
+        this.offsets = offsets;
+        this.lengths = lengths;
+        this.size = size;
+        this.fastaSize = fastaSize;
+        this.fastaLastModified = fastaLastModified;
+    }
+
+    public static Path indexPath(Path fastaPath) {
+        return Paths.get(fastaPath.toString() + INDEX_SUFFIX);
+    }
+
+    /**
+     * Map the index of FASTA if it is up to date, otherwise build and save it.
+     *
+     * @param fastaPath
+     * @return
+     * @throws IOException
+     */
+    public static FastaIndex load(Path fastaPath) throws IOException {
+        Path indexPath = indexPath(fastaPath);
+        if (Files.exists(indexPath)) {
+            FastaIndex index = map(indexPath);
+            if (index.isFresh(fastaPath)) {
+                return index;
+            }
+            log.info("{} is out of date", indexPath);
+        }
+        FastaIndex index = build(fastaPath);
+        index.save(indexPath);
+        return index;
+    }
+
+    /**
+     * Scan FASTA once and index all records on heap
+     *
+     * @param fastaPath
+     * @return
+     * @throws IOException
+     */
+    public static FastaIndex build(Path fastaPath) throws IOException {
+        long start = System.currentTimeMillis();
+        long fastaLastModified = Files.getLastModifiedTime(fastaPath).toMillis();
+        long[] hashArray = new long[1 << 12];
+        long[] offsetArray = new long[1 << 12];
+        int[] lengthArray = new int[1 << 12];
+        int count = 0;
+        long fastaSize;
+        try (FileChannel channel = FileChannel.open(fastaPath, StandardOpenOption.READ)) {
+            fastaSize = channel.size();
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+            long pos = 0L;
+            long recordStart = -1L;
+            long hash = FNV_OFFSET;
+            boolean lineStart = true;
+            boolean inAccession = false;
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    byte b = buffer.get();
+                    if (lineStart && b == '>') {
+                        if (recordStart >= 0) {
+                            if (count == hashArray.length) {
+                                hashArray = Arrays.copyOf(hashArray, count * 2);
+                                offsetArray = Arrays.copyOf(offsetArray, count * 2);
+                                lengthArray = Arrays.copyOf(lengthArray, count * 2);
+                            }
+                            hashArray[count] = hash;
+                            offsetArray[count] = recordStart;
+                            lengthArray[count] = recordLength(recordStart, pos);
+                            count++;
+                        }
+                        recordStart = pos;
+                        hash = FNV_OFFSET;
+                        inAccession = true;
+                    } else if (inAccession) {
+                        if (b == ' ' || b == '\t' || b == '\r' || b == '\n') {
+                            inAccession = false;
+                        } else {
+                            hash = (hash ^ (b & 0xff)) * FNV_PRIME;
+                        }
+                    }
+                    lineStart = b == '\n';
+                    pos++;
+                }
+                buffer.clear();
+            }
+            if (recordStart >= 0) {
+                if (count == hashArray.length) {
+                    hashArray = Arrays.copyOf(hashArray, count + 1);
+                    offsetArray = Arrays.copyOf(offsetArray, count + 1);
+                    lengthArray = Arrays.copyOf(lengthArray, count + 1);
+                }
+                hashArray[count] = hash;
+                offsetArray[count] = recordStart;
+                lengthArray[count] = recordLength(recordStart, pos);
+                count++;
+            }
+        }
+        sort(hashArray, offsetArray, lengthArray, 0, count - 1);
+        log.info("index {} proteins of {} in {} s", count, fastaPath, (System.currentTimeMillis() - start) / 1000.0);
+        return new FastaIndex(LongBuffer.wrap(hashArray, 0, count).slice(),
+                LongBuffer.wrap(offsetArray, 0, count).slice(),
+                IntBuffer.wrap(lengthArray, 0, count).slice(),
+                count, fastaSize, fastaLastModified);
+    }
+
+    private static int recordLength(long recordStart, long recordEnd) throws IOException {
+        if (recordEnd - recordStart > Integer.MAX_VALUE) {
+            throw new IOException("record is too long at " + recordStart);
+        }
+        return (int) (recordEnd - recordStart);
+    }
+
+    /**
+     * Memory-map an index saved by {@link #save(Path)}
+     *
+     * @param indexPath
+     * @return
+     * @throws IOException
+     */
+    public static FastaIndex map(Path indexPath) throws IOException {
+        try (FileChannel channel = FileChannel.open(indexPath, StandardOpenOption.READ)) {
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                throw new IOException("illegal FASTA index file: " + indexPath);
+            }
+            int size = header.getInt(8);
+            long pos = HEADER_SIZE;
+            LongBuffer hashes = channel.map(FileChannel.MapMode.READ_ONLY, pos, size * 8L)
+                    .order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+            pos += size * 8L;
+            LongBuffer offsets = channel.map(FileChannel.MapMode.READ_ONLY, pos, size * 8L)
+                    .order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+            pos += size * 8L;
+            IntBuffer lengths = channel.map(FileChannel.MapMode.READ_ONLY, pos, size * 4L)
+                    .order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+            return new FastaIndex(hashes, offsets, lengths, size, header.getLong(16), header.getLong(24));
+        }
+    }
+
+    /**
+     * Save the index, it can be memory-mapped by {@link #map(Path)}
+     *
+     * @param indexPath
+     * @throws IOException
+     */
+    public void save(Path indexPath) throws IOException {
+        Path tmpPath = Files.createTempFile(indexPath.toAbsolutePath().getParent(), "fasta", ".tmp");
+        try (FileChannel channel = FileChannel.open(tmpPath, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(size).putInt(0)
+                    .putLong(fastaSize).putLong(fastaLastModified);
+            for (int i = 0; i < size; i++) {
+                buffer = ensureRemaining(channel, buffer, 8);
+                buffer.putLong(hashes.get(i));
+            }
+            for (int i = 0; i < size; i++) {
+                buffer = ensureRemaining(channel, buffer, 8);
+                buffer.putLong(offsets.get(i));
+            }
+            for (int i = 0; i < size; i++) {
+                buffer = ensureRemaining(channel, buffer, 4);
+                buffer.putInt(lengths.get(i));
+            }
+            buffer.flip();
+            writeFully(channel, buffer);
+        }
+        Files.move(tmpPath, indexPath, StandardCopyOption.REPLACE_EXISTING);
+        log.debug("save index of {} proteins to {}", size, indexPath);
+    }
+
+    private static ByteBuffer ensureRemaining(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            buffer.flip();
+            writeFully(channel, buffer);
+            buffer.clear();
+        }
+        return buffer;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * @param fastaPath
+     * @return true if the size and modification time of FASTA are the same as when it was indexed
+     * @throws IOException
+     */
+    public boolean isFresh(Path fastaPath) throws IOException {
+        return Files.size(fastaPath) == fastaSize
+                && Files.getLastModifiedTime(fastaPath).toMillis() == fastaLastModified;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param hash
+     * @return the first position of hash, or the position where it would be inserted
+     */
+    int lowerBound(long hash) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (hashes.get(mid) < hash) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    long getHash(int i) {
+        return hashes.get(i);
+    }
+
+    long getOffset(int i) {
+        return offsets.get(i);
+    }
+
+    int getLength(int i) {
+        return lengths.get(i);
+    }
+
+    static long hash(byte[] accession) {
+        long hash = FNV_OFFSET;
+        for (byte b : accession) {
+            hash = (hash ^ (b & 0xff)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    static long hash(String accession) {
+        return hash(accession.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Sort records by hash, then by offset
+     */
+    private static void sort(long[] hashes, long[] offsets, int[] lengths, int low, int high) {
+        while (high - low > 16) {
+            int mid = (low + high) >>> 1;
+            long pivotHash = hashes[mid];
+            long pivotOffset = offsets[mid];
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (compare(hashes[i], offsets[i], pivotHash, pivotOffset) < 0) {
+                    i++;
+                }
+                while (compare(hashes[j], offsets[j], pivotHash, pivotOffset) > 0) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(hashes, offsets, lengths, i++, j--);
+                }
+            }
+            // recurse into the smaller part to bound the stack
+            if (j - low < high - i) {
+                sort(hashes, offsets, lengths, low, j);
+                low = i;
+            } else {
+                sort(hashes, offsets, lengths, i, high);
+                high = j;
+            }
+        }
+        for (int i = low + 1; i <= high; i++) {
+            for (int j = i; j > low && compare(hashes[j - 1], offsets[j - 1], hashes[j], offsets[j]) > 0; j--) {
+                swap(hashes, offsets, lengths, j - 1, j);
+            }
+        }
+    }
+
+    private static int compare(long hash1, long offset1, long hash2, long offset2) {
+        int c = Long.compare(hash1, hash2);
+        return c != 0 ? c : Long.compare(offset1, offset2);
+    }
+
+    private static void swap(long[] hashes, long[] offsets, int[] lengths, int i, int j) {
+        long hash = hashes[i];
+        hashes[i] = hashes[j];
+        hashes[j] = hash;
+        long offset = offsets[i];
+        offsets[i] = offsets[j];
+        offsets[j] = offset;
+        int length = lengths[i];
+        lengths[i] = lengths[j];
+        lengths[j] = length;
+    }
+}
@@ -0,0 +1,190 @@
+package phoenixcenter.metaproteomics.fasta;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Random access to proteins of a FASTA file by accession, through {@link FastaIndex}.
+ * <p>
+ * The FASTA file is memory-mapped in segments which overlap, so a record is read from the segment it starts in
+ * without copying. A record longer than the overlap is read from the channel. It is thread-safe.
+ */
+public class IndexedFastaReader implements Closeable {
+
+    private final FileChannel channel;
+
+    private final FastaIndex index;
+
+    private final MappedByteBuffer[] segments;
+
+    private final int segmentSize;
+
+    private IndexedFastaReader(Path fastaPath, FastaIndex index) throws IOException {
+        this(fastaPath, index, 1 << 30, 1 << 26);
+    }
+
+    /**
+     * @param fastaPath
+     * @param index
+     * @param segmentSize records starting in [i * segmentSize, (i + 1) * segmentSize) are in segment i
+     * @param overlap     bytes mapped after each segment
+     * @throws IOException
+     */
+    IndexedFastaReader(Path fastaPath, FastaIndex index, int segmentSize, int overlap) throws IOException {
+        if ((long) segmentSize + overlap > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("segment is too large: " + segmentSize + " + " + overlap);
+        }
+        this.channel = FileChannel.open(fastaPath, StandardOpenOption.READ);
+        this.index = index;
+        this.segmentSize = segmentSize;
+        long size = channel.size();
+        this.segments = new MappedByteBuffer[(int) ((size + segmentSize - 1) / segmentSize)];
+        for (int i = 0; i < segments.length; i++) {
+            long from = (long) i * segmentSize;
+            segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, from,
+                    Math.min(size - from, (long) segmentSize + overlap));
+        }
+    }
+
+    /**
+     * Open FASTA with its index, the index is built if it is missing or out of date.
+     *
+     * @param fastaPath
+     * @return
+     * @throws IOException
+     */
+    public static IndexedFastaReader open(Path fastaPath) throws IOException {
+        return new IndexedFastaReader(fastaPath, FastaIndex.load(fastaPath));
+    }
+
+    /**
+     * @return count of proteins
+     */
+    public int size() {
+        return index.size();
+    }
+
+    public boolean contains(String accession) throws IOException {
+        return find(accession) != null;
+    }
+
+    /**
+     * @param accession
+     * @return header line without '>', null if accession is absent
+     * @throws IOException
+     */
+    public String getHeader(String accession) throws IOException {
+        ByteBuffer record = find(accession);
+        if (record == null) {
+            return null;
+        }
+        int end = lineEnd(record, 0);
+        if (end > 1 && record.get(end - 1) == '\r') {
+            end--;
+        }
+        return decode(record, 1, end);
+    }
+
+    /**
+     * @param accession
+     * @return residues in one line, null if accession is absent
+     * @throws IOException
+     */
+    public String getSequence(String accession) throws IOException {
+        ByteBuffer record = find(accession);
+        if (record == null) {
+            return null;
+        }
+        int length = record.limit();
+        byte[] sequence = new byte[length];
+        int sequenceLength = 0;
+        for (int i = lineEnd(record, 0) + 1; i < length; i++) {
+            byte b = record.get(i);
+            if (b != '\n' && b != '\r') {
+                sequence[sequenceLength++] = b;
+            }
+        }
+        return new String(sequence, 0, sequenceLength, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * @param accession
+     * @return the record from '>', null if accession is absent
+     * @throws IOException
+     */
+    private ByteBuffer find(String accession) throws IOException {
+        byte[] key = accession.getBytes(StandardCharsets.UTF_8);
+        long hash = FastaIndex.hash(key);
+        for (int i = index.lowerBound(hash); i < index.size() && index.getHash(i) == hash; i++) {
+            ByteBuffer record = read(index.getOffset(i), index.getLength(i));
+            if (matches(record, key)) {
+                return record;
+            }
+        }
+        return null;
+    }
+
+    private ByteBuffer read(long offset, int length) throws IOException {
+        MappedByteBuffer segment = segments[(int) (offset / segmentSize)];
+        int from = (int) (offset % segmentSize);
+        if (from + length <= segment.limit()) {
+            ByteBuffer record = segment.duplicate();
+            record.limit(from + length).position(from);
+            return record.slice();
+        }
+        ByteBuffer record = ByteBuffer.allocate(length);
+        while (record.hasRemaining()) {
+            if (channel.read(record, offset + record.position()) < 0) {
+                throw new IOException("FASTA is truncated at " + (offset + record.position()));
+            }
+        }
+        record.flip();
+        return record;
+    }
+
+    private static boolean matches(ByteBuffer record, byte[] accession) {
+        if (record.limit() <= accession.length) {
+            return false;
+        }
+        for (int i = 0; i < accession.length; i++) {
+            if (record.get(i + 1) != accession[i]) {
+                return false;
+            }
+        }
+        if (record.limit() == accession.length + 1) {
+            return true;
+        }
+        byte b = record.get(accession.length + 1);
+        return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+    }
+
+    /**
+     * @return index of '\n' from i, limit if there is none
+     */
+    private static int lineEnd(ByteBuffer buffer, int i) {
+        int length = buffer.limit();
+        while (i < length && buffer.get(i) != '\n') {
+            i++;
+        }
+        return i;
+    }
+
+    private static String decode(ByteBuffer buffer, int from, int to) {
+        byte[] bytes = new byte[to - from];
+        for (int i = from; i < to; i++) {
+            bytes[i - from] = buffer.get(i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
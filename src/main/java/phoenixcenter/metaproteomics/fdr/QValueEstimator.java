@@ -0,0 +1,149 @@
+package phoenixcenter.metaproteomics.fdr;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Target-decoy q-value estimation, the in-process counterpart of "qvality -d -Y".
+ * <p>
+ * Target and decoy scores are sorted descending, the FDR at score s is (decoys >= s + 1) / (targets >= s),
+ * and the q-value at s is the min FDR at any score not greater than s. Higher score is better.
+ */
+public class QValueEstimator {
+
+    /**
+     * all scores, descending
+     */
+    private final double[] scores;
+
+    private final BitSet decoys;
+
+    private final double[] qValues;
+
+    private QValueEstimator(double[] scores, BitSet decoys, double[] qValues) {
+        this.scores = scores;
+        this.decoys = decoys;
+        this.qValues = qValues;
+    }
+
+    public static QValueEstimator estimate(double[] targetScores, double[] decoyScores) {
+        double[] targets = targetScores.clone();
+        double[] decoyArray = decoyScores.clone();
+        Arrays.sort(targets);
+        Arrays.sort(decoyArray);
+        // merge descending
+        int size = targets.length + decoyArray.length;
+        double[] scores = new double[size];
+        BitSet decoys = new BitSet(size);
+        int t = targets.length - 1;
+        int d = decoyArray.length - 1;
+        for (int i = 0; i < size; i++) {
+            if (d < 0 || (t >= 0 && targets[t] >= decoyArray[d])) {
+                scores[i] = targets[t--];
+            } else {
+                scores[i] = decoyArray[d--];
+                decoys.set(i);
+            }
+        }
+        // FDR of each score, ties share the FDR of their last position
+        double[] qValues = new double[size];
+        int targetCount = 0;
+        int decoyCount = 0;
+        int i = 0;
+        while (i < size) {
+            int j = i;
+            while (j < size && scores[j] == scores[i]) {
+                if (decoys.get(j)) {
+                    decoyCount++;
+                } else {
+                    targetCount++;
+                }
+                j++;
+            }
+            double fdr = targetCount == 0 ? 1.0 : Math.min(1.0, (decoyCount + 1.0) / targetCount);
+            Arrays.fill(qValues, i, j, fdr);
+            i = j;
+        }
+        for (int k = size - 2; k >= 0; k--) {
+            qValues[k] = Math.min(qValues[k], qValues[k + 1]);
+        }
+        return new QValueEstimator(scores, decoys, qValues);
+    }
+
+    /**
+     * @param fdrThreshold
+     * @return min score whose q-value is less than fdrThreshold, -1 if there is none
+     */
+    public double getThreshold(double fdrThreshold) {
+        double threshold = -1.0;
+        for (int i = 0; i < scores.length && qValues[i] < fdrThreshold; i++) {
+            threshold = scores[i];
+        }
+        return threshold;
+    }
+
+    /**
+     * @return all scores, descending
+     */
+    public double[] getScores() {
+        return scores.clone();
+    }
+
+    /**
+     * @return q-values of {@link #getScores()}
+     */
+    public double[] getQValues() {
+        return qValues.clone();
+    }
+
+    public boolean isDecoy(int idx) {
+        return decoys.get(idx);
+    }
+
+    /**
+     * Estimate posterior error probability of {@link #getScores()}. The probability that a PSM is decoy
+     * is fitted as a non-increasing function of score by isotonic regression, and PEP = p / (1 - p) as
+     * each incorrect target is matched by a decoy.
+     *
+     * @return
+     */
+    public double[] estimatePEP() {
+        int size = scores.length;
+        // pool adjacent violators on decoy indicators ordered by score descending, which must not decrease
+        double[] blockMeans = new double[size];
+        int[] blockSizes = new int[size];
+        int blocks = 0;
+        for (int i = 0; i < size; i++) {
+            double mean = decoys.get(i) ? 1.0 : 0.0;
+            int blockSize = 1;
+            while (blocks > 0 && blockMeans[blocks - 1] > mean) {
+                blocks--;
+                mean = (blockMeans[blocks] * blockSizes[blocks] + mean * blockSize) / (blockSizes[blocks] + blockSize);
+                blockSize += blockSizes[blocks];
+            }
+            blockMeans[blocks] = mean;
+            blockSizes[blocks] = blockSize;
+            blocks++;
+        }
+        double[] peps = new double[size];
+        int idx = 0;
+        for (int b = 0; b < blocks; b++) {
+            double p = blockMeans[b];
+            double pep = p >= 0.5 ? 1.0 : p / (1.0 - p);
+            Arrays.fill(peps, idx, idx + blockSizes[b], pep);
+            idx += blockSizes[b];
+        }
+        // tied scores share PEP
+        int i = 0;
+        while (i < size) {
+            int j = i;
+            double max = 0.0;
+            while (j < size && scores[j] == scores[i]) {
+                max = Math.max(max, peps[j++]);
+            }
+            Arrays.fill(peps, i, j, max);
+            i = j;
+        }
+        return peps;
+    }
+}
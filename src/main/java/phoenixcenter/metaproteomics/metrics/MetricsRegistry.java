@@ -0,0 +1,117 @@
+package phoenixcenter.metaproteomics.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Named counters, gauges and timers of a run. Names are dot-separated and start with the stage, e.g.
+ * "mascot2xml.dat.bytes.read", "peptideprophet.psms.parsed" or "taxanalysis.shard".
+ * <p>
+ * Metrics are created on first use and never removed, so stages record without registration.
+ */
+public class MetricsRegistry {
+
+    private static final MetricsRegistry DEFAULT = new MetricsRegistry();
+
+    /**
+     * Value set by stage, e.g. the peak memory of a tool
+     */
+    public static class Gauge {
+
+        private final AtomicLong value = new AtomicLong();
+
+        public void set(long value) {
+            this.value.set(value);
+        }
+
+        /**
+         * Keep the max of current value and value
+         */
+        public void max(long value) {
+            this.value.accumulateAndGet(value, Math::max);
+        }
+
+        public long get() {
+            return value.get();
+        }
+    }
+
+    private final ConcurrentMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, Gauge> gauges = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, DoubleSupplier> derivedGauges = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, Timer> timers = new ConcurrentHashMap<>();
+
+    /**
+     * @return the registry shared by all stages of the JVM
+     */
+    public static MetricsRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    public LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, k -> new LongAdder());
+    }
+
+    public Gauge gauge(String name) {
+        return gauges.computeIfAbsent(name, k -> new Gauge());
+    }
+
+    /**
+     * Register a gauge computed when it is read, e.g. a rate from a counter and a timer. The supplier
+     * registered first is kept.
+     *
+     * @param name
+     * @param supplier
+     */
+    public void gauge(String name, DoubleSupplier supplier) {
+        derivedGauges.putIfAbsent(name, supplier);
+    }
+
+    public Timer timer(String name) {
+        return timers.computeIfAbsent(name, k -> new Timer());
+    }
+
+    /**
+     * @return counter name => value, in order of name
+     */
+    public Map<String, Long> getCounters() {
+        Map<String, Long> snapshot = new TreeMap<>();
+        counters.forEach((name, counter) -> snapshot.put(name, counter.sum()));
+        return snapshot;
+    }
+
+    /**
+     * @return gauge name => value, in order of name
+     */
+    public Map<String, Double> getGauges() {
+        Map<String, Double> snapshot = new TreeMap<>();
+        gauges.forEach((name, gauge) -> snapshot.put(name, (double) gauge.get()));
+        derivedGauges.forEach((name, supplier) -> snapshot.put(name, supplier.getAsDouble()));
+        return snapshot;
+    }
+
+    /**
+     * @return timers in order of name
+     */
+    public Map<String, Timer> getTimers() {
+        return new TreeMap<>(timers);
+    }
+
+    /**
+     * Remove all metrics, e.g. before another command in the same JVM
+     */
+    public void clear() {
+        counters.clear();
+        gauges.clear();
+        derivedGauges.clear();
+        timers.clear();
+    }
+}
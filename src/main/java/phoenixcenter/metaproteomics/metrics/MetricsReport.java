@@ -0,0 +1,145 @@
+package phoenixcenter.metaproteomics.metrics;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+
+/**
+ * Machine-readable report of a command run: a JSON document, and optionally the Prometheus text exposition
+ * format, e.g. for node_exporter's textfile collector.
+ * <p>
+ * JSON: {"command", "start", "end", "wall_seconds", "exit_code", "counters": {name: value},
+ * "gauges": {name: value}, "timers": {name: {"count", "total_ms", "mean_ms", "p50_ms", "p90_ms", "p99_ms",
+ * "max_ms"}}}
+ */
+public class MetricsReport {
+
+    private final String command;
+
+    private final long startMillis;
+
+    private final long endMillis;
+
+    private final int exitCode;
+
+    private final MetricsRegistry registry;
+
+    /**
+     * @param command     name of the command
+     * @param startMillis epoch milliseconds when the command starts
+     * @param endMillis   epoch milliseconds when the command ends
+     * @param exitCode
+     * @param registry
+     */
+    public MetricsReport(String command, long startMillis, long endMillis, int exitCode, MetricsRegistry registry) {
+        this.command = command;
+        this.startMillis = startMillis;
+        this.endMillis = endMillis;
+        this.exitCode = exitCode;
+        this.registry = registry;
+    }
+
+    public ObjectNode toJson() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        ObjectNode root = objectMapper.createObjectNode();
+        root.put("command", command);
+        root.put("start", Instant.ofEpochMilli(startMillis).toString());
+        root.put("end", Instant.ofEpochMilli(endMillis).toString());
+        root.put("wall_seconds", (endMillis - startMillis) / 1000.0);
+        root.put("exit_code", exitCode);
+        ObjectNode counters = root.putObject("counters");
+        registry.getCounters().forEach(counters::put);
+        ObjectNode gauges = root.putObject("gauges");
+        registry.getGauges().forEach(gauges::put);
+        ObjectNode timers = root.putObject("timers");
+        for (Map.Entry<String, Timer> e : registry.getTimers().entrySet()) {
+            Timer timer = e.getValue();
+            ObjectNode node = timers.putObject(e.getKey());
+            node.put("count", timer.getCount());
+            node.put("total_ms", timer.getTotalMillis());
+            node.put("mean_ms", timer.getCount() == 0 ? 0.0 : timer.getTotalMillis() / timer.getCount());
+            node.put("p50_ms", timer.percentileMillis(0.5));
+            node.put("p90_ms", timer.percentileMillis(0.9));
+            node.put("p99_ms", timer.percentileMillis(0.99));
+            node.put("max_ms", timer.getMaxMillis());
+        }
+        return root;
+    }
+
+    /**
+     * Write "{command}-{yyyyMMdd-HHmmss-SSS}.json" in dir, and the ".prom" file of the same name if prometheus
+     * is true
+     *
+     * @param dir        it is created if it does not exist
+     * @param prometheus
+     * @return path of the JSON report
+     * @throws IOException
+     */
+    public Path writeTo(Path dir, boolean prometheus) throws IOException {
+        Files.createDirectories(dir);
+        String baseName = command + "-" + DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS")
+                .format(Instant.ofEpochMilli(startMillis).atZone(ZoneId.systemDefault()));
+        Path jsonPath = dir.resolve(baseName + ".json");
+        writeJson(jsonPath);
+        if (prometheus) {
+            writePrometheus(dir.resolve(baseName + ".prom"));
+        }
+        return jsonPath;
+    }
+
+    public void writeJson(Path path) throws IOException {
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(path.toFile(), toJson());
+    }
+
+    /**
+     * Counters are "mpq_{name}_total", gauges are "mpq_{name}" and timers are summaries "mpq_{name}_seconds",
+     * all labeled by command. Characters illegal in metric names are replaced by '_'.
+     *
+     * @param path
+     * @throws IOException
+     */
+    public void writePrometheus(Path path) throws IOException {
+        String escapedCommand = command.replace("\\", "\\\\").replace("\"", "\\\"");
+        String label = "{command=\"" + escapedCommand + "\"}";
+        String quantileLabel = "{command=\"" + escapedCommand + "\",quantile=\"";
+        try (BufferedWriter bw = Files.newBufferedWriter(path)) {
+            bw.write("# TYPE mpq_wall_seconds gauge\n");
+            bw.write("mpq_wall_seconds" + label + " " + (endMillis - startMillis) / 1000.0 + "\n");
+            bw.write("# TYPE mpq_exit_code gauge\n");
+            bw.write("mpq_exit_code" + label + " " + exitCode + "\n");
+            for (Map.Entry<String, Long> e : registry.getCounters().entrySet()) {
+                String name = metricName(e.getKey()) + "_total";
+                bw.write("# TYPE " + name + " counter\n");
+                bw.write(name + label + " " + e.getValue() + "\n");
+            }
+            for (Map.Entry<String, Double> e : registry.getGauges().entrySet()) {
+                String name = metricName(e.getKey());
+                bw.write("# TYPE " + name + " gauge\n");
+                bw.write(name + label + " " + e.getValue() + "\n");
+            }
+            for (Map.Entry<String, Timer> e : registry.getTimers().entrySet()) {
+                String name = metricName(e.getKey()) + "_seconds";
+                Timer timer = e.getValue();
+                bw.write("# TYPE " + name + " summary\n");
+                for (double quantile : new double[]{0.5, 0.9, 0.99}) {
+                    bw.write(name + quantileLabel + quantile + "\"} " + timer.percentileMillis(quantile) / 1000.0 + "\n");
+                }
+                bw.write(name + "_sum" + label + " " + timer.getTotalMillis() / 1000.0 + "\n");
+                bw.write(name + "_count" + label + " " + timer.getCount() + "\n");
+            }
+        }
+    }
+
+    static String metricName(String name) {
+        return "mpq_" + name.replaceAll("[^a-zA-Z0-9_]", "_");
+    }
+}
@@ -0,0 +1,107 @@
+package phoenixcenter.metaproteomics.pepxml;
+
+import phoenixcenter.metaproteomics.entity.PSM;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Top hits of a pepXML kept in compact primitive arrays: peptide id (index into a peptide dictionary),
+ * probability, and a bit set of decoys. It lets the FDR threshold and the PSM counts be computed from
+ * one read of the file.
+ */
+public class PSMBuffer {
+
+    private final Map<String, Integer> peptide2Id = new HashMap<>();
+
+    private final List<String> peptides = new ArrayList<>();
+
+    private final BitSet decoys = new BitSet();
+
+    private int[] peptideIds = new int[1 << 12];
+
+    private double[] probabilities = new double[1 << 12];
+
+    private int size;
+
+    private int decoyCount;
+
+    /**
+     * @param pepxmlPath
+     * @param decoyPrefix a hit is decoy if all of its proteins start with the prefix
+     * @return
+     * @throws IOException
+     */
+    public static PSMBuffer read(Path pepxmlPath, String decoyPrefix) throws IOException {
+        PSMBuffer buffer = new PSMBuffer();
+        try (SpectrumQueryReader reader = SpectrumQueryReader.open(pepxmlPath)) {
+            while (reader.hasNext()) {
+                PSM psm = reader.next();
+                buffer.add(psm.getPeptide(), psm.isDecoy(decoyPrefix), psm.getProbability());
+            }
+        }
+        return buffer;
+    }
+
+    public void add(String peptide, boolean decoy, double probability) {
+        if (size == peptideIds.length) {
+            peptideIds = Arrays.copyOf(peptideIds, size * 2);
+            probabilities = Arrays.copyOf(probabilities, size * 2);
+        }
+        Integer peptideId = peptide2Id.get(peptide);
+        if (peptideId == null) {
+            peptideId = peptides.size();
+            peptides.add(peptide);
+            peptide2Id.put(peptide, peptideId);
+        }
+        peptideIds[size] = peptideId;
+        probabilities[size] = probability;
+        if (decoy) {
+            decoys.set(size);
+            decoyCount++;
+        }
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param decoy
+     * @return probabilities of decoy(or target) PSMs in file order
+     */
+    public double[] getProbabilities(boolean decoy) {
+        double[] probs = new double[decoy ? decoyCount : size - decoyCount];
+        int idx = 0;
+        for (int i = 0; i < size; i++) {
+            if (decoys.get(i) == decoy) {
+                probs[idx++] = probabilities[i];
+            }
+        }
+        return probs;
+    }
+
+    /**
+     * Count target PSMs whose probability is not less than threshold
+     *
+     * @param probThreshold
+     * @return peptide => PSM count
+     */
+    public Map<String, Integer> countPSMs(double probThreshold) {
+        int[] counts = new int[peptides.size()];
+        for (int i = 0; i < size; i++) {
+            if (!decoys.get(i) && probabilities[i] >= probThreshold) {
+                counts[peptideIds[i]]++;
+            }
+        }
+        Map<String, Integer> peptide2PSMCount = new HashMap<>();
+        for (int id = 0; id < counts.length; id++) {
+            if (counts[id] > 0) {
+                peptide2PSMCount.put(peptides.get(id), counts[id]);
+            }
+        }
+        return peptide2PSMCount;
+    }
+}
@@ -0,0 +1,91 @@
+package phoenixcenter.metaproteomics.pepxml;
+
+import lombok.extern.log4j.Log4j2;
+import phoenixcenter.metaproteomics.util.ChannelWriter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+/**
+ * Filter spectrum queries of pepXML by PeptideProphet probability in one streaming pass.
+ * <p>
+ * Bytes outside spectrum_query are copied verbatim. A spectrum_query(with its indentation and line
+ * separator) is copied if the PeptideProphet probability of its top hit is not less than the threshold,
+ * queries without probability are dropped. Only the bytes of the current query are buffered.
+ *
+ * @see SpectrumQuerySplitter
+ */
+@Log4j2
+public class PepXmlFilter {
+
+    private static final byte[] HIT_START = "<search_hit".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] HIT_END = "</search_hit>".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] PP_RESULT = "<peptideprophet_result".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] PROBABILITY = " probability=\"".getBytes(StandardCharsets.US_ASCII);
+
+    private final int bufferSize;
+
+    public PepXmlFilter() {
+        this(1 << 20);
+    }
+
+    /**
+     * @param bufferSize size of the read and write buffers
+     */
+    public PepXmlFilter(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * @param pepxmlPath
+     * @param minProbability
+     * @param outputPath
+     * @return count of spectrum queries kept
+     * @throws IOException
+     */
+    public long filter(Path pepxmlPath, double minProbability, Path outputPath) throws IOException {
+        long total = 0L;
+        long kept = 0L;
+        try (SpectrumQuerySplitter splitter = new SpectrumQuerySplitter(pepxmlPath, bufferSize);
+             ChannelWriter writer = new ChannelWriter(outputPath, bufferSize)) {
+            while (splitter.next()) {
+                byte[] buf = splitter.getBuffer();
+                if (splitter.isQuery()) {
+                    total++;
+                    if (topHitProbability(buf, splitter.getFrom(), splitter.getTo()) < minProbability) {
+                        continue;
+                    }
+                    kept++;
+                }
+                writer.write(buf, splitter.getFrom(), splitter.getTo());
+            }
+        }
+        log.info("{}: {} of {} spectrum queries are kept when probability >= {}",
+                pepxmlPath, kept, total, minProbability);
+        return kept;
+    }
+
+    /**
+     * @return probability of the first search_hit in [from, to), NaN if it is absent
+     */
+    static double topHitProbability(byte[] buf, int from, int to) {
+        int hitStart = SpectrumQuerySplitter.indexOf(buf, from, to, HIT_START);
+        if (hitStart == -1) {
+            return Double.NaN;
+        }
+        int hitEnd = SpectrumQuerySplitter.indexOf(buf, hitStart, to, HIT_END);
+        if (hitEnd == -1) {
+            hitEnd = to;
+        }
+        int resultStart = SpectrumQuerySplitter.indexOf(buf, hitStart, hitEnd, PP_RESULT);
+        if (resultStart == -1) {
+            return Double.NaN;
+        }
+        String probability = SpectrumQuerySplitter.attributeValue(buf, resultStart, hitEnd, PROBABILITY);
+        return probability == null ? Double.NaN : Double.parseDouble(probability);
+    }
+}
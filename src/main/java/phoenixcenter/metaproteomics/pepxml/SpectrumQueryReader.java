@@ -0,0 +1,163 @@
+package phoenixcenter.metaproteomics.pepxml;
+
+import phoenixcenter.metaproteomics.entity.PSM;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Streaming reader of spectrum_query in pepXML.
+ * <p>
+ * Only the top hit(the first search_hit of the first search_result) is read: peptide, protein, alternative
+ * proteins and PeptideProphet probability. Memory does not grow with file size. Queries without search hit
+ * are skipped.
+ * <p>
+ * By default only the queries of the first msms_run_summary are read, as the PSM counting did with
+ * {@code getMsmsRunSummary().get(0)} of the JAXB model.
+ */
+public class SpectrumQueryReader implements Iterator<PSM>, Closeable {
+
+    private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+
+    static {
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    private final InputStream is;
+
+    private final XMLStreamReader reader;
+
+    private final boolean allRuns;
+
+    private PSM next;
+
+    /**
+     * the first run summary is read and allRuns is false
+     */
+    private boolean done = false;
+
+    public SpectrumQueryReader(InputStream is) throws IOException {
+        this(is, false);
+    }
+
+    /**
+     * @param is
+     * @param allRuns read the queries of all msms_run_summary elements instead of only the first one
+     * @throws IOException
+     */
+    public SpectrumQueryReader(InputStream is, boolean allRuns) throws IOException {
+        this.is = is;
+        this.allRuns = allRuns;
+        try {
+            this.reader = XML_INPUT_FACTORY.createXMLStreamReader(is);
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    public static SpectrumQueryReader open(Path pepxmlPath) throws IOException {
+        return open(pepxmlPath, false);
+    }
+
+    /**
+     * @see #SpectrumQueryReader(InputStream, boolean)
+     */
+    public static SpectrumQueryReader open(Path pepxmlPath, boolean allRuns) throws IOException {
+        return new SpectrumQueryReader(new BufferedInputStream(Files.newInputStream(pepxmlPath), 1 << 16), allRuns);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null && !done) {
+            try {
+                next = readSpectrumQuery();
+            } catch (XMLStreamException e) {
+                throw new IllegalStateException("illegal pepXML", e);
+            }
+        }
+        return next != null;
+    }
+
+    @Override
+    public PSM next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        PSM psm = next;
+        next = null;
+        return psm;
+    }
+
+    /**
+     * @return the top hit of next spectrum query, null if there is no more query
+     * @throws XMLStreamException
+     */
+    private PSM readSpectrumQuery() throws XMLStreamException {
+        PSM psm = null;
+        // 0: outside of top hit, 1: in top hit, 2: after top hit
+        int hitState = 0;
+        boolean inQuery = false;
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                String name = reader.getLocalName();
+                if (name.equals("spectrum_query")) {
+                    inQuery = true;
+                    hitState = 0;
+                    psm = null;
+                } else if (!inQuery) {
+                    continue;
+                } else if (name.equals("search_hit")) {
+                    if (hitState == 0) {
+                        hitState = 1;
+                        psm = new PSM();
+                        psm.setPeptide(reader.getAttributeValue(null, "peptide"));
+                        psm.getProteins().add(reader.getAttributeValue(null, "protein"));
+                    }
+                } else if (hitState == 1) {
+                    if (name.equals("alternative_protein")) {
+                        psm.getProteins().add(reader.getAttributeValue(null, "protein"));
+                    } else if (name.equals("peptideprophet_result") && Double.isNaN(psm.getProbability())) {
+                        psm.setProbability(Double.parseDouble(reader.getAttributeValue(null, "probability")));
+                    }
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                String name = reader.getLocalName();
+                if (name.equals("search_hit") && hitState == 1) {
+                    hitState = 2;
+                } else if (name.equals("spectrum_query")) {
+                    inQuery = false;
+                    if (psm != null) {
+                        return psm;
+                    }
+                } else if (name.equals("msms_run_summary") && !allRuns) {
+                    done = true;
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            reader.close();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        } finally {
+            is.close();
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package phoenixcenter.metaproteomics.pepxml;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Split the bytes of pepXML into segments: a whole spectrum_query(with its indentation and line separator)
+ * or a piece of the text between queries.
+ * <p>
+ * The file is read through a sliding window, and only the bytes of the current query are kept in memory.
+ * A segment is valid until the next call of {@link #next()}.
+ */
+class SpectrumQuerySplitter implements Closeable {
+
+    private static final byte[] QUERY_START = "<spectrum_query".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] QUERY_END = "</spectrum_query>".getBytes(StandardCharsets.US_ASCII);
+
+    private final Path path;
+
+    private final FileChannel channel;
+
+    private byte[] buf;
+
+    /**
+     * start of bytes not consumed
+     */
+    private int start;
+
+    private int limit;
+
+    private boolean eof;
+
+    private boolean inQuery;
+
+    /**
+     * where to continue searching, relative to start
+     */
+    private int searchFrom;
+
+    private int segmentFrom;
+
+    private int segmentTo;
+
+    private boolean query;
+
+    SpectrumQuerySplitter(Path path, int bufferSize) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.buf = new byte[Math.max(bufferSize, QUERY_END.length + 2)];
+        fill();
+    }
+
+    /**
+     * @return false if there is no more segment
+     * @throws IOException
+     */
+    boolean next() throws IOException {
+        while (true) {
+            if (!inQuery) {
+                int idx = indexOf(buf, start + searchFrom, limit, QUERY_START);
+                if (idx == -1) {
+                    if (eof) {
+                        return start < limit && emit(limit, false);
+                    }
+                    // keep the bytes which may be the head of next query
+                    int safe = skipIndentBackward(Math.max(start, limit - QUERY_START.length + 1));
+                    searchFrom = 0;
+                    if (safe > start) {
+                        return emit(safe, false);
+                    }
+                    fill();
+                    continue;
+                }
+                int queryStart = skipIndentBackward(idx);
+                searchFrom = idx + QUERY_START.length - queryStart;
+                inQuery = true;
+                if (queryStart > start) {
+                    return emit(queryStart, false);
+                }
+            } else {
+                int idx = indexOf(buf, start + searchFrom, limit, QUERY_END);
+                int end = idx + QUERY_END.length;
+                // the line separator after query must be in window too
+                if (idx == -1 || (end + 2 > limit && !eof)) {
+                    if (eof) {
+                        throw new IOException("unclosed spectrum_query in " + path);
+                    }
+                    searchFrom = idx == -1
+                            ? Math.max(searchFrom, limit - start - QUERY_END.length + 1)
+                            : idx - start;
+                    fill();
+                    continue;
+                }
+                if (end < limit && buf[end] == '\r') {
+                    end++;
+                }
+                if (end < limit && buf[end] == '\n') {
+                    end++;
+                }
+                inQuery = false;
+                searchFrom = 0;
+                return emit(end, true);
+            }
+        }
+    }
+
+    private boolean emit(int to, boolean query) {
+        this.segmentFrom = start;
+        this.segmentTo = to;
+        this.query = query;
+        start = to;
+        return true;
+    }
+
+    /**
+     * Move unconsumed bytes to the head and read more, the window grows if it is full.
+     */
+    private void fill() throws IOException {
+        if (start > 0) {
+            System.arraycopy(buf, start, buf, 0, limit - start);
+            limit -= start;
+            start = 0;
+        }
+        if (limit == buf.length) {
+            buf = Arrays.copyOf(buf, buf.length * 2);
+        }
+        int n = channel.read(ByteBuffer.wrap(buf, limit, buf.length - limit));
+        if (n == -1) {
+            eof = true;
+        } else {
+            limit += n;
+        }
+    }
+
+    private int skipIndentBackward(int idx) {
+        while (idx > start && (buf[idx - 1] == ' ' || buf[idx - 1] == '\t')) {
+            idx--;
+        }
+        return idx;
+    }
+
+    boolean isQuery() {
+        return query;
+    }
+
+    byte[] getBuffer() {
+        return buf;
+    }
+
+    int getFrom() {
+        return segmentFrom;
+    }
+
+    int getTo() {
+        return segmentTo;
+    }
+
+    /**
+     * @return a copy of the current segment
+     */
+    byte[] copySegment() {
+        return Arrays.copyOfRange(buf, segmentFrom, segmentTo);
+    }
+
+    static int indexOf(byte[] buf, int from, int to, byte[] pattern) {
+        byte first = pattern[0];
+        int max = to - pattern.length;
+        for (int i = from; i <= max; i++) {
+            if (buf[i] != first) {
+                continue;
+            }
+            int j = 1;
+            while (j < pattern.length && buf[i + j] == pattern[j]) {
+                j++;
+            }
+            if (j == pattern.length) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param buf
+     * @param from
+     * @param to
+     * @param name attribute name
+     * @return the value of the first attribute with name in [from, to), null if it is absent
+     */
+    static String attributeValue(byte[] buf, int from, int to, byte[] name) {
+        int valueStart = indexOf(buf, from, to, name);
+        if (valueStart == -1) {
+            return null;
+        }
+        valueStart += name.length;
+        int valueEnd = valueStart;
+        while (valueEnd < to && buf[valueEnd] != '"') {
+            valueEnd++;
+        }
+        return new String(buf, valueStart, valueEnd - valueStart, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,319 @@
+package phoenixcenter.metaproteomics.pepxml;
+
+import lombok.extern.log4j.Log4j2;
+import phoenixcenter.metaproteomics.util.IntIntHashMap;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Merge the pepXML of target search and the pepXML of decoy search(e.g. the "auto decoy" search of Mascot)
+ * into one pepXML. The query with the higher ionscore is kept when a spectrum matches both target and decoy,
+ * and decoy proteins are renamed with the decoy prefix.
+ * <p>
+ * It is a merge-join over query ids(start_scan): the file whose last query id is smaller is read next, and
+ * an unmatched query waits in a bounded lookahead buffer of its file(a ring of queries and an int map from
+ * query id to sequence). It is written without match when the other file has read lookahead more queries,
+ * or when the buffer is full, so queries out of order within the lookahead are still matched and memory
+ * does not grow with file size. Queries are kept as raw bytes.
+ */
+@Log4j2
+public class TargetDecoyMerger {
+
+    private static final byte[] START_SCAN = " start_scan=\"".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] IONSCORE = "ionscore\"".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] VALUE = " value=\"".getBytes(StandardCharsets.US_ASCII);
+
+    // it is a bug of Mascot2XML: if massdiff = -0.0000 in dat file, the value will be recorded as +-0.0000 in pepxml
+    private static final byte[] BAD_MASSDIFF = "massdiff=\"+-".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] MASSDIFF = "massdiff=\"+".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] PROTEIN = "protein=\"".getBytes(StandardCharsets.US_ASCII);
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final byte[] decoyProtein;
+
+    private final int lookahead;
+
+    public TargetDecoyMerger(String decoyPrefix) {
+        this(decoyPrefix, 1 << 12);
+    }
+
+    /**
+     * @param decoyPrefix prefix added to the proteins of decoy pepXML
+     * @param lookahead   max count of unmatched queries buffered for each file
+     */
+    public TargetDecoyMerger(String decoyPrefix, int lookahead) {
+        this.decoyProtein = ("protein=\"" + decoyPrefix).getBytes(StandardCharsets.UTF_8);
+        this.lookahead = Math.max(1, lookahead);
+    }
+
+    /**
+     * The header and footer of the result come from target pepXML, and the base names of target and decoy
+     * are replaced by baseName.
+     *
+     * @param targetPath
+     * @param targetBaseName
+     * @param decoyPath
+     * @param decoyBaseName
+     * @param baseName
+     * @param outputPath
+     * @throws IOException
+     */
+    public void merge(Path targetPath, String targetBaseName,
+                      Path decoyPath, String decoyBaseName,
+                      String baseName, Path outputPath) throws IOException {
+        byte[] baseNameBytes = baseName.getBytes(StandardCharsets.UTF_8);
+        long matched = 0L;
+        try (Side target = new Side(targetPath, targetBaseName.getBytes(StandardCharsets.UTF_8), baseNameBytes,
+                null, lookahead);
+             Side decoy = new Side(decoyPath, decoyBaseName.getBytes(StandardCharsets.UTF_8), baseNameBytes,
+                     decoyProtein, lookahead);
+             OutputStream os = new BufferedOutputStream(Files.newOutputStream(outputPath), BUFFER_SIZE)) {
+            ByteArrayOutputStream text = new ByteArrayOutputStream();
+            boolean headerWritten = false;
+            while (!target.exhausted || !decoy.exhausted) {
+                Side side = decoy.exhausted || (!target.exhausted && target.lastQid <= decoy.lastQid)
+                        ? target : decoy;
+                Side other = side == target ? decoy : target;
+                Query query = side.read(side == target ? text : null);
+                if (side == target && text.size() > 0 && (query != null || !headerWritten)) {
+                    // header before the first query, or text between queries
+                    byte[] textBytes = text.toByteArray();
+                    os.write(headerWritten
+                            ? textBytes
+                            : replace(textBytes, target.baseName, baseNameBytes, true));
+                    headerWritten = true;
+                    text.reset();
+                }
+                if (query != null) {
+                    Query otherQuery = other.take(query.qid);
+                    if (otherQuery != null) {
+                        os.write(ionscore(query.bytes) >= ionscore(otherQuery.bytes) ? query.bytes : otherQuery.bytes);
+                        matched++;
+                    } else if (other.exhausted || !side.add(query, other.count)) {
+                        os.write(query.bytes);
+                    }
+                }
+                side.release(os, other.count);
+                other.release(os, side.count);
+            }
+            target.release(os, Long.MAX_VALUE);
+            decoy.release(os, Long.MAX_VALUE);
+            // footer
+            text.writeTo(os);
+            log.info("merge {} and {}: {} target queries, {} decoy queries, {} matched",
+                    targetPath, decoyPath, target.count, decoy.count, matched);
+        }
+    }
+
+    private static class Query {
+
+        private final int qid;
+
+        private final byte[] bytes;
+
+        /**
+         * count of queries read from the other file when it was buffered
+         */
+        private long stamp;
+
+        Query(int qid, byte[] bytes) {
+            this.qid = qid;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * One input pepXML and its unmatched queries.
+     * <p>
+     * Unmatched queries are kept in a ring indexed by sequence, and a matched query leaves an empty slot
+     * which is skipped on release.
+     */
+    private static class Side implements Closeable {
+
+        private final SpectrumQuerySplitter splitter;
+
+        private final byte[] baseName;
+
+        private final byte[] newBaseName;
+
+        /**
+         * replacement of protein=", null if proteins are not renamed
+         */
+        private final byte[] protein;
+
+        private final int lookahead;
+
+        private final Query[] ring;
+
+        private final int mask;
+
+        private final IntIntHashMap qid2Seq;
+
+        /**
+         * sequence of the first buffered query
+         */
+        private int headSeq;
+
+        /**
+         * sequence of the next buffered query
+         */
+        private int tailSeq;
+
+        private int lastQid = Integer.MIN_VALUE;
+
+        private long count;
+
+        private boolean exhausted;
+
+        Side(Path path, byte[] baseName, byte[] newBaseName, byte[] protein, int lookahead) throws IOException {
+            this.splitter = new SpectrumQuerySplitter(path, BUFFER_SIZE);
+            this.baseName = baseName;
+            this.newBaseName = newBaseName;
+            this.protein = protein;
+            this.lookahead = lookahead;
+            this.ring = new Query[Integer.highestOneBit(lookahead) << 1];
+            this.mask = ring.length - 1;
+            this.qid2Seq = new IntIntHashMap(lookahead);
+        }
+
+        /**
+         * @param text where the text before the query is appended, it is skipped if text is null
+         * @return the next query, null if there is no more query
+         * @throws IOException
+         */
+        Query read(ByteArrayOutputStream text) throws IOException {
+            while (splitter.next()) {
+                byte[] buf = splitter.getBuffer();
+                int from = splitter.getFrom();
+                int to = splitter.getTo();
+                if (!splitter.isQuery()) {
+                    if (text != null) {
+                        text.write(buf, from, to - from);
+                    }
+                    continue;
+                }
+                String startScan = SpectrumQuerySplitter.attributeValue(buf, from, to, START_SCAN);
+                if (startScan == null) {
+                    throw new IOException("spectrum_query without start_scan: "
+                            + new String(buf, from, to - from, StandardCharsets.UTF_8));
+                }
+                byte[] bytes = replace(splitter.copySegment(), baseName, newBaseName, false);
+                bytes = replace(bytes, BAD_MASSDIFF, MASSDIFF, true);
+                if (protein != null) {
+                    bytes = replace(bytes, PROTEIN, protein, true);
+                }
+                count++;
+                lastQid = Integer.parseInt(startScan);
+                return new Query(lastQid, bytes);
+            }
+            exhausted = true;
+            return null;
+        }
+
+        /**
+         * @param query
+         * @param stamp count of queries read from the other file
+         * @return false if a query with the same id is buffered
+         */
+        boolean add(Query query, long stamp) {
+            if (qid2Seq.containsKey(query.qid)) {
+                return false;
+            }
+            query.stamp = stamp;
+            ring[tailSeq & mask] = query;
+            qid2Seq.put(query.qid, tailSeq++);
+            return true;
+        }
+
+        /**
+         * @param qid
+         * @return the buffered query with qid, null if it is absent
+         */
+        Query take(int qid) {
+            int seq = qid2Seq.get(qid, -1);
+            if (seq == -1) {
+                return null;
+            }
+            qid2Seq.remove(qid);
+            Query query = ring[seq & mask];
+            ring[seq & mask] = null;
+            return query;
+        }
+
+        /**
+         * Write the buffered queries which cannot be matched any more: the other file has read lookahead
+         * queries since they were buffered, or the buffer is full.
+         *
+         * @param os
+         * @param otherCount count of queries read from the other file
+         * @throws IOException
+         */
+        void release(OutputStream os, long otherCount) throws IOException {
+            while (headSeq < tailSeq) {
+                Query query = ring[headSeq & mask];
+                if (query != null) {
+                    if (tailSeq - headSeq <= lookahead && otherCount - query.stamp < lookahead) {
+                        return;
+                    }
+                    qid2Seq.remove(query.qid);
+                    os.write(query.bytes);
+                    ring[headSeq & mask] = null;
+                }
+                headSeq++;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            splitter.close();
+        }
+    }
+
+    /**
+     * @return ionscore of the first search_hit, NaN if it is absent
+     */
+    private static double ionscore(byte[] query) {
+        int idx = SpectrumQuerySplitter.indexOf(query, 0, query.length, IONSCORE);
+        if (idx == -1) {
+            return Double.NaN;
+        }
+        String value = SpectrumQuerySplitter.attributeValue(query, idx, query.length, VALUE);
+        return value == null ? Double.NaN : Double.parseDouble(value);
+    }
+
+    /**
+     * @param src
+     * @param target
+     * @param replacement
+     * @param all         replace all occurrences or the first one
+     * @return src itself if target is absent
+     */
+    static byte[] replace(byte[] src, byte[] target, byte[] replacement, boolean all) {
+        int idx = SpectrumQuerySplitter.indexOf(src, 0, src.length, target);
+        if (idx == -1) {
+            return src;
+        }
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(src.length + replacement.length * 4);
+        int from = 0;
+        while (idx != -1) {
+            baos.write(src, from, idx - from);
+            baos.write(replacement, 0, replacement.length);
+            from = idx + target.length;
+            idx = all ? SpectrumQuerySplitter.indexOf(src, from, src.length, target) : -1;
+        }
+        baos.write(src, from, src.length - from);
+        return baos.toByteArray();
+    }
+}
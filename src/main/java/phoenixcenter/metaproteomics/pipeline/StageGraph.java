@@ -0,0 +1,162 @@
+package phoenixcenter.metaproteomics.pipeline;
+
+import lombok.extern.log4j.Log4j2;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * A DAG of stages. A stage is submitted to its pool as soon as all its dependencies complete, so per-file
+ * stages fan out as far as the pool allows and fan-in stages start once their last input is ready.
+ * A failed stage fails all stages depending on it, independent stages keep running.
+ * <p>
+ * Each pool is a fixed thread pool whose size limits the parallelism of the stages in it.
+ */
+@Log4j2
+public class StageGraph implements Closeable {
+
+    @FunctionalInterface
+    public interface Task<T> {
+        T call() throws Exception;
+    }
+
+    public static final class Stage<T> {
+
+        private final String name;
+
+        private final CompletableFuture<T> future;
+
+        private Stage(String name, CompletableFuture<T> future) {
+            this.name = name;
+            this.future = future;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return result of the stage, only called by the stages depending on it, or after {@link #await()}
+         */
+        public T get() {
+            if (!future.isDone()) {
+                throw new IllegalStateException("stage " + name + " is not completed");
+            }
+            return future.join();
+        }
+    }
+
+    private final Map<String, ExecutorService> pools = new LinkedHashMap<>();
+
+    private final List<Stage<?>> stages = new ArrayList<>();
+
+    /**
+     * @param name
+     * @param parallelism max count of stages run concurrently in pool, the count of cores if it is not positive
+     * @return this
+     */
+    public StageGraph pool(String name, int parallelism) {
+        if (pools.containsKey(name)) {
+            throw new IllegalArgumentException("duplicate pool: " + name);
+        }
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        pools.put(name, Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "stage-" + name);
+            thread.setDaemon(true);
+            return thread;
+        }));
+        return this;
+    }
+
+    /**
+     * Add a stage run in pool after all dependencies complete
+     *
+     * @param name
+     * @param pool
+     * @param task         results of dependencies are got by {@link Stage#get()}
+     * @param dependencies
+     * @return
+     */
+    public <T> Stage<T> stage(String name, String pool, Task<T> task, Collection<? extends Stage<?>> dependencies) {
+        ExecutorService executor = pools.get(pool);
+        if (executor == null) {
+            throw new IllegalArgumentException("unknown pool: " + pool);
+        }
+        long addTime = System.nanoTime();
+        CompletableFuture<?>[] depFutures = new CompletableFuture<?>[dependencies.size()];
+        int i = 0;
+        for (Stage<?> dependency : dependencies) {
+            depFutures[i++] = dependency.future;
+        }
+        CompletableFuture<T> future = CompletableFuture.allOf(depFutures).thenApplyAsync(v -> {
+            long start = System.nanoTime();
+            log.debug("stage {} starts after waiting {} s", name,
+                    TimeUnit.NANOSECONDS.toMillis(start - addTime) / 1000.0);
+            try {
+                T result = task.call();
+                log.info("stage {} completes in {} s", name,
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) / 1000.0);
+                return result;
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+        Stage<T> stage = new Stage<>(name, future);
+        stages.add(stage);
+        return stage;
+    }
+
+    /**
+     * @see #stage(String, String, Task, Collection)
+     */
+    public <T> Stage<T> stage(String name, String pool, Task<T> task, Stage<?>... dependencies) {
+        return stage(name, pool, task, Arrays.asList(dependencies));
+    }
+
+    /**
+     * Wait for all stages. If any stage fails, the others are still waited for, then the failure of the
+     * stage added first is thrown.
+     *
+     * @throws IOException
+     */
+    public void await() throws IOException {
+        Throwable failure = null;
+        String failedStage = null;
+        for (Stage<?> stage : stages) {
+            try {
+                stage.future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                // stages depending on a failed stage fail with the same cause
+                if (failure == null) {
+                    failure = cause;
+                    failedStage = stage.name;
+                    log.error("stage " + stage.name + " fails", cause);
+                } else if (cause != failure) {
+                    log.error("stage " + stage.name + " fails", cause);
+                }
+            }
+        }
+        if (failure == null) {
+            return;
+        }
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        } else if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        }
+        throw new IOException("stage " + failedStage + " fails", failure);
+    }
+
+    @Override
+    public void close() {
+        for (ExecutorService executor : pools.values()) {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package phoenixcenter.metaproteomics.taxonomy;
+
+import lombok.extern.log4j.Log4j2;
+import phoenixcenter.metaproteomics.entity.UnipeptLCA;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.function.Consumer;
+
+/**
+ * Compute peptide LCA locally from a NCBI taxonomy and a protein FASTA, so that pept2lca can run without Unipept.
+ * <p>
+ * Like Unipept, a peptide containing missed cleavages is only searched when missed cleavage handling is enabled,
+ * and the LCA is always a taxon with a lineage rank or root.
+ */
+@Log4j2
+public class LocalLCAEngine {
+
+    private final NcbiTaxonomy taxonomy;
+
+    private final Path fastaPath;
+
+    private final ProteinDigester digester;
+
+    /**
+     * index[0] does not equate I and L, index[1] does
+     */
+    private final PeptideProteinIndex[] indexes = new PeptideProteinIndex[2];
+
+    /**
+     * count of threads building index
+     */
+    private final int threads;
+
+    public LocalLCAEngine(NcbiTaxonomy taxonomy, Path fastaPath, ProteinDigester digester) {
+        this(taxonomy, fastaPath, digester, 0);
+    }
+
+    /**
+     * @param taxonomy
+     * @param fastaPath
+     * @param digester
+     * @param threads   count of threads building the peptide index, the count of cores if it is not positive
+     */
+    public LocalLCAEngine(NcbiTaxonomy taxonomy, Path fastaPath, ProteinDigester digester, int threads) {
+        this.taxonomy = taxonomy;
+        this.fastaPath = fastaPath;
+        this.digester = digester;
+        this.threads = threads;
+    }
+
+    private synchronized PeptideProteinIndex getIndex(boolean equalIL) throws IOException {
+        int i = equalIL ? 1 : 0;
+        if (indexes[i] == null) {
+            indexes[i] = PeptideProteinIndex.load(fastaPath, digester, equalIL, threads);
+        }
+        return indexes[i];
+    }
+
+    /**
+     * Compute LCA of peptides, the peptides not found in FASTA are not consumed.
+     *
+     * @param peptides
+     * @param equalIL
+     * @param missedCleavage
+     * @param consumer
+     * @throws IOException
+     */
+    public void peptide2LCA(Collection<String> peptides,
+                            boolean equalIL,
+                            boolean missedCleavage,
+                            Consumer<UnipeptLCA> consumer) throws IOException {
+        PeptideProteinIndex index = getIndex(equalIL);
+        for (String peptide : peptides) {
+            if (!missedCleavage && digester.countMissedCleavages(peptide) > 0) {
+                continue;
+            }
+            int[] taxa = index.getTaxa(peptide);
+            if (taxa == null) {
+                continue;
+            }
+            int lcaId = -1;
+            for (int tid : taxa) {
+                if (taxonomy.contains(tid)) {
+                    lcaId = lcaId == -1 ? tid : taxonomy.lca(lcaId, tid);
+                }
+            }
+            if (lcaId == -1) {
+                continue;
+            }
+            consumer.accept(createLCA(peptide, taxonomy.rankedAncestor(lcaId)));
+        }
+    }
+
+    private UnipeptLCA createLCA(String peptide, int lcaId) {
+        UnipeptLCA unipeptLCA = new UnipeptLCA();
+        unipeptLCA.setSequence(peptide);
+        unipeptLCA.setLcaId(lcaId);
+        unipeptLCA.setLcaName(taxonomy.getName(lcaId));
+        unipeptLCA.setLcaRank(taxonomy.getRank(lcaId).getRankName());
+        int[] lineageIds = taxonomy.lineage(lcaId);
+        String[] lineageNames = new String[lineageIds.length];
+        for (int i = 0; i < lineageIds.length; i++) {
+            if (lineageIds[i] != 0) {
+                lineageNames[i] = taxonomy.getName(lineageIds[i]);
+            }
+        }
+        unipeptLCA.setLineageIds(lineageIds);
+        unipeptLCA.setLineageNames(lineageNames);
+        return unipeptLCA;
+    }
+}
@@ -0,0 +1,241 @@
+package phoenixcenter.metaproteomics.taxonomy;
+
+import lombok.extern.log4j.Log4j2;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * NCBI taxonomy loaded from taxdump(nodes.dmp and names.dmp).
+ * <p>
+ * Taxa are kept in a {@link TaxonomyStore} indexed by taxon id, which is saved next to the dump as
+ * "taxonomy.mpq" and memory-mapped by later runs. The lowest common ancestor is computed by binary
+ * lifting in O(log depth).
+ */
+@Log4j2
+public class NcbiTaxonomy {
+
+    public static final int ROOT_ID = 1;
+
+    public static final String STORE_FILE_NAME = "taxonomy.mpq";
+
+    private static final String FIELD_SEPARATOR = "\t|\t";
+
+    private final TaxonomyStore store;
+
+    private int[] depths;
+
+    /**
+     * ancestors[j][tid] is the 2^j-th ancestor of taxon tid
+     */
+    private int[][] ancestors;
+
+    private NcbiTaxonomy(TaxonomyStore store) {
+        this.store = store;
+        buildAncestors();
+    }
+
+    /**
+     * Load taxonomy from the directory containing nodes.dmp and names.dmp. The parsed taxonomy is saved
+     * as {@link #STORE_FILE_NAME} in the same directory, and it is memory-mapped if it is newer than dump.
+     *
+     * @param taxdumpDir
+     * @return
+     * @throws IOException
+     */
+    public static NcbiTaxonomy load(Path taxdumpDir) throws IOException {
+        Path nodesPath = taxdumpDir.resolve("nodes.dmp");
+        Path namesPath = taxdumpDir.resolve("names.dmp");
+        Path storePath = taxdumpDir.resolve(STORE_FILE_NAME);
+        if (Files.exists(storePath)
+                && Files.getLastModifiedTime(storePath).compareTo(Files.getLastModifiedTime(nodesPath)) > 0
+                && Files.getLastModifiedTime(storePath).compareTo(Files.getLastModifiedTime(namesPath)) > 0) {
+            return new NcbiTaxonomy(TaxonomyStore.map(storePath));
+        }
+        NcbiTaxonomy taxonomy = load(nodesPath, namesPath);
+        if (Files.isWritable(taxdumpDir)) {
+            taxonomy.store.save(storePath);
+        }
+        return taxonomy;
+    }
+
+    public static NcbiTaxonomy load(Path nodesPath, Path namesPath) throws IOException {
+        TaxonomyStore store = TaxonomyStore.create();
+        // tid => [parent id, rank ordinal]
+        int[] parentIds = new int[1 << 16];
+        byte[] rankOrdinals = new byte[1 << 16];
+        int maxTid = 0;
+        try (BufferedReader br = Files.newBufferedReader(nodesPath, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                int end1 = line.indexOf(FIELD_SEPARATOR);
+                int end2 = line.indexOf(FIELD_SEPARATOR, end1 + 3);
+                int end3 = line.indexOf(FIELD_SEPARATOR, end2 + 3);
+                if (end3 == -1) {
+                    continue;
+                }
+                int tid = Integer.parseInt(line.substring(0, end1));
+                if (tid >= parentIds.length) {
+                    int newLength = Math.max(tid + 1, parentIds.length * 2);
+                    parentIds = Arrays.copyOf(parentIds, newLength);
+                    rankOrdinals = Arrays.copyOf(rankOrdinals, newLength);
+                }
+                parentIds[tid] = Integer.parseInt(line.substring(end1 + 3, end2));
+                rankOrdinals[tid] = (byte) TaxonRank.fromName(line.substring(end2 + 3, end3)).ordinal();
+                maxTid = Math.max(maxTid, tid);
+            }
+        }
+        try (BufferedReader br = Files.newBufferedReader(namesPath, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                if (!line.contains("scientific name")) {
+                    continue;
+                }
+                int end1 = line.indexOf(FIELD_SEPARATOR);
+                int end2 = line.indexOf(FIELD_SEPARATOR, end1 + 3);
+                int tid = Integer.parseInt(line.substring(0, end1));
+                if (tid <= maxTid && parentIds[tid] != 0) {
+                    int parentId = parentIds[tid];
+                    // orphan nodes are attached to root
+                    if (parentId > maxTid || parentIds[parentId] == 0) {
+                        parentId = ROOT_ID;
+                    }
+                    store.put(tid, parentId, TaxonRank.valueOf(rankOrdinals[tid]), line.substring(end1 + 3, end2));
+                }
+            }
+        }
+        log.info("load {} taxa from {}", store.size(), nodesPath);
+        return new NcbiTaxonomy(store);
+    }
+
+    private void buildAncestors() {
+        int capacity = store.getCapacity();
+        int[] parents = new int[capacity];
+        for (int tid = 1; tid < capacity; tid++) {
+            // the parent of root is itself, taxa without parent are attached to root
+            parents[tid] = store.contains(tid) && tid != ROOT_ID && store.contains(store.getParent(tid))
+                    ? store.getParent(tid) : ROOT_ID;
+        }
+        parents[0] = ROOT_ID;
+        parents[ROOT_ID] = ROOT_ID;
+        // depth of taxon, compute iteratively since taxa are not sorted by topology
+        depths = new int[capacity];
+        Arrays.fill(depths, -1);
+        depths[ROOT_ID] = 0;
+        int[] stack = new int[64];
+        int maxDepth = 0;
+        for (int tid = 0; tid < capacity; tid++) {
+            int top = 0;
+            int curr = tid;
+            while (depths[curr] == -1) {
+                if (top == stack.length) {
+                    stack = Arrays.copyOf(stack, top * 2);
+                }
+                stack[top++] = curr;
+                curr = parents[curr];
+            }
+            while (top > 0) {
+                int child = stack[--top];
+                depths[child] = depths[parents[child]] + 1;
+                maxDepth = Math.max(maxDepth, depths[child]);
+            }
+        }
+        int levels = 32 - Integer.numberOfLeadingZeros(Math.max(1, maxDepth));
+        ancestors = new int[levels][];
+        ancestors[0] = parents;
+        for (int j = 1; j < levels; j++) {
+            int[] prev = ancestors[j - 1];
+            int[] curr = new int[capacity];
+            for (int tid = 0; tid < capacity; tid++) {
+                curr[tid] = prev[prev[tid]];
+            }
+            ancestors[j] = curr;
+        }
+    }
+
+    public boolean contains(int tid) {
+        return store.contains(tid);
+    }
+
+    public int getParent(int tid) {
+        return ancestors[0][tid];
+    }
+
+    public TaxonRank getRank(int tid) {
+        return store.getRank(tid);
+    }
+
+    public String getName(int tid) {
+        return store.getName(tid);
+    }
+
+    public int size() {
+        return store.size();
+    }
+
+    /**
+     * The lowest common ancestor of two taxa
+     *
+     * @param tid1
+     * @param tid2
+     * @return
+     */
+    public int lca(int tid1, int tid2) {
+        if (depths[tid1] < depths[tid2]) {
+            int tmp = tid1;
+            tid1 = tid2;
+            tid2 = tmp;
+        }
+        int diff = depths[tid1] - depths[tid2];
+        for (int j = 0; diff > 0; j++, diff >>= 1) {
+            if ((diff & 1) == 1) {
+                tid1 = ancestors[j][tid1];
+            }
+        }
+        if (tid1 == tid2) {
+            return tid1;
+        }
+        for (int j = ancestors.length - 1; j >= 0; j--) {
+            if (ancestors[j][tid1] != ancestors[j][tid2]) {
+                tid1 = ancestors[j][tid1];
+                tid2 = ancestors[j][tid2];
+            }
+        }
+        return ancestors[0][tid1];
+    }
+
+    /**
+     * The nearest ancestor(including itself) whose rank is in lineage, or root.
+     *
+     * @param tid
+     * @return
+     */
+    public int rankedAncestor(int tid) {
+        while (tid != ROOT_ID && !store.getRank(tid).inLineage()) {
+            tid = ancestors[0][tid];
+        }
+        return tid;
+    }
+
+    /**
+     * Lineage of taxon, the taxon id at each rank from superkingdom to forma, 0 if the rank is not assigned.
+     *
+     * @param tid
+     * @return
+     */
+    public int[] lineage(int tid) {
+        int[] lineage = new int[TaxonRank.LINEAGE_SIZE];
+        while (tid != ROOT_ID) {
+            TaxonRank rank = store.getRank(tid);
+            if (rank.inLineage()) {
+                lineage[rank.ordinal()] = tid;
+            }
+            tid = ancestors[0][tid];
+        }
+        return lineage;
+    }
+}
@@ -0,0 +1,882 @@
+package phoenixcenter.metaproteomics.taxonomy;
+
+import lombok.extern.log4j.Log4j2;
+import phoenixcenter.metaproteomics.fasta.FastaChunks;
+import phoenixcenter.metaproteomics.taxonomy.ProteinDigester.Enzyme;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Peptide => protein posting index built by digesting a protein FASTA. Proteins are identified by their
+ * ordinal in FASTA, and the taxon of each protein is parsed from header, e.g. "OX=562" of UniProt and
+ * "TaxID=562" of UniRef.
+ * <p>
+ * A peptide is encoded to a long key: up to 12 residues are packed into 5 bits each, longer peptides are
+ * keyed by a 63-bit hash with the sign bit set. Keys are sorted, and the proteins of the i-th key are
+ * postings[postingStarts[i], postingStarts[i + 1]) in ascending order, so a lookup is a binary search.
+ * <p>
+ * FASTA is split into chunks which are digested and sorted in parallel, each sorted chunk is spilled to a
+ * temporary file as a run, then the runs are merged into the index file which is memory-mapped. Heap use is
+ * bounded by the chunks being digested rather than the posting count, and counts and offsets are long, so
+ * the index is limited by disk: about 12 bytes per posting for runs while building, plus 4 bytes per posting
+ * and 16 bytes per peptide for the index. Only the protein count must fit in an int.
+ */
+@Log4j2
+public class PeptideProteinIndex {
+
+    public static final String INDEX_SUFFIX = ".mpqp";
+
+    private static final Pattern TAXON_PATTERN = Pattern.compile("(?:OX|TaxID|taxid|tax_id)=(\\d+)");
+
+    private static final int MAGIC = 0x4D505050;
+
+    private static final int VERSION = 2;
+
+    /**
+     * magic, version, key count(long), posting count(long), protein count, enzyme, max missed cleavages,
+     * min length, max length, equalIL, FASTA size, FASTA modification time
+     */
+    private static final int HEADER_SIZE = 64;
+
+    /**
+     * (key, protein) pair of a run
+     */
+    private static final int RECORD_SIZE = 12;
+
+    /**
+     * (key, posting start) pair of the index, the last one is (0, posting count)
+     */
+    private static final int ENTRY_SIZE = 16;
+
+    /**
+     * total size of the read buffers of runs while merging
+     */
+    private static final int MERGE_BUFFER_SIZE = 1 << 26;
+
+    private static final int MAX_PACKED_LENGTH = 12;
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final Section postings;
+
+    private final Section proteinTaxa;
+
+    private final Section entries;
+
+    private final long keyCount;
+
+    private final long postingCount;
+
+    private final int proteinCount;
+
+    private final Enzyme enzyme;
+
+    private final int maxMissedCleavages;
+
+    private final int minLength;
+
+    private final int maxLength;
+
+    private final boolean equalIL;
+
+    private final long fastaSize;
+
+    private final long fastaLastModified;
+
+    private PeptideProteinIndex(Section postings, Section proteinTaxa, Section entries,
+                                long keyCount, long postingCount, int proteinCount,
+                                Enzyme enzyme, int maxMissedCleavages, int minLength, int maxLength, boolean equalIL,
+                                long fastaSize, long fastaLastModified) {
+        this.postings = postings;
+        this.proteinTaxa = proteinTaxa;
+        this.entries = entries;
+        this.keyCount = keyCount;
+        this.postingCount = postingCount;
+        this.proteinCount = proteinCount;
+        this.enzyme = enzyme;
+        this.maxMissedCleavages = maxMissedCleavages;
+        this.minLength = minLength;
+        this.maxLength = maxLength;
+        this.equalIL = equalIL;
+        this.fastaSize = fastaSize;
+        this.fastaLastModified = fastaLastModified;
+    }
+
+    /**
+     * @return the index file of FASTA digested by digester, e.g. db.fasta.trypsin.2.5-50.il.mpqp
+     */
+    public static Path indexPath(Path fastaPath, ProteinDigester digester, boolean equalIL) {
+        return Paths.get(fastaPath.toString() + "." + digester.getEnzyme().name().toLowerCase()
+                + "." + digester.getMaxMissedCleavages()
+                + "." + digester.getMinLength() + "-" + digester.getMaxLength()
+                + (equalIL ? ".il" : "") + INDEX_SUFFIX);
+    }
+
+    /**
+     * Map the index of FASTA if it is up to date, otherwise build it next to FASTA, or in a temporary file
+     * if the directory of FASTA is not writable.
+     *
+     * @param fastaPath
+     * @param digester
+     * @param equalIL   whether I and L are equated
+     * @param threads   the count of cores if it is not positive
+     * @return
+     * @throws IOException
+     */
+    public static PeptideProteinIndex load(Path fastaPath, ProteinDigester digester, boolean equalIL,
+                                           int threads) throws IOException {
+        Path indexPath = indexPath(fastaPath, digester, equalIL);
+        if (Files.exists(indexPath)) {
+            try {
+                PeptideProteinIndex index = map(indexPath);
+                if (index.matches(fastaPath, digester, equalIL)) {
+                    return index;
+                }
+                log.info("{} is out of date", indexPath);
+            } catch (IOException e) {
+                log.info("{} is not usable: {}", indexPath, e.getMessage());
+            }
+        }
+        Path dir = indexPath.toAbsolutePath().getParent();
+        Path tmpPath;
+        try {
+            tmpPath = Files.createTempFile(dir, "peptide", ".tmp");
+        } catch (IOException e) {
+            log.warn("cannot save peptide index to {}: {}", indexPath, e.getMessage());
+            return build(fastaPath, digester, equalIL, threads);
+        }
+        try {
+            write(fastaPath, digester, equalIL, threads, 1 << 24, tmpPath);
+            Files.move(tmpPath, indexPath, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmpPath);
+        }
+        return map(indexPath);
+    }
+
+    /**
+     * Digest all proteins in FASTA and index peptides in a temporary file.
+     *
+     * @param fastaPath
+     * @param digester
+     * @param equalIL   whether I and L are equated
+     * @param threads   the count of cores if it is not positive
+     * @return
+     * @throws IOException
+     */
+    public static PeptideProteinIndex build(Path fastaPath, ProteinDigester digester, boolean equalIL,
+                                            int threads) throws IOException {
+        return build(fastaPath, digester, equalIL, threads, 1 << 24);
+    }
+
+    static PeptideProteinIndex build(Path fastaPath, ProteinDigester digester, boolean equalIL,
+                                     int threads, int chunkSize) throws IOException {
+        Path tmpPath = Files.createTempFile("peptide", INDEX_SUFFIX);
+        try {
+            write(fastaPath, digester, equalIL, threads, chunkSize, tmpPath);
+            return map(tmpPath);
+        } finally {
+            // the mapping outlives the file where a mapped file can be deleted
+            try {
+                Files.delete(tmpPath);
+            } catch (IOException e) {
+                tmpPath.toFile().deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * Write the index of FASTA to indexPath, runs are spilled to a temporary file in the same directory.
+     */
+    private static void write(Path fastaPath, ProteinDigester digester, boolean equalIL,
+                              int threads, int chunkSize, Path indexPath) throws IOException {
+        long start = System.currentTimeMillis();
+        long fastaLastModified = Files.getLastModifiedTime(fastaPath).toMillis();
+        Path spillPath = Files.createTempFile(indexPath.toAbsolutePath().getParent(), "peptide", ".runs");
+        try (FileChannel spill = FileChannel.open(spillPath, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.DELETE_ON_CLOSE)) {
+            List<Run> runs = new ArrayList<>();
+            long fastaSize;
+            try (FileChannel in = FileChannel.open(fastaPath, StandardOpenOption.READ)) {
+                fastaSize = in.size();
+                long[] boundaries = FastaChunks.splitAtRecords(in, chunkSize);
+                AtomicLong spillSize = new AtomicLong();
+                ExecutorService executor = Executors.newFixedThreadPool(
+                        threads > 0 ? threads : Runtime.getRuntime().availableProcessors());
+                try {
+                    List<Future<Run>> futures = new ArrayList<>();
+                    for (int i = 0; i + 1 < boundaries.length; i++) {
+                        long from = boundaries[i];
+                        long to = boundaries[i + 1];
+                        futures.add(executor.submit(() ->
+                                spill(digestChunk(in, from, to, digester, equalIL), spill, spillSize)));
+                    }
+                    for (Future<Run> future : futures) {
+                        runs.add(get(future));
+                    }
+                } finally {
+                    executor.shutdownNow();
+                }
+            }
+            long proteinCount = 0L;
+            for (Run run : runs) {
+                run.proteinBase = (int) proteinCount;
+                proteinCount += run.proteinCount;
+            }
+            if (proteinCount > Integer.MAX_VALUE) {
+                throw new IOException("too many proteins to index: " + proteinCount + " > " + Integer.MAX_VALUE);
+            }
+            try (FileChannel out = FileChannel.open(indexPath, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                long keyCount = merge(runs, spill, out);
+                long postingCount = 0L;
+                for (Run run : runs) {
+                    postingCount += run.size;
+                }
+                SectionWriter header = new SectionWriter(out, 0L, HEADER_SIZE);
+                header.putInt(MAGIC);
+                header.putInt(VERSION);
+                header.putLong(keyCount);
+                header.putLong(postingCount);
+                header.putInt((int) proteinCount);
+                header.putInt(digester.getEnzyme().ordinal());
+                header.putInt(digester.getMaxMissedCleavages());
+                header.putInt(digester.getMinLength());
+                header.putInt(digester.getMaxLength());
+                header.putInt(equalIL ? 1 : 0);
+                header.putLong(fastaSize);
+                header.putLong(fastaLastModified);
+                header.flush();
+                log.info("index {} peptides({} postings) of {} proteins from {} in {} s",
+                        keyCount, postingCount, proteinCount, fastaPath,
+                        (System.currentTimeMillis() - start) / 1000.0);
+            }
+        } finally {
+            Files.deleteIfExists(spillPath);
+        }
+    }
+
+    private static Run get(Future<Run> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Sorted and distinct (key, protein) pairs of a chunk, proteins are numbered from 0 in the chunk
+     */
+    private static class Chunk {
+
+        private long[] keys = new long[1 << 12];
+
+        private int[] proteins = new int[1 << 12];
+
+        private int size;
+
+        private int[] taxa = new int[1 << 8];
+
+        private int proteinCount;
+
+        private void addProtein(int taxId) {
+            if (proteinCount == taxa.length) {
+                taxa = Arrays.copyOf(taxa, proteinCount * 2);
+            }
+            taxa[proteinCount++] = taxId;
+        }
+
+        private void add(long key) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                proteins = Arrays.copyOf(proteins, size * 2);
+            }
+            keys[size] = key;
+            proteins[size++] = proteinCount - 1;
+        }
+
+        private void sortDistinct() {
+            sort(keys, proteins, 0, size - 1);
+            int n = 0;
+            for (int i = 0; i < size; i++) {
+                if (n == 0 || keys[i] != keys[n - 1] || proteins[i] != proteins[n - 1]) {
+                    keys[n] = keys[i];
+                    proteins[n++] = proteins[i];
+                }
+            }
+            size = n;
+        }
+    }
+
+    /**
+     * A sorted chunk spilled as (key, protein) records followed by the taxa of its proteins
+     */
+    private static class Run {
+
+        private final long position;
+
+        private final long size;
+
+        private final int proteinCount;
+
+        private int proteinBase;
+
+        private ByteBuffer buffer;
+
+        private long read;
+
+        private long key;
+
+        private int protein;
+
+        private Run(long position, long size, int proteinCount) {
+            this.position = position;
+            this.size = size;
+            this.proteinCount = proteinCount;
+        }
+
+        /**
+         * Read the next record into key and protein
+         *
+         * @return false if the run is exhausted
+         */
+        private boolean next(FileChannel spill) throws IOException {
+            if (read == size) {
+                buffer = null;
+                return false;
+            }
+            if (!buffer.hasRemaining()) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), (size - read) * RECORD_SIZE));
+                readFully(spill, buffer, position + read * RECORD_SIZE);
+                buffer.flip();
+            }
+            key = buffer.getLong();
+            protein = buffer.getInt();
+            read++;
+            return true;
+        }
+    }
+
+    private static Run spill(Chunk chunk, FileChannel spill, AtomicLong spillSize) throws IOException {
+        long position = spillSize.getAndAdd(chunk.size * (long) RECORD_SIZE + chunk.proteinCount * 4L);
+        SectionWriter writer = new SectionWriter(spill, position, 1 << 16);
+        for (int i = 0; i < chunk.size; i++) {
+            writer.putLong(chunk.keys[i]);
+            writer.putInt(chunk.proteins[i]);
+        }
+        for (int i = 0; i < chunk.proteinCount; i++) {
+            writer.putInt(chunk.taxa[i]);
+        }
+        writer.flush();
+        return new Run(position, chunk.size, chunk.proteinCount);
+    }
+
+    private static Chunk digestChunk(FileChannel in, long from, long to,
+                                     ProteinDigester digester, boolean equalIL) throws IOException {
+        MappedByteBuffer mapped = in.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+        int length = mapped.limit();
+        Chunk chunk = new Chunk();
+        byte[] sequence = new byte[1 << 12];
+        byte[] header = new byte[1 << 8];
+        int i = 0;
+        // skip lines before the first record
+        while (i < length && mapped.get(i) != '>') {
+            i = lineEnd(mapped, i, length) + 1;
+        }
+        while (i < length) {
+            int headerEnd = lineEnd(mapped, i, length);
+            int headerLength = headerEnd - i - 1;
+            if (headerLength > header.length) {
+                header = new byte[headerLength];
+            }
+            for (int j = 0; j < headerLength; j++) {
+                header[j] = mapped.get(i + 1 + j);
+            }
+            Matcher matcher = TAXON_PATTERN.matcher(new String(header, 0, headerLength, StandardCharsets.US_ASCII));
+            chunk.addProtein(matcher.find() ? Integer.parseInt(matcher.group(1)) : -1);
+            i = headerEnd + 1;
+            int sequenceLength = 0;
+            while (i < length && mapped.get(i) != '>') {
+                int lineEnd = lineEnd(mapped, i, length);
+                if (sequenceLength + lineEnd - i > sequence.length) {
+                    sequence = Arrays.copyOf(sequence, Math.max(sequence.length * 2, sequenceLength + lineEnd - i));
+                }
+                for (int j = i; j < lineEnd; j++) {
+                    byte b = mapped.get(j);
+                    if (b >= 'a' && b <= 'z') {
+                        sequence[sequenceLength++] = (byte) (b - 32);
+                    } else if (b > ' ') {
+                        sequence[sequenceLength++] = b;
+                    }
+                }
+                i = lineEnd + 1;
+            }
+            byte[] residues = sequence;
+            digester.digest(residues, sequenceLength, (s, e) -> chunk.add(key(residues, s, e, equalIL)));
+        }
+        chunk.sortDistinct();
+        return chunk;
+    }
+
+    /**
+     * @return index of '\n' from i, length if there is none
+     */
+    private static int lineEnd(ByteBuffer buffer, int i, int length) {
+        while (i < length && buffer.get(i) != '\n') {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Merge sorted runs into the index file after the header, proteins of the i-th run are numbered after
+     * those of the previous runs
+     *
+     * @return count of distinct keys
+     */
+    private static long merge(List<Run> runs, FileChannel spill, FileChannel out) throws IOException {
+        long postingCount = 0L;
+        for (Run run : runs) {
+            postingCount += run.size;
+        }
+        long position = HEADER_SIZE + postingCount * 4L;
+        for (Run run : runs) {
+            transfer(spill, run.position + run.size * RECORD_SIZE, run.proteinCount * 4L, out, position);
+            position += run.proteinCount * 4L;
+        }
+        SectionWriter postings = new SectionWriter(out, HEADER_SIZE, 1 << 20);
+        SectionWriter entries = new SectionWriter(out, position, 1 << 20);
+        int k = runs.size();
+        int bufferSize = Math.max(1 << 12, Math.min(1 << 20, MERGE_BUFFER_SIZE / Math.max(k, 1)))
+                / RECORD_SIZE * RECORD_SIZE;
+        // min-heap of runs by (current key, run), so postings of a key are in ascending protein order
+        int[] heap = new int[k];
+        int heapSize = 0;
+        for (int r = 0; r < k; r++) {
+            Run run = runs.get(r);
+            run.buffer = ByteBuffer.allocate(bufferSize).order(ByteOrder.LITTLE_ENDIAN);
+            run.buffer.limit(0);
+            if (run.next(spill)) {
+                heap[heapSize++] = r;
+                siftUp(heap, heapSize - 1, runs);
+            }
+        }
+        long keyCount = 0L;
+        long postingIndex = 0L;
+        long lastKey = 0L;
+        while (heapSize > 0) {
+            Run run = runs.get(heap[0]);
+            if (keyCount == 0 || lastKey != run.key) {
+                lastKey = run.key;
+                entries.putLong(lastKey);
+                entries.putLong(postingIndex);
+                keyCount++;
+            }
+            postings.putInt(run.proteinBase + run.protein);
+            postingIndex++;
+            if (!run.next(spill)) {
+                heap[0] = heap[--heapSize];
+            }
+            if (heapSize > 0) {
+                siftDown(heap, heapSize, runs);
+            }
+        }
+        entries.putLong(0L);
+        entries.putLong(postingIndex);
+        postings.flush();
+        entries.flush();
+        return keyCount;
+    }
+
+    private static boolean less(int r1, int r2, List<Run> runs) {
+        int cmp = Long.compare(runs.get(r1).key, runs.get(r2).key);
+        return cmp != 0 ? cmp < 0 : r1 < r2;
+    }
+
+    private static void siftUp(int[] heap, int i, List<Run> runs) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!less(heap[i], heap[parent], runs)) {
+                break;
+            }
+            int tmp = heap[i];
+            heap[i] = heap[parent];
+            heap[parent] = tmp;
+            i = parent;
+        }
+    }
+
+    private static void siftDown(int[] heap, int heapSize, List<Run> runs) {
+        int i = 0;
+        while (true) {
+            int min = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+            if (left < heapSize && less(heap[left], heap[min], runs)) {
+                min = left;
+            }
+            if (right < heapSize && less(heap[right], heap[min], runs)) {
+                min = right;
+            }
+            if (min == i) {
+                return;
+            }
+            int tmp = heap[i];
+            heap[i] = heap[min];
+            heap[min] = tmp;
+            i = min;
+        }
+    }
+
+    /**
+     * Little-endian buffered writer from a position of channel, positional writes are safe across threads
+     */
+    private static class SectionWriter {
+
+        private final FileChannel channel;
+
+        private final ByteBuffer buffer;
+
+        private long position;
+
+        private SectionWriter(FileChannel channel, long position, int bufferSize) {
+            this.channel = channel;
+            this.position = position;
+            this.buffer = ByteBuffer.allocate(bufferSize).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        private void putInt(int value) throws IOException {
+            if (buffer.remaining() < 4) {
+                flush();
+            }
+            buffer.putInt(value);
+        }
+
+        private void putLong(long value) throws IOException {
+            if (buffer.remaining() < 8) {
+                flush();
+            }
+            buffer.putLong(value);
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Little-endian section of the index file mapped in segments of 1 GB, so it may exceed 2 GB
+     */
+    private static class Section {
+
+        private static final int SEGMENT_SHIFT = 30;
+
+        private static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1;
+
+        private final ByteBuffer[] segments;
+
+        private Section(FileChannel channel, long position, long size) throws IOException {
+            segments = new ByteBuffer[(int) ((size + SEGMENT_MASK) >>> SEGMENT_SHIFT)];
+            for (int s = 0; s < segments.length; s++) {
+                long offset = (long) s << SEGMENT_SHIFT;
+                segments[s] = channel.map(FileChannel.MapMode.READ_ONLY, position + offset,
+                        Math.min(SEGMENT_MASK + 1, size - offset)).order(ByteOrder.LITTLE_ENDIAN);
+            }
+        }
+
+        /**
+         * @param offset in bytes, a multiple of 4
+         */
+        private int getInt(long offset) {
+            return segments[(int) (offset >>> SEGMENT_SHIFT)].getInt((int) (offset & SEGMENT_MASK));
+        }
+
+        /**
+         * @param offset in bytes, a multiple of 8
+         */
+        private long getLong(long offset) {
+            return segments[(int) (offset >>> SEGMENT_SHIFT)].getLong((int) (offset & SEGMENT_MASK));
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position);
+            if (n < 0) {
+                throw new EOFException();
+            }
+            position += n;
+        }
+    }
+
+    private static void transfer(FileChannel from, long position, long count,
+                                 FileChannel to, long toPosition) throws IOException {
+        to.position(toPosition);
+        while (count > 0) {
+            long n = from.transferTo(position, count, to);
+            if (n <= 0) {
+                throw new EOFException();
+            }
+            position += n;
+            count -= n;
+        }
+    }
+
+    /**
+     * Memory-map an index written by {@link #load(Path, ProteinDigester, boolean, int)}
+     *
+     * @param indexPath
+     * @return
+     * @throws IOException
+     */
+    public static PeptideProteinIndex map(Path indexPath) throws IOException {
+        try (FileChannel channel = FileChannel.open(indexPath, StandardOpenOption.READ)) {
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                throw new IOException("illegal peptide index file: " + indexPath);
+            }
+            long keyCount = header.getLong(8);
+            long postingCount = header.getLong(16);
+            int proteinCount = header.getInt(24);
+            long pos = HEADER_SIZE;
+            Section postings = new Section(channel, pos, postingCount * 4L);
+            pos += postingCount * 4L;
+            Section proteinTaxa = new Section(channel, pos, proteinCount * 4L);
+            pos += proteinCount * 4L;
+            Section entries = new Section(channel, pos, (keyCount + 1) * ENTRY_SIZE);
+            return new PeptideProteinIndex(postings, proteinTaxa, entries,
+                    keyCount, postingCount, proteinCount,
+                    Enzyme.values()[header.getInt(28)], header.getInt(32), header.getInt(36), header.getInt(40),
+                    header.getInt(44) != 0, header.getLong(48), header.getLong(56));
+        }
+    }
+
+    /**
+     * @return true if the index is built from the current FASTA with the same digestion
+     * @throws IOException
+     */
+    public boolean matches(Path fastaPath, ProteinDigester digester, boolean equalIL) throws IOException {
+        return enzyme == digester.getEnzyme()
+                && maxMissedCleavages == digester.getMaxMissedCleavages()
+                && minLength == digester.getMinLength()
+                && maxLength == digester.getMaxLength()
+                && this.equalIL == equalIL
+                && Files.size(fastaPath) == fastaSize
+                && Files.getLastModifiedTime(fastaPath).toMillis() == fastaLastModified;
+    }
+
+    /**
+     * @param peptide
+     * @return ascending ids(ordinal in FASTA) of proteins containing peptide, null if no protein contains it
+     */
+    public int[] getProteins(String peptide) {
+        long i = indexOf(peptide);
+        if (i < 0) {
+            return null;
+        }
+        long from = postingStart(i);
+        int[] proteins = new int[(int) (postingStart(i + 1) - from)];
+        for (int j = 0; j < proteins.length; j++) {
+            proteins[j] = postings.getInt((from + j) * 4);
+        }
+        return proteins;
+    }
+
+    /**
+     * @param peptide
+     * @return distinct taxon ids of proteins containing peptide, proteins without taxon are ignored.
+     * null if no protein contains it
+     */
+    public int[] getTaxa(String peptide) {
+        long i = indexOf(peptide);
+        if (i < 0) {
+            return null;
+        }
+        long from = postingStart(i);
+        long to = postingStart(i + 1);
+        int[] taxa = new int[(int) (to - from)];
+        int n = 0;
+        for (long j = from; j < to; j++) {
+            int taxId = getTaxon(postings.getInt(j * 4));
+            if (taxId != -1) {
+                taxa[n++] = taxId;
+            }
+        }
+        Arrays.sort(taxa, 0, n);
+        int distinct = 0;
+        for (int j = 0; j < n; j++) {
+            if (distinct == 0 || taxa[distinct - 1] != taxa[j]) {
+                taxa[distinct++] = taxa[j];
+            }
+        }
+        return Arrays.copyOf(taxa, distinct);
+    }
+
+    /**
+     * @param proteinId
+     * @return taxon id of protein, -1 if it is unknown
+     */
+    public int getTaxon(int proteinId) {
+        return proteinTaxa.getInt(proteinId * 4L);
+    }
+
+    private long postingStart(long i) {
+        return entries.getLong(i * ENTRY_SIZE + 8);
+    }
+
+    private long indexOf(String peptide) {
+        byte[] residues = peptide.toUpperCase().getBytes(StandardCharsets.US_ASCII);
+        long key = key(residues, 0, residues.length, equalIL);
+        long low = 0L;
+        long high = keyCount - 1;
+        while (low <= high) {
+            long mid = (low + high) >>> 1;
+            long midKey = entries.getLong(mid * ENTRY_SIZE);
+            if (midKey < key) {
+                low = mid + 1;
+            } else if (midKey > key) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1L;
+    }
+
+    /**
+     * @return count of distinct peptides
+     */
+    public long size() {
+        return keyCount;
+    }
+
+    /**
+     * @return count of postings, i.e. distinct (peptide, protein) pairs
+     */
+    public long getPostingCount() {
+        return postingCount;
+    }
+
+    public int getProteinCount() {
+        return proteinCount;
+    }
+
+    /**
+     * @param residues upper case residues
+     * @return residues packed into 5 bits each if they are at most 12 letters, otherwise a hash with sign bit set
+     */
+    static long key(byte[] residues, int from, int to, boolean equalIL) {
+        if (to - from <= MAX_PACKED_LENGTH) {
+            long key = 0L;
+            int i = from;
+            for (; i < to; i++) {
+                byte b = residues[i];
+                if (b < 'A' || b > 'Z') {
+                    break;
+                }
+                if (equalIL && b == 'I') {
+                    b = 'L';
+                }
+                key = key << 5 | (b - 'A' + 1);
+            }
+            if (i == to) {
+                return key;
+            }
+        }
+        long hash = FNV_OFFSET;
+        for (int i = from; i < to; i++) {
+            byte b = residues[i];
+            if (equalIL && b == 'I') {
+                b = 'L';
+            }
+            hash = (hash ^ (b & 0xff)) * FNV_PRIME;
+        }
+        return hash | Long.MIN_VALUE;
+    }
+
+    /**
+     * Sort pairs by key, then by protein
+     */
+    private static void sort(long[] keys, int[] proteins, int low, int high) {
+        while (high - low > 16) {
+            int mid = (low + high) >>> 1;
+            long pivotKey = keys[mid];
+            int pivotProtein = proteins[mid];
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (compare(keys[i], proteins[i], pivotKey, pivotProtein) < 0) {
+                    i++;
+                }
+                while (compare(keys[j], proteins[j], pivotKey, pivotProtein) > 0) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(keys, proteins, i++, j--);
+                }
+            }
+            // recurse into the smaller part to bound the stack
+            if (j - low < high - i) {
+                sort(keys, proteins, low, j);
+                low = i;
+            } else {
+                sort(keys, proteins, i, high);
+                high = j;
+            }
+        }
+        for (int i = low + 1; i <= high; i++) {
+            for (int j = i; j > low && compare(keys[j - 1], proteins[j - 1], keys[j], proteins[j]) > 0; j--) {
+                swap(keys, proteins, j - 1, j);
+            }
+        }
+    }
+
+    private static int compare(long key1, int protein1, long key2, int protein2) {
+        int c = Long.compare(key1, key2);
+        return c != 0 ? c : Integer.compare(protein1, protein2);
+    }
+
+    private static void swap(long[] keys, int[] proteins, int i, int j) {
+        long key = keys[i];
+        keys[i] = keys[j];
+        keys[j] = key;
+        int protein = proteins[i];
+        proteins[i] = proteins[j];
+        proteins[j] = protein;
+    }
+}
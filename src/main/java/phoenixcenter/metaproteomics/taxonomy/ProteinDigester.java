@@ -0,0 +1,213 @@
+package phoenixcenter.metaproteomics.taxonomy;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
+
+/**
+ * In-silico digestion, by default tryptic: cleave after K or R, but not before P.
+ */
+public class ProteinDigester {
+
+    /**
+     * Enzymes with the names accepted by Mascot2XML -E
+     */
+    public enum Enzyme {
+        TRYPSIN("trypsin", "KR", true, true),
+        STRICT_TRYPSIN("stricttrypsin", "KR", true, false),
+        ARGC("argc", "R", true, true),
+        ASPN("aspn", "D", false, false),
+        CHYMOTRYPSIN("chymotrypsin", "FWYL", true, true),
+        CLOSTRIPAIN("clostripain", "R", true, false),
+        CNBR("cnbr", "M", true, false),
+        ELASTASE("elastase", "ALIV", true, true),
+        FORMIC_ACID("formicacid", "D", true, false),
+        GLUC("gluc", "DE", true, true),
+        GLUC_BICARB("gluc_bicarb", "E", true, true),
+        IODOSOBENZOATE("iodosobenzoate", "W", true, false),
+        LYSC("lysc", "K", true, true),
+        LYSC_P("lysc-p", "K", true, false),
+        LYSN("lysn", "K", false, false),
+        TRYPSIN_CHYMOTRYPSIN("trypsin/chymotrypsin", "KRFWYL", true, true);
+
+        private final String name;
+
+        /**
+         * cleavage residues
+         */
+        private final boolean[] sites = new boolean[128];
+
+        /**
+         * cleave after(C-terminal of) or before(N-terminal of) the residues
+         */
+        private final boolean cTerminal;
+
+        /**
+         * not cleave before P
+         */
+        private final boolean restrictedByP;
+
+        Enzyme(String name, String residues, boolean cTerminal, boolean restrictedByP) {
+            this.name = name;
+            for (int i = 0; i < residues.length(); i++) {
+                sites[residues.charAt(i)] = true;
+            }
+            this.cTerminal = cTerminal;
+            this.restrictedByP = restrictedByP;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @param name case-insensitive name, e.g. trypsin
+         * @return
+         * @throws IllegalArgumentException if the enzyme is not supported
+         */
+        public static Enzyme fromName(String name) {
+            for (Enzyme enzyme : values()) {
+                if (enzyme.name.equalsIgnoreCase(name)) {
+                    return enzyme;
+                }
+            }
+            throw new IllegalArgumentException("unsupported enzyme: " + name + ", supported enzymes: "
+                    + Arrays.toString(Arrays.stream(values()).map(Enzyme::getName).toArray()));
+        }
+
+        /**
+         * Whether it can be cleaved between residue before and residue after
+         */
+        boolean cleaves(int before, int after) {
+            if (cTerminal) {
+                return before >= 0 && before < 128 && sites[before] && !(restrictedByP && after == 'P');
+            }
+            return after >= 0 && after < 128 && sites[after] && !(restrictedByP && before == 'P');
+        }
+    }
+
+    /**
+     * Accept a peptide by its range in protein sequence
+     */
+    @FunctionalInterface
+    public interface PeptideConsumer {
+        void accept(int start, int end);
+    }
+
+    private final Enzyme enzyme;
+
+    private final int maxMissedCleavages;
+
+    private final int minLength;
+
+    private final int maxLength;
+
+    /**
+     * Tryptic digester
+     *
+     * @param maxMissedCleavages
+     * @param minLength          the min length of peptide
+     * @param maxLength          the max length of peptide
+     */
+    public ProteinDigester(int maxMissedCleavages, int minLength, int maxLength) {
+        this(Enzyme.TRYPSIN, maxMissedCleavages, minLength, maxLength);
+    }
+
+    /**
+     * @param enzyme
+     * @param maxMissedCleavages
+     * @param minLength          the min length of peptide
+     * @param maxLength          the max length of peptide
+     */
+    public ProteinDigester(Enzyme enzyme, int maxMissedCleavages, int minLength, int maxLength) {
+        this.enzyme = enzyme;
+        this.maxMissedCleavages = maxMissedCleavages;
+        this.minLength = minLength;
+        this.maxLength = maxLength;
+    }
+
+    public Enzyme getEnzyme() {
+        return enzyme;
+    }
+
+    public int getMaxMissedCleavages() {
+        return maxMissedCleavages;
+    }
+
+    public int getMinLength() {
+        return minLength;
+    }
+
+    public int getMaxLength() {
+        return maxLength;
+    }
+
+    /**
+     * Digest protein sequence
+     *
+     * @param sequence
+     * @param consumer accept each peptide, the same peptide may be accepted several times
+     */
+    public void digest(CharSequence sequence, Consumer<String> consumer) {
+        digest(sequence.length(), i -> isCleavageSite(sequence, i),
+                (start, end) -> consumer.accept(sequence.subSequence(start, end).toString()));
+    }
+
+    /**
+     * Digest protein sequence without creating peptides
+     *
+     * @param sequence upper case residues
+     * @param length   the length of sequence
+     * @param consumer accept the range of each peptide, the same peptide may be accepted several times
+     */
+    public void digest(byte[] sequence, int length, PeptideConsumer consumer) {
+        digest(length, i -> i + 1 < length && enzyme.cleaves(sequence[i], sequence[i + 1]), consumer);
+    }
+
+    private void digest(int length, IntPredicate isCleavageSite, PeptideConsumer consumer) {
+        // ends[i] is the end(exclusive) of the i-th fragment without missed cleavage
+        int[] ends = new int[16];
+        int fragmentCount = 0;
+        for (int i = 0; i < length; i++) {
+            if (i == length - 1 || isCleavageSite.test(i)) {
+                if (fragmentCount == ends.length) {
+                    ends = Arrays.copyOf(ends, fragmentCount * 2);
+                }
+                ends[fragmentCount++] = i + 1;
+            }
+        }
+        for (int i = 0; i < fragmentCount; i++) {
+            int start = i == 0 ? 0 : ends[i - 1];
+            for (int j = i; j < fragmentCount && j <= i + maxMissedCleavages; j++) {
+                int pepLength = ends[j] - start;
+                if (pepLength > maxLength) {
+                    break;
+                }
+                if (pepLength >= minLength) {
+                    consumer.accept(start, ends[j]);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param peptide
+     * @return the count of missed cleavages in peptide
+     */
+    public int countMissedCleavages(CharSequence peptide) {
+        int count = 0;
+        for (int i = 0; i < peptide.length() - 1; i++) {
+            if (isCleavageSite(peptide, i)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Whether it can be cleaved between position i and i + 1
+     */
+    private boolean isCleavageSite(CharSequence sequence, int i) {
+        return i + 1 < sequence.length() && enzyme.cleaves(sequence.charAt(i), sequence.charAt(i + 1));
+    }
+}
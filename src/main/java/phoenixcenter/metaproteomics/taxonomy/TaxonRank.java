@@ -0,0 +1,87 @@
+package phoenixcenter.metaproteomics.taxonomy;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Ranks of lineage in the order of LCA file columns(from superkingdom to forma).
+ * The ordinal of rank is its index in lineage.
+ */
+public enum TaxonRank {
+    SUPERKINGDOM("superkingdom"),
+    KINGDOM("kingdom"),
+    SUBKINGDOM("subkingdom"),
+    SUPERPHYLUM("superphylum"),
+    PHYLUM("phylum"),
+    SUBPHYLUM("subphylum"),
+    SUPERCLASS("superclass"),
+    CLASS("class"),
+    SUBCLASS("subclass"),
+    INFRACLASS("infraclass"),
+    SUPERORDER("superorder"),
+    ORDER("order"),
+    SUBORDER("suborder"),
+    INFRAORDER("infraorder"),
+    PARVORDER("parvorder"),
+    SUPERFAMILY("superfamily"),
+    FAMILY("family"),
+    SUBFAMILY("subfamily"),
+    TRIBE("tribe"),
+    SUBTRIBE("subtribe"),
+    GENUS("genus"),
+    SUBGENUS("subgenus"),
+    SPECIES_GROUP("species group"),
+    SPECIES_SUBGROUP("species subgroup"),
+    SPECIES("species"),
+    SUBSPECIES("subspecies"),
+    VARIETAS("varietas"),
+    FORMA("forma"),
+    NO_RANK("no rank");
+
+    /**
+     * The count of ranks in lineage
+     */
+    public static final int LINEAGE_SIZE = NO_RANK.ordinal();
+
+    private static final TaxonRank[] VALUES = values();
+
+    private static final Map<String, TaxonRank> NAME_2_RANK = new HashMap<>();
+
+    static {
+        for (TaxonRank rank : VALUES) {
+            NAME_2_RANK.put(rank.rankName, rank);
+            NAME_2_RANK.put(rank.rankName.replace(' ', '_'), rank);
+        }
+        // NCBI renamed superkingdom as domain in 2025
+        NAME_2_RANK.put("domain", SUPERKINGDOM);
+    }
+
+    private final String rankName;
+
+    TaxonRank(String rankName) {
+        this.rankName = rankName;
+    }
+
+    /**
+     * @return rank name used by NCBI and Unipept, e.g. "species group"
+     */
+    public String getRankName() {
+        return rankName;
+    }
+
+    public boolean inLineage() {
+        return this != NO_RANK;
+    }
+
+    /**
+     * @param rankName rank name separated by space or underscore
+     * @return {@link #NO_RANK} if the rank is not in lineage
+     */
+    public static TaxonRank fromName(String rankName) {
+        return NAME_2_RANK.getOrDefault(rankName, NO_RANK);
+    }
+
+    public static TaxonRank valueOf(int ordinal) {
+        return VALUES[ordinal];
+    }
+}
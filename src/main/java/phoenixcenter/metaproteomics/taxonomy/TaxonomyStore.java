@@ -0,0 +1,304 @@
+package phoenixcenter.metaproteomics.taxonomy;
+
+import lombok.extern.log4j.Log4j2;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Compact taxonomy table indexed by taxon id.
+ * <p>
+ * Each taxon takes a parent id, a rank ordinal and an offset into a shared name buffer where the name is
+ * stored as [2 bytes length][UTF-8 bytes]. Offset 0 means the taxon does not exist. The table can be saved
+ * to a file and memory-mapped back read-only, so nothing is parsed at startup and lookups do not allocate
+ * except decoding name to String.
+ * <p>
+ * A store created by {@link #create()} grows on demand and is safe for concurrent put and get.
+ */
+@Log4j2
+public class TaxonomyStore {
+
+    private static final int MAGIC = 0x4D505154;
+
+    private static final int VERSION = 1;
+
+    /**
+     * magic, version, capacity, name buffer size
+     */
+    private static final int HEADER_SIZE = 16;
+
+    private static final int NAME_BUFFER_START = 1;
+
+    private final ReadWriteLock lock;
+
+    private IntBuffer parents;
+
+    private ByteBuffer ranks;
+
+    private IntBuffer nameOffsets;
+
+    private ByteBuffer names;
+
+    private int capacity;
+
+    private int size;
+
+    private TaxonomyStore(ReadWriteLock lock) {
+        this.lock = lock;
+    }
+
+    /**
+     * Create an empty store on heap
+     *
+     * @return
+     */
+    public static TaxonomyStore create() {
+        TaxonomyStore store = new TaxonomyStore(new ReentrantReadWriteLock());
+        store.capacity = 1 << 12;
+        store.parents = IntBuffer.allocate(store.capacity);
+        store.ranks = ByteBuffer.allocate(store.capacity);
+        store.nameOffsets = IntBuffer.allocate(store.capacity);
+        store.names = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+        store.names.position(NAME_BUFFER_START);
+        return store;
+    }
+
+    /**
+     * Memory-map a store saved by {@link #save(Path)}. The mapped store is read-only.
+     *
+     * @param path
+     * @return
+     * @throws IOException
+     */
+    public static TaxonomyStore map(Path path) throws IOException {
+        TaxonomyStore store = new TaxonomyStore(null);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException("illegal taxonomy store file: " + path);
+            }
+            store.capacity = buffer.getInt(8);
+            int nameSize = buffer.getInt(12);
+            int pos = HEADER_SIZE;
+            store.parents = slice(buffer, pos, store.capacity * 4).asIntBuffer();
+            pos += store.capacity * 4;
+            store.nameOffsets = slice(buffer, pos, store.capacity * 4).asIntBuffer();
+            pos += store.capacity * 4;
+            store.ranks = slice(buffer, pos, store.capacity);
+            pos += store.capacity;
+            store.names = slice(buffer, pos, nameSize);
+            for (int tid = 0; tid < store.capacity; tid++) {
+                if (store.nameOffsets.get(tid) != 0) {
+                    store.size++;
+                }
+            }
+        }
+        log.debug("map {} taxa from {}", store.size, path);
+        return store;
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int position, int length) {
+        ByteBuffer dup = buffer.duplicate();
+        dup.position(position);
+        dup.limit(position + length);
+        return dup.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Save the store, it can be memory-mapped by {@link #map(Path)}
+     *
+     * @param path
+     * @throws IOException
+     */
+    public void save(Path path) throws IOException {
+        readLock();
+        try {
+            int nameSize = names.position();
+            Path tmpPath = Files.createTempFile(path.toAbsolutePath().getParent(), "taxonomy", ".tmp");
+            try (FileChannel channel = FileChannel.open(tmpPath, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                header.putInt(MAGIC).putInt(VERSION).putInt(capacity).putInt(nameSize).flip();
+                writeFully(channel, header);
+                ByteBuffer intBuffer = ByteBuffer.allocate(capacity * 4).order(ByteOrder.LITTLE_ENDIAN);
+                for (int tid = 0; tid < capacity; tid++) {
+                    intBuffer.putInt(parents.get(tid));
+                }
+                intBuffer.flip();
+                writeFully(channel, intBuffer);
+                intBuffer.clear();
+                for (int tid = 0; tid < capacity; tid++) {
+                    intBuffer.putInt(nameOffsets.get(tid));
+                }
+                intBuffer.flip();
+                writeFully(channel, intBuffer);
+                ByteBuffer rankDup = ranks.duplicate();
+                rankDup.position(0).limit(capacity);
+                writeFully(channel, rankDup);
+                ByteBuffer nameDup = names.duplicate();
+                nameDup.position(0).limit(nameSize);
+                writeFully(channel, nameDup);
+            }
+            Files.move(tmpPath, path, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            readUnlock();
+        }
+        log.debug("save {} taxa to {}", size, path);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Add or replace taxon
+     *
+     * @param tid
+     * @param parentId 0 if it is unknown
+     * @param rank
+     * @param name
+     */
+    public void put(int tid, int parentId, TaxonRank rank, String name) {
+        if (lock == null) {
+            throw new UnsupportedOperationException("memory-mapped taxonomy store is read-only");
+        }
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        if (nameBytes.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("too long taxon name: " + name);
+        }
+        lock.writeLock().lock();
+        try {
+            ensureCapacity(tid + 1, nameBytes.length + 2);
+            if (nameOffsets.get(tid) == 0) {
+                size++;
+            }
+            int offset = names.position();
+            names.putShort((short) nameBytes.length);
+            names.put(nameBytes);
+            parents.put(tid, parentId);
+            ranks.put(tid, (byte) rank.ordinal());
+            nameOffsets.put(tid, offset);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void ensureCapacity(int minCapacity, int nameLength) {
+        if (minCapacity > capacity) {
+            int newCapacity = Math.max(minCapacity, capacity + (capacity >> 1));
+            parents = IntBuffer.wrap(grow(parents.array(), newCapacity));
+            nameOffsets = IntBuffer.wrap(grow(nameOffsets.array(), newCapacity));
+            byte[] newRanks = new byte[newCapacity];
+            System.arraycopy(ranks.array(), 0, newRanks, 0, capacity);
+            ranks = ByteBuffer.wrap(newRanks);
+            capacity = newCapacity;
+        }
+        if (names.remaining() < nameLength) {
+            int position = names.position();
+            byte[] newNames = new byte[Math.max(position + nameLength, names.capacity() * 2)];
+            System.arraycopy(names.array(), 0, newNames, 0, position);
+            names = ByteBuffer.wrap(newNames).order(ByteOrder.LITTLE_ENDIAN);
+            names.position(position);
+        }
+    }
+
+    private static int[] grow(int[] array, int newCapacity) {
+        int[] newArray = new int[newCapacity];
+        System.arraycopy(array, 0, newArray, 0, array.length);
+        return newArray;
+    }
+
+    public boolean contains(int tid) {
+        readLock();
+        try {
+            return tid > 0 && tid < capacity && nameOffsets.get(tid) != 0;
+        } finally {
+            readUnlock();
+        }
+    }
+
+    /**
+     * @param tid
+     * @return parent id, 0 if taxon does not exist or parent is unknown
+     */
+    public int getParent(int tid) {
+        readLock();
+        try {
+            return tid > 0 && tid < capacity ? parents.get(tid) : 0;
+        } finally {
+            readUnlock();
+        }
+    }
+
+    /**
+     * @param tid
+     * @return null if taxon does not exist
+     */
+    public TaxonRank getRank(int tid) {
+        readLock();
+        try {
+            return tid > 0 && tid < capacity && nameOffsets.get(tid) != 0 ? TaxonRank.valueOf(ranks.get(tid)) : null;
+        } finally {
+            readUnlock();
+        }
+    }
+
+    /**
+     * @param tid
+     * @return null if taxon does not exist
+     */
+    public String getName(int tid) {
+        readLock();
+        try {
+            int offset = tid > 0 && tid < capacity ? nameOffsets.get(tid) : 0;
+            if (offset == 0) {
+                return null;
+            }
+            int length = names.getShort(offset);
+            byte[] bytes = new byte[length];
+            for (int i = 0; i < length; i++) {
+                bytes[i] = names.get(offset + 2 + i);
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        } finally {
+            readUnlock();
+        }
+    }
+
+    /**
+     * @return the max taxon id + 1 that can be stored without growing
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void readLock() {
+        if (lock != null) {
+            lock.readLock().lock();
+        }
+    }
+
+    private void readUnlock() {
+        if (lock != null) {
+            lock.readLock().unlock();
+        }
+    }
+}
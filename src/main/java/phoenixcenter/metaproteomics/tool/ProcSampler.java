@@ -0,0 +1,98 @@
+package phoenixcenter.metaproteomics.tool;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Read CPU time and peak RSS of a running process from /proc. Nothing is read on systems without /proc.
+ */
+class ProcSampler {
+
+    /**
+     * USER_HZ, the unit of times in /proc/[pid]/stat, it is 100 on all mainstream Linux
+     */
+    private static final long CLOCK_TICKS_PER_SECOND = 100L;
+
+    private static final boolean PROC_AVAILABLE = Files.isDirectory(Paths.get("/proc/self"));
+
+    private final long pid;
+
+    /**
+     * user + system time of the process and its waited children
+     */
+    private long cpuMillis = -1L;
+
+    /**
+     * VmHWM of the process
+     */
+    private long peakRssKB = -1L;
+
+    /**
+     * @param process
+     */
+    ProcSampler(Process process) {
+        this.pid = PROC_AVAILABLE ? pidOf(process) : -1L;
+    }
+
+    /**
+     * Read the latest times and peak RSS, the last values are kept after the process exits
+     */
+    void sample() {
+        if (pid <= 0) {
+            return;
+        }
+        try {
+            // fields after the command name in parentheses, utime is the 14th field of the whole line
+            String stat = new String(Files.readAllBytes(procPath("stat")), StandardCharsets.US_ASCII);
+            String[] fields = stat.substring(stat.lastIndexOf(')') + 2).split(" ");
+            long ticks = Long.parseLong(fields[11]) + Long.parseLong(fields[12])
+                    + Long.parseLong(fields[13]) + Long.parseLong(fields[14]);
+            cpuMillis = Math.max(cpuMillis, ticks * 1000L / CLOCK_TICKS_PER_SECOND);
+            List<String> status = Files.readAllLines(procPath("status"), StandardCharsets.US_ASCII);
+            for (String line : status) {
+                if (line.startsWith("VmHWM:")) {
+                    peakRssKB = Math.max(peakRssKB, Long.parseLong(line.substring(6).trim().split("\\s+")[0]));
+                    break;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // the process has exited, or a kernel thread without memory statistics
+        }
+    }
+
+    private Path procPath(String name) {
+        return Paths.get("/proc", String.valueOf(pid), name);
+    }
+
+    long getCpuMillis() {
+        return cpuMillis;
+    }
+
+    long getPeakRssKB() {
+        return peakRssKB;
+    }
+
+    /**
+     * @return pid by Process.pid() since Java 9, or the private field of UNIXProcess in Java 8, -1 if unknown
+     */
+    static long pidOf(Process process) {
+        try {
+            Method method = Process.class.getMethod("pid");
+            return (Long) method.invoke(process);
+        } catch (ReflectiveOperationException e) {
+            try {
+                Field field = process.getClass().getDeclaredField("pid");
+                field.setAccessible(true);
+                return field.getInt(process);
+            } catch (ReflectiveOperationException | RuntimeException ex) {
+                return -1L;
+            }
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package phoenixcenter.metaproteomics.tool;
+
+/**
+ * Resource usage of a finished tool run
+ */
+public class ToolResult {
+
+    private final String tool;
+
+    private final int exitCode;
+
+    private final long wallMillis;
+
+    private final long cpuMillis;
+
+    private final long peakRssKB;
+
+    /**
+     * @param tool       file name of the executable
+     * @param exitCode
+     * @param wallMillis
+     * @param cpuMillis  user + system time of the process and its waited children, -1 if unknown
+     * @param peakRssKB  peak resident set size of the process, -1 if unknown
+     */
+    public ToolResult(String tool, int exitCode, long wallMillis, long cpuMillis, long peakRssKB) {
+        this.tool = tool;
+        this.exitCode = exitCode;
+        this.wallMillis = wallMillis;
+        this.cpuMillis = cpuMillis;
+        this.peakRssKB = peakRssKB;
+    }
+
+    public String getTool() {
+        return tool;
+    }
+
+    public int getExitCode() {
+        return exitCode;
+    }
+
+    public long getWallMillis() {
+        return wallMillis;
+    }
+
+    public long getCpuMillis() {
+        return cpuMillis;
+    }
+
+    public long getPeakRssKB() {
+        return peakRssKB;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: exit=%d, wall=%.1f s, cpu=%s, peak rss=%s", tool, exitCode, wallMillis / 1000.0,
+                cpuMillis < 0 ? "unknown" : String.format("%.1f s", cpuMillis / 1000.0),
+                peakRssKB < 0 ? "unknown" : String.format("%.1f MB", peakRssKB / 1024.0));
+    }
+}
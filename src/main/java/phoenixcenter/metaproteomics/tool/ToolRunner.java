@@ -0,0 +1,249 @@
+package phoenixcenter.metaproteomics.tool;
+
+import lombok.extern.log4j.Log4j2;
+import phoenixcenter.metaproteomics.GlobalConfig;
+import phoenixcenter.metaproteomics.metrics.MetricsRegistry;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+/**
+ * Run external tools(Mascot2XML, xinteract, qvality, python...) with argument arrays.
+ * <p>
+ * At most {@code maxProcesses} tools run at the same time in the JVM, the others wait for a permit. Output
+ * and error streams are pumped by a shared pool of daemon threads and fully consumed before a run returns.
+ * A run exceeding its timeout is killed. While a tool runs, its CPU time and peak RSS are sampled from /proc,
+ * the CPU time includes the children it has waited for, but the peak RSS is only of the tool itself.
+ */
+@Log4j2
+public class ToolRunner {
+
+    /**
+     * how long the streams are drained after the process exits, a grandchild may hold them open
+     */
+    private static final long DRAIN_MILLIS = 30000L;
+
+    private static volatile ToolRunner defaultRunner;
+
+    private final int maxProcesses;
+
+    private final Semaphore processPermits;
+
+    private final long timeoutMillis;
+
+    private final long sampleMillis;
+
+    private final ExecutorService streamPool = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "tool-stream");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final ToolStats stats = new ToolStats();
+
+    /**
+     * @param maxProcesses  max count of tools run concurrently, the count of cores if it is not positive
+     * @param timeoutMillis default timeout of a run, no timeout if it is not positive
+     * @param sampleMillis  interval of sampling /proc
+     */
+    public ToolRunner(int maxProcesses, long timeoutMillis, long sampleMillis) {
+        this.maxProcesses = maxProcesses > 0 ? maxProcesses : Runtime.getRuntime().availableProcessors();
+        this.processPermits = new Semaphore(this.maxProcesses, true);
+        this.timeoutMillis = timeoutMillis;
+        this.sampleMillis = Math.max(1L, sampleMillis);
+    }
+
+    /**
+     * Create a runner configured by "tool.*" settings
+     *
+     * @return
+     */
+    public static ToolRunner create() {
+        return new ToolRunner(GlobalConfig.getIntValue("tool.max.processes"),
+                GlobalConfig.getIntValue("tool.timeout.seconds") * 1000L,
+                GlobalConfig.getIntValue("tool.sample.millis"));
+    }
+
+    /**
+     * @return the runner shared by all tools of the JVM, so the limit on processes is global
+     */
+    public static ToolRunner getDefault() {
+        if (defaultRunner == null) {
+            synchronized (ToolRunner.class) {
+                if (defaultRunner == null) {
+                    defaultRunner = create();
+                }
+            }
+        }
+        return defaultRunner;
+    }
+
+    public int getMaxProcesses() {
+        return maxProcesses;
+    }
+
+    /**
+     * @return resource usage of all runs by tool
+     */
+    public ToolStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Run with the default timeout, output goes to standard output and error of the JVM
+     *
+     * @param command executable and arguments
+     * @return
+     * @throws IOException
+     * @see #run(List, Consumer, Consumer, long)
+     */
+    public ToolResult run(List<String> command) throws IOException {
+        return run(command, null, null, timeoutMillis);
+    }
+
+    /**
+     * Run with the default timeout
+     *
+     * @see #run(List, Consumer, Consumer, long)
+     */
+    public ToolResult run(List<String> command,
+                          Consumer<String> outConsumer,
+                          Consumer<String> errConsumer) throws IOException {
+        return run(command, outConsumer, errConsumer, timeoutMillis);
+    }
+
+    /**
+     * Run a tool and wait for it
+     *
+     * @param command       executable and arguments, each argument is passed as it is(spaces are kept)
+     * @param outConsumer   lines of output, standard output of the JVM if it is null
+     * @param errConsumer   lines of error output, standard error of the JVM if it is null
+     * @param timeoutMillis the tool is killed after it, no timeout if it is not positive
+     * @return usage of the run
+     * @throws IOException the tool cannot start, times out or exits with non-zero code
+     */
+    public ToolResult run(List<String> command,
+                          Consumer<String> outConsumer,
+                          Consumer<String> errConsumer,
+                          long timeoutMillis) throws IOException {
+        String commandLine = String.join(" ", command);
+        String tool = Paths.get(command.get(0)).getFileName().toString();
+        try {
+            processPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting to run " + tool);
+        }
+        try {
+            log.info("command>>{}", commandLine);
+            long start = System.nanoTime();
+            Process process = new ProcessBuilder(command).start();
+            process.getOutputStream().close();
+            List<Future<?>> pumps = new ArrayList<>(2);
+            pumps.add(streamPool.submit(pump(process.getInputStream(),
+                    outConsumer == null ? System.out::println : outConsumer)));
+            pumps.add(streamPool.submit(pump(process.getErrorStream(),
+                    errConsumer == null ? System.err::println : errConsumer)));
+            ProcSampler sampler = new ProcSampler(process);
+            boolean timedOut = false;
+            try {
+                long deadline = timeoutMillis > 0 ? start + TimeUnit.MILLISECONDS.toNanos(timeoutMillis) : Long.MAX_VALUE;
+                while (true) {
+                    sampler.sample();
+                    long waitMillis = Math.min(sampleMillis,
+                            TimeUnit.NANOSECONDS.toMillis(Math.max(0L, deadline - System.nanoTime())) + 1);
+                    if (process.waitFor(waitMillis, TimeUnit.MILLISECONDS)) {
+                        break;
+                    }
+                    if (System.nanoTime() - deadline >= 0) {
+                        timedOut = true;
+                        log.warn("{} times out after {} ms, killed", tool, timeoutMillis);
+                        process.destroyForcibly().waitFor();
+                        break;
+                    }
+                }
+            } catch (InterruptedException e) {
+                process.destroyForcibly();
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while running " + tool);
+            }
+            Throwable consumerError = drain(pumps, tool);
+            ToolResult result = new ToolResult(tool, process.exitValue(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+                    sampler.getCpuMillis(), sampler.getPeakRssKB());
+            stats.record(result);
+            MetricsRegistry metrics = MetricsRegistry.getDefault();
+            metrics.timer("tool." + tool).record(TimeUnit.MILLISECONDS.toNanos(result.getWallMillis()));
+            metrics.counter("tool." + tool + ".cpu.millis").add(Math.max(0L, result.getCpuMillis()));
+            metrics.gauge("tool." + tool + ".peak.rss.kb").max(result.getPeakRssKB());
+            log.info("{}", result);
+            if (timedOut) {
+                throw new IOException("command <" + commandLine + "> times out after " + timeoutMillis + " ms");
+            }
+            if (result.getExitCode() != 0) {
+                throw new IOException("command <" + commandLine + "> exits with code " + result.getExitCode());
+            }
+            if (consumerError != null) {
+                throw new IOException("fail to consume output of " + tool, consumerError);
+            }
+            return result;
+        } finally {
+            processPermits.release();
+        }
+    }
+
+    /**
+     * Read lines until the end of stream. If the consumer fails, the rest lines are discarded so that
+     * the tool never blocks on a full pipe.
+     */
+    private static Callable<Void> pump(InputStream in, Consumer<String> consumer) {
+        return () -> {
+            RuntimeException error = null;
+            try (BufferedReader br = new BufferedReader(new InputStreamReader(in, Charset.defaultCharset()))) {
+                String line;
+                while ((line = br.readLine()) != null) {
+                    if (error == null) {
+                        try {
+                            consumer.accept(line);
+                        } catch (RuntimeException e) {
+                            error = e;
+                        }
+                    }
+                }
+            }
+            if (error != null) {
+                throw error;
+            }
+            return null;
+        };
+    }
+
+    /**
+     * @return the first error of consumers, null if there is none
+     */
+    private static Throwable drain(List<Future<?>> pumps, String tool) throws InterruptedIOException {
+        Throwable error = null;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(DRAIN_MILLIS);
+        for (Future<?> pump : pumps) {
+            try {
+                pump.get(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while reading output of " + tool);
+            } catch (ExecutionException e) {
+                if (error == null) {
+                    error = e.getCause();
+                }
+            } catch (TimeoutException e) {
+                log.warn("output of {} is still open after it exits, stop reading", tool);
+                pump.cancel(true);
+            }
+        }
+        return error;
+    }
+}
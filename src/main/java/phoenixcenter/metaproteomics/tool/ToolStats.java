@@ -0,0 +1,80 @@
+package phoenixcenter.metaproteomics.tool;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Resource usage summed by tool, so the tool dominating a run can be found
+ */
+public class ToolStats {
+
+    private static class Usage {
+
+        private long count;
+
+        private long failures;
+
+        private long wallMillis;
+
+        private long cpuMillis;
+
+        private long peakRssKB = -1L;
+    }
+
+    private final Map<String, Usage> tool2Usage = new TreeMap<>();
+
+    synchronized void record(ToolResult result) {
+        Usage usage = tool2Usage.computeIfAbsent(result.getTool(), k -> new Usage());
+        usage.count++;
+        if (result.getExitCode() != 0) {
+            usage.failures++;
+        }
+        usage.wallMillis += result.getWallMillis();
+        usage.cpuMillis += Math.max(0L, result.getCpuMillis());
+        usage.peakRssKB = Math.max(usage.peakRssKB, result.getPeakRssKB());
+    }
+
+    public synchronized long getCount(String tool) {
+        Usage usage = tool2Usage.get(tool);
+        return usage == null ? 0L : usage.count;
+    }
+
+    /**
+     * @return total wall milliseconds of tool
+     */
+    public synchronized long getWallMillis(String tool) {
+        Usage usage = tool2Usage.get(tool);
+        return usage == null ? 0L : usage.wallMillis;
+    }
+
+    /**
+     * @return total CPU milliseconds of tool
+     */
+    public synchronized long getCpuMillis(String tool) {
+        Usage usage = tool2Usage.get(tool);
+        return usage == null ? 0L : usage.cpuMillis;
+    }
+
+    /**
+     * @return max peak RSS of all runs of tool, -1 if unknown
+     */
+    public synchronized long getPeakRssKB(String tool) {
+        Usage usage = tool2Usage.get(tool);
+        return usage == null ? -1L : usage.peakRssKB;
+    }
+
+    /**
+     * @return one line for each tool: runs, failures, total wall time, total CPU time and max peak RSS
+     */
+    @Override
+    public synchronized String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Usage> e : tool2Usage.entrySet()) {
+            Usage usage = e.getValue();
+            sb.append(String.format("%s: runs=%d, failures=%d, wall=%.1f s, cpu=%.1f s, peak rss=%s%n",
+                    e.getKey(), usage.count, usage.failures, usage.wallMillis / 1000.0, usage.cpuMillis / 1000.0,
+                    usage.peakRssKB < 0 ? "unknown" : String.format("%.1f MB", usage.peakRssKB / 1024.0)));
+        }
+        return sb.toString();
+    }
+}
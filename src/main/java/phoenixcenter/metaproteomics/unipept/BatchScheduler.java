@@ -0,0 +1,108 @@
+package phoenixcenter.metaproteomics.unipept;
+
+import lombok.extern.log4j.Log4j2;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Run batches concurrently with a bounded number of batches in flight, and hand the results to
+ * the consumer in submission order. The consumer always runs in the submitting thread, so it can
+ * write to a non thread-safe writer while the following batches are still being requested.
+ *
+ * @param <R> the result of a batch
+ */
+@Log4j2
+public class BatchScheduler<R> implements Closeable {
+
+    @FunctionalInterface
+    public interface ResultConsumer<R> {
+        void accept(R result) throws IOException;
+    }
+
+    private final int maxInFlight;
+
+    private final ExecutorService executor;
+
+    private final ResultConsumer<R> consumer;
+
+    private final Deque<Future<R>> pendingQueue = new ArrayDeque<>();
+
+    /**
+     * @param maxInFlight the max count of batches submitted but not consumed
+     * @param consumer
+     */
+    public BatchScheduler(int maxInFlight, ResultConsumer<R> consumer) {
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.consumer = consumer;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(this.maxInFlight, r -> {
+            Thread thread = new Thread(r, "BatchScheduler-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Submit a batch. It blocks and consumes the oldest batch when too many batches are in flight.
+     *
+     * @param batch
+     * @throws IOException
+     */
+    public void submit(Callable<R> batch) throws IOException {
+        while (pendingQueue.size() >= maxInFlight) {
+            consumeOldest();
+        }
+        pendingQueue.addLast(executor.submit(batch));
+    }
+
+    /**
+     * Wait for all submitted batches and consume them in order.
+     *
+     * @throws IOException
+     */
+    public void finish() throws IOException {
+        while (!pendingQueue.isEmpty()) {
+            consumeOldest();
+        }
+    }
+
+    private void consumeOldest() throws IOException {
+        Future<R> future = pendingQueue.pollFirst();
+        R result;
+        try {
+            result = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+        consumer.accept(result);
+    }
+
+    /**
+     * Cancel the batches not consumed and release threads.
+     */
+    @Override
+    public void close() {
+        for (Future<R> future : pendingQueue) {
+            future.cancel(true);
+        }
+        pendingQueue.clear();
+        executor.shutdownNow();
+    }
+}
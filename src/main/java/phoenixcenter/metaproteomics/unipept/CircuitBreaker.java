@@ -0,0 +1,162 @@
+package phoenixcenter.metaproteomics.unipept;
+
+import lombok.extern.log4j.Log4j2;
+import phoenixcenter.metaproteomics.GlobalConfig;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Circuit breaker shared by all requests to a service.
+ * <p>
+ * After {@code failureThreshold} consecutive failures the circuit opens and every request waits in
+ * {@link #acquire()}, so the batches in flight pause instead of hammering a degraded service. When the open
+ * period ends, one request probes the service: success closes the circuit and releases all requests, failure
+ * opens it again. Only the {@link Permit} of the probe changes the half-open circuit, and requests admitted
+ * before the circuit opened only count consecutive failures.
+ */
+@Log4j2
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /**
+     * Admission of a request by {@link #acquire()}
+     */
+    public static final class Permit {
+
+        private final boolean probe;
+
+        /**
+         * open count when the request is admitted
+         */
+        private final long generation;
+
+        private Permit(boolean probe, long generation) {
+            this.probe = probe;
+            this.generation = generation;
+        }
+
+        /**
+         * @return whether the request probes the half-open circuit
+         */
+        public boolean isProbe() {
+            return probe;
+        }
+    }
+
+    private final int failureThreshold;
+
+    private final long openMillis;
+
+    private State state = State.CLOSED;
+
+    private int consecutiveFailures;
+
+    private long openUntilNanos;
+
+    /**
+     * whether the probe of half-open circuit is in flight
+     */
+    private boolean probing;
+
+    private long openCount;
+
+    /**
+     * @param failureThreshold count of consecutive failures opening the circuit
+     * @param openMillis       min time the circuit stays open
+     */
+    public CircuitBreaker(int failureThreshold, long openMillis) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openMillis = openMillis;
+    }
+
+    /**
+     * Create a circuit breaker configured by "unipept.breaker.*" settings
+     *
+     * @return
+     */
+    public static CircuitBreaker create() {
+        return new CircuitBreaker(GlobalConfig.getIntValue("unipept.breaker.failure.threshold"),
+                GlobalConfig.getIntValue("unipept.breaker.open.millis"));
+    }
+
+    /**
+     * Block while the circuit is open, or while another request probes the half-open circuit.
+     * Each call must be followed by {@link #onSuccess(Permit)}, {@link #onFailure(Permit, long)} or
+     * {@link #onIgnored(Permit)} with the returned permit.
+     *
+     * @return
+     * @throws InterruptedException
+     */
+    public synchronized Permit acquire() throws InterruptedException {
+        while (true) {
+            if (state == State.CLOSED) {
+                return new Permit(false, openCount);
+            }
+            if (state == State.OPEN) {
+                long waitNanos = openUntilNanos - System.nanoTime();
+                if (waitNanos > 0) {
+                    TimeUnit.NANOSECONDS.timedWait(this, waitNanos);
+                    continue;
+                }
+                state = State.HALF_OPEN;
+            }
+            if (!probing) {
+                probing = true;
+                return new Permit(true, openCount);
+            }
+            wait();
+        }
+    }
+
+    public synchronized void onSuccess(Permit permit) {
+        consecutiveFailures = 0;
+        if (permit.probe) {
+            log.info("service recovers, circuit is closed");
+            state = State.CLOSED;
+            probing = false;
+            notifyAll();
+        }
+    }
+
+    /**
+     * @param permit
+     * @param retryAfterMillis Retry-After of the failed response, the circuit stays open at least for it
+     */
+    public synchronized void onFailure(Permit permit, long retryAfterMillis) {
+        consecutiveFailures++;
+        if (permit.probe || (state == State.CLOSED && permit.generation == openCount
+                && consecutiveFailures >= failureThreshold)) {
+            long millis = Math.max(openMillis, retryAfterMillis);
+            log.warn("{} consecutive failures, circuit is open for {} ms", consecutiveFailures, millis);
+            state = State.OPEN;
+            probing = false;
+            openUntilNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+            openCount++;
+            notifyAll();
+        }
+    }
+
+    /**
+     * The request ends without telling the health of service, e.g. a client error
+     */
+    public synchronized void onIgnored(Permit permit) {
+        if (permit.probe) {
+            probing = false;
+            notifyAll();
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return how many times the circuit has opened
+     */
+    public synchronized long getOpenCount() {
+        return openCount;
+    }
+}
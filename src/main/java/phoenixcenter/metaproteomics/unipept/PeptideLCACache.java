@@ -0,0 +1,299 @@
+package phoenixcenter.metaproteomics.unipept;
+
+import lombok.extern.log4j.Log4j2;
+import phoenixcenter.metaproteomics.entity.UnipeptLCA;
+import phoenixcenter.metaproteomics.entity.UnipeptTaxon;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Persistent peptide => LCA cache keyed by (sequence, equate_il, missed).
+ * <p>
+ * The cache file is an append-only log, one record per line:
+ * <pre>
+ * P  sequence  equate_il  missed  lca_id  lineage_ids(comma separated, empty for null)
+ * T  taxon_id  taxon_name  taxon_rank
+ * </pre>
+ * Peptides not found by Unipept are stored with an empty lca_id so that they are not requested again.
+ * The log is loaded into an LRU map at startup, new records are appended while running, and it is
+ * compacted on {@link #close()} when entries have been evicted or overwritten.
+ * <p>
+ * All cached peptides are on heap, about 270 bytes each with a 28-rank lineage, so maxEntries should fit
+ * the heap of the run.
+ */
+@Log4j2
+public class PeptideLCACache implements Closeable {
+
+    private static final String PEPTIDE_RECORD = "P";
+
+    private static final String TAXON_RECORD = "T";
+
+    /**
+     * Marks a peptide that Unipept does not know
+     */
+    private static final int[] NOT_FOUND = new int[0];
+
+    private final Path cachePath;
+
+    private final int maxEntries;
+
+    /**
+     * key => [lcaId, lineage ids...]; lineage id 0 means the rank is not assigned
+     */
+    private final LinkedHashMap<String, int[]> key2LCA;
+
+    private final Map<Integer, UnipeptTaxon> tid2Taxon = new HashMap<>();
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong missCount = new AtomicLong();
+
+    private BufferedWriter appender;
+
+    private boolean needCompact = false;
+
+    private PeptideLCACache(Path cachePath, int maxEntries) {
+        this.cachePath = cachePath;
+        this.maxEntries = maxEntries;
+        this.key2LCA = new LinkedHashMap<String, int[]>(Math.min(maxEntries, 1 << 16), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, int[]> eldest) {
+                if (size() > PeptideLCACache.this.maxEntries) {
+                    needCompact = true;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Open the cache file, create it if it does not exist.
+     *
+     * @param cachePath
+     * @param maxEntries the max count of peptides kept in cache, the least recently used ones will be evicted
+     * @return
+     * @throws IOException
+     */
+    public static PeptideLCACache open(Path cachePath, int maxEntries) throws IOException {
+        PeptideLCACache cache = new PeptideLCACache(cachePath, maxEntries);
+        if (cachePath.getParent() != null) {
+            Files.createDirectories(cachePath.getParent());
+        }
+        if (Files.exists(cachePath)) {
+            cache.load();
+        }
+        cache.appender = Files.newBufferedWriter(cachePath, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        log.info("open peptide LCA cache {}: {} peptides, {} taxa", cachePath, cache.key2LCA.size(), cache.tid2Taxon.size());
+        return cache;
+    }
+
+    private void load() throws IOException {
+        try (BufferedReader br = Files.newBufferedReader(cachePath, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                String[] tmp = line.split("\t", -1);
+                if (tmp[0].equals(PEPTIDE_RECORD) && tmp.length == 6) {
+                    if (key2LCA.put(key(tmp[1], tmp[2].equals("1"), tmp[3].equals("1")), decode(tmp[4], tmp[5])) != null) {
+                        needCompact = true;
+                    }
+                } else if (tmp[0].equals(TAXON_RECORD) && tmp.length == 4) {
+                    int tid = Integer.parseInt(tmp[1]);
+                    tid2Taxon.put(tid, new UnipeptTaxon(tid, tmp[2], tmp[3]));
+                } else {
+                    // truncated record caused by an interrupted run
+                    log.warn("skip broken record in peptide LCA cache: {}", line);
+                    needCompact = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Look up the cached LCA of peptide. The lca name, rank and lineage names are filled from cached taxa.
+     *
+     * @param sequence
+     * @param equalIL
+     * @param missedCleavage
+     * @return null if the peptide is not cached or some taxa of its lineage are not cached,
+     * {@link Optional#empty()} if Unipept does not know this peptide
+     */
+    public synchronized Optional<UnipeptLCA> get(String sequence, boolean equalIL, boolean missedCleavage) {
+        int[] lca = key2LCA.get(key(sequence, equalIL, missedCleavage));
+        if (lca == null) {
+            missCount.incrementAndGet();
+            return null;
+        }
+        if (lca == NOT_FOUND) {
+            hitCount.incrementAndGet();
+            return Optional.empty();
+        }
+        UnipeptTaxon lcaTaxon = tid2Taxon.get(lca[0]);
+        if (lcaTaxon == null || lcaTaxon.getRank().isEmpty()) {
+            missCount.incrementAndGet();
+            return null;
+        }
+        int[] lineageIds = Arrays.copyOfRange(lca, 1, lca.length);
+        String[] lineageNames = new String[lineageIds.length];
+        for (int i = 0; i < lineageIds.length; i++) {
+            if (lineageIds[i] != 0) {
+                UnipeptTaxon taxon = tid2Taxon.get(lineageIds[i]);
+                if (taxon == null) {
+                    missCount.incrementAndGet();
+                    return null;
+                }
+                lineageNames[i] = taxon.getName();
+            }
+        }
+        UnipeptLCA unipeptLCA = new UnipeptLCA();
+        unipeptLCA.setSequence(sequence);
+        unipeptLCA.setLcaId(lcaTaxon.getId());
+        unipeptLCA.setLcaName(lcaTaxon.getName());
+        unipeptLCA.setLcaRank(lcaTaxon.getRank());
+        unipeptLCA.setLineageIds(lineageIds);
+        unipeptLCA.setLineageNames(lineageNames);
+        hitCount.incrementAndGet();
+        return Optional.of(unipeptLCA);
+    }
+
+    /**
+     * Cache the LCA retrieved from Unipept. Both lca and lineage taxa are cached.
+     *
+     * @param unipeptLCA
+     * @param equalIL
+     * @param missedCleavage
+     * @throws IOException
+     */
+    public synchronized void put(UnipeptLCA unipeptLCA, boolean equalIL, boolean missedCleavage) throws IOException {
+        int[] lineageIds = unipeptLCA.getLineageIds();
+        String[] lineageNames = unipeptLCA.getLineageNames();
+        int[] lca = new int[lineageIds.length + 1];
+        lca[0] = unipeptLCA.getLcaId();
+        System.arraycopy(lineageIds, 0, lca, 1, lineageIds.length);
+        putTaxon(new UnipeptTaxon(unipeptLCA.getLcaId(), unipeptLCA.getLcaName(), unipeptLCA.getLcaRank()));
+        for (int i = 0; i < lineageIds.length; i++) {
+            // the rank of lineage taxon is implied by its position, keep the rank recorded by lca if exists
+            if (lineageIds[i] != 0 && !tid2Taxon.containsKey(lineageIds[i])) {
+                putTaxon(new UnipeptTaxon(lineageIds[i], lineageNames[i], ""));
+            }
+        }
+        putPeptide(unipeptLCA.getSequence(), equalIL, missedCleavage, lca);
+    }
+
+    /**
+     * Cache the peptide that Unipept does not know.
+     *
+     * @param sequence
+     * @param equalIL
+     * @param missedCleavage
+     * @throws IOException
+     */
+    public synchronized void putNotFound(String sequence, boolean equalIL, boolean missedCleavage) throws IOException {
+        putPeptide(sequence, equalIL, missedCleavage, NOT_FOUND);
+    }
+
+    private void putPeptide(String sequence, boolean equalIL, boolean missedCleavage, int[] lca) throws IOException {
+        if (key2LCA.put(key(sequence, equalIL, missedCleavage), lca) != null) {
+            needCompact = true;
+        }
+        writePeptide(appender, sequence, equalIL, missedCleavage, lca);
+    }
+
+    private void putTaxon(UnipeptTaxon taxon) throws IOException {
+        UnipeptTaxon cached = tid2Taxon.get(taxon.getId());
+        if (cached != null && (taxon.getRank().isEmpty() || taxon.getRank().equals(cached.getRank()))) {
+            return;
+        }
+        tid2Taxon.put(taxon.getId(), taxon);
+        writeTaxon(appender, taxon);
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public synchronized int size() {
+        return key2LCA.size();
+    }
+
+    /**
+     * Flush appended records, and rewrite the cache file if some records are stale.
+     *
+     * @throws IOException
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        appender.close();
+        if (needCompact) {
+            Path tmpPath = Files.createTempFile(cachePath.toAbsolutePath().getParent(), "pept2lca", ".cache");
+            try (BufferedWriter bw = Files.newBufferedWriter(tmpPath, StandardCharsets.UTF_8)) {
+                for (UnipeptTaxon taxon : tid2Taxon.values()) {
+                    writeTaxon(bw, taxon);
+                }
+                for (Map.Entry<String, int[]> e : key2LCA.entrySet()) {
+                    String[] key = e.getKey().split("\t");
+                    writePeptide(bw, key[0], key[1].equals("1"), key[2].equals("1"), e.getValue());
+                }
+            }
+            Files.move(tmpPath, cachePath, StandardCopyOption.REPLACE_EXISTING);
+            log.debug("compact peptide LCA cache {}", cachePath);
+        }
+    }
+
+    private static String key(String sequence, boolean equalIL, boolean missedCleavage) {
+        return sequence + (equalIL ? "\t1" : "\t0") + (missedCleavage ? "\t1" : "\t0");
+    }
+
+    private static int[] decode(String lcaId, String lineageIds) {
+        if (lcaId.isEmpty()) {
+            return NOT_FOUND;
+        }
+        String[] tmp = lineageIds.split(",", -1);
+        int[] lca = new int[tmp.length + 1];
+        lca[0] = Integer.parseInt(lcaId);
+        for (int i = 0; i < tmp.length; i++) {
+            lca[i + 1] = tmp[i].isEmpty() ? 0 : Integer.parseInt(tmp[i]);
+        }
+        return lca;
+    }
+
+    private static void writePeptide(BufferedWriter bw, String sequence, boolean equalIL,
+                                     boolean missedCleavage, int[] lca) throws IOException {
+        StringBuilder sb = new StringBuilder(PEPTIDE_RECORD).append('\t')
+                .append(key(sequence, equalIL, missedCleavage)).append('\t');
+        if (lca != NOT_FOUND) {
+            sb.append(lca[0]).append('\t');
+            for (int i = 1; i < lca.length; i++) {
+                if (i > 1) {
+                    sb.append(',');
+                }
+                if (lca[i] != 0) {
+                    sb.append(lca[i]);
+                }
+            }
+        } else {
+            sb.append('\t');
+        }
+        bw.write(sb.append(System.lineSeparator()).toString());
+    }
+
+    private static void writeTaxon(BufferedWriter bw, UnipeptTaxon taxon) throws IOException {
+        bw.write(String.join("\t", TAXON_RECORD, taxon.getId().toString(), taxon.getName(), taxon.getRank())
+                + System.lineSeparator());
+    }
+}
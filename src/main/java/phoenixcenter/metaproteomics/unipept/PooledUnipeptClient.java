@@ -0,0 +1,341 @@
+package phoenixcenter.metaproteomics.unipept;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.log4j.Log4j2;
+import org.apache.http.HttpHeaders;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+import phoenixcenter.metaproteomics.GlobalConfig;
+import phoenixcenter.metaproteomics.entity.UnipeptLCA;
+import phoenixcenter.metaproteomics.entity.UnipeptTaxon;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * {@link UnipeptClient} over a pool of kept-alive HTTP connections.
+ * <p>
+ * Requests run on a pool with one thread per connection, so a request never waits for a connection held by
+ * another one. Every response is consumed or closed before the next attempt, which returns its connection to
+ * the pool. Responses are accepted in gzip and parsed from the stream, request bodies can be gzipped too.
+ * Attempts are limited by the shared token bucket and circuit breaker. A request is retried by
+ * {@link RetryPolicy} after an I/O error, also one while reading the response body, or a retryable status,
+ * and the latency of each attempt is recorded in {@link #getMetrics()}. Entities of a response are handed to
+ * consumer after the body is read completely, so a retry never hands an entity twice.
+ */
+@Log4j2
+public class PooledUnipeptClient implements UnipeptClient {
+
+    @FunctionalInterface
+    private interface IOTask {
+        void run() throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface ResponseParser<T> {
+        void parse(InputStream is, Consumer<T> consumer) throws IOException;
+    }
+
+    private final String unipeptURL;
+
+    private final PoolingHttpClientConnectionManager connectionManager;
+
+    private final CloseableHttpClient httpClient;
+
+    private final ExecutorService executor;
+
+    private final TokenBucket requestLimiter;
+
+    private final boolean gzipRequest;
+
+    private final RetryPolicy retryPolicy;
+
+    private final CircuitBreaker circuitBreaker;
+
+    private final RequestMetrics metrics = new RequestMetrics();
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final UnipeptResponseParser responseParser = new UnipeptResponseParser(objectMapper.getFactory());
+
+    /**
+     * @param unipeptURL
+     * @param maxConnections       max count of connections, also the max count of requests in flight
+     * @param connectTimeoutMillis timeout of connecting and of waiting for a pooled connection
+     * @param socketTimeoutMillis  max inactivity between two packets of response
+     * @param keepAliveMillis      max time an idle connection is kept, also when the server does not tell
+     * @param gzipRequest          whether request bodies are gzipped
+     * @param requestLimiter       shared by all attempts
+     * @param retryPolicy
+     * @param circuitBreaker       shared by all attempts
+     */
+    public PooledUnipeptClient(String unipeptURL,
+                               int maxConnections,
+                               int connectTimeoutMillis,
+                               int socketTimeoutMillis,
+                               long keepAliveMillis,
+                               boolean gzipRequest,
+                               TokenBucket requestLimiter,
+                               RetryPolicy retryPolicy,
+                               CircuitBreaker circuitBreaker) {
+        this.unipeptURL = unipeptURL;
+        this.gzipRequest = gzipRequest;
+        this.requestLimiter = requestLimiter;
+        this.retryPolicy = retryPolicy;
+        this.circuitBreaker = circuitBreaker;
+        int connections = Math.max(1, maxConnections);
+        connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(connections);
+        connectionManager.setDefaultMaxPerRoute(connections);
+        // a connection closed by server while idle is detected before reuse
+        connectionManager.setValidateAfterInactivity(1000);
+        httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectTimeout(connectTimeoutMillis)
+                        .setConnectionRequestTimeout(connectTimeoutMillis)
+                        .setSocketTimeout(socketTimeoutMillis)
+                        .build())
+                .setKeepAliveStrategy((response, context) -> {
+                    long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                    return duration > 0 ? Math.min(duration, keepAliveMillis) : keepAliveMillis;
+                })
+                .evictExpiredConnections()
+                .evictIdleConnections(keepAliveMillis, TimeUnit.MILLISECONDS)
+                // retried by this client
+                .disableAutomaticRetries()
+                .build();
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(connections, r -> {
+            Thread thread = new Thread(r, "UnipeptClient-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Create a client configured by "unipept.*" settings
+     *
+     * @return
+     */
+    public static PooledUnipeptClient create() {
+        int maxConnections = GlobalConfig.getIntValue("unipept.max.connections");
+        return new PooledUnipeptClient(GlobalConfig.getValue("unipept.url"),
+                maxConnections,
+                GlobalConfig.getIntValue("unipept.connect.timeout.millis"),
+                GlobalConfig.getIntValue("unipept.socket.timeout.millis"),
+                GlobalConfig.getIntValue("unipept.keep.alive.millis"),
+                Boolean.parseBoolean(GlobalConfig.getValue("unipept.gzip.request").trim()),
+                new TokenBucket(GlobalConfig.getDoubleValue("unipept.requests.per.second"), maxConnections),
+                RetryPolicy.create(),
+                CircuitBreaker.create());
+    }
+
+    @Override
+    public CompletableFuture<Void> pept2data(Collection<String> peptides,
+                                             boolean equalIL,
+                                             boolean missedCleavage,
+                                             Consumer<UnipeptLCA> consumer) {
+        Map<String, Object> params = new HashMap<>();
+        params.put("peptides", peptides);
+        params.put("equate_il", equalIL);
+        params.put("missed", missedCleavage);
+        return submit(() -> post("/mpa/pept2data", params, responseParser::parsePept2data, consumer));
+    }
+
+    @Override
+    public CompletableFuture<Void> taxa(Collection<Integer> taxonIds, Consumer<UnipeptTaxon> consumer) {
+        Map<String, Object> params = new HashMap<>();
+        params.put("taxids", taxonIds);
+        return submit(() -> post("/private_api/taxa", params, responseParser::parseTaxa, consumer));
+    }
+
+    private CompletableFuture<Void> submit(IOTask task) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        executor.execute(() -> {
+            try {
+                task.run();
+                future.complete(null);
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    private <T> void post(String api, Map<String, Object> params, ResponseParser<T> parser,
+                          Consumer<T> consumer) throws IOException {
+        byte[] body = encode(params);
+        String name = api.substring(api.lastIndexOf('/') + 1);
+        for (int attempt = 1; ; attempt++) {
+            HttpPost request = new HttpPost(unipeptURL + api);
+            request.addHeader(HttpHeaders.ACCEPT, "application/json");
+            ByteArrayEntity entity = new ByteArrayEntity(body, ContentType.APPLICATION_JSON);
+            if (gzipRequest) {
+                entity.setContentEncoding("gzip");
+            }
+            request.setEntity(entity);
+            long waitStart = System.nanoTime();
+            CircuitBreaker.Permit permit = acquireCircuit();
+            metrics.record("circuit.wait", System.nanoTime() - waitStart);
+            long retryAfterMillis = -1L;
+            String error = null;
+            boolean counted = false;
+            try {
+                waitStart = System.nanoTime();
+                acquireRequestPermit();
+                metrics.record("permit.wait", System.nanoTime() - waitStart);
+                long start = System.nanoTime();
+                CloseableHttpResponse response;
+                try {
+                    response = httpClient.execute(request);
+                } catch (SocketTimeoutException | ConnectTimeoutException e) {
+                    response = null;
+                    error = e.toString();
+                } catch (InterruptedIOException e) {
+                    throw e;
+                } catch (IOException e) {
+                    response = null;
+                    error = e.toString();
+                }
+                if (response == null) {
+                    metrics.record(name + ".error", System.nanoTime() - start);
+                    circuitBreaker.onFailure(permit, -1L);
+                    counted = true;
+                } else {
+                    try {
+                        int statusCode = response.getStatusLine().getStatusCode();
+                        if (statusCode == 200) {
+                            List<T> entities = new ArrayList<>();
+                            boolean complete = false;
+                            try (InputStream is = response.getEntity().getContent()) {
+                                parser.parse(is, entities::add);
+                                complete = true;
+                            } catch (SocketTimeoutException e) {
+                                error = e.toString();
+                            } catch (InterruptedIOException e) {
+                                throw e;
+                            } catch (IOException e) {
+                                // e.g. connection closed in the middle of body
+                                error = e.toString();
+                            }
+                            if (complete) {
+                                metrics.record(name + ".ok", System.nanoTime() - start);
+                                circuitBreaker.onSuccess(permit);
+                                counted = true;
+                                entities.forEach(consumer);
+                                return;
+                            }
+                            metrics.record(name + ".error", System.nanoTime() - start);
+                            circuitBreaker.onFailure(permit, -1L);
+                            counted = true;
+                        } else {
+                            // release connection before retry
+                            EntityUtils.consumeQuietly(response.getEntity());
+                            metrics.record(name + "." + statusCode, System.nanoTime() - start);
+                            error = "HTTP " + statusCode;
+                            if (!retryPolicy.isRetryable(statusCode)) {
+                                throw new IOException(error + " when executing " + api);
+                            }
+                            retryAfterMillis = RetryPolicy.retryAfterMillis(response);
+                            circuitBreaker.onFailure(permit, retryAfterMillis);
+                            counted = true;
+                        }
+                    } finally {
+                        response.close();
+                    }
+                }
+            } finally {
+                if (!counted) {
+                    circuitBreaker.onIgnored(permit);
+                }
+            }
+            if (!retryPolicy.canRetry(attempt)) {
+                throw new IOException(api + " failed after " + attempt + " attempts: " + error);
+            }
+            long delayMillis = retryPolicy.delayMillis(attempt, retryAfterMillis);
+            log.warn("{} when executing {}, retry {} time in {} ms", error, api, attempt, delayMillis);
+            waitStart = System.nanoTime();
+            sleep(delayMillis);
+            metrics.record("backoff", System.nanoTime() - waitStart);
+        }
+    }
+
+    private CircuitBreaker.Permit acquireCircuit() throws InterruptedIOException {
+        try {
+            return circuitBreaker.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for circuit");
+        }
+    }
+
+    private byte[] encode(Map<String, Object> params) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (OutputStream os = gzipRequest ? new GZIPOutputStream(bos) : bos) {
+            objectMapper.writeValue(os, params);
+        }
+        return bos.toByteArray();
+    }
+
+    private void acquireRequestPermit() throws InterruptedIOException {
+        try {
+            requestLimiter.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for request permit");
+        }
+    }
+
+    private static void sleep(long millis) throws InterruptedIOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for retry");
+        }
+    }
+
+    @Override
+    public RequestMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return count of connections not released to pool
+     */
+    public int getLeasedConnections() {
+        return connectionManager.getTotalStats().getLeased();
+    }
+
+    @Override
+    public void close() throws IOException {
+        executor.shutdownNow();
+        httpClient.close();
+    }
+}
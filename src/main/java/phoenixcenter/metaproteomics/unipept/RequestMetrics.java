@@ -0,0 +1,69 @@
+package phoenixcenter.metaproteomics.unipept;
+
+import phoenixcenter.metaproteomics.metrics.MetricsRegistry;
+import phoenixcenter.metaproteomics.metrics.Timer;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Latency histograms of requests by name, e.g. "pept2data.ok" for successful attempts and "backoff" for the
+ * time waiting for retry, so the wall-clock time of a run can be broken down.
+ * <p>
+ * Latencies are also recorded in the registry as timers named "unipept." + name, so they are in the run report.
+ */
+public class RequestMetrics {
+
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+    private final MetricsRegistry registry;
+
+    public RequestMetrics() {
+        this(MetricsRegistry.getDefault());
+    }
+
+    /**
+     * @param registry the registry latencies are also recorded in, null if they are only kept here
+     */
+    public RequestMetrics(MetricsRegistry registry) {
+        this.registry = registry;
+    }
+
+    public void record(String name, long nanos) {
+        timers.computeIfAbsent(name, k -> new Timer()).record(nanos);
+        if (registry != null) {
+            registry.timer("unipept." + name).record(nanos);
+        }
+    }
+
+    public long getCount(String name) {
+        Timer timer = timers.get(name);
+        return timer == null ? 0L : timer.getCount();
+    }
+
+    /**
+     * @return total milliseconds of name
+     */
+    public double getTotalMillis(String name) {
+        Timer timer = timers.get(name);
+        return timer == null ? 0.0 : timer.getTotalMillis();
+    }
+
+    /**
+     * @return one line for each name: count, total, mean, p50, p99 and max in milliseconds
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Timer> e : new TreeMap<>(timers).entrySet()) {
+            Timer timer = e.getValue();
+            long count = timer.getCount();
+            double totalMillis = timer.getTotalMillis();
+            sb.append(String.format("%s: count=%d, total=%.1f ms, mean=%.1f ms, p50<=%.1f ms, p99<=%.1f ms, max=%.1f ms%n",
+                    e.getKey(), count, totalMillis, count == 0 ? 0.0 : totalMillis / count,
+                    timer.percentileMillis(0.5), timer.percentileMillis(0.99), timer.getMaxMillis()));
+        }
+        return sb.toString();
+    }
+}
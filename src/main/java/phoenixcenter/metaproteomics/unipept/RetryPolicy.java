@@ -0,0 +1,97 @@
+package phoenixcenter.metaproteomics.unipept;
+
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.utils.DateUtils;
+import phoenixcenter.metaproteomics.GlobalConfig;
+
+import java.util.Date;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Bounded retry with exponential backoff and jitter.
+ * <p>
+ * The n-th retry waits a random time in [d / 2, d] where d = min(maxDelay, baseDelay * 2^(n - 1)), so clients
+ * failing together do not retry together. Retry-After of the response is a lower bound of the wait.
+ */
+public class RetryPolicy {
+
+    private final int maxAttempts;
+
+    private final long baseDelayMillis;
+
+    private final long maxDelayMillis;
+
+    /**
+     * @param maxAttempts     max count of attempts including the first one
+     * @param baseDelayMillis the wait before the first retry
+     * @param maxDelayMillis  max wait without Retry-After
+     */
+    public RetryPolicy(int maxAttempts, long baseDelayMillis, long maxDelayMillis) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.baseDelayMillis = Math.max(1L, baseDelayMillis);
+        this.maxDelayMillis = Math.max(this.baseDelayMillis, maxDelayMillis);
+    }
+
+    /**
+     * Create a policy configured by "unipept.retry.*" settings
+     *
+     * @return
+     */
+    public static RetryPolicy create() {
+        return new RetryPolicy(GlobalConfig.getIntValue("unipept.retry.max.attempts"),
+                GlobalConfig.getIntValue("unipept.retry.base.millis"),
+                GlobalConfig.getIntValue("unipept.retry.max.millis"));
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * @param attempt the count of attempts made
+     * @return whether another attempt is allowed
+     */
+    public boolean canRetry(int attempt) {
+        return attempt < maxAttempts;
+    }
+
+    /**
+     * @param statusCode
+     * @return true for timeout, too many requests and server errors
+     */
+    public boolean isRetryable(int statusCode) {
+        return statusCode == 408 || statusCode == 429 || statusCode >= 500;
+    }
+
+    /**
+     * @param attempt          the count of attempts made
+     * @param retryAfterMillis Retry-After of the last response, not positive if there is none
+     * @return milliseconds to wait before the next attempt
+     */
+    public long delayMillis(int attempt, long retryAfterMillis) {
+        long backoff = Math.min(maxDelayMillis, baseDelayMillis << Math.min(attempt - 1, 30));
+        long delay = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff - backoff / 2 + 1);
+        return Math.max(delay, retryAfterMillis);
+    }
+
+    /**
+     * Parse Retry-After in delay seconds or HTTP date
+     *
+     * @param response
+     * @return milliseconds, -1 if it is absent or illegal
+     */
+    public static long retryAfterMillis(HttpResponse response) {
+        Header header = response.getFirstHeader("Retry-After");
+        if (header == null) {
+            return -1L;
+        }
+        String value = header.getValue().trim();
+        try {
+            return Long.parseLong(value) * 1000L;
+        } catch (NumberFormatException e) {
+            Date date = DateUtils.parseDate(value);
+            return date == null ? -1L : Math.max(0L, date.getTime() - System.currentTimeMillis());
+        }
+    }
+}
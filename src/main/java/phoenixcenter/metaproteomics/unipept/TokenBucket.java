@@ -0,0 +1,53 @@
+package phoenixcenter.metaproteomics.unipept;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token-bucket rate limiter shared by all threads requesting Unipept.
+ * <p>
+ * Tokens are refilled at {@code permitsPerSecond} up to {@code capacity}, so short bursts are allowed
+ * while the average rate never exceeds the limit.
+ */
+public class TokenBucket {
+
+    private final double permitsPerSecond;
+
+    private final double capacity;
+
+    private double tokens;
+
+    private long lastRefillNanos;
+
+    /**
+     * @param permitsPerSecond the average request rate, no limit if it is not positive
+     * @param capacity         the max burst size
+     */
+    public TokenBucket(double permitsPerSecond, double capacity) {
+        this.permitsPerSecond = permitsPerSecond;
+        this.capacity = Math.max(1.0, capacity);
+        this.tokens = this.capacity;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * Block until one token is available.
+     *
+     * @throws InterruptedException
+     */
+    public synchronized void acquire() throws InterruptedException {
+        if (permitsPerSecond <= 0) {
+            return;
+        }
+        while (true) {
+            long now = System.nanoTime();
+            tokens = Math.min(capacity, tokens + (now - lastRefillNanos) / 1e9 * permitsPerSecond);
+            lastRefillNanos = now;
+            if (tokens >= 1.0) {
+                tokens -= 1.0;
+                return;
+            }
+            long waitNanos = (long) Math.ceil((1.0 - tokens) / permitsPerSecond * 1e9);
+            TimeUnit.NANOSECONDS.timedWait(this, waitNanos);
+        }
+    }
+}
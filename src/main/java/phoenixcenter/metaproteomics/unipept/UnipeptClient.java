@@ -0,0 +1,47 @@
+package phoenixcenter.metaproteomics.unipept;
+
+import phoenixcenter.metaproteomics.entity.UnipeptLCA;
+import phoenixcenter.metaproteomics.entity.UnipeptTaxon;
+
+import java.io.Closeable;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Asynchronous client of Unipept API. Entities are parsed from the response stream and handed to consumer
+ * in the thread completing the request once the response is read completely, the future completes after the
+ * last entity is consumed.
+ */
+public interface UnipeptClient extends Closeable {
+
+    /**
+     * Request "mpa/pept2data", only sequence, lca id and lineage ids of LCA are set.
+     *
+     * @param peptides
+     * @param equalIL
+     * @param missedCleavage
+     * @param consumer       accept LCA of each peptide found
+     * @return
+     */
+    CompletableFuture<Void> pept2data(Collection<String> peptides,
+                                      boolean equalIL,
+                                      boolean missedCleavage,
+                                      Consumer<UnipeptLCA> consumer);
+
+    /**
+     * Request "private_api/taxa"
+     *
+     * @param taxonIds
+     * @param consumer accept each taxon found
+     * @return
+     */
+    CompletableFuture<Void> taxa(Collection<Integer> taxonIds, Consumer<UnipeptTaxon> consumer);
+
+    /**
+     * @return latency of requests, null if it is not recorded
+     */
+    default RequestMetrics getMetrics() {
+        return null;
+    }
+}
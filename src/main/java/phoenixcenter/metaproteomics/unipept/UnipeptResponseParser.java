@@ -0,0 +1,125 @@
+package phoenixcenter.metaproteomics.unipept;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import phoenixcenter.metaproteomics.entity.UnipeptLCA;
+import phoenixcenter.metaproteomics.entity.UnipeptTaxon;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Streaming parser of Unipept responses. Entities are built token by token and handed to consumer
+ * as soon as they are complete, neither the response string nor the json tree is materialized.
+ * {@link PooledUnipeptClient} collects the entities of a response and hands them over once the body is read
+ * completely, so only the entities of one response are held, not its text or tree.
+ */
+public class UnipeptResponseParser {
+
+    private static final int LINEAGE_SIZE = 28;
+
+    private final JsonFactory jsonFactory;
+
+    public UnipeptResponseParser(JsonFactory jsonFactory) {
+        this.jsonFactory = jsonFactory;
+    }
+
+    /**
+     * Parse response of "mpa/pept2data": {"peptides": [{"sequence": "", "lca": 1, "lineage": [1, null, ...]}, ...]}.
+     * Only sequence, lca id and lineage ids are set.
+     *
+     * @param is
+     * @param consumer
+     * @throws IOException
+     */
+    public void parsePept2data(InputStream is, Consumer<UnipeptLCA> consumer) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(is)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("illegal pept2data response: object expected");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                if (field.equals("peptides") && token == JsonToken.START_ARRAY) {
+                    int[] lineageBuffer = new int[LINEAGE_SIZE];
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        consumer.accept(parsePeptide(parser, lineageBuffer));
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+    }
+
+    private UnipeptLCA parsePeptide(JsonParser parser, int[] lineageBuffer) throws IOException {
+        UnipeptLCA unipeptLCA = new UnipeptLCA();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            switch (field) {
+                case "sequence":
+                    unipeptLCA.setSequence(parser.getText());
+                    break;
+                case "lca":
+                    unipeptLCA.setLcaId(parser.getIntValue());
+                    break;
+                case "lineage":
+                    if (token == JsonToken.START_ARRAY) {
+                        int size = 0;
+                        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                            if (size == lineageBuffer.length) {
+                                lineageBuffer = Arrays.copyOf(lineageBuffer, size * 2);
+                            }
+                            // 0 means the rank is not assigned
+                            lineageBuffer[size++] = token == JsonToken.VALUE_NULL ? 0 : parser.getIntValue();
+                        }
+                        unipeptLCA.setLineageIds(Arrays.copyOf(lineageBuffer, size));
+                    }
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        return unipeptLCA;
+    }
+
+    /**
+     * Parse response of "private_api/taxa": [{"id": 1, "name": "", "rank": ""}, ...]
+     *
+     * @param is
+     * @param consumer
+     * @throws IOException
+     */
+    public void parseTaxa(InputStream is, Consumer<UnipeptTaxon> consumer) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(is)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException("illegal taxa response: array expected");
+            }
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                UnipeptTaxon taxon = new UnipeptTaxon();
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.getCurrentName();
+                    parser.nextToken();
+                    switch (field) {
+                        case "id":
+                            taxon.setId(parser.getIntValue());
+                            break;
+                        case "name":
+                            taxon.setName(parser.getText());
+                            break;
+                        case "rank":
+                            taxon.setRank(parser.getText());
+                            break;
+                        default:
+                            parser.skipChildren();
+                    }
+                }
+                consumer.accept(taxon);
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package phoenixcenter.metaproteomics.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Buffered writer of bytes to a file channel. Bytes are gathered in a direct buffer and written to the
+ * channel only when the buffer is full, so large files are written in few system calls without copying
+ * through the heap.
+ */
+public class ChannelWriter implements Closeable {
+
+    private final FileChannel channel;
+
+    private final ByteBuffer buffer;
+
+    /**
+     * @param path       it is truncated if it exists
+     * @param bufferSize
+     * @throws IOException
+     */
+    public ChannelWriter(Path path, int bufferSize) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    public void write(byte[] bytes) throws IOException {
+        write(bytes, 0, bytes.length);
+    }
+
+    /**
+     * @param bytes
+     * @param from  inclusive
+     * @param to    exclusive
+     * @throws IOException
+     */
+    public void write(byte[] bytes, int from, int to) throws IOException {
+        while (from < to) {
+            if (!buffer.hasRemaining()) {
+                flush();
+            }
+            int length = Math.min(buffer.remaining(), to - from);
+            buffer.put(bytes, from, length);
+            from += length;
+        }
+    }
+
+    public void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+}
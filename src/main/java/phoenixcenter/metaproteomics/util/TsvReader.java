@@ -0,0 +1,271 @@
+package phoenixcenter.metaproteomics.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reader of tab separated file with header.
+ * <p>
+ * Rows are scanned in a reusable char buffer and only the field offsets are recorded, so reading a row
+ * allocates nothing unless a field is taken as String. Fields are trimmed, and a field beyond the end
+ * of row is treated as empty.
+ */
+public class TsvReader implements Closeable {
+
+    private static final double[] POW10 = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    /**
+     * the max digits of a long mantissa converted to double exactly
+     */
+    private static final int MAX_EXACT_DIGITS = 15;
+
+    private final Reader reader;
+
+    private char[] buffer = new char[1 << 16];
+
+    /**
+     * count of valid chars in buffer
+     */
+    private int limit;
+
+    /**
+     * start of the next row in buffer
+     */
+    private int nextRowStart;
+
+    private boolean eof;
+
+    private int[] fieldStarts = new int[64];
+
+    private int[] fieldEnds = new int[64];
+
+    private int fieldCount;
+
+    private final String[] headers;
+
+    private final Map<String, Integer> header2Index = new HashMap<>();
+
+    public TsvReader(Reader reader) throws IOException {
+        this.reader = reader;
+        if (next()) {
+            headers = new String[fieldCount];
+            for (int i = 0; i < fieldCount; i++) {
+                headers[i] = getString(i);
+                header2Index.putIfAbsent(headers[i], i);
+            }
+        } else {
+            headers = new String[0];
+        }
+    }
+
+    public static TsvReader open(Path path) throws IOException {
+        return new TsvReader(Files.newBufferedReader(path, StandardCharsets.UTF_8));
+    }
+
+    public String[] getHeaders() {
+        return headers.clone();
+    }
+
+    /**
+     * @param header
+     * @return index of the first column with the header, -1 if absent
+     */
+    public int columnIndex(String header) {
+        return header2Index.getOrDefault(header, -1);
+    }
+
+    /**
+     * Move to next row
+     *
+     * @return false if there is no more row
+     * @throws IOException
+     */
+    public boolean next() throws IOException {
+        int rowStart = nextRowStart;
+        int pos = rowStart;
+        while (true) {
+            while (pos < limit && buffer[pos] != '\n') {
+                pos++;
+            }
+            if (pos < limit || eof) {
+                break;
+            }
+            // move current row to the head of buffer and read more
+            int scanned = pos - rowStart;
+            if (rowStart > 0) {
+                System.arraycopy(buffer, rowStart, buffer, 0, limit - rowStart);
+                limit -= rowStart;
+                rowStart = 0;
+            } else if (limit == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            int n = reader.read(buffer, limit, buffer.length - limit);
+            if (n == -1) {
+                eof = true;
+            } else {
+                limit += n;
+            }
+            pos = rowStart + scanned;
+        }
+        if (pos == rowStart && pos == limit) {
+            nextRowStart = limit;
+            fieldCount = 0;
+            return false;
+        }
+        // the last row may not end with line separator
+        nextRowStart = pos < limit ? pos + 1 : limit;
+        splitFields(rowStart, pos);
+        return true;
+    }
+
+    private void splitFields(int start, int end) {
+        fieldCount = 0;
+        int fieldStart = start;
+        for (int i = start; i <= end; i++) {
+            if (i == end || buffer[i] == '\t') {
+                if (fieldCount == fieldStarts.length) {
+                    fieldStarts = Arrays.copyOf(fieldStarts, fieldCount * 2);
+                    fieldEnds = Arrays.copyOf(fieldEnds, fieldCount * 2);
+                }
+                int s = fieldStart;
+                int e = i;
+                while (s < e && buffer[s] <= ' ') {
+                    s++;
+                }
+                while (e > s && buffer[e - 1] <= ' ') {
+                    e--;
+                }
+                fieldStarts[fieldCount] = s;
+                fieldEnds[fieldCount] = e;
+                fieldCount++;
+                fieldStart = i + 1;
+            }
+        }
+    }
+
+    /**
+     * @return count of fields in current row
+     */
+    public int getFieldCount() {
+        return fieldCount;
+    }
+
+    public boolean isEmpty(int col) {
+        return col >= fieldCount || fieldStarts[col] == fieldEnds[col];
+    }
+
+    /**
+     * @param col
+     * @return "" if the field is empty
+     */
+    public String getString(int col) {
+        return col >= fieldCount ? "" : new String(buffer, fieldStarts[col], fieldEnds[col] - fieldStarts[col]);
+    }
+
+    /**
+     * Compare field with the string without creating String
+     *
+     * @param col
+     * @param str
+     * @return
+     */
+    public boolean fieldEquals(int col, String str) {
+        int length = col >= fieldCount ? 0 : fieldEnds[col] - fieldStarts[col];
+        if (length != str.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (buffer[fieldStarts[col] + i] != str.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int getInt(int col) {
+        if (isEmpty(col)) {
+            throw new NumberFormatException("empty field at column " + col);
+        }
+        int pos = fieldStarts[col];
+        int end = fieldEnds[col];
+        boolean negative = buffer[pos] == '-';
+        if (negative || buffer[pos] == '+') {
+            pos++;
+        }
+        if (pos == end || end - pos > 9) {
+            return Integer.parseInt(getString(col));
+        }
+        int value = 0;
+        for (; pos < end; pos++) {
+            int digit = buffer[pos] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("illegal integer: " + getString(col));
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parse field as double. Plain decimals with at most 15 significant digits are parsed in place,
+     * which is as exact as {@link Double#parseDouble(String)}; the others fall back to it.
+     *
+     * @param col
+     * @param emptyValue the value returned if the field is empty
+     * @return
+     */
+    public double getDouble(int col, double emptyValue) {
+        if (isEmpty(col)) {
+            return emptyValue;
+        }
+        int pos = fieldStarts[col];
+        int end = fieldEnds[col];
+        boolean negative = buffer[pos] == '-';
+        if (negative || buffer[pos] == '+') {
+            pos++;
+        }
+        if (pos == end || (buffer[pos] == '.' && end - pos == 1)) {
+            return Double.parseDouble(getString(col));
+        }
+        long mantissa = 0L;
+        int digits = 0;
+        int fractionDigits = -1;
+        for (; pos < end; pos++) {
+            char c = buffer[pos];
+            if (c >= '0' && c <= '9') {
+                if (mantissa > 0 || c != '0') {
+                    digits++;
+                }
+                mantissa = mantissa * 10 + (c - '0');
+                if (fractionDigits >= 0) {
+                    fractionDigits++;
+                }
+            } else if (c == '.' && fractionDigits == -1) {
+                fractionDigits = 0;
+            } else {
+                // exponent, NaN, Infinity and so on
+                return Double.parseDouble(getString(col));
+            }
+            if (digits > MAX_EXACT_DIGITS || fractionDigits >= POW10.length) {
+                return Double.parseDouble(getString(col));
+            }
+        }
+        double value = fractionDigits > 0 ? mantissa / POW10[fractionDigits] : mantissa;
+        return negative ? -value : value;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,78 @@
+package phoenixcenter.metaproteomics;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import phoenixcenter.metaproteomics.entity.QuantMatrix;
+import phoenixcenter.metaproteomics.entity.UnipeptTaxon;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class LCAFileSummaryTest {
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    private final String[] ranks = {"species", "genus", "family", "superkingdom"};
+
+    private String row(List<String> headers, String... keyValues) {
+        String[] row = new String[headers.size()];
+        Arrays.fill(row, "");
+        for (int i = 0; i < keyValues.length; i += 2) {
+            row[headers.indexOf(keyValues[i])] = keyValues[i + 1];
+        }
+        return String.join("\t", row);
+    }
+
+    @Test
+    public void read() throws IOException {
+        List<String> headers = new ArrayList<>(Arrays.asList("peptide", "S1", "S2", "taxon_id", "taxon_name", "taxon_rank"));
+        for (int i = ranks.length - 1; i >= 0; i--) {
+            headers.add(ranks[i] + "_id");
+            headers.add(ranks[i] + "_name");
+        }
+        Path lcaFilePath = tmpFolder.getRoot().toPath().resolve("lca.tsv");
+        try (BufferedWriter bw = Files.newBufferedWriter(lcaFilePath)) {
+            bw.write(String.join("\t", headers) + "\n");
+            bw.write(row(headers, "peptide", "AAAK", "S1", "1.0", "S2", "2.0",
+                    "taxon_id", "562", "taxon_rank", "species",
+                    "species_id", "562", "species_name", "E. coli",
+                    "genus_id", "561", "genus_name", "Escherichia",
+                    "superkingdom_id", "2", "superkingdom_name", "Bacteria") + "\n");
+            bw.write(row(headers, "peptide", "CCCK", "S1", "3.0",
+                    "taxon_id", "561", "taxon_rank", "genus",
+                    "genus_id", "561", "genus_name", "Escherichia",
+                    "superkingdom_id", "2", "superkingdom_name", "Bacteria") + "\n");
+            // root and unknown peptides are skipped
+            bw.write(row(headers, "peptide", "DDDK", "taxon_id", "1", "taxon_rank", "no rank") + "\n");
+            bw.write("EEEK\t1\t1\n");
+        }
+        LCAFileSummary summary = LCAFileSummary.read(lcaFilePath, ranks, Arrays.asList("genus", "superkingdom"));
+        assertEquals(Arrays.asList("S1", "S2"), summary.getSamples());
+        // distribution
+        assertEquals(1, summary.getTaxon2PeptideCount(0).size());
+        assertEquals(2, summary.getTaxon2PeptideCount(1).get("Escherichia")[0]);
+        // unnamed family is counted with placeholder
+        assertEquals(1, summary.getTaxon2PeptideCount(2).get("family_562")[0]);
+        assertEquals(1, summary.getTaxon2PeptideCount(2).get("family_561")[0]);
+        assertEquals(2, summary.getTaxon2PeptideCount(3).get("Bacteria")[0]);
+        // quantification
+        assertNull(summary.getRowTaxa("species"));
+        QuantMatrix peptideMatrix = summary.getPeptideMatrix();
+        assertEquals(2, peptideMatrix.getRowCount());
+        assertEquals("AAAK", peptideMatrix.getLabel(0));
+        assertArrayEquals(new double[]{3.0, 0.0}, peptideMatrix.getRow(1), 0.0);
+        List<UnipeptTaxon> genera = summary.getTaxa("genus");
+        assertEquals(Collections.singletonList(UnipeptTaxon.builder().id(561).name("Escherichia").build()), genera);
+        int[] rowGenera = summary.getRowTaxa("genus");
+        assertEquals(0, rowGenera[0]);
+        assertEquals(0, rowGenera[1]);
+        assertEquals(1, summary.getTaxa("superkingdom").size());
+    }
+}
@@ -0,0 +1,105 @@
+package phoenixcenter.metaproteomics;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import phoenixcenter.metaproteomics.unipept.PooledUnipeptClient;
+import phoenixcenter.metaproteomics.unipept.UnipeptStubServer;
+import umich.ms.fileio.exceptions.FileParsingException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Run the pipeline with stub tools: "Mascot2XML" copies the DAT file(a pepXML in fact) and "xinteract"
+ * copies pepXML, charts are not plotted.
+ */
+public class MPQPipelineStubToolsTest {
+
+    private static final String[] KEYS = {"Mascot2XML", "xinteract", "python3", "unipept.url",
+            "unipept.requests.per.second", "unipept.cache.file"};
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    private UnipeptStubServer server;
+
+    @After
+    public void tearDown() {
+        if (server != null) {
+            server.close();
+        }
+        for (String key : KEYS) {
+            System.clearProperty(key);
+        }
+    }
+
+    private Path writeScript(String name, String content) throws IOException {
+        Path path = tmpFolder.getRoot().toPath().resolve(name);
+        Files.write(path, Arrays.asList("#!/bin/sh", content));
+        Files.setPosixFilePermissions(path, PosixFilePermissions.fromString("rwxr-xr-x"));
+        return path;
+    }
+
+    @Test
+    public void run() throws IOException, FileParsingException {
+        System.setProperty("Mascot2XML", writeScript("Mascot2XML", "cp \"$1\" \"${1%.dat}.pep.xml\"").toString());
+        // xinteract -N<output> ... <input>, the index and models files are deleted by PeptideProphetEnhancer
+        System.setProperty("xinteract", writeScript("xinteract", String.join("\n",
+                "for arg; do last=\"$arg\"; done",
+                "out=\"${1#-N}\"",
+                "cp \"$last\" \"$out\"",
+                "touch \"${out}.index\" \"${out%.*}-MODELS.html\"")).toString());
+        System.setProperty("python3", "true");
+        server = new UnipeptStubServer(0);
+        System.setProperty("unipept.url", server.getURL());
+        System.setProperty("unipept.requests.per.second", "0");
+        System.setProperty("unipept.cache.file", "");
+
+        Path datDir = tmpFolder.newFolder("dat").toPath();
+        List<Path> datPaths = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Path datPath = datDir.resolve("F00" + i + ".dat");
+            PepXmlFixtures.write(datPath, 50, i);
+            datPaths.add(datPath);
+        }
+        Path outputDir = tmpFolder.getRoot().toPath().resolve("out");
+        MPQPipeline.builder()
+                .targetDecoyLibrary("td.fasta")
+                .decoyPrefix(PepXmlFixtures.DECOY_PREFIX)
+                .manualDecoy(true)
+                .rank("species")
+                .taxAnalysis(new TaxAnalysis(PooledUnipeptClient.create()))
+                .outputDir(outputDir)
+                .mascot2XMLParallelism(2)
+                .peptideProphetParallelism(2)
+                .countParallelism(2)
+                .build()
+                .run(datPaths);
+
+        // the same counts as xml2tsv of PeptideProphet results
+        Path expectedPath = tmpFolder.getRoot().toPath().resolve("expected.tsv");
+        String[] ppPepxmlFiles = datPaths.stream()
+                .map(p -> outputDir.resolve(p.getFileName().toString().replace(".dat", ".pp.pep.xml")).toString())
+                .toArray(String[]::new);
+        new PeptideProphetEnhancer(1).pp2tsv(PepXmlFixtures.DECOY_PREFIX, ppPepxmlFiles, expectedPath.toString());
+        List<String> expected = Files.readAllLines(expectedPath);
+        List<String> peptideLines = Files.readAllLines(outputDir.resolve(MPQPipeline.PEPTIDE_FILE_NAME));
+        assertEquals("Peptide\tF000\tF001\tF002", peptideLines.get(0));
+        assertEquals(expected.subList(1, expected.size()), peptideLines.subList(1, peptideLines.size()));
+
+        List<String> lcaLines = Files.readAllLines(outputDir.resolve(MPQPipeline.LCA_FILE_NAME));
+        assertEquals(peptideLines.size(), lcaLines.size());
+        assertTrue(lcaLines.get(0).startsWith("Peptide\tF000\tF001\tF002\ttaxon_id"));
+        assertTrue(lcaLines.get(1).contains("\t562\tEscherichia coli\t"));
+        List<String> quantLines = Files.readAllLines(outputDir.resolve(MPQPipeline.TAXON_QUANT_FILE_NAME));
+        assertTrue(quantLines.get(quantLines.size() - 1).startsWith("562\tEscherichia coli"));
+    }
+}
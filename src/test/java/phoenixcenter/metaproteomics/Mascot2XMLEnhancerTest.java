@@ -0,0 +1,79 @@
+package phoenixcenter.metaproteomics;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class Mascot2XMLEnhancerTest {
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    private Path datDir;
+
+    @Before
+    public void setUp() throws IOException {
+        // a Mascot2XML stub which copies the DAT file as the pepxml file
+        Path mascot2XML = tmpFolder.newFile("Mascot2XML").toPath();
+        Files.write(mascot2XML, Arrays.asList("#!/bin/sh", "sleep 0.2", "cp \"$1\" \"${1%.*}.pep.xml\""));
+        mascot2XML.toFile().setExecutable(true);
+        System.setProperty("Mascot2XML", mascot2XML.toString());
+        datDir = tmpFolder.newFolder("dat").toPath();
+        for (String name : new String[]{"F001.dat", "F002.dat", "F003.dat", "F010.dat"}) {
+            Files.write(datDir.resolve(name), name.getBytes(StandardCharsets.UTF_8));
+        }
+        Files.write(datDir.resolve("notes.txt"), new byte[0]);
+    }
+
+    @After
+    public void tearDown() {
+        System.clearProperty("Mascot2XML");
+    }
+
+    @Test
+    public void listDatFiles() throws IOException {
+        assertTrue(Mascot2XMLEnhancer.isDatBatch(datDir.toString()));
+        assertTrue(Mascot2XMLEnhancer.isDatBatch(datDir + "/F00*.dat"));
+        assertFalse(Mascot2XMLEnhancer.isDatBatch(datDir + "/F001.dat"));
+        assertEquals(Arrays.asList(datDir.resolve("F001.dat"), datDir.resolve("F002.dat"),
+                datDir.resolve("F003.dat"), datDir.resolve("F010.dat")),
+                Mascot2XMLEnhancer.listDatFiles(datDir.toString()));
+        assertEquals(Arrays.asList(datDir.resolve("F001.dat"), datDir.resolve("F002.dat")),
+                Mascot2XMLEnhancer.listDatFiles(datDir + "/F00[12].dat"));
+    }
+
+    @Test
+    public void convertBatch() throws IOException {
+        Mascot2XMLEnhancer mascot2XMLEnhancer = new Mascot2XMLEnhancer(2);
+        List<Path> datPaths = Mascot2XMLEnhancer.listDatFiles(datDir.toString());
+        Path outputDir = tmpFolder.getRoot().toPath().resolve("pepxml");
+        Map<Path, Long> dat2Millis = mascot2XMLEnhancer.convertBatch(datPaths, true, null,
+                "trypsin", "td.fasta", outputDir);
+        assertEquals(datPaths, Arrays.asList(dat2Millis.keySet().toArray()));
+        for (Path datPath : datPaths) {
+            String name = datPath.getFileName().toString();
+            Path pepxmlPath = outputDir.resolve(name.replace(".dat", ".pep.xml"));
+            assertEquals(name, new String(Files.readAllBytes(pepxmlPath), StandardCharsets.UTF_8));
+        }
+        // up-to-date pepxml files are skipped
+        assertTrue(mascot2XMLEnhancer.convertBatch(datPaths, true, null,
+                "trypsin", "td.fasta", outputDir).isEmpty());
+        Path modifiedPath = datDir.resolve("F002.dat");
+        Files.setLastModifiedTime(modifiedPath, FileTime.fromMillis(System.currentTimeMillis() + 60000L));
+        assertEquals(Arrays.asList(modifiedPath), Arrays.asList(mascot2XMLEnhancer.convertBatch(datPaths, true,
+                null, "trypsin", "td.fasta", outputDir).keySet().toArray()));
+    }
+}
@@ -0,0 +1,97 @@
+package phoenixcenter.metaproteomics;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Generate pepXML files with PeptideProphet results for tests
+ */
+public class PepXmlFixtures {
+
+    public static final String DECOY_PREFIX = "DECOY_";
+
+    /**
+     * Write a pepXML whose top hits are drawn from a small pool of peptides. About a quarter of the hits
+     * are decoys, and target hits have higher probabilities on average.
+     *
+     * @param path
+     * @param queryCount
+     * @param seed
+     * @throws IOException
+     */
+    public static void write(Path path, int queryCount, long seed) throws IOException {
+        Random random = new Random(seed);
+        try (BufferedWriter bw = Files.newBufferedWriter(path)) {
+            bw.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+            bw.write("<msms_pipeline_analysis date=\"2020-01-01T00:00:00\" "
+                    + "xmlns=\"http://regis-web.systemsbiology.net/pepXML\" summary_xml=\"" + path + "\">\n");
+            bw.write("<analysis_summary analysis=\"peptideprophet\" time=\"2020-01-01T00:00:00\"/>\n");
+            bw.write("<msms_run_summary base_name=\"sample\" raw_data_type=\"\" raw_data=\".mgf\">\n");
+            bw.write("<search_summary base_name=\"sample\" search_engine=\"MASCOT\" precursor_mass_type=\"monoisotopic\" "
+                    + "fragment_mass_type=\"monoisotopic\" search_id=\"1\"/>\n");
+            for (int i = 1; i <= queryCount; i++) {
+                boolean decoy = random.nextInt(4) == 0;
+                String peptide = "PEPT" + (char) ('A' + random.nextInt(20)) + "IDEK";
+                double prob = decoy ? random.nextDouble() * 0.6 : 0.4 + random.nextDouble() * 0.6;
+                bw.write("<spectrum_query spectrum=\"sample." + i + "." + i + ".2\" start_scan=\"" + i
+                        + "\" end_scan=\"" + i + "\" precursor_neutral_mass=\"1000.0\" assumed_charge=\"2\" index=\""
+                        + i + "\">\n");
+                bw.write("<search_result>\n");
+                bw.write("<search_hit hit_rank=\"1\" peptide=\"" + peptide + "\" protein=\""
+                        + (decoy ? DECOY_PREFIX : "") + "P" + random.nextInt(5)
+                        + "\" num_tot_proteins=\"2\" calc_neutral_pep_mass=\"1000.0\" massdiff=\"0.0\">\n");
+                // decoy hits may also share a decoy alternative protein, target hits may share a decoy one
+                bw.write("<alternative_protein protein=\"" + (decoy || random.nextBoolean() ? DECOY_PREFIX : "")
+                        + "Q" + random.nextInt(5) + "\"/>\n");
+                bw.write("<search_score name=\"ionscore\" value=\"30\"/>\n");
+                bw.write("<analysis_result analysis=\"peptideprophet\">\n");
+                bw.write("<peptideprophet_result probability=\"" + String.format("%.4f", prob)
+                        + "\" all_ntt_prob=\"(0,0,0)\"/>\n");
+                bw.write("</analysis_result>\n");
+                bw.write("</search_hit>\n</search_result>\n</spectrum_query>\n");
+            }
+            bw.write("</msms_run_summary>\n</msms_pipeline_analysis>\n");
+        }
+    }
+
+    /**
+     * Write a pepXML as Mascot2XML does, before PeptideProphet. The ionscore of a query is drawn from
+     * [0, 100), and a few hits have the "+-0.0000" massdiff of Mascot2XML.
+     *
+     * @param path       path of pepXML, base name of the run is path without ".pep.xml"
+     * @param queryIds   ids of queries in file order
+     * @param seed
+     * @throws IOException
+     */
+    public static void writeMascot(Path path, int[] queryIds, long seed) throws IOException {
+        Random random = new Random(seed);
+        String baseName = path.toString().substring(0, path.toString().lastIndexOf(".pep.xml"));
+        String spectrumPrefix = path.getFileName().toString();
+        spectrumPrefix = spectrumPrefix.substring(0, spectrumPrefix.lastIndexOf(".pep.xml"));
+        try (BufferedWriter bw = Files.newBufferedWriter(path)) {
+            bw.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+            bw.write("<msms_pipeline_analysis date=\"2020-01-01T00:00:00\" "
+                    + "xmlns=\"http://regis-web.systemsbiology.net/pepXML\" summary_xml=\"" + path + "\">\n");
+            bw.write(" <msms_run_summary base_name=\"" + baseName + "\" raw_data_type=\"\" raw_data=\".mgf\">\n");
+            bw.write("  <search_summary base_name=\"" + baseName + "\" search_engine=\"MASCOT\" "
+                    + "precursor_mass_type=\"monoisotopic\" fragment_mass_type=\"monoisotopic\" search_id=\"1\"/>\n");
+            for (int qid : queryIds) {
+                bw.write("  <spectrum_query spectrum=\"" + spectrumPrefix + "." + qid + "." + qid
+                        + ".2\" start_scan=\"" + qid + "\" end_scan=\"" + qid
+                        + "\" precursor_neutral_mass=\"1000.0\" assumed_charge=\"2\" index=\"" + qid + "\">\n");
+                bw.write("   <search_result>\n");
+                bw.write("    <search_hit hit_rank=\"1\" peptide=\"PEPT" + (char) ('A' + random.nextInt(20))
+                        + "IDEK\" protein=\"P" + random.nextInt(5) + "\" num_tot_proteins=\"2\" "
+                        + "calc_neutral_pep_mass=\"1000.0\" massdiff=\""
+                        + (random.nextInt(10) == 0 ? "+-0.0000" : "+0.0010") + "\">\n");
+                bw.write("     <alternative_protein protein=\"Q" + random.nextInt(5) + "\"/>\n");
+                bw.write("     <search_score name=\"ionscore\" value=\"" + random.nextInt(100) + "\"/>\n");
+                bw.write("    </search_hit>\n   </search_result>\n  </spectrum_query>\n");
+            }
+            bw.write(" </msms_run_summary>\n</msms_pipeline_analysis>\n");
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package phoenixcenter.metaproteomics;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import umich.ms.fileio.exceptions.FileParsingException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PeptideProphetEnhancerTest {
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    @Test
+    public void parallelPP2tsv() throws IOException, FileParsingException {
+        String[] pepxmlFiles = new String[6];
+        for (int i = 0; i < pepxmlFiles.length; i++) {
+            Path pepxmlPath = tmpFolder.getRoot().toPath().resolve("F" + i + ".pep.xml");
+            PepXmlFixtures.write(pepxmlPath, 200, i);
+            pepxmlFiles[i] = pepxmlPath.toString();
+        }
+        Path sequentialPath = tmpFolder.getRoot().toPath().resolve("sequential.tsv");
+        Path parallelPath = tmpFolder.getRoot().toPath().resolve("parallel.tsv");
+        new PeptideProphetEnhancer(1).pp2tsv(PepXmlFixtures.DECOY_PREFIX, pepxmlFiles, sequentialPath.toString());
+        new PeptideProphetEnhancer(4).pp2tsv(PepXmlFixtures.DECOY_PREFIX, pepxmlFiles, parallelPath.toString());
+        List<String> sequentialLines = Files.readAllLines(sequentialPath);
+        assertEquals("Peptide\tF0\tF1\tF2\tF3\tF4\tF5", sequentialLines.get(0));
+        assertTrue(sequentialLines.size() > 1);
+        assertEquals(sequentialLines, Files.readAllLines(parallelPath));
+    }
+}
@@ -0,0 +1,95 @@
+package phoenixcenter.metaproteomics;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import phoenixcenter.metaproteomics.unipept.UnipeptStubServer;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TaxAnalysisStubServerTest {
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    private UnipeptStubServer server;
+
+    private TaxAnalysis createTaxAnalysis(long delayMillis) throws IOException {
+        server = new UnipeptStubServer(delayMillis);
+        System.setProperty("unipept.url", server.getURL());
+        System.setProperty("unipept.batch.size", "10");
+        System.setProperty("unipept.max.in.flight", "4");
+        System.setProperty("unipept.requests.per.second", "0");
+        System.setProperty("unipept.cache.file", "");
+        return new TaxAnalysis();
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+        for (String key : new String[]{"unipept.url", "unipept.batch.size", "unipept.max.in.flight",
+                "unipept.requests.per.second", "unipept.cache.file"}) {
+            System.clearProperty(key);
+        }
+    }
+
+    @Test
+    public void writeLCAFile() throws IOException {
+        TaxAnalysis taxAnalysis = createTaxAnalysis(200);
+        Path peptidePath = tmpFolder.newFile("peptide.tsv").toPath();
+        Path lcaPath = tmpFolder.getRoot().toPath().resolve("lca.tsv");
+        int peptideCount = 95;
+        try (BufferedWriter bw = Files.newBufferedWriter(peptidePath)) {
+            bw.write("Sequence\tU1" + System.lineSeparator());
+            for (int i = 0; i < peptideCount; i++) {
+                // every 7th peptide is unknown
+                bw.write((i % 7 == 0 ? "NPEPT" : "PEPT") + i + "K\t" + i + System.lineSeparator());
+            }
+        }
+        taxAnalysis.writeLCAFile(peptidePath.toString(), true, false, lcaPath.toString());
+
+        List<String> lines = Files.readAllLines(lcaPath);
+        assertEquals(peptideCount + 1, lines.size());
+        assertTrue(lines.get(0).startsWith("Sequence\tU1\ttaxon_id\ttaxon_name"));
+        for (int i = 0; i < peptideCount; i++) {
+            String[] tmp = lines.get(i + 1).split("\t", -1);
+            // rows keep input order
+            assertEquals(String.valueOf(i), tmp[1]);
+            if (i % 7 == 0) {
+                assertEquals(2, tmp.length);
+            } else {
+                assertEquals("562", tmp[2]);
+                assertEquals("Escherichia coli", tmp[3]);
+                assertEquals("Bacteria", tmp[6]);
+                assertEquals("Escherichia coli", tmp[6 + UnipeptStubServer.SPECIES_IDX * 2]);
+            }
+        }
+        assertEquals(10, server.getPept2dataCount());
+        assertTrue("shards should be requested concurrently", server.getMaxInFlight() > 1);
+    }
+
+    @Test
+    public void unwritableCache() throws IOException {
+        createTaxAnalysis(0);
+        // the parent of cache file is a regular file, so its directory cannot be created
+        Path notDir = tmpFolder.newFile("not-dir").toPath();
+        System.setProperty("unipept.cache.file", notDir.resolve("pept2lca.cache").toString());
+        TaxAnalysis taxAnalysis = new TaxAnalysis();
+        List<String> sequences = new ArrayList<>();
+        taxAnalysis.peptide2LCA(Arrays.asList("PEPT1K", "NPEPT2K"), true, false,
+                unipeptLCA -> sequences.add(unipeptLCA.getSequence()));
+        assertEquals(Collections.singletonList("PEPT1K"), sequences);
+        assertEquals(1, server.getPept2dataCount());
+    }
+}
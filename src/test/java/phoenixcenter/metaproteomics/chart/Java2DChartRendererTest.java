@@ -0,0 +1,63 @@
+package phoenixcenter.metaproteomics.chart;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.imageio.ImageIO;
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.awt.image.BufferedImage;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class Java2DChartRendererTest {
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    private final String[] ranks = {"species", "genus", "family"};
+
+    private final ChartRenderer renderer = new Java2DChartRenderer();
+
+    private void renderAll(String format) throws Exception {
+        Path dir = tmpFolder.getRoot().toPath();
+        renderer.renderPeptideRankDistribution(ranks, new int[]{10, 5, 2}, new int[]{0, 10, 15},
+                dir.resolve("rank." + format));
+        Map<String, Map<Integer, Integer>> peptideCount2TaxonCountInRank = new HashMap<>();
+        peptideCount2TaxonCountInRank.put("species", Collections.singletonMap(1, 10));
+        Map<Integer, Integer> genus = new HashMap<>();
+        genus.put(1, 3);
+        genus.put(12, 1);
+        peptideCount2TaxonCountInRank.put("genus", genus);
+        renderer.renderPeptideTaxonDistribution(ranks, peptideCount2TaxonCountInRank, dir.resolve("taxon." + format));
+        Map<String, double[]> taxon2Quants = new LinkedHashMap<>();
+        taxon2Quants.put("Escherichia coli", new double[]{100.0, 0.0});
+        taxon2Quants.put("Bacteroides <fragilis> & co", new double[]{Double.NEGATIVE_INFINITY, 50.0});
+        renderer.renderTaxonQuant("species", false, Arrays.asList("S1", "S2"), taxon2Quants,
+                dir.resolve("quant." + format));
+    }
+
+    @Test
+    public void png() throws Exception {
+        renderAll("png");
+        for (String name : new String[]{"rank.png", "taxon.png", "quant.png"}) {
+            BufferedImage image = ImageIO.read(tmpFolder.getRoot().toPath().resolve(name).toFile());
+            assertNotNull(name, image);
+            assertTrue(image.getWidth() > 100 && image.getHeight() > 100);
+        }
+    }
+
+    @Test
+    public void svg() throws Exception {
+        renderAll("svg");
+        for (String name : new String[]{"rank.svg", "taxon.svg", "quant.svg"}) {
+            // well-formed, e.g. taxon names are escaped
+            String root = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                    .parse(tmpFolder.getRoot().toPath().resolve(name).toFile())
+                    .getDocumentElement().getTagName();
+            assertEquals("svg", root);
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package phoenixcenter.metaproteomics.cli;
 
 import org.junit.Test;
+import phoenixcenter.metaproteomics.fasta.DecoyFastaGenerator.DecoyMode;
 import umich.ms.fileio.exceptions.FileParsingException;
 
 import java.io.IOException;
@@ -21,7 +22,7 @@ public class MPQCommandTest {
         String targetLibrary = "/home/huangjs/Documents/mpq/test/biomass.fasta";
         String decoyPrefix = "DECOY_";
         String tdLibrary = "/home/huangjs/Documents/mpq/test/biomass.td.fasta";
-        mpqCommand.genTargetDecoyLibrary(targetLibrary, decoyPrefix, tdLibrary);
+        mpqCommand.genTargetDecoyLibrary(targetLibrary, decoyPrefix, DecoyMode.REVERSE, 0, tdLibrary);
     }
 
     @Test
@@ -39,7 +40,7 @@ public class MPQCommandTest {
         String enzyme = "trypsin";
         String decoyPrefix = "DECOY_";
         String pepxmlFile = "/home/huangjs/Documents/mpq/test/F008283.pep.xml";
-        mpqCommand.dat2xml(datFile, targetDecoyLibrary, enzyme, false, decoyPrefix, pepxmlFile);
+        mpqCommand.dat2xml(datFile, targetDecoyLibrary, enzyme, false, decoyPrefix, 0, pepxmlFile);
     }
 
     @Test
@@ -54,7 +55,7 @@ public class MPQCommandTest {
         String decoyPrefix = "DECOY_";
         String libraryFile = "/home/huangjs/Documents/mpq/test/biomass.fasta";
         String ppPepXML = "/home/huangjs/Documents/mpq/test/F008283.pp.pep.xml";
-        mpqCommand.xml2pp(pepxmlFile, null, decoyPrefix, libraryFile, true, ppPepXML);
+        mpqCommand.xml2pp(pepxmlFile, null, decoyPrefix, libraryFile, true, false, ppPepXML);
     }
 
     @Test
@@ -77,7 +78,7 @@ public class MPQCommandTest {
         Double fdr = 0.01;
         String decoyPrefix = "DECOY_";
         String tsvFile = "/home/huangjs/Documents/mpq/test/peptide.tsv";
-        mpqCommand.xml2tsv(Arrays.stream(pepxmlFiles).collect(Collectors.joining(",")), fdr, decoyPrefix, tsvFile);
+        mpqCommand.xml2tsv(Arrays.stream(pepxmlFiles).collect(Collectors.joining(",")), fdr, decoyPrefix, 0, false, tsvFile);
     }
 
     @Test
@@ -91,7 +92,7 @@ public class MPQCommandTest {
         boolean equateIL = true;
         boolean missedCleavage = true;
         String lcaFile = "/home/huangjs/Documents/mpq/test/lca.tsv";
-        mpqCommand.pept2lca(peptideFile, equateIL, missedCleavage, lcaFile);
+        mpqCommand.pept2lca(peptideFile, equateIL, missedCleavage, null, null, "trypsin", 0, lcaFile);
     }
 
     @Test
@@ -0,0 +1,28 @@
+package phoenixcenter.metaproteomics.entity;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class QuantMatrixTest {
+
+    @Test
+    public void sumByGroup() {
+        QuantMatrix matrix = new QuantMatrix(2, 1);
+        for (int i = 0; i < 5; i++) {
+            int row = matrix.addRow("P" + i);
+            matrix.set(row, 0, i);
+            matrix.set(row, 1, i * 10);
+        }
+        assertEquals(5, matrix.getRowCount());
+        assertEquals("P3", matrix.getLabel(3));
+        assertEquals(40.0, matrix.get(4, 1), 0.0);
+
+        QuantMatrix groupMatrix = matrix.sumByGroup(new int[]{1, 0, -1, 1, 0}, new String[]{"A", "B"});
+        assertEquals(2, groupMatrix.getRowCount());
+        assertEquals("B", groupMatrix.getLabel(1));
+        assertArrayEquals(new double[]{5.0, 50.0}, groupMatrix.getRow(0), 0.0);
+        assertArrayEquals(new double[]{3.0, 30.0}, groupMatrix.getRow(1), 0.0);
+        assertArrayEquals(new double[]{8.0, 80.0}, groupMatrix.sumBySample(), 0.0);
+    }
+}
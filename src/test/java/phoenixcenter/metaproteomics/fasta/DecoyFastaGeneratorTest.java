@@ -0,0 +1,139 @@
+package phoenixcenter.metaproteomics.fasta;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import phoenixcenter.metaproteomics.fasta.DecoyFastaGenerator.DecoyMode;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class DecoyFastaGeneratorTest {
+
+    private static final String AMINO_ACIDS = "ACDEFGHIKLMNPQRSTVWY";
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    @Test
+    public void reverse() throws IOException {
+        Path targetPath = writeFasta(300, 1L);
+        // line by line with String reverse
+        StringBuilder expected = new StringBuilder();
+        String anno = null;
+        StringBuilder sequence = new StringBuilder();
+        for (String line : Files.readAllLines(targetPath)) {
+            if (line.startsWith(">")) {
+                if (anno != null) {
+                    appendTargetDecoy(expected, anno, sequence);
+                }
+                anno = line.substring(1);
+                sequence = new StringBuilder();
+            } else {
+                sequence.append(line);
+            }
+        }
+        appendTargetDecoy(expected, anno, sequence);
+
+        // chunks smaller than a protein
+        for (int chunkSize : new int[]{1 << 20, 1000, 50}) {
+            Path tdPath = tmpFolder.getRoot().toPath().resolve("td-" + chunkSize + ".fasta");
+            new DecoyFastaGenerator("DECOY_", DecoyMode.REVERSE, 4, chunkSize).generate(targetPath, tdPath);
+            assertEquals(expected.toString(), new String(Files.readAllBytes(tdPath), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void headerOnly() throws IOException {
+        String ls = System.lineSeparator();
+        for (String anno : new String[]{"p1", "p1 OX=1"}) {
+            Path targetPath = tmpFolder.getRoot().toPath().resolve("header-only.fasta");
+            Path tdPath = tmpFolder.getRoot().toPath().resolve("td-header-only.fasta");
+            Files.write(targetPath, (">" + anno).getBytes(StandardCharsets.US_ASCII));
+            new DecoyFastaGenerator("DECOY_").generate(targetPath, tdPath);
+            assertEquals(">" + anno + ls + ls + ">DECOY_" + anno + ls + ls,
+                    new String(Files.readAllBytes(tdPath), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void pseudoReverse() {
+        byte[] sequence = "ABCKDEFRGHKR".getBytes(StandardCharsets.US_ASCII);
+        byte[] decoy = new byte[sequence.length];
+        DecoyFastaGenerator.pseudoReverse(sequence, sequence.length, decoy);
+        assertEquals("CBAKFEDRHGKR", new String(decoy, StandardCharsets.US_ASCII));
+        DecoyFastaGenerator.pseudoReverse(sequence, 10, decoy);
+        assertEquals("CBAKFEDRHG", new String(decoy, 0, 10, StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void shuffle() throws IOException {
+        Path targetPath = writeFasta(100, 2L);
+        Path tdPath1 = tmpFolder.getRoot().toPath().resolve("td1.fasta");
+        Path tdPath2 = tmpFolder.getRoot().toPath().resolve("td2.fasta");
+        new DecoyFastaGenerator("DECOY_", DecoyMode.SHUFFLE, 1).generate(targetPath, tdPath1);
+        new DecoyFastaGenerator("DECOY_", DecoyMode.SHUFFLE, 4, 200).generate(targetPath, tdPath2);
+        assertArrayEquals(Files.readAllBytes(tdPath1), Files.readAllBytes(tdPath2));
+
+        List<String> lines = Files.readAllLines(tdPath1);
+        for (int i = 0; i < lines.size(); i += 4) {
+            assertEquals(">DECOY_" + lines.get(i).substring(1), lines.get(i + 2));
+            String target = lines.get(i + 1);
+            String decoy = lines.get(i + 3);
+            // K/R stay in place and each peptide keeps its residues
+            String[] targetPeptides = target.split("(?<=[KR])");
+            String[] decoyPeptides = decoy.split("(?<=[KR])");
+            assertEquals(targetPeptides.length, decoyPeptides.length);
+            for (int j = 0; j < targetPeptides.length; j++) {
+                char[] targetResidues = targetPeptides[j].toCharArray();
+                char[] decoyResidues = decoyPeptides[j].toCharArray();
+                if (j < targetPeptides.length - 1) {
+                    assertEquals(targetResidues[targetResidues.length - 1], decoyResidues[decoyResidues.length - 1]);
+                }
+                Arrays.sort(targetResidues);
+                Arrays.sort(decoyResidues);
+                assertArrayEquals(targetResidues, decoyResidues);
+            }
+        }
+    }
+
+    private static void appendTargetDecoy(StringBuilder sb, String anno, StringBuilder sequence) {
+        sb.append(">").append(anno).append(System.lineSeparator());
+        sb.append(sequence).append(System.lineSeparator());
+        sb.append(">DECOY_").append(anno).append(System.lineSeparator());
+        sb.append(sequence.reverse()).append(System.lineSeparator());
+    }
+
+    /**
+     * Proteins are wrapped at 60 residues, some lines end with "\r\n", and the last line has no line break.
+     */
+    private Path writeFasta(int proteinCount, long seed) throws IOException {
+        Random random = new Random(seed);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < proteinCount; i++) {
+            String lineBreak = random.nextInt(5) == 0 ? "\r\n" : "\n";
+            sb.append(">sp|P").append(i).append("|PROT").append(i).append(" some description").append(lineBreak);
+            int length = 1 + random.nextInt(400);
+            for (int j = 0; j < length; j++) {
+                sb.append(AMINO_ACIDS.charAt(random.nextInt(AMINO_ACIDS.length())));
+                if ((j + 1) % 60 == 0 || j == length - 1) {
+                    sb.append(lineBreak);
+                }
+            }
+        }
+        sb.setLength(sb.length() - 1);
+        if (sb.charAt(sb.length() - 1) == '\r') {
+            sb.setLength(sb.length() - 1);
+        }
+        Path path = tmpFolder.getRoot().toPath().resolve("target-" + seed + ".fasta");
+        Files.write(path, sb.toString().getBytes(StandardCharsets.US_ASCII));
+        return path;
+    }
+}
@@ -0,0 +1,103 @@
+package phoenixcenter.metaproteomics.fasta;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class IndexedFastaReaderTest {
+
+    private static final String AMINO_ACIDS = "ACDEFGHIKLMNPQRSTVWY";
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    @Test
+    public void lookup() throws IOException {
+        Map<String, String> acc2Seq = new LinkedHashMap<>();
+        Path fastaPath = writeFasta(2000, 1L, acc2Seq);
+        try (IndexedFastaReader reader = IndexedFastaReader.open(fastaPath)) {
+            assertEquals(acc2Seq.size(), reader.size());
+            assertLookup(reader, acc2Seq);
+        }
+        assertTrue(Files.exists(FastaIndex.indexPath(fastaPath)));
+
+        // mapped from the index file
+        FastaIndex index = FastaIndex.map(FastaIndex.indexPath(fastaPath));
+        assertTrue(index.isFresh(fastaPath));
+        // small segments, long records are read from the channel
+        try (IndexedFastaReader reader = new IndexedFastaReader(fastaPath, index, 4096, 256)) {
+            assertLookup(reader, acc2Seq);
+        }
+    }
+
+    @Test
+    public void rebuild() throws IOException {
+        Map<String, String> acc2Seq = new LinkedHashMap<>();
+        Path fastaPath = writeFasta(10, 2L, acc2Seq);
+        IndexedFastaReader.open(fastaPath).close();
+
+        Files.write(fastaPath, ">NEW1 new protein\nMKLV\n>NEW2\nPEPTIDE".getBytes(StandardCharsets.US_ASCII));
+        Files.setLastModifiedTime(fastaPath, FileTime.fromMillis(System.currentTimeMillis() + 60000L));
+        try (IndexedFastaReader reader = IndexedFastaReader.open(fastaPath)) {
+            assertEquals(2, reader.size());
+            assertEquals("NEW1 new protein", reader.getHeader("NEW1"));
+            assertEquals("MKLV", reader.getSequence("NEW1"));
+            assertEquals("NEW2", reader.getHeader("NEW2"));
+            assertEquals("PEPTIDE", reader.getSequence("NEW2"));
+            assertFalse(reader.contains(acc2Seq.keySet().iterator().next()));
+        }
+    }
+
+    private static void assertLookup(IndexedFastaReader reader, Map<String, String> acc2Seq) throws IOException {
+        for (Map.Entry<String, String> e : acc2Seq.entrySet()) {
+            assertEquals(e.getValue(), reader.getSequence(e.getKey()));
+            assertEquals(e.getKey() + " some description", reader.getHeader(e.getKey()));
+        }
+        // prefix of an accession
+        assertFalse(reader.contains("sp|P1"));
+        assertNull(reader.getSequence("sp|P1|PROT"));
+        assertNull(reader.getHeader("absent"));
+    }
+
+    /**
+     * Proteins are wrapped at 60 residues, some lines end with "\r\n", and the last line has no line break.
+     */
+    private Path writeFasta(int proteinCount, long seed, Map<String, String> acc2Seq) throws IOException {
+        Random random = new Random(seed);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < proteinCount; i++) {
+            String lineBreak = random.nextInt(5) == 0 ? "\r\n" : "\n";
+            String accession = "sp|P" + i + "|PROT" + i;
+            sb.append(">").append(accession).append(" some description").append(lineBreak);
+            StringBuilder sequence = new StringBuilder();
+            int length = 1 + random.nextInt(i % 100 == 0 ? 5000 : 400);
+            for (int j = 0; j < length; j++) {
+                char aa = AMINO_ACIDS.charAt(random.nextInt(AMINO_ACIDS.length()));
+                sequence.append(aa);
+                sb.append(aa);
+                if ((j + 1) % 60 == 0 || j == length - 1) {
+                    sb.append(lineBreak);
+                }
+            }
+            acc2Seq.put(accession, sequence.toString());
+        }
+        sb.setLength(sb.length() - 1);
+        if (sb.charAt(sb.length() - 1) == '\r') {
+            sb.setLength(sb.length() - 1);
+        }
+        Path path = tmpFolder.getRoot().toPath().resolve("target-" + seed + ".fasta");
+        Files.write(path, sb.toString().getBytes(StandardCharsets.US_ASCII));
+        return path;
+    }
+}
@@ -0,0 +1,90 @@
+package phoenixcenter.metaproteomics.fdr;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Fixtures in resources/qvality are generated by "qvality name.target.txt name.decoy.txt -d -Y -o name.qvality.txt"
+ */
+public class QValueEstimatorTest {
+
+    private List<String> readLines(String resource) throws IOException {
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(
+                getClass().getResourceAsStream("/qvality/" + resource), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    private double[] readScores(String resource) throws IOException {
+        return readLines(resource).stream().mapToDouble(Double::parseDouble).toArray();
+    }
+
+    /**
+     * Threshold parsed from qvality output as PeptideProphetEnhancer does
+     */
+    private double qvalityThreshold(List<String> qvalityLines, double fdrThreshold) {
+        double probThreshold = -1.0;
+        for (String line : qvalityLines.subList(1, qvalityLines.size())) {
+            String[] tmp = line.split("\t");
+            if (Double.parseDouble(tmp[2]) >= fdrThreshold) {
+                break;
+            }
+            probThreshold = Double.parseDouble(tmp[0]);
+        }
+        return probThreshold;
+    }
+
+    private void assertAgreeWithQvality(String name) throws IOException {
+        QValueEstimator estimator = QValueEstimator.estimate(readScores(name + ".target.txt"),
+                readScores(name + ".decoy.txt"));
+        List<String> qvalityLines = readLines(name + ".qvality.txt");
+        double[] scores = estimator.getScores();
+        double[] qValues = estimator.getQValues();
+        assertEquals(qvalityLines.size() - 1, scores.length);
+        for (int i = 0; i < scores.length; i++) {
+            String[] tmp = qvalityLines.get(i + 1).split("\t");
+            assertEquals(Double.parseDouble(tmp[0]), scores[i], 1e-9);
+            // qvality prints 6 significant digits
+            assertEquals(Double.parseDouble(tmp[2]), qValues[i], 1e-5 * qValues[i]);
+        }
+        for (double fdr : new double[]{0.001, 0.01, 0.05, 0.1}) {
+            assertEquals(name + " FDR " + fdr, qvalityThreshold(qvalityLines, fdr), estimator.getThreshold(fdr), 0.0);
+        }
+    }
+
+    @Test
+    public void continuousScores() throws IOException {
+        assertAgreeWithQvality("continuous");
+    }
+
+    @Test
+    public void tiedScores() throws IOException {
+        assertAgreeWithQvality("tied");
+    }
+
+    @Test
+    public void estimatePEP() {
+        QValueEstimator estimator = QValueEstimator.estimate(
+                new double[]{0.99, 0.98, 0.97, 0.9, 0.5, 0.4, 0.3},
+                new double[]{0.95, 0.45, 0.35, 0.2});
+        double[] peps = estimator.estimatePEP();
+        for (int i = 1; i < peps.length; i++) {
+            assertTrue(peps[i] >= peps[i - 1]);
+        }
+        assertEquals(0.0, peps[0], 0.0);
+        assertEquals(1.0, peps[peps.length - 1], 0.0);
+    }
+}
@@ -0,0 +1,70 @@
+package phoenixcenter.metaproteomics.metrics;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class MetricsReportTest {
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    private MetricsRegistry createRegistry() {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("mascot2xml.dat.bytes.read").add(1000);
+        registry.gauge("tool.xinteract.peak.rss.kb").max(2048);
+        registry.gauge("tool.xinteract.peak.rss.kb").max(1024);
+        registry.gauge("peptideprophet.psms.per.second", () -> 12.5);
+        for (int i = 1; i <= 100; i++) {
+            registry.timer("unipept.pept2data.ok").record(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+        return registry;
+    }
+
+    @Test
+    public void json() throws IOException {
+        MetricsReport report = new MetricsReport("pept2lca", 1000L, 3500L, 0, createRegistry());
+        Path jsonPath = report.writeTo(tmpFolder.getRoot().toPath().resolve("reports"), true);
+        assertTrue(jsonPath.getFileName().toString().startsWith("pept2lca-"));
+        JsonNode root = new ObjectMapper().readTree(jsonPath.toFile());
+        assertEquals("pept2lca", root.get("command").asText());
+        assertEquals(2.5, root.get("wall_seconds").asDouble(), 1e-9);
+        assertEquals(1000L, root.get("counters").get("mascot2xml.dat.bytes.read").asLong());
+        assertEquals(2048.0, root.get("gauges").get("tool.xinteract.peak.rss.kb").asDouble(), 1e-9);
+        assertEquals(12.5, root.get("gauges").get("peptideprophet.psms.per.second").asDouble(), 1e-9);
+        JsonNode timer = root.get("timers").get("unipept.pept2data.ok");
+        assertEquals(100, timer.get("count").asLong());
+        assertEquals(5050.0, timer.get("total_ms").asDouble(), 1.0);
+        assertEquals(100.0, timer.get("max_ms").asDouble(), 1.0);
+        // upper bounds of power-of-two buckets
+        double p50 = timer.get("p50_ms").asDouble();
+        assertTrue(p50 >= 50 && p50 <= 100);
+        assertTrue(Files.exists(jsonPath.resolveSibling(jsonPath.getFileName().toString().replace(".json", ".prom"))));
+    }
+
+    @Test
+    public void prometheus() throws IOException {
+        MetricsReport report = new MetricsReport("lca2quant", 0L, 1000L, 1, createRegistry());
+        Path path = tmpFolder.getRoot().toPath().resolve("report.prom");
+        report.writePrometheus(path);
+        List<String> lines = Files.readAllLines(path);
+        assertTrue(lines.contains("mpq_exit_code{command=\"lca2quant\"} 1"));
+        assertTrue(lines.contains("# TYPE mpq_mascot2xml_dat_bytes_read_total counter"));
+        assertTrue(lines.contains("mpq_mascot2xml_dat_bytes_read_total{command=\"lca2quant\"} 1000"));
+        assertTrue(lines.contains("mpq_tool_xinteract_peak_rss_kb{command=\"lca2quant\"} 2048.0"));
+        assertTrue(lines.contains("# TYPE mpq_unipept_pept2data_ok_seconds summary"));
+        assertTrue(lines.contains("mpq_unipept_pept2data_ok_seconds_count{command=\"lca2quant\"} 100"));
+        assertTrue(lines.stream().anyMatch(line ->
+                line.startsWith("mpq_unipept_pept2data_ok_seconds{command=\"lca2quant\",quantile=\"0.99\"} ")));
+    }
+}
@@ -0,0 +1,63 @@
+package phoenixcenter.metaproteomics.pepxml;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import phoenixcenter.metaproteomics.PepXmlFixtures;
+import phoenixcenter.metaproteomics.entity.PSM;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class PSMBufferTest {
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    @Test
+    public void sameAsStreaming() throws IOException {
+        Path pepxmlPath = tmpFolder.getRoot().toPath().resolve("F1.pep.xml");
+        PepXmlFixtures.write(pepxmlPath, 300, 2L);
+        double probThreshold = 0.7;
+        Map<String, Integer> expectedCounts = new HashMap<>();
+        int targetCount = 0;
+        int decoyCount = 0;
+        try (SpectrumQueryReader reader = SpectrumQueryReader.open(pepxmlPath)) {
+            while (reader.hasNext()) {
+                PSM psm = reader.next();
+                if (psm.isDecoy(PepXmlFixtures.DECOY_PREFIX)) {
+                    decoyCount++;
+                } else {
+                    targetCount++;
+                    if (psm.getProbability() >= probThreshold) {
+                        expectedCounts.merge(psm.getPeptide(), 1, Integer::sum);
+                    }
+                }
+            }
+        }
+        PSMBuffer psmBuffer = PSMBuffer.read(pepxmlPath, PepXmlFixtures.DECOY_PREFIX);
+        assertEquals(300, psmBuffer.size());
+        assertEquals(targetCount, psmBuffer.getProbabilities(false).length);
+        assertEquals(decoyCount, psmBuffer.getProbabilities(true).length);
+        assertEquals(expectedCounts, psmBuffer.countPSMs(probThreshold));
+    }
+
+    @Test
+    public void countPSMs() {
+        PSMBuffer psmBuffer = new PSMBuffer();
+        psmBuffer.add("AAAK", false, 0.9);
+        psmBuffer.add("CCCK", true, 0.95);
+        psmBuffer.add("AAAK", false, 0.5);
+        psmBuffer.add("AAAK", false, 0.99);
+        psmBuffer.add("DDDK", false, 0.1);
+        assertArrayEquals(new double[]{0.95}, psmBuffer.getProbabilities(true), 0.0);
+        assertArrayEquals(new double[]{0.9, 0.5, 0.99, 0.1}, psmBuffer.getProbabilities(false), 0.0);
+        Map<String, Integer> counts = psmBuffer.countPSMs(0.8);
+        assertEquals(1, counts.size());
+        assertEquals(Integer.valueOf(2), counts.get("AAAK"));
+    }
+}
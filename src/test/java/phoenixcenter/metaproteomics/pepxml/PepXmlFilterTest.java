@@ -0,0 +1,64 @@
+package phoenixcenter.metaproteomics.pepxml;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import phoenixcenter.metaproteomics.PepXmlFixtures;
+import phoenixcenter.metaproteomics.entity.PSM;
+import umich.ms.fileio.exceptions.FileParsingException;
+import umich.ms.fileio.filetypes.pepxml.PepXmlParser;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PepXmlFilterTest {
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    @Test
+    public void filter() throws IOException, FileParsingException {
+        Path pepxmlPath = tmpFolder.getRoot().toPath().resolve("F1.pep.xml");
+        PepXmlFixtures.write(pepxmlPath, 500, 1L);
+        double minProb = 0.7;
+        List<PSM> expected = new ArrayList<>();
+        try (SpectrumQueryReader reader = SpectrumQueryReader.open(pepxmlPath)) {
+            while (reader.hasNext()) {
+                PSM psm = reader.next();
+                if (psm.getProbability() >= minProb) {
+                    expected.add(psm);
+                }
+            }
+        }
+        Path fppPath = tmpFolder.getRoot().toPath().resolve("F1.fpp.pep.xml");
+        assertEquals(expected.size(), new PepXmlFilter().filter(pepxmlPath, minProb, fppPath));
+        List<PSM> actual = new ArrayList<>();
+        try (SpectrumQueryReader reader = SpectrumQueryReader.open(fppPath)) {
+            reader.forEachRemaining(actual::add);
+        }
+        assertEquals(expected, actual);
+        assertEquals(expected.size(), PepXmlParser.parse(fppPath)
+                .getMsmsRunSummary()
+                .get(0)
+                .getSpectrumQuery()
+                .size());
+        // queries straddle buffer boundaries
+        Path smallBufferPath = tmpFolder.getRoot().toPath().resolve("F1.small.pep.xml");
+        new PepXmlFilter(37).filter(pepxmlPath, minProb, smallBufferPath);
+        assertArrayEquals(Files.readAllBytes(fppPath), Files.readAllBytes(smallBufferPath));
+    }
+
+    @Test
+    public void keepAll() throws IOException {
+        Path pepxmlPath = tmpFolder.getRoot().toPath().resolve("F1.pep.xml");
+        PepXmlFixtures.write(pepxmlPath, 50, 2L);
+        Path fppPath = tmpFolder.getRoot().toPath().resolve("F1.fpp.pep.xml");
+        assertEquals(50, new PepXmlFilter(64).filter(pepxmlPath, -1.0, fppPath));
+        assertArrayEquals(Files.readAllBytes(pepxmlPath), Files.readAllBytes(fppPath));
+    }
+}
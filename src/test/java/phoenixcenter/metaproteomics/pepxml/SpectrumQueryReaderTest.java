@@ -0,0 +1,95 @@
+package phoenixcenter.metaproteomics.pepxml;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import phoenixcenter.metaproteomics.PepXmlFixtures;
+import phoenixcenter.metaproteomics.entity.PSM;
+import umich.ms.fileio.exceptions.FileParsingException;
+import umich.ms.fileio.filetypes.pepxml.PepXmlParser;
+import umich.ms.fileio.filetypes.pepxml.jaxb.standard.PeptideprophetResult;
+import umich.ms.fileio.filetypes.pepxml.jaxb.standard.SearchHit;
+import umich.ms.fileio.filetypes.pepxml.jaxb.standard.SpectrumQuery;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class SpectrumQueryReaderTest {
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    @Test
+    public void sameAsJAXB() throws IOException, FileParsingException {
+        Path pepxmlPath = tmpFolder.getRoot().toPath().resolve("F1.pep.xml");
+        PepXmlFixtures.write(pepxmlPath, 100, 1L);
+        List<SpectrumQuery> specQueryList = PepXmlParser.parse(pepxmlPath)
+                .getMsmsRunSummary()
+                .get(0)
+                .getSpectrumQuery();
+        try (SpectrumQueryReader reader = SpectrumQueryReader.open(pepxmlPath)) {
+            for (SpectrumQuery specQuery : specQueryList) {
+                SearchHit searchHit = specQuery.getSearchResult().get(0).getSearchHit().get(0);
+                assertTrue(reader.hasNext());
+                PSM psm = reader.next();
+                assertEquals(searchHit.getPeptide(), psm.getPeptide());
+                assertEquals(searchHit.getProtein(), psm.getProteins().get(0));
+                assertEquals(searchHit.getAlternativeProtein().stream()
+                                .map(altProt -> altProt.getProtein())
+                                .collect(Collectors.toList()),
+                        psm.getProteins().subList(1, psm.getProteins().size()));
+                double prob = ((PeptideprophetResult) (searchHit.getAnalysisResult().get(0).getAny().get(0)))
+                        .getProbability();
+                assertEquals(prob, psm.getProbability(), 0.0);
+            }
+            assertFalse(reader.hasNext());
+        }
+    }
+
+    @Test
+    public void multipleRuns() throws IOException, FileParsingException {
+        Path pepxmlPath = tmpFolder.getRoot().toPath().resolve("F2.pep.xml");
+        PepXmlFixtures.write(pepxmlPath, 50, 2L);
+        // append a second run whose peptides are distinguishable
+        String pepxml = new String(Files.readAllBytes(pepxmlPath), StandardCharsets.UTF_8);
+        int runStart = pepxml.indexOf("<msms_run_summary");
+        int runEnd = pepxml.indexOf("</msms_run_summary>") + "</msms_run_summary>".length();
+        String secondRun = pepxml.substring(runStart, runEnd)
+                .replace("base_name=\"sample\"", "base_name=\"sample2\"")
+                .replace("peptide=\"PEPT", "peptide=\"SECOND");
+        Files.write(pepxmlPath, (pepxml.substring(0, runEnd) + "\n" + secondRun + pepxml.substring(runEnd))
+                .getBytes(StandardCharsets.UTF_8));
+        assertEquals(2, PepXmlParser.parse(pepxmlPath).getMsmsRunSummary().size());
+
+        // first run only by default, as getMsmsRunSummary().get(0)
+        List<String> peptides = new ArrayList<>();
+        try (SpectrumQueryReader reader = SpectrumQueryReader.open(pepxmlPath)) {
+            reader.forEachRemaining(psm -> peptides.add(psm.getPeptide()));
+        }
+        assertEquals(50, peptides.size());
+        assertTrue(peptides.stream().allMatch(peptide -> peptide.startsWith("PEPT")));
+
+        peptides.clear();
+        try (SpectrumQueryReader reader = SpectrumQueryReader.open(pepxmlPath, true)) {
+            reader.forEachRemaining(psm -> peptides.add(psm.getPeptide()));
+        }
+        assertEquals(100, peptides.size());
+        assertTrue(peptides.get(99).startsWith("SECOND"));
+    }
+
+    @Test
+    public void isDecoy() {
+        PSM psm = new PSM();
+        psm.getProteins().add("DECOY_P1");
+        assertTrue(psm.isDecoy("DECOY_"));
+        psm.getProteins().add("P2");
+        assertFalse(psm.isDecoy("DECOY_"));
+    }
+}
@@ -0,0 +1,108 @@
+package phoenixcenter.metaproteomics.pepxml;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import phoenixcenter.metaproteomics.PepXmlFixtures;
+import umich.ms.fileio.exceptions.FileParsingException;
+import umich.ms.fileio.filetypes.pepxml.PepXmlParser;
+import umich.ms.fileio.filetypes.pepxml.jaxb.standard.MsmsPipelineAnalysis;
+import umich.ms.fileio.filetypes.pepxml.jaxb.standard.SearchHit;
+import umich.ms.fileio.filetypes.pepxml.jaxb.standard.SpectrumQuery;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+
+public class TargetDecoyMergerTest {
+
+    private static final Pattern QUERY_PATTERN = Pattern.compile(
+            "start_scan=\"(\\d+)\".*?name=\"ionscore\" value=\"(\\d+)\"", Pattern.DOTALL);
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    @Test
+    public void merge() throws IOException, FileParsingException {
+        // decoy hits a third of queries, two of them out of order, and has queries after the last target query
+        int[] targetIds = IntStream.rangeClosed(1, 300).toArray();
+        int[] decoyIds = IntStream.concat(IntStream.rangeClosed(1, 100).map(i -> i * 3),
+                IntStream.rangeClosed(301, 310)).toArray();
+        decoyIds[10] = 36;
+        decoyIds[11] = 33;
+        Path outputPath = merge(targetIds, decoyIds, 1 << 12);
+
+        Map<Integer, Integer> targetScores = ionscores(tmpFolder.getRoot().toPath().resolve("target1.pep.xml"));
+        Map<Integer, Integer> decoyScores = ionscores(tmpFolder.getRoot().toPath().resolve("decoy1.pep.xml"));
+        String content = new String(Files.readAllBytes(outputPath), StandardCharsets.UTF_8);
+        assertFalse(content.contains("massdiff=\"+-"));
+        assertFalse(content.contains("target1"));
+        assertFalse(content.contains("decoy1"));
+
+        MsmsPipelineAnalysis analysis = PepXmlParser.parse(outputPath);
+        assertTrue(analysis.getMsmsRunSummary().get(0).getBaseName().endsWith("F1"));
+        List<SpectrumQuery> specQueryList = analysis.getMsmsRunSummary().get(0).getSpectrumQuery();
+        Set<Integer> qids = new HashSet<>();
+        for (SpectrumQuery specQuery : specQueryList) {
+            int qid = (int) specQuery.getStartScan();
+            assertTrue(qids.add(qid));
+            assertEquals("F1." + qid + "." + qid + ".2", specQuery.getSpectrum());
+            SearchHit searchHit = specQuery.getSearchResult().get(0).getSearchHit().get(0);
+            int ionscore = Integer.parseInt(searchHit.getSearchScore().get(0).getValueStr());
+            int targetScore = targetScores.getOrDefault(qid, -1);
+            int decoyScore = decoyScores.getOrDefault(qid, -1);
+            assertEquals(Math.max(targetScore, decoyScore), ionscore);
+            boolean decoy = decoyScore > targetScore;
+            assertEquals(decoy, searchHit.getProtein().startsWith(PepXmlFixtures.DECOY_PREFIX));
+            assertEquals(decoy, searchHit.getAlternativeProtein().get(0).getProtein()
+                    .startsWith(PepXmlFixtures.DECOY_PREFIX));
+        }
+        Set<Integer> expected = new HashSet<>(targetScores.keySet());
+        expected.addAll(decoyScores.keySet());
+        assertEquals(expected, qids);
+    }
+
+    @Test
+    public void boundedLookahead() throws IOException, FileParsingException {
+        // reversed decoy cannot be matched within the lookahead, but no query is lost
+        int[] targetIds = IntStream.rangeClosed(1, 100).toArray();
+        int[] decoyIds = IntStream.rangeClosed(1, 100).map(i -> 101 - i).toArray();
+        Path outputPath = merge(targetIds, decoyIds, 4);
+        List<SpectrumQuery> specQueryList = PepXmlParser.parse(outputPath)
+                .getMsmsRunSummary()
+                .get(0)
+                .getSpectrumQuery();
+        Set<Long> qids = new HashSet<>();
+        specQueryList.forEach(specQuery -> qids.add(specQuery.getStartScan()));
+        assertEquals(100, qids.size());
+        assertTrue(specQueryList.size() <= 200);
+    }
+
+    private Path merge(int[] targetIds, int[] decoyIds, int lookahead) throws IOException {
+        Path dir = tmpFolder.getRoot().toPath();
+        Path targetPath = dir.resolve("target1.pep.xml");
+        Path decoyPath = dir.resolve("decoy1.pep.xml");
+        PepXmlFixtures.writeMascot(targetPath, targetIds, 1L);
+        PepXmlFixtures.writeMascot(decoyPath, decoyIds, 2L);
+        Path outputPath = dir.resolve("F1.pep.xml");
+        new TargetDecoyMerger(PepXmlFixtures.DECOY_PREFIX, lookahead)
+                .merge(targetPath, "target1", decoyPath, "decoy1", "F1", outputPath);
+        return outputPath;
+    }
+
+    private static Map<Integer, Integer> ionscores(Path pepxmlPath) throws IOException {
+        Map<Integer, Integer> qid2Ionscore = new HashMap<>();
+        Matcher matcher = QUERY_PATTERN.matcher(new String(Files.readAllBytes(pepxmlPath), StandardCharsets.UTF_8));
+        while (matcher.find()) {
+            qid2Ionscore.put(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)));
+        }
+        return qid2Ionscore;
+    }
+}
@@ -0,0 +1,69 @@
+package phoenixcenter.metaproteomics.pipeline;
+
+import org.junit.Test;
+import phoenixcenter.metaproteomics.pipeline.StageGraph.Stage;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class StageGraphTest {
+
+    @Test
+    public void fanOutFanIn() throws IOException {
+        // the second stage of file 0 runs while the first stage of file 1 is blocked
+        CountDownLatch file0Done = new CountDownLatch(1);
+        try (StageGraph graph = new StageGraph().pool("first", 2).pool("second", 2).pool("fan-in", 1)) {
+            List<Stage<Integer>> secondStages = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                final int fileIdx = i;
+                Stage<Integer> first = graph.stage("first:" + i, "first", () -> {
+                    if (fileIdx == 1) {
+                        assertTrue(file0Done.await(10, TimeUnit.SECONDS));
+                    }
+                    return fileIdx + 1;
+                });
+                secondStages.add(graph.stage("second:" + i, "second", () -> {
+                    if (fileIdx == 0) {
+                        file0Done.countDown();
+                    }
+                    return first.get() * 10;
+                }, first));
+            }
+            Stage<Integer> sum = graph.stage("sum", "fan-in",
+                    () -> secondStages.stream().mapToInt(Stage::get).sum(), secondStages);
+            graph.await();
+            assertEquals(30, sum.get().intValue());
+        }
+    }
+
+    @Test
+    public void failure() {
+        AtomicInteger independentRuns = new AtomicInteger();
+        try (StageGraph graph = new StageGraph().pool("p", 1)) {
+            Stage<Integer> failed = graph.stage("failed", "p", () -> {
+                throw new IOException("broken");
+            });
+            Stage<Integer> dependent = graph.stage("dependent", "p", () -> failed.get() + 1, failed);
+            graph.stage("independent", "p", independentRuns::incrementAndGet);
+            try {
+                graph.await();
+                fail();
+            } catch (IOException e) {
+                assertEquals("broken", e.getMessage());
+            }
+            assertEquals(1, independentRuns.get());
+            try {
+                dependent.get();
+                fail();
+            } catch (RuntimeException e) {
+                assertTrue(e.getCause() instanceof IOException);
+            }
+        }
+    }
+}
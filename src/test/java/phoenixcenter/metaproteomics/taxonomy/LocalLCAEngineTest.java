@@ -0,0 +1,127 @@
+package phoenixcenter.metaproteomics.taxonomy;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import phoenixcenter.metaproteomics.entity.UnipeptLCA;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class LocalLCAEngineTest {
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    private Path taxdumpDir;
+
+    private NcbiTaxonomy taxonomy;
+
+    private Path fastaPath;
+
+    @Before
+    public void setUp() throws IOException {
+        taxdumpDir = tmpFolder.newFolder("taxdump").toPath();
+        Files.write(taxdumpDir.resolve("nodes.dmp"), Arrays.asList(
+                "1\t|\t1\t|\tno rank\t|\t\t|",
+                "2\t|\t131567\t|\tsuperkingdom\t|\t\t|",
+                "131567\t|\t1\t|\tno rank\t|\t\t|",
+                "1224\t|\t2\t|\tphylum\t|\t\t|",
+                "543\t|\t1224\t|\tfamily\t|\t\t|",
+                "561\t|\t543\t|\tgenus\t|\t\t|",
+                "562\t|\t561\t|\tspecies\t|\t\t|",
+                "83333\t|\t562\t|\tstrain\t|\t\t|",
+                "590\t|\t543\t|\tgenus\t|\t\t|",
+                "91347\t|\t590\t|\tspecies group\t|\t\t|",
+                "28901\t|\t590\t|\tspecies\t|\t\t|"
+        ));
+        Files.write(taxdumpDir.resolve("names.dmp"), Arrays.asList(
+                "1\t|\troot\t|\t\t|\tscientific name\t|",
+                "2\t|\tBacteria\t|\t\t|\tscientific name\t|",
+                "2\t|\teubacteria\t|\t\t|\tgenbank common name\t|",
+                "131567\t|\tcellular organisms\t|\t\t|\tscientific name\t|",
+                "1224\t|\tPseudomonadota\t|\t\t|\tscientific name\t|",
+                "543\t|\tEnterobacteriaceae\t|\t\t|\tscientific name\t|",
+                "561\t|\tEscherichia\t|\t\t|\tscientific name\t|",
+                "562\t|\tEscherichia coli\t|\t\t|\tscientific name\t|",
+                "83333\t|\tEscherichia coli K-12\t|\t\t|\tscientific name\t|",
+                "590\t|\tSalmonella\t|\t\t|\tscientific name\t|",
+                "91347\t|\tSalmonella group\t|\t\t|\tscientific name\t|",
+                "28901\t|\tSalmonella enterica\t|\t\t|\tscientific name\t|"
+        ));
+        taxonomy = NcbiTaxonomy.load(taxdumpDir);
+        fastaPath = tmpFolder.newFile("db.fasta").toPath();
+        Files.write(fastaPath, Arrays.asList(
+                ">sp|P1|P1_ECOLI Protein 1 OS=Escherichia coli K-12 OX=83333 GN=a",
+                "MAAAKGGGGR",
+                "APEPTIDEK",
+                ">sp|P2|P2_SALEN Protein 2 OS=Salmonella enterica OX=28901 GN=b",
+                "MCCCKGGGGRLLLPEPK",
+                ">sp|P3|P3_UNKNOWN Protein 3",
+                "MDDDDK"
+        ));
+    }
+
+    @Test
+    public void lca() {
+        assertEquals(543, taxonomy.lca(562, 28901));
+        assertEquals(562, taxonomy.lca(562, 83333));
+        assertEquals(1, taxonomy.lca(NcbiTaxonomy.ROOT_ID, 28901));
+        assertEquals(562, taxonomy.rankedAncestor(83333));
+    }
+
+    @Test
+    public void mapStore() throws IOException {
+        // the second load maps the store saved by the first one
+        NcbiTaxonomy mapped = NcbiTaxonomy.load(taxdumpDir);
+        assertTrue(Files.exists(taxdumpDir.resolve(NcbiTaxonomy.STORE_FILE_NAME)));
+        assertEquals(taxonomy.size(), mapped.size());
+        assertEquals("Escherichia coli K-12", mapped.getName(83333));
+        assertEquals(TaxonRank.SPECIES_GROUP, mapped.getRank(91347));
+        assertEquals(543, mapped.lca(562, 28901));
+        assertArrayEquals(taxonomy.lineage(83333), mapped.lineage(83333));
+    }
+
+    @Test
+    public void peptide2LCA() throws IOException {
+        LocalLCAEngine engine = new LocalLCAEngine(taxonomy, fastaPath, new ProteinDigester(0, 4, 50));
+        Map<String, UnipeptLCA> peptide2LCA = new HashMap<>();
+        engine.peptide2LCA(Arrays.asList("GGGGR", "MAAAK", "APEPTLDEK", "MDDDDK", "MAAAKGGGGR"), true, false,
+                lca -> peptide2LCA.put(lca.getSequence(), lca));
+        assertEquals(3, peptide2LCA.size());
+
+        UnipeptLCA shared = peptide2LCA.get("GGGGR");
+        assertEquals(543, shared.getLcaId().intValue());
+        assertEquals("Enterobacteriaceae", shared.getLcaName());
+        assertEquals("family", shared.getLcaRank());
+        assertEquals(2, shared.getLineageIds()[TaxonRank.SUPERKINGDOM.ordinal()]);
+        assertEquals("Pseudomonadota", shared.getLineageNames()[TaxonRank.PHYLUM.ordinal()]);
+        assertEquals(0, shared.getLineageIds()[TaxonRank.GENUS.ordinal()]);
+
+        // strain has no lineage rank
+        UnipeptLCA unique = peptide2LCA.get("MAAAK");
+        assertEquals(562, unique.getLcaId().intValue());
+        assertEquals("species", unique.getLcaRank());
+        assertEquals("Escherichia coli", unique.getLineageNames()[TaxonRank.SPECIES.ordinal()]);
+
+        // I and L are equated
+        assertEquals(562, peptide2LCA.get("APEPTLDEK").getLcaId().intValue());
+    }
+
+    @Test
+    public void missedCleavage() throws IOException {
+        LocalLCAEngine engine = new LocalLCAEngine(taxonomy, fastaPath, new ProteinDigester(1, 4, 50));
+        Map<String, UnipeptLCA> peptide2LCA = new HashMap<>();
+        engine.peptide2LCA(Arrays.asList("MAAAKGGGGR", "APEPTIDEK"), false, true,
+                lca -> peptide2LCA.put(lca.getSequence(), lca));
+        assertEquals(562, peptide2LCA.get("MAAAKGGGGR").getLcaId().intValue());
+        assertNotNull(peptide2LCA.get("APEPTIDEK"));
+    }
+}
@@ -0,0 +1,156 @@
+package phoenixcenter.metaproteomics.taxonomy;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import phoenixcenter.metaproteomics.taxonomy.ProteinDigester.Enzyme;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class PeptideProteinIndexTest {
+
+    private static final String AMINO_ACIDS = "ACDEFGHIKLMNPQRSTVWY";
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    @Test
+    public void enzymes() {
+        assertEquals(Arrays.asList("MAAKPGGR", "DDK"), digest(Enzyme.TRYPSIN, "MAAKPGGRDDK"));
+        assertEquals(Arrays.asList("MAAK", "PGGR", "DDK"), digest(Enzyme.fromName("stricttrypsin"), "MAAKPGGRDDK"));
+        assertEquals(Arrays.asList("MAA", "KPGGRDD", "K"), digest(Enzyme.LYSN, "MAAKPGGRDDK"));
+        assertEquals(Arrays.asList("MAAKPGGR", "D", "DK"), digest(Enzyme.ASPN, "MAAKPGGRDDK"));
+        assertEquals(Arrays.asList("GGF", "AAWPL", "K"), digest(Enzyme.CHYMOTRYPSIN, "GGFAAWPLK"));
+        assertEquals(2, new ProteinDigester(Enzyme.GLUC, 0, 1, 50).countMissedCleavages("AADAEAEP"));
+        try {
+            Enzyme.fromName("pepsin");
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("trypsin/chymotrypsin"));
+        }
+    }
+
+    private static List<String> digest(Enzyme enzyme, String sequence) {
+        List<String> peptides = new ArrayList<>();
+        new ProteinDigester(enzyme, 0, 1, 50).digest(sequence, peptides::add);
+        List<String> ranges = new ArrayList<>();
+        byte[] residues = sequence.getBytes(StandardCharsets.US_ASCII);
+        new ProteinDigester(enzyme, 0, 1, 50).digest(residues, residues.length,
+                (start, end) -> ranges.add(sequence.substring(start, end)));
+        assertEquals(peptides, ranges);
+        return peptides;
+    }
+
+    @Test
+    public void build() throws IOException {
+        Path fastaPath = writeFasta(500);
+        for (boolean equalIL : new boolean[]{false, true}) {
+            ProteinDigester digester = new ProteinDigester(2, 4, 30);
+            Map<String, Set<Integer>> expected = digestAll(fastaPath, digester, equalIL);
+            // chunks smaller than a protein
+            for (int chunkSize : new int[]{1 << 20, 500}) {
+                PeptideProteinIndex index = PeptideProteinIndex.build(fastaPath, digester, equalIL, 3, chunkSize);
+                assertEquals(500, index.getProteinCount());
+                assertIndex(expected, index, equalIL);
+            }
+        }
+        assertNull(PeptideProteinIndex.build(fastaPath, new ProteinDigester(0, 4, 30), false, 2)
+                .getProteins("MAGICPEPTIDEK"));
+    }
+
+    @Test
+    public void load() throws IOException {
+        Path fastaPath = writeFasta(200);
+        ProteinDigester digester = new ProteinDigester(Enzyme.LYSC, 1, 5, 40);
+        PeptideProteinIndex built = PeptideProteinIndex.load(fastaPath, digester, true, 2);
+        Path indexPath = PeptideProteinIndex.indexPath(fastaPath, digester, true);
+        assertTrue(Files.exists(indexPath));
+        PeptideProteinIndex mapped = PeptideProteinIndex.map(indexPath);
+        assertTrue(mapped.matches(fastaPath, digester, true));
+        assertFalse(mapped.matches(fastaPath, digester, false));
+        assertFalse(mapped.matches(fastaPath, new ProteinDigester(1, 5, 40), true));
+        assertEquals(built.size(), mapped.size());
+        assertIndex(digestAll(fastaPath, digester, true), mapped, true);
+        for (int i = 0; i < 200; i++) {
+            assertEquals(i % 7 == 0 ? -1 : 1000 + i % 5, mapped.getTaxon(i));
+        }
+        // an index of another format is rebuilt
+        Files.write(indexPath, new byte[64]);
+        assertEquals(built.size(), PeptideProteinIndex.load(fastaPath, digester, true, 2).size());
+        assertTrue(PeptideProteinIndex.map(indexPath).matches(fastaPath, digester, true));
+    }
+
+    private static void assertIndex(Map<String, Set<Integer>> expected, PeptideProteinIndex index, boolean equalIL) {
+        assertEquals(expected.size(), index.size());
+        for (Map.Entry<String, Set<Integer>> e : expected.entrySet()) {
+            int[] proteins = index.getProteins(e.getKey());
+            assertNotNull(e.getKey(), proteins);
+            assertArrayEquals(e.getValue().stream().mapToInt(Integer::intValue).toArray(), proteins);
+            int[] taxa = e.getValue().stream().filter(id -> id % 7 != 0).mapToInt(id -> 1000 + id % 5)
+                    .distinct().sorted().toArray();
+            assertArrayEquals(taxa, index.getTaxa(e.getKey()));
+            if (equalIL) {
+                assertArrayEquals(proteins, index.getProteins(e.getKey().replace('L', 'I').toLowerCase()));
+            }
+        }
+    }
+
+    private static Map<String, Set<Integer>> digestAll(Path fastaPath, ProteinDigester digester,
+                                                       boolean equalIL) throws IOException {
+        Map<String, Set<Integer>> peptide2Proteins = new HashMap<>();
+        int proteinId = -1;
+        StringBuilder sequence = new StringBuilder();
+        List<String> lines = new ArrayList<>(Files.readAllLines(fastaPath));
+        lines.add(">");
+        for (String line : lines) {
+            if (line.startsWith(">")) {
+                int id = proteinId;
+                digester.digest(sequence.toString().toUpperCase(), peptide ->
+                        peptide2Proteins.computeIfAbsent(equalIL ? peptide.replace('I', 'L') : peptide,
+                                k -> new TreeSet<>()).add(id));
+                sequence.setLength(0);
+                proteinId++;
+            } else {
+                sequence.append(line.trim());
+            }
+        }
+        return peptide2Proteins;
+    }
+
+    /**
+     * Every 7th protein has no taxon, some sequences are lower case and long peptides are common.
+     */
+    private Path writeFasta(int proteinCount) throws IOException {
+        Random random = new Random(1L);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < proteinCount; i++) {
+            sb.append(">sp|P").append(i).append("|PROT").append(i).append(" protein");
+            if (i % 7 != 0) {
+                sb.append(" OX=").append(1000 + i % 5);
+            }
+            sb.append('\n');
+            int length = 1 + random.nextInt(300);
+            StringBuilder sequence = new StringBuilder();
+            for (int j = 0; j < length; j++) {
+                sequence.append(random.nextInt(10) == 0 ? 'K' : AMINO_ACIDS.charAt(random.nextInt(AMINO_ACIDS.length())));
+            }
+            // shared peptides
+            if (i % 3 == 0) {
+                sequence.append("KSHAREDPEPTLDEKR");
+            }
+            String residues = i % 11 == 0 ? sequence.toString().toLowerCase() : sequence.toString();
+            for (int j = 0; j < residues.length(); j += 60) {
+                sb.append(residues, j, Math.min(residues.length(), j + 60)).append('\n');
+            }
+        }
+        Path path = tmpFolder.newFile("db.fasta").toPath();
+        Files.write(path, sb.toString().getBytes(StandardCharsets.US_ASCII));
+        return path;
+    }
+}
@@ -0,0 +1,85 @@
+package phoenixcenter.metaproteomics.tool;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+public class ToolRunnerTest {
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    @Test
+    public void outputAndArguments() throws IOException {
+        ToolRunner runner = new ToolRunner(2, 0, 50);
+        // the argument with spaces is passed as one argument
+        Path path = tmpFolder.newFolder("with space").toPath().resolve("a b.txt");
+        Files.write(path, Collections.singletonList("content"));
+        List<String> lines = new ArrayList<>();
+        ToolResult result = runner.run(Arrays.asList("sh", "-c",
+                "cat \"$0\"; i=0; while [ $i -lt 20000 ]; do echo $i; i=$((i+1)); done; echo err >&2",
+                path.toString()), lines::add, line -> assertEquals("err", line));
+        // all output is consumed when run returns
+        assertEquals(20001, lines.size());
+        assertEquals("content", lines.get(0));
+        assertEquals("19999", lines.get(20000));
+        assertEquals(0, result.getExitCode());
+        assertEquals("sh", result.getTool());
+        if (Files.isDirectory(Paths.get("/proc/self"))) {
+            assertTrue(result.getPeakRssKB() > 0);
+            assertTrue(result.getCpuMillis() >= 0);
+        }
+        assertEquals(1, runner.getStats().getCount("sh"));
+    }
+
+    @Test
+    public void failure() {
+        ToolRunner runner = new ToolRunner(1, 0, 50);
+        try {
+            runner.run(Arrays.asList("sh", "-c", "exit 3"));
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage().endsWith("exits with code 3"));
+        }
+        long start = System.nanoTime();
+        try {
+            runner.run(Arrays.asList("sleep", "30"), null, null, 300);
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("times out after 300 ms"));
+        }
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10));
+        assertEquals(1, runner.getStats().getCount("sleep"));
+    }
+
+    @Test
+    public void maxProcesses() throws Exception {
+        ToolRunner runner = new ToolRunner(2, 0, 20);
+        Path counterDir = tmpFolder.newFolder("running").toPath();
+        // each process leaves a file while running, the max count of files is sampled by the processes
+        String script = "touch \"$0/$$\"; ls \"$0\" | wc -l; sleep 0.3; rm \"$0/$$\"";
+        ExecutorService executor = Executors.newFixedThreadPool(6);
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            futures.add(executor.submit(() -> {
+                List<String> out = new ArrayList<>();
+                runner.run(Arrays.asList("sh", "-c", script, counterDir.toString()), out::add, null);
+                return Integer.parseInt(out.get(0).trim());
+            }));
+        }
+        for (Future<Integer> future : futures) {
+            assertTrue(future.get(30, TimeUnit.SECONDS) <= 2);
+        }
+        executor.shutdown();
+        assertEquals(6, runner.getStats().getCount("sh"));
+    }
+}
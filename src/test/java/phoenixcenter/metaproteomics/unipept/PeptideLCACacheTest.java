@@ -0,0 +1,69 @@
+package phoenixcenter.metaproteomics.unipept;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import phoenixcenter.metaproteomics.entity.UnipeptLCA;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+
+public class PeptideLCACacheTest {
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    private UnipeptLCA createLCA(String sequence) {
+        UnipeptLCA unipeptLCA = new UnipeptLCA();
+        unipeptLCA.setSequence(sequence);
+        unipeptLCA.setLcaId(562);
+        unipeptLCA.setLcaName("Escherichia coli");
+        unipeptLCA.setLcaRank("species");
+        unipeptLCA.setLineageIds(new int[]{2, 0, 562});
+        unipeptLCA.setLineageNames(new String[]{"Bacteria", null, "Escherichia coli"});
+        return unipeptLCA;
+    }
+
+    @Test
+    public void reopen() throws IOException {
+        Path cachePath = tmpFolder.getRoot().toPath().resolve("pept2lca.cache");
+        PeptideLCACache cache = PeptideLCACache.open(cachePath, 10);
+        assertNull(cache.get("AAAK", true, false));
+        cache.put(createLCA("AAAK"), true, false);
+        cache.putNotFound("CCCK", true, false);
+        cache.close();
+
+        cache = PeptideLCACache.open(cachePath, 10);
+        Optional<UnipeptLCA> lca = cache.get("AAAK", true, false);
+        assertNotNull(lca);
+        assertEquals(createLCA("AAAK"), lca.get());
+        // key contains equate_il and missed
+        assertNull(cache.get("AAAK", false, false));
+        assertFalse(cache.get("CCCK", true, false).isPresent());
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        cache.close();
+    }
+
+    @Test
+    public void evict() throws IOException {
+        Path cachePath = tmpFolder.getRoot().toPath().resolve("pept2lca.cache");
+        PeptideLCACache cache = PeptideLCACache.open(cachePath, 2);
+        cache.put(createLCA("AAAK"), true, false);
+        cache.put(createLCA("CCCK"), true, false);
+        // AAAK becomes the most recently used one
+        assertNotNull(cache.get("AAAK", true, false));
+        cache.put(createLCA("DDDK"), true, false);
+        assertNull(cache.get("CCCK", true, false));
+        cache.close();
+
+        cache = PeptideLCACache.open(cachePath, 2);
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get("AAAK", true, false));
+        assertNotNull(cache.get("DDDK", true, false));
+        cache.close();
+    }
+}
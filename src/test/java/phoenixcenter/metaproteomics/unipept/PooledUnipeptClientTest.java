@@ -0,0 +1,179 @@
+package phoenixcenter.metaproteomics.unipept;
+
+import org.junit.After;
+import org.junit.Test;
+import phoenixcenter.metaproteomics.entity.UnipeptLCA;
+import phoenixcenter.metaproteomics.entity.UnipeptTaxon;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class PooledUnipeptClientTest {
+
+    private UnipeptStubServer server;
+
+    private PooledUnipeptClient client;
+
+    private CircuitBreaker circuitBreaker;
+
+    private PooledUnipeptClient createClient(long delayMillis, int maxConnections, boolean gzipRequest) throws IOException {
+        return createClient(delayMillis, maxConnections, gzipRequest, new CircuitBreaker(100, 1000));
+    }
+
+    private PooledUnipeptClient createClient(long delayMillis, int maxConnections, boolean gzipRequest,
+                                             CircuitBreaker circuitBreaker) throws IOException {
+        server = new UnipeptStubServer(delayMillis);
+        this.circuitBreaker = circuitBreaker;
+        client = new PooledUnipeptClient(server.getURL(), maxConnections, 1000, 5000, 30000,
+                gzipRequest, new TokenBucket(0, maxConnections), new RetryPolicy(4, 10, 100), circuitBreaker);
+        return client;
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (client != null) {
+            client.close();
+            server.close();
+        }
+    }
+
+    @Test
+    public void pept2data() throws Exception {
+        createClient(100, 2, true);
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        Map<String, UnipeptLCA> peptide2LCA = new ConcurrentHashMap<>();
+        for (int i = 0; i < 6; i++) {
+            futures.add(client.pept2data(Arrays.asList("PEPT" + i + "K", "NPEPT" + i + "K"), true, false,
+                    lca -> peptide2LCA.put(lca.getSequence(), lca)));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+        assertEquals(6, peptide2LCA.size());
+        assertEquals(562, peptide2LCA.get("PEPT3K").getLcaId().intValue());
+        assertTrue(server.getMaxInFlight() <= 2);
+        assertEquals(6, server.getGzipRequestCount());
+        assertEquals(6, server.getGzipResponseCount());
+
+        List<UnipeptTaxon> taxa = new ArrayList<>();
+        client.taxa(Arrays.asList(2, 562), taxa::add).get(10, TimeUnit.SECONDS);
+        assertEquals("Escherichia coli", taxa.get(1).getName());
+        assertEquals(0, client.getLeasedConnections());
+    }
+
+    @Test
+    public void retryReleasesConnection() throws Exception {
+        // with one connection, a retry would wait forever if the failed response kept it
+        createClient(0, 1, false);
+        server.setFailures(3);
+        Set<String> peptides = new HashSet<>();
+        client.pept2data(Collections.singletonList("PEPTK"), false, false, lca -> peptides.add(lca.getSequence()))
+                .get(10, TimeUnit.SECONDS);
+        assertEquals(Collections.singleton("PEPTK"), peptides);
+        assertEquals(4, server.getPept2dataCount());
+        assertEquals(0, server.getGzipRequestCount());
+        assertEquals(0, client.getLeasedConnections());
+    }
+
+    @Test
+    public void retryTruncatedBody() throws Exception {
+        createClient(0, 1, false);
+        server.setTruncations(1);
+        List<String> sent = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            sent.add("PEPT" + i + "K");
+        }
+        List<String> peptides = new ArrayList<>();
+        client.pept2data(sent, false, false, lca -> peptides.add(lca.getSequence())).get(10, TimeUnit.SECONDS);
+        // peptides parsed before the connection is closed are not handed twice
+        assertEquals(sent, peptides);
+        assertEquals(2, server.getPept2dataCount());
+        assertEquals(1, client.getMetrics().getCount("pept2data.error"));
+        assertEquals(1, client.getMetrics().getCount("pept2data.ok"));
+        assertEquals(1, client.getMetrics().getCount("backoff"));
+        assertEquals(0, client.getLeasedConnections());
+    }
+
+    @Test
+    public void giveUp() throws Exception {
+        createClient(0, 2, false);
+        server.setFailures(10);
+        try {
+            client.pept2data(Collections.singletonList("PEPTK"), false, false, lca -> fail()).get(10, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+            assertTrue(e.getCause().getMessage().contains("after 4 attempts: HTTP 503"));
+        }
+        assertEquals(4, server.getPept2dataCount());
+        assertEquals(4, client.getMetrics().getCount("pept2data.503"));
+        assertEquals(3, client.getMetrics().getCount("backoff"));
+        assertEquals(0, client.getLeasedConnections());
+    }
+
+    @Test
+    public void circuitBreaker() throws Exception {
+        // open after 2 failures, the first probe fails and the second one succeeds
+        createClient(0, 2, false, new CircuitBreaker(2, 300));
+        server.setFailures(3);
+        long start = System.nanoTime();
+        Set<String> peptides = new HashSet<>();
+        client.pept2data(Collections.singletonList("PEPTK"), false, false, lca -> peptides.add(lca.getSequence()))
+                .get(10, TimeUnit.SECONDS);
+        assertEquals(Collections.singleton("PEPTK"), peptides);
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(600));
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        assertEquals(2, circuitBreaker.getOpenCount());
+        assertTrue(client.getMetrics().getTotalMillis("circuit.wait") >= 500);
+    }
+
+    @Test
+    public void circuitBreakerProbe() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(1, 0);
+        CircuitBreaker.Permit before = breaker.acquire();
+        CircuitBreaker.Permit other = breaker.acquire();
+        breaker.onFailure(before, -1L);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        CircuitBreaker.Permit probe = breaker.acquire();
+        assertTrue(probe.isProbe());
+        // a request admitted before the circuit opened neither reopens it nor lets in another probe
+        breaker.onFailure(other, -1L);
+        breaker.onIgnored(other);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertEquals(1, breaker.getOpenCount());
+        CompletableFuture<CircuitBreaker.Permit> waiting = CompletableFuture.supplyAsync(() -> {
+            try {
+                return breaker.acquire();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Thread.sleep(100);
+        assertFalse(waiting.isDone());
+        breaker.onSuccess(probe);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertFalse(waiting.get(1, TimeUnit.SECONDS).isProbe());
+    }
+
+    @Test
+    public void retryPolicy() {
+        RetryPolicy retryPolicy = new RetryPolicy(5, 100, 1000);
+        for (int attempt = 1; attempt <= 6; attempt++) {
+            long backoff = Math.min(1000, 100L << (attempt - 1));
+            for (int i = 0; i < 100; i++) {
+                long delay = retryPolicy.delayMillis(attempt, -1);
+                assertTrue(delay >= backoff / 2 && delay <= backoff);
+            }
+        }
+        assertEquals(5000, retryPolicy.delayMillis(1, 5000));
+        assertTrue(retryPolicy.canRetry(4));
+        assertFalse(retryPolicy.canRetry(5));
+        assertTrue(retryPolicy.isRetryable(503));
+        assertTrue(retryPolicy.isRetryable(429));
+        assertFalse(retryPolicy.isRetryable(400));
+    }
+}
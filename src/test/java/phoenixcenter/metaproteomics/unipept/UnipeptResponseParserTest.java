@@ -0,0 +1,65 @@
+package phoenixcenter.metaproteomics.unipept;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import org.junit.Test;
+import phoenixcenter.metaproteomics.entity.UnipeptLCA;
+import phoenixcenter.metaproteomics.entity.UnipeptTaxon;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class UnipeptResponseParserTest {
+
+    private final UnipeptResponseParser parser = new UnipeptResponseParser(new JsonFactory());
+
+    private static InputStream json(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void parsePept2data() throws IOException {
+        List<UnipeptLCA> lcaList = new ArrayList<>();
+        parser.parsePept2data(json("{\"version\": \"1\", \"peptides\": ["
+                // unknown fields of any shape before and after the known ones
+                + "{\"fa\": {\"counts\": {\"all\": 1}, \"data\": [[1, 2]]}, \"sequence\": \"PEPTAK\", \"lca\": 562,"
+                + " \"lineage\": [2, null, null, 562], \"extra\": null},"
+                // no lineage
+                + "{\"sequence\": \"PEPTBK\", \"lca\": 2},"
+                // null lineage
+                + "{\"sequence\": \"PEPTCK\", \"lca\": 1, \"lineage\": null}"
+                + "], \"trailing\": [1, {\"a\": 2}]}"), lcaList::add);
+
+        assertEquals(3, lcaList.size());
+        UnipeptLCA lca = lcaList.get(0);
+        assertEquals("PEPTAK", lca.getSequence());
+        assertEquals(Integer.valueOf(562), lca.getLcaId());
+        assertArrayEquals(new int[]{2, 0, 0, 562}, lca.getLineageIds());
+        assertEquals("PEPTBK", lcaList.get(1).getSequence());
+        assertEquals(Integer.valueOf(2), lcaList.get(1).getLcaId());
+        assertArrayEquals(new int[0], lcaList.get(1).getLineageIds());
+        assertArrayEquals(new int[0], lcaList.get(2).getLineageIds());
+    }
+
+    @Test
+    public void parseTaxa() throws IOException {
+        List<UnipeptTaxon> taxa = new ArrayList<>();
+        parser.parseTaxa(json("[{\"id\": 2, \"name\": \"Bacteria\", \"rank\": \"superkingdom\","
+                + " \"lineage\": {\"superkingdom_id\": 2}},"
+                + "{\"extra\": [1, 2], \"id\": 562, \"name\": \"Escherichia coli\", \"rank\": \"species\"}]"), taxa::add);
+
+        assertEquals(2, taxa.size());
+        assertEquals(new UnipeptTaxon(2, "Bacteria", "superkingdom"), taxa.get(0));
+        assertEquals(new UnipeptTaxon(562, "Escherichia coli", "species"), taxa.get(1));
+    }
+
+    @Test(expected = IOException.class)
+    public void illegalResponse() throws IOException {
+        parser.parsePept2data(json("[]"), lca -> fail());
+    }
+}
@@ -0,0 +1,195 @@
+package phoenixcenter.metaproteomics.unipept;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A local Unipept server for tests. Every peptide is assigned to Escherichia coli,
+ * except peptides starting with "N" which are unknown.
+ */
+public class UnipeptStubServer implements AutoCloseable {
+
+    public static final int SPECIES_IDX = 24;
+
+    private static final int LINEAGE_SIZE = 28;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final HttpServer server;
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    private final long delayMillis;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    private final AtomicInteger pept2dataCount = new AtomicInteger();
+
+    private final AtomicInteger failures = new AtomicInteger();
+
+    private final AtomicInteger truncations = new AtomicInteger();
+
+    private final AtomicInteger gzipRequestCount = new AtomicInteger();
+
+    private final AtomicInteger gzipResponseCount = new AtomicInteger();
+
+    public UnipeptStubServer(long delayMillis) throws IOException {
+        this.delayMillis = delayMillis;
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/mpa/pept2data", this::pept2data);
+        server.createContext("/private_api/taxa", this::taxa);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public String getURL() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight.get();
+    }
+
+    public int getPept2dataCount() {
+        return pept2dataCount.get();
+    }
+
+    /**
+     * @param count the next count of pept2data requests fail with 503
+     */
+    public void setFailures(int count) {
+        failures.set(count);
+    }
+
+    /**
+     * @param count the next count of pept2data responses are cut in the middle of body
+     */
+    public void setTruncations(int count) {
+        truncations.set(count);
+    }
+
+    public int getGzipRequestCount() {
+        return gzipRequestCount.get();
+    }
+
+    public int getGzipResponseCount() {
+        return gzipResponseCount.get();
+    }
+
+    private InputStream requestBody(HttpExchange exchange) throws IOException {
+        if ("gzip".equals(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+            gzipRequestCount.incrementAndGet();
+            return new GZIPInputStream(exchange.getRequestBody());
+        }
+        return exchange.getRequestBody();
+    }
+
+    private void pept2data(HttpExchange exchange) throws IOException {
+        int current = inFlight.incrementAndGet();
+        maxInFlight.accumulateAndGet(current, Math::max);
+        pept2dataCount.incrementAndGet();
+        try {
+            Thread.sleep(delayMillis);
+            JsonNode params = objectMapper.readTree(requestBody(exchange));
+            if (failures.getAndDecrement() > 0) {
+                byte[] error = "Service Unavailable".getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(503, error.length);
+                try (OutputStream os = exchange.getResponseBody()) {
+                    os.write(error);
+                }
+                return;
+            }
+            ObjectNode result = objectMapper.createObjectNode();
+            ArrayNode peptides = result.putArray("peptides");
+            for (JsonNode peptide : params.get("peptides")) {
+                if (peptide.asText().startsWith("N")) {
+                    continue;
+                }
+                ObjectNode peptNode = peptides.addObject();
+                peptNode.put("sequence", peptide.asText());
+                peptNode.put("lca", 562);
+                ArrayNode lineage = peptNode.putArray("lineage");
+                for (int i = 0; i < LINEAGE_SIZE; i++) {
+                    if (i == 0) {
+                        lineage.add(2);
+                    } else if (i == SPECIES_IDX) {
+                        lineage.add(562);
+                    } else {
+                        lineage.addNull();
+                    }
+                }
+            }
+            if (truncations.getAndDecrement() > 0) {
+                truncate(exchange, objectMapper.writeValueAsString(result));
+                return;
+            }
+            write(exchange, objectMapper.writeValueAsString(result));
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    private void taxa(HttpExchange exchange) throws IOException {
+        objectMapper.readTree(requestBody(exchange));
+        write(exchange, "[{\"id\":2,\"name\":\"Bacteria\",\"rank\":\"superkingdom\"},"
+                + "{\"id\":562,\"name\":\"Escherichia coli\",\"rank\":\"species\"}]");
+    }
+
+    private void write(HttpExchange exchange, String content) throws IOException {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            gzipResponseCount.incrementAndGet();
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            try (GZIPOutputStream gos = new GZIPOutputStream(bos)) {
+                gos.write(bytes);
+            }
+            bytes = bos.toByteArray();
+            exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+        }
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+
+    /**
+     * Send half of content and close the connection
+     */
+    private void truncate(HttpExchange exchange, String content) throws IOException {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        OutputStream os = exchange.getResponseBody();
+        os.write(bytes, 0, bytes.length / 2);
+        os.flush();
+        exchange.close();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
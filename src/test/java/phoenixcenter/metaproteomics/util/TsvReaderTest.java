@@ -0,0 +1,70 @@
+package phoenixcenter.metaproteomics.util;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TsvReaderTest {
+
+    @Test
+    public void read() throws IOException {
+        String content = "peptide\tS1\t S2 \r\n"
+                + "AAAK\t1.5\t\r\n"
+                + "\n"
+                + "CCCK\t-2e3";
+        try (TsvReader reader = new TsvReader(new StringReader(content))) {
+            assertArrayEquals(new String[]{"peptide", "S1", "S2"}, reader.getHeaders());
+            assertEquals(2, reader.columnIndex("S2"));
+            assertEquals(-1, reader.columnIndex("S3"));
+
+            assertTrue(reader.next());
+            assertEquals("AAAK", reader.getString(0));
+            assertTrue(reader.fieldEquals(0, "AAAK"));
+            assertEquals(1.5, reader.getDouble(1, 0.0), 0.0);
+            assertTrue(reader.isEmpty(2));
+            assertEquals(-1.0, reader.getDouble(2, -1.0), 0.0);
+
+            assertTrue(reader.next());
+            assertEquals(1, reader.getFieldCount());
+            assertTrue(reader.isEmpty(0));
+
+            // the last row without line separator
+            assertTrue(reader.next());
+            assertEquals(-2000.0, reader.getDouble(1, 0.0), 0.0);
+            assertTrue(reader.isEmpty(2));
+            assertFalse(reader.next());
+            assertFalse(reader.next());
+        }
+    }
+
+    @Test
+    public void longRow() throws IOException {
+        StringBuilder sb = new StringBuilder("id\tvalue\n");
+        Random random = new Random(1);
+        double[] values = new double[20000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextInt(1000000) / 1000.0;
+            sb.append(i).append('\t').append(values[i]).append('\n');
+        }
+        // a row longer than the initial buffer
+        char[] longField = new char[100000];
+        Arrays.fill(longField, 'A');
+        sb.append(-7).append('\t').append(longField).append('\n');
+        try (TsvReader reader = new TsvReader(new StringReader(sb.toString()))) {
+            for (int i = 0; i < values.length; i++) {
+                assertTrue(reader.next());
+                assertEquals(i, reader.getInt(0));
+                assertEquals(Double.parseDouble(String.valueOf(values[i])), reader.getDouble(1, 0.0), 0.0);
+            }
+            assertTrue(reader.next());
+            assertEquals(-7, reader.getInt(0));
+            assertEquals(longField.length, reader.getString(1).length());
+            assertFalse(reader.next());
+        }
+    }
+}